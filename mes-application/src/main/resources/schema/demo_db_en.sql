@@ -1501,6 +1501,7 @@ CREATE FUNCTION remove_archived_data() RETURNS void
 			FOR _atrackingrecord IN SELECT * FROM arch_advancedgenealogy_trackingrecord WHERE order_id = _order.id AND archived = false
 			LOOP
 				DELETE FROM advancedgenealogy_trackingrecord WHERE trackingrecord_id = _atrackingrecord.id;
+				DELETE FROM advancedgenealogy_genealogybatchlink WHERE trackingrecord_id = _atrackingrecord.id;
 				DELETE FROM advancedgenealogy_usedbatchsimple WHERE trackingrecord_id = _atrackingrecord.id;
 				DELETE FROM advancedgenealogyfororders_genealogyproductincomponent WHERE trackingrecord_id = _atrackingrecord.id;
 				DELETE FROM advancedgenealogy_trackingrecord WHERE id = _atrackingrecord.id;
@@ -1837,6 +1838,38 @@ CREATE SEQUENCE advancedgenealogy_batchstatechange_id_seq
 ALTER SEQUENCE advancedgenealogy_batchstatechange_id_seq OWNED BY advancedgenealogy_batchstatechange.id;
 
 
+--
+-- Name: advancedgenealogy_genealogybatchlink; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE advancedgenealogy_genealogybatchlink (
+    id bigint NOT NULL,
+    trackingrecord_id bigint,
+    producedbatch_id bigint,
+    usedbatch_id bigint,
+    entityversion bigint DEFAULT 0
+);
+
+
+--
+-- Name: advancedgenealogy_genealogybatchlink_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE advancedgenealogy_genealogybatchlink_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: advancedgenealogy_genealogybatchlink_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE advancedgenealogy_genealogybatchlink_id_seq OWNED BY advancedgenealogy_genealogybatchlink.id;
+
+
 --
 -- Name: advancedgenealogy_genealogyreport; Type: TABLE; Schema: public; Owner: -
 --
@@ -20386,6 +20419,43 @@ CREATE SEQUENCE productioncounting_productionbalance_id_seq
 ALTER SEQUENCE productioncounting_productionbalance_id_seq OWNED BY productioncounting_productionbalance.id;
 
 
+--
+-- Name: productioncounting_productionbalanceaggregate; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE productioncounting_productionbalanceaggregate (
+    id bigint NOT NULL,
+    order_id bigint,
+    technologyoperationcomponent_id bigint,
+    product_id bigint,
+    role character varying(255),
+    wasteunit character varying(255),
+    usedquantity numeric(12,5),
+    wasteusedquantity numeric(12,5),
+    wastesquantity numeric(12,5),
+    entityversion bigint DEFAULT 0
+);
+
+
+--
+-- Name: productioncounting_productionbalanceaggregate_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE productioncounting_productionbalanceaggregate_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: productioncounting_productionbalanceaggregate_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE productioncounting_productionbalanceaggregate_id_seq OWNED BY productioncounting_productionbalanceaggregate.id;
+
+
 --
 -- Name: productioncounting_productioncountingquantitysetcomponent; Type: TABLE; Schema: public; Owner: -
 --
@@ -24565,6 +24635,13 @@ ALTER TABLE ONLY advancedgenealogy_batchstatechange ALTER COLUMN id SET DEFAULT
 
 --
 -- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+-- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY advancedgenealogy_genealogybatchlink ALTER COLUMN id SET DEFAULT nextval('advancedgenealogy_genealogybatchlink_id_seq'::regclass);
+
+
 --
 
 ALTER TABLE ONLY advancedgenealogy_genealogyreport ALTER COLUMN id SET DEFAULT nextval('advancedgenealogy_genealogyreport_id_seq'::regclass);
@@ -26950,6 +27027,13 @@ ALTER TABLE ONLY productioncounting_anomalyreasoncontainer ALTER COLUMN id SET D
 ALTER TABLE ONLY productioncounting_productionbalance ALTER COLUMN id SET DEFAULT nextval('productioncounting_productionbalance_id_seq'::regclass);
 
 
+--
+-- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productioncounting_productionbalanceaggregate ALTER COLUMN id SET DEFAULT nextval('productioncounting_productionbalanceaggregate_id_seq'::regclass);
+
+
 --
 -- Name: id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -27743,6 +27827,21 @@ COPY advancedgenealogy_batchstatechange (id, dateandtime, sourcestate, targetsta
 SELECT pg_catalog.setval('advancedgenealogy_batchstatechange_id_seq', 1, false);
 
 
+--
+-- Data for Name: advancedgenealogy_genealogybatchlink; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY advancedgenealogy_genealogybatchlink (id, trackingrecord_id, producedbatch_id, usedbatch_id, entityversion) FROM stdin;
+\.
+
+
+--
+-- Name: advancedgenealogy_genealogybatchlink_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('advancedgenealogy_genealogybatchlink_id_seq', 1, false);
+
+
 --
 -- Data for Name: advancedgenealogy_genealogyreport; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -34446,6 +34545,21 @@ COPY productioncounting_productionbalance (id, generated, name, date, worker, de
 SELECT pg_catalog.setval('productioncounting_productionbalance_id_seq', 1, false);
 
 
+--
+-- Data for Name: productioncounting_productionbalanceaggregate; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY productioncounting_productionbalanceaggregate (id, order_id, technologyoperationcomponent_id, product_id, role, wasteunit, usedquantity, wasteusedquantity, wastesquantity, entityversion) FROM stdin;
+\.
+
+
+--
+-- Name: productioncounting_productionbalanceaggregate_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('productioncounting_productionbalanceaggregate_id_seq', 1, false);
+
+
 --
 -- Data for Name: productioncounting_productioncountingquantitysetcomponent; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -36921,6 +37035,14 @@ ALTER TABLE ONLY advancedgenealogy_batchstatechange
     ADD CONSTRAINT advancedgenealogy_batchlogging_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: advancedgenealogy_genealogybatchlink_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY advancedgenealogy_genealogybatchlink
+    ADD CONSTRAINT advancedgenealogy_genealogybatchlink_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: advancedgenealogy_genealogyreport_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -40169,6 +40291,14 @@ ALTER TABLE ONLY productioncounting_productionbalance
     ADD CONSTRAINT productioncounting_productionbalance_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: productioncounting_productionbalanceaggregate_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productioncounting_productionbalanceaggregate
+    ADD CONSTRAINT productioncounting_productionbalanceaggregate_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: productioncounting_productioncounting_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -41864,6 +41994,27 @@ CREATE INDEX idx_del_orderedproduct_product_id ON deliveries_orderedproduct USIN
 CREATE INDEX idx_del_verystatechange_delivery_id ON deliveries_deliverystatechange USING btree (delivery_id);
 
 
+--
+-- Name: idx_genealogybatchlink_producedbatch_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_genealogybatchlink_producedbatch_id ON advancedgenealogy_genealogybatchlink USING btree (producedbatch_id);
+
+
+--
+-- Name: idx_genealogybatchlink_trackingrecord_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_genealogybatchlink_trackingrecord_id ON advancedgenealogy_genealogybatchlink USING btree (trackingrecord_id);
+
+
+--
+-- Name: idx_genealogybatchlink_usedbatch_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_genealogybatchlink_usedbatch_id ON advancedgenealogy_genealogybatchlink USING btree (usedbatch_id);
+
+
 --
 -- Name: idx_goo_abelstatechange_label_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -42529,6 +42680,13 @@ CREATE INDEX idx_pro_uctoutcomponent_product_id ON productioncounting_trackingop
 CREATE INDEX idx_pro_uctoutcomponent_productiontracking_id ON productioncounting_trackingoperationproductoutcomponent USING btree (productiontracking_id);
 
 
+--
+-- Name: idx_productionbalanceaggregate_order_id; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX idx_productionbalanceaggregate_order_id ON productioncounting_productionbalanceaggregate USING btree (order_id);
+
+
 --
 -- Name: idx_qca_tconversionitem_product_id; Type: INDEX; Schema: public; Owner: -
 --
@@ -45959,6 +46117,30 @@ ALTER TABLE ONLY productcharacteristics_forms
     ADD CONSTRAINT forms_company_fkey FOREIGN KEY (company_id) REFERENCES basic_company(id) DEFERRABLE;
 
 
+--
+-- Name: genealogybatchlink_producedbatch_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY advancedgenealogy_genealogybatchlink
+    ADD CONSTRAINT genealogybatchlink_producedbatch_fkey FOREIGN KEY (producedbatch_id) REFERENCES advancedgenealogy_batch(id) DEFERRABLE;
+
+
+--
+-- Name: genealogybatchlink_trackingrecord_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY advancedgenealogy_genealogybatchlink
+    ADD CONSTRAINT genealogybatchlink_trackingrecord_fkey FOREIGN KEY (trackingrecord_id) REFERENCES advancedgenealogy_trackingrecord(id) DEFERRABLE;
+
+
+--
+-- Name: genealogybatchlink_usedbatch_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY advancedgenealogy_genealogybatchlink
+    ADD CONSTRAINT genealogybatchlink_usedbatch_fkey FOREIGN KEY (usedbatch_id) REFERENCES advancedgenealogy_batch(id) DEFERRABLE;
+
+
 --
 -- Name: genealogyproductinbatch_batch_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
 --
@@ -49591,6 +49773,30 @@ ALTER TABLE ONLY arch_productflowthrudivision_productstoissue
     ADD CONSTRAINT productincomponent_productstoissue_fkey FOREIGN KEY (productincomponent_id) REFERENCES technologies_operationproductincomponent(id) DEFERRABLE;
 
 
+--
+-- Name: productionbalanceaggregate_order_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productioncounting_productionbalanceaggregate
+    ADD CONSTRAINT productionbalanceaggregate_order_fkey FOREIGN KEY (order_id) REFERENCES orders_order(id) DEFERRABLE;
+
+
+--
+-- Name: productionbalanceaggregate_product_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productioncounting_productionbalanceaggregate
+    ADD CONSTRAINT productionbalanceaggregate_product_fkey FOREIGN KEY (product_id) REFERENCES basic_product(id) DEFERRABLE;
+
+
+--
+-- Name: productionbalanceaggregate_technologyoperationcomponent_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productioncounting_productionbalanceaggregate
+    ADD CONSTRAINT productionbalanceaggregate_technologyoperationcomponent_fkey FOREIGN KEY (technologyoperationcomponent_id) REFERENCES technologies_technologyoperationcomponent(id) DEFERRABLE;
+
+
 --
 -- Name: productioncounting_productionrecord_d_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
 --
@@ -42,6 +42,8 @@ public interface AdvancedGenealogyConstants {
 
     String MODEL_USED_BATCH_SIMPLE = "usedBatchSimple";
 
+    String MODEL_GENEALOGY_BATCH_LINK = "genealogyBatchLink";
+
     String FIELD_FORM = "form";
 
     String FIELD_NUMBER = "number";
@@ -26,8 +26,10 @@ package com.qcadoo.mes.advancedGenealogy.hooks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields;
 import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordStateChangeDescriber;
+import com.qcadoo.mes.advancedGenealogy.tree.GenealogyBatchLinkService;
 import com.qcadoo.mes.states.service.StateChangeEntityBuilder;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -41,6 +43,9 @@ public class TrackingRecordModelHooks {
     @Autowired
     private TrackingRecordStateChangeDescriber trackingRecordStateChangeDescriber;
 
+    @Autowired
+    private GenealogyBatchLinkService genealogyBatchLinkService;
+
     public void setInitialState(final DataDefinition dataDefinition, final Entity trackingRecord) {
         stateChangeEntityBuilder.buildInitial(trackingRecordStateChangeDescriber, trackingRecord, TrackingRecordState.DRAFT);
     }
@@ -49,4 +54,11 @@ public class TrackingRecordModelHooks {
         trackingRecord.setField("externalNumber", null);
     }
 
+    public void refreshGenealogyBatchLinks(final DataDefinition trackingRecordDD, final Entity trackingRecord) {
+        if (trackingRecord.getId() != null) {
+            genealogyBatchLinkService.refreshForTrackingRecord(trackingRecord.getId(),
+                    trackingRecord.getStringField(TrackingRecordFields.STATE));
+        }
+    }
+
 }
@@ -0,0 +1,218 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.recall;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Immutable snapshot of genealogy batch links. Batch ids are kept in a sorted array and links in compressed adjacency arrays
+ * (offsets and targets per batch index) for both directions, so traversals don't box ids or allocate per link.
+ */
+final class GenealogyGraph {
+
+    private final long[] batchesIds;
+
+    private final Adjacency downstream;
+
+    private final Adjacency upstream;
+
+    private GenealogyGraph(final long[] batchesIds, final Adjacency downstream, final Adjacency upstream) {
+        this.batchesIds = batchesIds;
+        this.downstream = downstream;
+        this.upstream = upstream;
+    }
+
+    /**
+     * Builds snapshot from first {@code size} links, given as parallel arrays of tracking record, produced batch and used batch
+     * ids.
+     */
+    static GenealogyGraph build(final long[] trackingRecordsIds, final long[] producedBatchesIds, final long[] usedBatchesIds,
+            final int size) {
+        long[] allBatchesIds = new long[2 * size];
+
+        System.arraycopy(producedBatchesIds, 0, allBatchesIds, 0, size);
+        System.arraycopy(usedBatchesIds, 0, allBatchesIds, size, size);
+
+        Arrays.sort(allBatchesIds);
+
+        int count = 0;
+
+        for (int i = 0; i < allBatchesIds.length; i++) {
+            if (i == 0 || allBatchesIds[i] != allBatchesIds[i - 1]) {
+                allBatchesIds[count++] = allBatchesIds[i];
+            }
+        }
+
+        long[] batchesIds = Arrays.copyOf(allBatchesIds, count);
+
+        int[] producedIndexes = new int[size];
+        int[] usedIndexes = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            producedIndexes[i] = Arrays.binarySearch(batchesIds, producedBatchesIds[i]);
+            usedIndexes[i] = Arrays.binarySearch(batchesIds, usedBatchesIds[i]);
+        }
+
+        return new GenealogyGraph(batchesIds, Adjacency.build(count, usedIndexes, producedIndexes, trackingRecordsIds, size),
+                Adjacency.build(count, producedIndexes, usedIndexes, trackingRecordsIds, size));
+    }
+
+    static GenealogyGraph empty() {
+        return build(new long[0], new long[0], new long[0], 0);
+    }
+
+    int getBatchesCount() {
+        return batchesIds.length;
+    }
+
+    int getLinksCount() {
+        return downstream.targets.length;
+    }
+
+    /**
+     * Returns ids of all batches reachable from given batches, without the given batches themselves.
+     *
+     * @param startBatchesIds
+     *            ids of batches to start from
+     * @param downstreamDirection
+     *            true to follow links from used to produced batches, false to follow them from produced to used batches
+     * @param overriddenTrackingRecordsIds
+     *            ids of tracking records whose links in this snapshot are outdated and have to be skipped
+     * @param overridingLinks
+     *            current links of overridden tracking records, in traversal direction
+     */
+    long[] traverse(final Collection<Long> startBatchesIds, final boolean downstreamDirection,
+            final Set<Long> overriddenTrackingRecordsIds, final Map<Long, List<Long>> overridingLinks) {
+        Adjacency adjacency = downstreamDirection ? downstream : upstream;
+
+        Traversal traversal = new Traversal();
+
+        startBatchesIds.forEach(traversal::visit);
+
+        int reachedFrom = traversal.size;
+
+        while (traversal.head < traversal.size) {
+            long batchId = traversal.queue[traversal.head++];
+            int index = Arrays.binarySearch(batchesIds, batchId);
+
+            if (index >= 0) {
+                for (int link = adjacency.offsets[index]; link < adjacency.offsets[index + 1]; link++) {
+                    if (overriddenTrackingRecordsIds.isEmpty()
+                            || !overriddenTrackingRecordsIds.contains(adjacency.trackingRecordsIds[link])) {
+                        traversal.visit(batchesIds[adjacency.targets[link]]);
+                    }
+                }
+            }
+
+            overridingLinks.getOrDefault(batchId, Collections.emptyList()).forEach(traversal::visit);
+        }
+
+        return Arrays.copyOfRange(traversal.queue, reachedFrom, traversal.size);
+    }
+
+    private final class Traversal {
+
+        private final BitSet visited = new BitSet(batchesIds.length);
+
+        private final Set<Long> visitedOutsideSnapshot = Sets.newHashSet();
+
+        private long[] queue = new long[16];
+
+        private int head;
+
+        private int size;
+
+        private void visit(final long batchId) {
+            int index = Arrays.binarySearch(batchesIds, batchId);
+
+            if (index >= 0) {
+                if (visited.get(index)) {
+                    return;
+                }
+
+                visited.set(index);
+            } else if (!visitedOutsideSnapshot.add(batchId)) {
+                return;
+            }
+
+            if (size == queue.length) {
+                queue = Arrays.copyOf(queue, size * 2);
+            }
+
+            queue[size++] = batchId;
+        }
+
+    }
+
+    private static final class Adjacency {
+
+        private final int[] offsets;
+
+        private final int[] targets;
+
+        private final long[] trackingRecordsIds;
+
+        private Adjacency(final int[] offsets, final int[] targets, final long[] trackingRecordsIds) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.trackingRecordsIds = trackingRecordsIds;
+        }
+
+        private static Adjacency build(final int count, final int[] fromIndexes, final int[] toIndexes,
+                final long[] linksTrackingRecordsIds, final int size) {
+            int[] offsets = new int[count + 1];
+
+            for (int i = 0; i < size; i++) {
+                offsets[fromIndexes[i] + 1]++;
+            }
+
+            for (int i = 0; i < count; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] positions = Arrays.copyOf(offsets, count);
+            int[] targets = new int[size];
+            long[] trackingRecordsIds = new long[size];
+
+            for (int i = 0; i < size; i++) {
+                int position = positions[fromIndexes[i]]++;
+
+                targets[position] = toIndexes[i];
+                trackingRecordsIds[position] = linksTrackingRecordsIds[i];
+            }
+
+            return new Adjacency(offsets, targets, trackingRecordsIds);
+        }
+
+    }
+
+}
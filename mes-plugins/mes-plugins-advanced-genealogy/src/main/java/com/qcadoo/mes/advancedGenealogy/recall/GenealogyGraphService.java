@@ -0,0 +1,286 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.recall;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps genealogy graph of each tenant in memory for recall impact analysis.
+ *
+ * Every query first reads a watermark of genealogy batch links - their count and the highest id. Links are deleted and
+ * inserted again whenever a tracking record changes, so tracking records having links newer than the snapshot are reloaded one
+ * by one and kept next to it, overriding its links. When the watermark still doesn't match, e.g. because a tracking record lost
+ * all its links, or there are too many overrides, the snapshot is loaded again. Changes made on other nodes are noticed the
+ * same way as local ones.
+ */
+@Service
+public class GenealogyGraphService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenealogyGraphService.class);
+
+    private static final int L_FETCH_SIZE = 10000;
+
+    private static final int L_MAX_CHANGED_TRACKING_RECORDS = 10000;
+
+    private static final String L_TRACKING_RECORD_ID = "trackingrecord_id";
+
+    private static final String L_PRODUCED_BATCH_ID = "producedbatch_id";
+
+    private static final String L_USED_BATCH_ID = "usedbatch_id";
+
+    private static final String L_LINKS_COUNT = "linkscount";
+
+    private static final String L_MAX_ID = "maxid";
+
+    private static final String L_WATERMARK_QUERY = "SELECT count(*) AS linkscount, COALESCE(max(id), 0) AS maxid "
+            + "FROM advancedgenealogy_genealogybatchlink";
+
+    private final Map<Integer, TenantGenealogyGraph> genealogyGraphs = new ConcurrentHashMap<>();
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Transactional(readOnly = true)
+    public long[] getDownstreamBatchesIds(final Collection<Long> batchesIds) {
+        return traverse(batchesIds, true);
+    }
+
+    @Transactional(readOnly = true)
+    public long[] getUpstreamBatchesIds(final Collection<Long> batchesIds) {
+        return traverse(batchesIds, false);
+    }
+
+    /**
+     * Drops genealogy graph of current tenant after the transaction commits, e.g. when all links were rebuilt.
+     */
+    public void invalidate() {
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    genealogyGraphs.remove(tenantId);
+                }
+            });
+        } else {
+            genealogyGraphs.remove(tenantId);
+        }
+    }
+
+    private long[] traverse(final Collection<Long> batchesIds, final boolean downstreamDirection) {
+        TenantGenealogyGraph tenantGraph = genealogyGraphs.computeIfAbsent(multiTenantService.getCurrentTenantId(),
+                tenantId -> new TenantGenealogyGraph());
+
+        GenealogyGraph graph;
+
+        Map<Long, List<Long>> overridingLinks = Maps.newHashMap();
+        Set<Long> overriddenTrackingRecordsIds = Sets.newHashSet();
+
+        synchronized (tenantGraph) {
+            validate(tenantGraph);
+
+            graph = tenantGraph.graph;
+
+            tenantGraph.changedTrackingRecords.forEach((trackingRecordId, links) -> {
+                overriddenTrackingRecordsIds.add(trackingRecordId);
+
+                long[] fromBatchesIds = downstreamDirection ? links[1] : links[0];
+                long[] toBatchesIds = downstreamDirection ? links[0] : links[1];
+
+                for (int i = 0; i < fromBatchesIds.length; i++) {
+                    overridingLinks.computeIfAbsent(fromBatchesIds[i], id -> Lists.newArrayList()).add(toBatchesIds[i]);
+                }
+            });
+        }
+
+        return graph.traverse(batchesIds, downstreamDirection, overriddenTrackingRecordsIds, overridingLinks);
+    }
+
+    private void validate(final TenantGenealogyGraph tenantGraph) {
+        Map<String, Object> watermark = jdbcTemplate.queryForMap(L_WATERMARK_QUERY, Collections.emptyMap());
+
+        if (tenantGraph.graph != null && tenantGraph.maxId < getLong(watermark, L_MAX_ID)) {
+            watermark = reloadChangedTrackingRecords(tenantGraph);
+        }
+
+        if (tenantGraph.graph == null || watermark == null || tenantGraph.linksCount != getLong(watermark, L_LINKS_COUNT)
+                || tenantGraph.maxId != getLong(watermark, L_MAX_ID)
+                || tenantGraph.changedTrackingRecords.size() > L_MAX_CHANGED_TRACKING_RECORDS) {
+            loadGenealogyGraph(tenantGraph);
+        }
+    }
+
+    /**
+     * Reloads tracking records having links newer than the snapshot.
+     *
+     * @return watermark read in the same query as the links, or null if there are no such links anymore
+     */
+    private Map<String, Object> reloadChangedTrackingRecords(final TenantGenealogyGraph tenantGraph) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT l.trackingrecord_id, l.producedbatch_id, l.usedbatch_id, w.linkscount, w.maxid ");
+        query.append("FROM (").append(L_WATERMARK_QUERY).append(") w ");
+        query.append("JOIN advancedgenealogy_genealogybatchlink l ON l.trackingrecord_id IN ");
+        query.append("(SELECT trackingrecord_id FROM advancedgenealogy_genealogybatchlink WHERE id > :maxId)");
+
+        Map<Long, List<long[]>> trackingRecordsLinks = Maps.newHashMap();
+        Map<String, Object> watermark = Maps.newHashMap();
+
+        jdbcTemplate.query(query.toString(), new MapSqlParameterSource("maxId", tenantGraph.maxId), rs -> {
+            trackingRecordsLinks.computeIfAbsent(rs.getLong(L_TRACKING_RECORD_ID), id -> Lists.newArrayList()).add(
+                    new long[] { rs.getLong(L_PRODUCED_BATCH_ID), rs.getLong(L_USED_BATCH_ID) });
+
+            watermark.put(L_LINKS_COUNT, rs.getLong(L_LINKS_COUNT));
+            watermark.put(L_MAX_ID, rs.getLong(L_MAX_ID));
+        });
+
+        if (trackingRecordsLinks.isEmpty()) {
+            return null;
+        }
+
+        trackingRecordsLinks.forEach((trackingRecordId, links) -> {
+            long[][] trackingRecordLinks = new long[2][links.size()];
+
+            for (int i = 0; i < links.size(); i++) {
+                trackingRecordLinks[0][i] = links.get(i)[0];
+                trackingRecordLinks[1][i] = links.get(i)[1];
+            }
+
+            long[][] previousLinks = tenantGraph.changedTrackingRecords.put(trackingRecordId, trackingRecordLinks);
+            long previousLinksCount = (previousLinks == null) ? tenantGraph.snapshotLinksCounts.getOrDefault(trackingRecordId, 0)
+                    : previousLinks[0].length;
+
+            tenantGraph.linksCount += links.size() - previousLinksCount;
+        });
+
+        tenantGraph.maxId = getLong(watermark, L_MAX_ID);
+
+        return watermark;
+    }
+
+    private void loadGenealogyGraph(final TenantGenealogyGraph tenantGraph) {
+        long start = System.currentTimeMillis();
+
+        // rows are streamed, which needs the transaction of the query methods
+        JdbcTemplate streamingJdbcTemplate = new JdbcTemplate(((JdbcTemplate) jdbcTemplate.getJdbcOperations()).getDataSource());
+        streamingJdbcTemplate.setFetchSize(L_FETCH_SIZE);
+
+        LinksBuffer links = new LinksBuffer();
+
+        streamingJdbcTemplate.query(
+                "SELECT id, trackingrecord_id, producedbatch_id, usedbatch_id FROM advancedgenealogy_genealogybatchlink", rs -> {
+                    links.add(rs.getLong("id"), rs.getLong(L_TRACKING_RECORD_ID), rs.getLong(L_PRODUCED_BATCH_ID),
+                            rs.getLong(L_USED_BATCH_ID));
+                });
+
+        tenantGraph.graph = GenealogyGraph.build(links.trackingRecordsIds, links.producedBatchesIds, links.usedBatchesIds,
+                links.size);
+        tenantGraph.snapshotLinksCounts = links.trackingRecordsLinksCounts;
+        tenantGraph.changedTrackingRecords.clear();
+        tenantGraph.linksCount = links.size;
+        tenantGraph.maxId = links.maxId;
+
+        LOG.info(String.format("Genealogy graph loaded: %d batches, %d links in %d ms", tenantGraph.graph.getBatchesCount(),
+                tenantGraph.graph.getLinksCount(), System.currentTimeMillis() - start));
+    }
+
+    private long getLong(final Map<String, Object> watermark, final String key) {
+        return ((Number) watermark.get(key)).longValue();
+    }
+
+    private static final class TenantGenealogyGraph {
+
+        private final Map<Long, long[][]> changedTrackingRecords = Maps.newHashMap();
+
+        private GenealogyGraph graph;
+
+        private Map<Long, Integer> snapshotLinksCounts = Collections.emptyMap();
+
+        private long linksCount;
+
+        private long maxId;
+
+    }
+
+    private static final class LinksBuffer {
+
+        private final Map<Long, Integer> trackingRecordsLinksCounts = Maps.newHashMap();
+
+        private long[] trackingRecordsIds = new long[1024];
+
+        private long[] producedBatchesIds = new long[1024];
+
+        private long[] usedBatchesIds = new long[1024];
+
+        private int size;
+
+        private long maxId;
+
+        private void add(final long id, final long trackingRecordId, final long producedBatchId, final long usedBatchId) {
+            if (size == trackingRecordsIds.length) {
+                trackingRecordsIds = Arrays.copyOf(trackingRecordsIds, size * 2);
+                producedBatchesIds = Arrays.copyOf(producedBatchesIds, size * 2);
+                usedBatchesIds = Arrays.copyOf(usedBatchesIds, size * 2);
+            }
+
+            trackingRecordsIds[size] = trackingRecordId;
+            producedBatchesIds[size] = producedBatchId;
+            usedBatchesIds[size] = usedBatchId;
+
+            size++;
+
+            maxId = Math.max(maxId, id);
+
+            trackingRecordsLinksCounts.merge(trackingRecordId, 1, Integer::sum);
+        }
+
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.recall;
+
+/**
+ * Result of recall impact analysis for a set of suspect batches. All ids are sorted and unique.
+ */
+public class RecallImpact {
+
+    private final long[] suspectBatchesIds;
+
+    private final long[] downstreamBatchesIds;
+
+    private final long[] upstreamBatchesIds;
+
+    private final long[] supplierBatchesIds;
+
+    private final long[] ordersIds;
+
+    private final long[] deliveriesIds;
+
+    RecallImpact(final long[] suspectBatchesIds, final long[] downstreamBatchesIds, final long[] upstreamBatchesIds,
+            final long[] supplierBatchesIds, final long[] ordersIds, final long[] deliveriesIds) {
+        this.suspectBatchesIds = suspectBatchesIds;
+        this.downstreamBatchesIds = downstreamBatchesIds;
+        this.upstreamBatchesIds = upstreamBatchesIds;
+        this.supplierBatchesIds = supplierBatchesIds;
+        this.ordersIds = ordersIds;
+        this.deliveriesIds = deliveriesIds;
+    }
+
+    public long[] getSuspectBatchesIds() {
+        return suspectBatchesIds;
+    }
+
+    /**
+     * Batches produced, directly or not, from suspect batches.
+     */
+    public long[] getDownstreamBatchesIds() {
+        return downstreamBatchesIds;
+    }
+
+    /**
+     * Batches which suspect batches were produced from, directly or not.
+     */
+    public long[] getUpstreamBatchesIds() {
+        return upstreamBatchesIds;
+    }
+
+    /**
+     * Suspect and upstream batches which came from a supplier.
+     */
+    public long[] getSupplierBatchesIds() {
+        return supplierBatchesIds;
+    }
+
+    /**
+     * Orders which produced suspect or downstream batches.
+     */
+    public long[] getOrdersIds() {
+        return ordersIds;
+    }
+
+    /**
+     * Deliveries in which suspect or upstream batches were received.
+     */
+    public long[] getDeliveriesIds() {
+        return deliveriesIds;
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.recall;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class RecallImpactController {
+
+    @Autowired
+    private RecallImpactService recallImpactService;
+
+    @ResponseBody
+    @RequestMapping(value = "advancedGenealogy/recallImpact", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public RecallImpact getRecallImpact(@RequestParam("batchesIds") final List<Long> batchesIds) {
+        return recallImpactService.getRecallImpact(batchesIds);
+    }
+
+    @RequestMapping(value = "advancedGenealogy/recallImpact.csv", method = RequestMethod.GET)
+    public void exportRecallImpact(@RequestParam("batchesIds") final List<Long> batchesIds, final HttpServletResponse response)
+            throws IOException {
+        response.setContentType("text/csv");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-disposition", "attachment; filename=recallImpact.csv");
+
+        recallImpactService.exportRecallImpact(batchesIds, response.getWriter(), LocaleContextHolder.getLocale());
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.recall;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.LongStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
+import com.qcadoo.plugin.api.PluginUtils;
+
+@Service
+public class RecallImpactService {
+
+    private static final String L_ADVANCED_GENEALOGY_FOR_ORDERS = "advancedGenealogyForOrders";
+
+    private static final String L_DELIVERIES = "deliveries";
+
+    private static final String L_SEPARATOR = ";";
+
+    private static final String L_NEW_LINE = "\n";
+
+    private static final int L_PARTITION_SIZE = 1000;
+
+    private static final String[] L_COLUMNS = { "type", "id", "number", "productNumber", "productName", "supplier" };
+
+    @Autowired
+    private GenealogyGraphService genealogyGraphService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Transactional(readOnly = true)
+    public RecallImpact getRecallImpact(final Collection<Long> suspectBatchesIds) {
+        long[] suspectIds = toSortedArray(suspectBatchesIds.stream().mapToLong(Long::longValue));
+        long[] downstreamIds = toSortedArray(LongStream.of(genealogyGraphService.getDownstreamBatchesIds(suspectBatchesIds)));
+        long[] upstreamIds = toSortedArray(LongStream.of(genealogyGraphService.getUpstreamBatchesIds(suspectBatchesIds)));
+
+        long[] suspectAndUpstreamIds = Longs.concat(suspectIds, upstreamIds);
+        long[] suspectAndDownstreamIds = Longs.concat(suspectIds, downstreamIds);
+
+        long[] supplierBatchesIds = getIds("SELECT id FROM advancedgenealogy_batch WHERE supplier_id IS NOT NULL AND id IN (:ids)",
+                suspectAndUpstreamIds);
+
+        long[] ordersIds = new long[0];
+
+        if (PluginUtils.isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
+            ordersIds = getIds("SELECT order_id FROM advancedgenealogy_trackingrecord WHERE order_id IS NOT NULL AND state = '"
+                    + TrackingRecordState.ACCEPTED.getStringValue() + "' AND producedbatch_id IN (:ids)", suspectAndDownstreamIds);
+        }
+
+        long[] deliveriesIds = new long[0];
+
+        if (PluginUtils.isEnabled(L_DELIVERIES)) {
+            deliveriesIds = getIds("SELECT dp.delivery_id FROM deliveries_deliveredproduct dp "
+                    + "JOIN advancedgenealogy_batch b ON b.number = dp.batch AND b.product_id = dp.product_id "
+                    + "WHERE b.id IN (:ids)", suspectAndUpstreamIds);
+        }
+
+        return new RecallImpact(suspectIds, downstreamIds, upstreamIds, supplierBatchesIds, ordersIds, deliveriesIds);
+    }
+
+    /**
+     * Writes recall impact as csv, row by row, without keeping the rows in memory.
+     */
+    @Transactional(readOnly = true)
+    public void exportRecallImpact(final Collection<Long> suspectBatchesIds, final Writer writer, final Locale locale)
+            throws IOException {
+        RecallImpact recallImpact = getRecallImpact(suspectBatchesIds);
+
+        List<String> header = Lists.newArrayList();
+
+        for (String column : L_COLUMNS) {
+            header.add(translationService.translate("advancedGenealogy.recallImpact.csv.column." + column, locale));
+        }
+
+        writer.append(String.join(L_SEPARATOR, header)).append(L_NEW_LINE);
+
+        try {
+            exportBatches(writer, translate("suspectBatch", locale), recallImpact.getSuspectBatchesIds());
+            exportBatches(writer, translate("downstreamBatch", locale), recallImpact.getDownstreamBatchesIds());
+            exportBatches(writer, translate("upstreamBatch", locale), recallImpact.getUpstreamBatchesIds());
+
+            export(writer, translate("order", locale), "SELECT o.id, o.number, p.number AS productnumber, "
+                    + "p.name AS productname, NULL AS suppliername FROM orders_order o "
+                    + "LEFT JOIN basic_product p ON p.id = o.product_id WHERE o.id IN (:ids) ORDER BY o.number",
+                    recallImpact.getOrdersIds());
+            export(writer, translate("delivery", locale), "SELECT d.id, d.number, NULL AS productnumber, "
+                    + "NULL AS productname, c.name AS suppliername FROM deliveries_delivery d "
+                    + "LEFT JOIN basic_company c ON c.id = d.supplier_id WHERE d.id IN (:ids) ORDER BY d.number",
+                    recallImpact.getDeliveriesIds());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        writer.flush();
+    }
+
+    private String translate(final String type, final Locale locale) {
+        return translationService.translate("advancedGenealogy.recallImpact.csv.type." + type, locale);
+    }
+
+    private void exportBatches(final Writer writer, final String type, final long[] batchesIds) {
+        export(writer, type, "SELECT b.id, b.number, p.number AS productnumber, p.name AS productname, "
+                + "c.name AS suppliername FROM advancedgenealogy_batch b "
+                + "LEFT JOIN basic_product p ON p.id = b.product_id "
+                + "LEFT JOIN basic_company c ON c.id = b.supplier_id WHERE b.id IN (:ids) ORDER BY b.number", batchesIds);
+    }
+
+    private void export(final Writer writer, final String type, final String query, final long[] ids) {
+        for (List<Long> partition : Lists.partition(Longs.asList(ids), L_PARTITION_SIZE)) {
+            jdbcTemplate.query(query, new MapSqlParameterSource("ids", partition), rs -> {
+                try {
+                    writer.append(type).append(L_SEPARATOR);
+                    writer.append(String.valueOf(rs.getLong("id"))).append(L_SEPARATOR);
+                    writer.append(normalize(rs.getString("number"))).append(L_SEPARATOR);
+                    writer.append(normalize(rs.getString("productnumber"))).append(L_SEPARATOR);
+                    writer.append(normalize(rs.getString("productname"))).append(L_SEPARATOR);
+                    writer.append(normalize(rs.getString("suppliername"))).append(L_NEW_LINE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private String normalize(final String value) {
+        if (value == null) {
+            return "";
+        }
+
+        return value.replace(L_SEPARATOR, " ").replace(L_NEW_LINE, " ");
+    }
+
+    private long[] getIds(final String query, final long[] ids) {
+        LongStream.Builder result = LongStream.builder();
+
+        for (List<Long> partition : Lists.partition(Longs.asList(ids), L_PARTITION_SIZE)) {
+            jdbcTemplate.queryForList(query, new MapSqlParameterSource("ids", partition), Long.class).forEach(result::add);
+        }
+
+        return toSortedArray(result.build());
+    }
+
+    private long[] toSortedArray(final LongStream ids) {
+        return ids.distinct().sorted().toArray();
+    }
+
+}
@@ -27,45 +27,50 @@ import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.ENTITY_TYPE
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.NUMBER;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PARENT;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PRIORITY;
-import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.SUPPLIER;
-import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.TRACKING_RECORDS;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.STATE;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.USED_BATCHES_SIMPLE;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
-import com.qcadoo.mes.advancedGenealogy.constants.BatchFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
-import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
-import com.qcadoo.plugin.api.PluginAccessor;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 public class AdvancedGenealogyTreeService {
 
     private static final String L_BATCH = "batch";
 
-    @Autowired
-    private PluginAccessor pluginAccessor;
+    private static final String L_ID = "id";
+
+    private static final int L_PARTITION_SIZE = 1000;
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private GenealogyBatchLinkService genealogyBatchLinkService;
+
     public List<Entity> getProducedFromTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
         List<Entity> tree = new ArrayList<Entity>();
 
-        addChild(tree, batch, makeIdsUnique);
+        Long batchId = batch.getId();
+
+        addChild(tree, batch, null, makeIdsUnique);
 
-        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
+        generateTree(batch, batchId, tree,
+                batchesIds -> genealogyBatchLinkService.getUsedBatchesIds(batchesIds, includeDrafts), makeIdsUnique);
 
         return tree;
     }
@@ -73,163 +78,95 @@ public class AdvancedGenealogyTreeService {
     public List<Entity> getUsedToProduceTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
         List<Entity> tree = new ArrayList<Entity>();
 
-        long realParentId = batch.getId();
+        Long batchId = batch.getId();
 
-        addChild(tree, batch, true);
+        addChild(tree, batch, null, true);
 
-        generateUsedToProduceTree(batch, tree, includeDrafts, true, realParentId);
+        generateTree(batch, batchId, tree,
+                batchesIds -> genealogyBatchLinkService.getProducedBatchesIds(batchesIds, includeDrafts), true);
 
         return tree;
     }
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
-        child.setField(PARENT, null);
-        return addToList(tree, child, makeIdsUnique);
-    }
+    private void generateTree(final Entity root, final Long rootId, final List<Entity> tree,
+            final Function<Collection<Long>, Map<Long, List<Long>>> linksProvider, final boolean makeIdsUnique) {
+        Map<Long, List<Long>> links = Maps.newHashMap();
+        Map<Long, Entity> batches = Maps.newHashMap();
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final Entity parent, final boolean makeIdsUnique) {
-        child.setField(PARENT, parent);
-        return addToList(tree, child, makeIdsUnique);
+        collectLinkedBatches(rootId, linksProvider, links, batches);
+
+        addChildren(root, rootId, tree, links, batches, Sets.newHashSet(rootId), makeIdsUnique);
     }
 
-    private boolean addToList(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
-        child.setField(PRIORITY, 1);
-        child.setField(ENTITY_TYPE, L_BATCH);
+    private void collectLinkedBatches(final Long rootId, final Function<Collection<Long>, Map<Long, List<Long>>> linksProvider,
+            final Map<Long, List<Long>> links, final Map<Long, Entity> batches) {
+        Set<Long> visitedIds = Sets.newHashSet(rootId);
+        Set<Long> levelIds = Sets.newHashSet(rootId);
 
-        if (checkIfTreeContainsEntity(tree, child)) {
-            return false;
-        } else {
-            if (makeIdsUnique) {
-                child.setId((long) tree.size());
-            }
-            tree.add(child);
-            return true;
-        }
-    }
+        while (!levelIds.isEmpty()) {
+            Set<Long> nextLevelIds = Sets.newLinkedHashSet();
+
+            for (List<Long> batchesIds : Iterables.partition(levelIds, L_PARTITION_SIZE)) {
+                Map<Long, List<Long>> levelLinks = linksProvider.apply(batchesIds);
 
-    private boolean checkIfTreeContainsEntity(final List<Entity> tree, final Entity child) {
-        for (Entity entity : tree) {
-            if (child.getField(PARENT).equals(entity.getField(PARENT)) && entity.getField(NUMBER).equals(child.getField(NUMBER))) {
-                Entity supplierChild = child.getBelongsToField(SUPPLIER);
-                Entity supplierEntity = entity.getBelongsToField(SUPPLIER);
-                if (supplierChild != null && supplierEntity != null && supplierChild.equals(supplierEntity)) {
-                    return true;
-                }
-                return true;
+                links.putAll(levelLinks);
+
+                levelLinks.values().forEach(linkedIds -> linkedIds.stream().filter(visitedIds::add).forEach(nextLevelIds::add));
             }
-        }
-        return false;
-    }
 
-    private void generateUsedToProduceTree(final Entity parent, final List<Entity> tree, final boolean includeDrafts,
-            final boolean makeIdsUnique, final long realParentId) {
-        List<Entity> batches = getDD().find().list().getEntities();
-
-        for (Entity producedBatch : batches) {
-            EntityList trackingRecords = producedBatch.getHasManyField(TRACKING_RECORDS);
-            for (Entity trackingRecord : trackingRecords) {
-                String type = trackingRecord.getStringField(ENTITY_TYPE);
-                if (type == null) {
-                    continue;
-                }
-
-                String state = trackingRecord.getStringField(STATE);
-
-                if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                    boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
-
-                    if (!isDraftAndWeIncludeDrafts) {
-                        continue;
-                    }
-                }
-
-                if (TrackingRecordType.SIMPLE.equals(type)) {
-                    EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                    for (Entity usedBatch : usedBatches) {
-                        Entity batch = usedBatch.getBelongsToField(L_BATCH);
-                        if (batch.getId().equals(realParentId)) {
-                            long realId = producedBatch.getId();
-                            boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                            if (addedChild) {
-                                generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                            }
-                        }
-                    }
-                } else if (TrackingRecordType.FOR_ORDER.equals(type) && isEnabled("advancedGenealogyForOrders")) {
-                    EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                    for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                        EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                        for (Entity producedInBatch : productInBatches) {
-                            Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                            if (batch == null) {
-                                continue;
-                            }
-                            if (batch.getId().equals(realParentId)) {
-                                long realId = producedBatch.getId();
-                                boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                                if (addedChild) {
-                                    generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                                }
-                            }
-                        }
-                    }
-                }
+            for (List<Long> batchesIds : Iterables.partition(nextLevelIds, L_PARTITION_SIZE)) {
+                getDD().find().add(SearchRestrictions.in(L_ID, batchesIds)).list().getEntities()
+                        .forEach(batch -> batches.put(batch.getId(), batch));
             }
+
+            levelIds = nextLevelIds;
         }
     }
 
-    private void generateProducedFromTree(final Entity producedBatch, final List<Entity> tree, final boolean includeDrafts,
+    private void addChildren(final Entity parent, final Long parentId, final List<Entity> tree,
+            final Map<Long, List<Long>> links, final Map<Long, Entity> batches, final Set<Long> pathIds,
             final boolean makeIdsUnique) {
-        EntityList trackingRecords = producedBatch.getHasManyField(BatchFields.TRACKING_RECORDS);
-        for (Entity trackingRecord : trackingRecords) {
-            String type = trackingRecord.getStringField(TrackingRecordFields.ENTITY_TYPE);
-            if (type == null) {
+        List<Long> childrenIds = links.get(parentId);
+
+        if (childrenIds == null) {
+            return;
+        }
+
+        Set<Object> childrenNumbers = Sets.newHashSet();
+
+        for (Long childId : childrenIds) {
+            Entity batch = batches.get(childId);
+
+            if ((batch == null) || pathIds.contains(childId) || !childrenNumbers.add(batch.getField(NUMBER))) {
                 continue;
             }
 
-            String state = trackingRecord.getStringField(STATE);
+            Entity child = batch.copy();
 
-            if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
+            addChild(tree, child, parent, makeIdsUnique);
 
-                if (!isDraftAndWeIncludeDrafts) {
-                    continue;
-                }
-            }
+            pathIds.add(childId);
 
-            if (TrackingRecordType.SIMPLE.equals(type)) {
-                EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                for (Entity usedBatch : usedBatches) {
-                    Entity batch = usedBatch.getBelongsToField(L_BATCH);
-                    boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                    if (addedChild) {
-                        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                    }
-                }
-            } else if (TrackingRecordType.FOR_ORDER.equals(type) && isEnabled("advancedGenealogyForOrders")) {
-                EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                    EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                    for (Entity producedInBatch : productInBatches) {
-                        Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                        if (batch == null) {
-                            continue;
-                        }
-                        boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                        if (addedChild) {
-                            generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                        }
-                    }
-                }
-            }
+            addChildren(child, childId, tree, links, batches, pathIds, makeIdsUnique);
+
+            pathIds.remove(childId);
         }
     }
 
+    private void addChild(final List<Entity> tree, final Entity child, final Entity parent, final boolean makeIdsUnique) {
+        child.setField(PARENT, parent);
+        child.setField(PRIORITY, 1);
+        child.setField(ENTITY_TYPE, L_BATCH);
+
+        if (makeIdsUnique) {
+            child.setId((long) tree.size());
+        }
+
+        tree.add(child);
+    }
+
     private DataDefinition getDD() {
         return dataDefinitionService.get(AdvancedGenealogyConstants.PLUGIN_IDENTIFIER, AdvancedGenealogyConstants.MODEL_BATCH);
     }
 
-    private boolean isEnabled(final String pluginIdentifier) {
-        return pluginAccessor.getPlugin(pluginIdentifier) != null;
-    }
 }
@@ -0,0 +1,217 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.tree;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
+import com.qcadoo.mes.advancedGenealogy.recall.GenealogyGraphService;
+import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
+import com.qcadoo.plugin.api.PluginAccessor;
+
+/**
+ * Keeps links between used and produced batches of accepted tracking records (simple and for order), so genealogy trees can
+ * be traversed with one query per tree level instead of reading every batch with its tracking records.
+ */
+@Service
+public class GenealogyBatchLinkService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenealogyBatchLinkService.class);
+
+    private static final String L_ADVANCED_GENEALOGY_FOR_ORDERS = "advancedGenealogyForOrders";
+
+    private static final String L_TRACKING_RECORD_ID = "trackingrecord_id";
+
+    private static final String L_PRODUCED_BATCH_ID = "producedbatch_id";
+
+    private static final String L_USED_BATCH_ID = "usedbatch_id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PluginAccessor pluginAccessor;
+
+    @Autowired
+    private GenealogyGraphService genealogyGraphService;
+
+    @Transactional
+    public void refreshForTrackingRecord(final Long trackingRecordId, final String state) {
+        MapSqlParameterSource params = new MapSqlParameterSource("trackingRecordId", trackingRecordId);
+
+        jdbcTemplate.update("DELETE FROM advancedgenealogy_genealogybatchlink WHERE trackingrecord_id = :trackingRecordId",
+                params);
+
+        if (TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
+            jdbcTemplate.update(buildInsertQuery("AND tr.id = :trackingRecordId "), params);
+        }
+    }
+
+    @Transactional
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        jdbcTemplate.update("DELETE FROM advancedgenealogy_genealogybatchlink", new MapSqlParameterSource());
+
+        MapSqlParameterSource params = new MapSqlParameterSource("state", TrackingRecordState.ACCEPTED.getStringValue());
+
+        int rows = jdbcTemplate.update(buildInsertQuery("AND tr.state = :state "), params);
+
+        genealogyGraphService.invalidate();
+
+        LOG.info(String.format("Genealogy batch links rebuilt: %d rows in %d ms", rows, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Creates indexes of batch links missing in the database and fills the links of accepted tracking records, when none
+     * were stored yet.
+     */
+    @Transactional
+    public void prepareLinks() {
+        for (String column : Lists.newArrayList(L_TRACKING_RECORD_ID, L_PRODUCED_BATCH_ID, L_USED_BATCH_ID)) {
+            createIndexIfMissing(column);
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource("state", TrackingRecordState.ACCEPTED.getStringValue());
+
+        boolean linksMissing = jdbcTemplate.queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM advancedgenealogy_genealogybatchlink) "
+                        + "AND EXISTS (SELECT 1 FROM advancedgenealogy_trackingrecord WHERE state = :state)", params,
+                Boolean.class);
+
+        if (linksMissing) {
+            rebuild();
+        }
+    }
+
+    private void createIndexIfMissing(final String column) {
+        String indexName = "idx_genealogybatchlink_" + column;
+
+        MapSqlParameterSource params = new MapSqlParameterSource("indexName", indexName);
+
+        long indexes = jdbcTemplate.queryForObject("SELECT count(*) FROM pg_indexes WHERE schemaname = current_schema() "
+                + "AND tablename = 'advancedgenealogy_genealogybatchlink' AND indexname = :indexName", params, Long.class);
+
+        if (indexes == 0) {
+            jdbcTemplate.update(String.format("CREATE INDEX %s ON advancedgenealogy_genealogybatchlink (%s)", indexName,
+                    column), new MapSqlParameterSource());
+
+            LOG.info(String.format("Genealogy batch links index %s created", indexName));
+        }
+    }
+
+    /**
+     * Returns ids of batches used to produce given batches, grouped by produced batch id, in the order of tracking records.
+     */
+    public Map<Long, List<Long>> getUsedBatchesIds(final Collection<Long> producedBatchesIds, final boolean includeDrafts) {
+        return getLinkedBatchesIds(producedBatchesIds, L_PRODUCED_BATCH_ID, L_USED_BATCH_ID, includeDrafts);
+    }
+
+    /**
+     * Returns ids of batches produced from given batches, grouped by used batch id, in the order of tracking records.
+     */
+    public Map<Long, List<Long>> getProducedBatchesIds(final Collection<Long> usedBatchesIds, final boolean includeDrafts) {
+        return getLinkedBatchesIds(usedBatchesIds, L_USED_BATCH_ID, L_PRODUCED_BATCH_ID, includeDrafts);
+    }
+
+    private Map<Long, List<Long>> getLinkedBatchesIds(final Collection<Long> batchesIds, final String fromColumn,
+            final String toColumn, final boolean includeDrafts) {
+        if (batchesIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT links.").append(fromColumn).append(" AS fromid, links.").append(toColumn).append(" AS toid ");
+        query.append("FROM (");
+        query.append("SELECT l.trackingrecord_id, l.producedbatch_id, l.usedbatch_id, l.id ");
+        query.append("FROM advancedgenealogy_genealogybatchlink l ");
+
+        if (includeDrafts) {
+            // draft records aren't indexed, they are read from the records themselves
+            query.append("UNION ALL ");
+            appendLinksQuery(query, "AND tr.state = :draftState ");
+        }
+
+        query.append(") links ");
+        query.append("WHERE links.").append(fromColumn).append(" IN (:batchesIds) ");
+        query.append("ORDER BY links.trackingrecord_id, links.id");
+
+        MapSqlParameterSource params = new MapSqlParameterSource("batchesIds", batchesIds);
+
+        params.addValue("draftState", TrackingRecordState.DRAFT.getStringValue());
+
+        Map<Long, List<Long>> linkedBatchesIds = Maps.newHashMap();
+
+        jdbcTemplate.query(query.toString(), params, rs -> {
+            linkedBatchesIds.computeIfAbsent(rs.getLong("fromid"), id -> Lists.newArrayList()).add(rs.getLong("toid"));
+        });
+
+        return linkedBatchesIds;
+    }
+
+    private String buildInsertQuery(final String trackingRecordsClause) {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO advancedgenealogy_genealogybatchlink (trackingrecord_id, producedbatch_id, usedbatch_id) ");
+        query.append("SELECT links.trackingrecord_id, links.producedbatch_id, links.usedbatch_id FROM (");
+        appendLinksQuery(query, trackingRecordsClause);
+        query.append(") links");
+
+        return query.toString();
+    }
+
+    private void appendLinksQuery(final StringBuilder query, final String trackingRecordsClause) {
+        query.append("SELECT tr.id AS trackingrecord_id, tr.producedbatch_id, ubs.batch_id AS usedbatch_id, ubs.id ");
+        query.append("FROM advancedgenealogy_trackingrecord tr ");
+        query.append("JOIN advancedgenealogy_usedbatchsimple ubs ON ubs.trackingrecord_id = tr.id ");
+        query.append("WHERE tr.entitytype = '").append(TrackingRecordType.SIMPLE).append("' ");
+        query.append("AND tr.producedbatch_id IS NOT NULL AND ubs.batch_id IS NOT NULL ");
+        query.append(trackingRecordsClause);
+
+        if (pluginAccessor.getPlugin(L_ADVANCED_GENEALOGY_FOR_ORDERS) != null) {
+            query.append("UNION ALL ");
+            query.append("SELECT tr.id AS trackingrecord_id, tr.producedbatch_id, gpib.batch_id AS usedbatch_id, gpib.id ");
+            query.append("FROM advancedgenealogy_trackingrecord tr ");
+            query.append("JOIN advancedgenealogyfororders_genealogyproductincomponent gpic ON gpic.trackingrecord_id = tr.id ");
+            query.append("JOIN advancedgenealogyfororders_genealogyproductinbatch gpib ");
+            query.append("ON gpib.genealogyproductincomponent_id = gpic.id ");
+            query.append("WHERE tr.entitytype = '").append(TrackingRecordType.FOR_ORDER).append("' ");
+            query.append("AND tr.producedbatch_id IS NOT NULL AND gpib.batch_id IS NOT NULL ");
+            query.append(trackingRecordsClause);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.recall;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class GenealogyGraphTest {
+
+    private GenealogyGraph genealogyGraph;
+
+    @Before
+    public void init() {
+        // tracking record 100: 2 produced from 1; 101: 3 produced from 1 and 2; 102: 4 produced from 3; 103: 1 produced from 5
+        long[] trackingRecordsIds = { 100L, 101L, 101L, 102L, 103L };
+        long[] producedBatchesIds = { 2L, 3L, 3L, 4L, 1L };
+        long[] usedBatchesIds = { 1L, 1L, 2L, 3L, 5L };
+
+        genealogyGraph = GenealogyGraph.build(trackingRecordsIds, producedBatchesIds, usedBatchesIds, 5);
+    }
+
+    @Test
+    public void shouldBuildCompressedGraph() {
+        // then
+        assertEquals(5, genealogyGraph.getBatchesCount());
+        assertEquals(5, genealogyGraph.getLinksCount());
+    }
+
+    @Test
+    public void shouldReturnDownstreamBatches() {
+        // when
+        long[] batchesIds = genealogyGraph.traverse(asList(1L), true, Collections.<Long> emptySet(),
+                Collections.<Long, List<Long>> emptyMap());
+
+        // then
+        assertArrayEquals(new long[] { 2L, 3L, 4L }, sorted(batchesIds));
+    }
+
+    @Test
+    public void shouldReturnUpstreamBatches() {
+        // when
+        long[] batchesIds = genealogyGraph.traverse(asList(4L), false, Collections.<Long> emptySet(),
+                Collections.<Long, List<Long>> emptyMap());
+
+        // then
+        assertArrayEquals(new long[] { 1L, 2L, 3L, 5L }, sorted(batchesIds));
+    }
+
+    @Test
+    public void shouldReplaceLinksOfChangedTrackingRecords() {
+        // given
+        Map<Long, List<Long>> overridingLinks = ImmutableMap.of(1L, asList(6L), 6L, asList(7L));
+
+        // when
+        long[] batchesIds = genealogyGraph.traverse(asList(1L), true, ImmutableSet.of(101L), overridingLinks);
+
+        // then
+        assertArrayEquals(new long[] { 2L, 6L, 7L }, sorted(batchesIds));
+    }
+
+    @Test
+    public void shouldReturnNothingForUnknownBatch() {
+        // when
+        long[] batchesIds = GenealogyGraph.empty().traverse(asList(1L), true, Collections.<Long> emptySet(),
+                Collections.<Long, List<Long>> emptyMap());
+
+        // then
+        assertEquals(0, batchesIds.length);
+    }
+
+    private long[] sorted(final long[] batchesIds) {
+        long[] sorted = batchesIds.clone();
+
+        Arrays.sort(sorted);
+
+        return sorted;
+    }
+
+}
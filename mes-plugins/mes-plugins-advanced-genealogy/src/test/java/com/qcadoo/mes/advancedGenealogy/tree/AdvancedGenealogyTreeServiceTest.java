@@ -25,30 +25,32 @@ package com.qcadoo.mes.advancedGenealogy.tree;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.google.common.collect.ImmutableMap;
 import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
-import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchResult;
-import com.qcadoo.plugin.api.Plugin;
-import com.qcadoo.plugin.api.PluginAccessor;
 
 public class AdvancedGenealogyTreeServiceTest {
 
@@ -64,22 +66,13 @@ public class AdvancedGenealogyTreeServiceTest {
     private DataDefinition dataDefinition;
 
     @Mock
-    private PluginAccessor pluginAccessor;
+    private GenealogyBatchLinkService genealogyBatchLinkService;
 
     @Mock
-    private SearchResult searchResult;
-
-    @Mock
-    private Entity batch1Tr;
+    private SearchCriteriaBuilder searchCriteriaBuilder;
 
     @Mock
-    private Entity parent1, parent2;
-
-    private EntityList mockEntityList(List<Entity> list) {
-        EntityList entityList = mock(EntityList.class);
-        when(entityList.iterator()).thenReturn(list.iterator());
-        return entityList;
-    }
+    private SearchResult searchResult;
 
     @Before
     public void init() {
@@ -88,47 +81,44 @@ public class AdvancedGenealogyTreeServiceTest {
         treeService = new AdvancedGenealogyTreeService();
 
         ReflectionTestUtils.setField(treeService, "dataDefinitionService", dataDefinitionService);
-        ReflectionTestUtils.setField(treeService, "pluginAccessor", pluginAccessor);
-
-        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(null);
+        ReflectionTestUtils.setField(treeService, "genealogyBatchLinkService", genealogyBatchLinkService);
 
         when(dataDefinitionService.get(AdvancedGenealogyConstants.PLUGIN_IDENTIFIER, AdvancedGenealogyConstants.MODEL_BATCH))
                 .thenReturn(dataDefinition);
 
+        when(dataDefinition.find()).thenReturn(searchCriteriaBuilder);
+        when(searchCriteriaBuilder.add(any(SearchCriterion.class))).thenReturn(searchCriteriaBuilder);
+        when(searchCriteriaBuilder.list()).thenReturn(searchResult);
+
         when(batch1.getId()).thenReturn(1L);
         when(batch2.getId()).thenReturn(2L);
+        when(batch1.copy()).thenReturn(batch1);
+        when(batch2.copy()).thenReturn(batch2);
+        when(batch1.getField("number")).thenReturn("QWD33");
+        when(batch2.getField("number")).thenReturn("POS22");
+
+        // batch1 is produced from batch2, but only by a draft tracking record
+        stubUsedBatchesIds(true, ImmutableMap.of(1L, asList(2L)));
+        stubUsedBatchesIds(false, Collections.emptyMap());
+        stubProducedBatchesIds(true, ImmutableMap.of(2L, asList(1L)));
+        stubProducedBatchesIds(false, Collections.emptyMap());
+    }
 
-        EntityList batch1Trs = mockEntityList(asList(batch1Tr));
-        when(batch1.getHasManyField("trackingRecords")).thenReturn(batch1Trs);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.SIMPLE);
-        when(batch1Tr.getStringField("state")).thenReturn(TrackingRecordState.DRAFT.getStringValue());
-        Entity batch1TrUsedBatch1 = mock(Entity.class);
-        when(batch1TrUsedBatch1.getBelongsToField("batch")).thenReturn(batch2);
-        EntityList batch1TrUsedBatches = mockEntityList(asList(batch1TrUsedBatch1));
-        when(batch1Tr.getHasManyField("usedBatchesSimple")).thenReturn(batch1TrUsedBatches);
-
-        EntityList batch2Trs = mockEntityList(new LinkedList<Entity>());
-        when(batch2.getHasManyField("trackingRecords")).thenReturn(batch2Trs);
-
-        SearchCriteriaBuilder searchCriteriaBuilder = Mockito.mock(SearchCriteriaBuilder.class);
-        when(dataDefinition.find()).thenReturn(searchCriteriaBuilder);
-        when(searchCriteriaBuilder.list()).thenReturn(searchResult);
-        when(searchResult.getEntities()).thenReturn(asList(batch1));
+    private void stubUsedBatchesIds(final boolean includeDrafts, final Map<Long, List<Long>> usedBatchesIds) {
+        when(genealogyBatchLinkService.getUsedBatchesIds(anyCollectionOf(Long.class), eq(includeDrafts))).thenReturn(
+                usedBatchesIds, Collections.emptyMap());
+    }
 
-        String number1 = "QWD33";
-        String number2 = "POS22";
-        when(batch1.getField("parent")).thenReturn(parent1);
-        when(batch2.getField("parent")).thenReturn(parent2);
-        when(batch1.getField("number")).thenReturn(number1);
-        when(batch2.getField("number")).thenReturn(number2);
+    private void stubProducedBatchesIds(final boolean includeDrafts, final Map<Long, List<Long>> producedBatchesIds) {
+        when(genealogyBatchLinkService.getProducedBatchesIds(anyCollectionOf(Long.class), eq(includeDrafts))).thenReturn(
+                producedBatchesIds, Collections.emptyMap());
     }
 
     @Test
     public void shouldReturnOnlyTheRootIfThereAreNoRelatedBatchesForProducedFromTree() {
         // given
         Entity batch = mock(Entity.class);
-        EntityList trackingRecords = mockEntityList(new LinkedList<Entity>());
-        when(batch.getHasManyField("trackingRecords")).thenReturn(trackingRecords);
+        when(batch.getId()).thenReturn(3L);
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch, true, false);
@@ -142,8 +132,7 @@ public class AdvancedGenealogyTreeServiceTest {
     public void shouldReturnOnlyTheRootIfThereAreNoRelatedBatchesForUsedToProduceTree() {
         // given
         Entity batch = mock(Entity.class);
-
-        when(searchResult.getEntities()).thenReturn(new LinkedList<Entity>());
+        when(batch.getId()).thenReturn(3L);
 
         // when
         List<Entity> tree = treeService.getUsedToProduceTree(batch, true, false);
@@ -156,6 +145,7 @@ public class AdvancedGenealogyTreeServiceTest {
     @Test
     public void shouldReturnCorrectProducedFromTree() {
         // given
+        when(searchResult.getEntities()).thenReturn(asList(batch2));
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch1, true, false);
@@ -169,6 +159,7 @@ public class AdvancedGenealogyTreeServiceTest {
     @Test
     public void shouldReturnCorrectUsedToProduceTree() {
         // given
+        when(searchResult.getEntities()).thenReturn(asList(batch1));
 
         // when
         List<Entity> tree = treeService.getUsedToProduceTree(batch2, true, false);
@@ -182,6 +173,7 @@ public class AdvancedGenealogyTreeServiceTest {
     @Test
     public void shouldRespectIncludeDraftParameter() {
         // given
+        when(searchResult.getEntities()).thenReturn(new LinkedList<Entity>());
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch1, false, false);
@@ -192,54 +184,23 @@ public class AdvancedGenealogyTreeServiceTest {
     }
 
     @Test
-    public void shouldReturnCorrectProducedFromTreeForOrders() {
+    public void shouldNotRepeatBatchWithTheSameNumberUnderOneParent() {
         // given
-        Plugin plugin = mock(Plugin.class);
-        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.FOR_ORDER);
-
-        Entity genProdInComp = mock(Entity.class);
-        EntityList genProdInComps = mockEntityList(asList(genProdInComp));
+        Entity batch3 = mock(Entity.class);
+        when(batch3.getId()).thenReturn(3L);
+        when(batch3.copy()).thenReturn(batch3);
+        when(batch3.getField("number")).thenReturn("POS22");
 
-        Entity prodInBatch = mock(Entity.class);
-        when(prodInBatch.getBelongsToField("batch")).thenReturn(batch2);
-
-        EntityList prodInBatches = mockEntityList(asList(prodInBatch));
-        when(genProdInComp.getHasManyField("productInBatches")).thenReturn(prodInBatches);
-        when(batch1Tr.getHasManyField("genealogyProductInComponents")).thenReturn(genProdInComps);
+        when(genealogyBatchLinkService.getUsedBatchesIds(anyCollectionOf(Long.class), anyBoolean())).thenReturn(
+                ImmutableMap.of(1L, asList(2L, 3L, 2L)), Collections.emptyMap());
+        when(searchResult.getEntities()).thenReturn(asList(batch2, batch3));
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch1, true, false);
 
         // then
         assertEquals(2, tree.size());
-        assertEquals(batch1, tree.get(0));
         assertEquals(batch2, tree.get(1));
     }
 
-    @Test
-    public void shouldReturnCorrectUsedToProduceTreeForOrders() {
-        // given
-        Plugin plugin = mock(Plugin.class);
-        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.FOR_ORDER);
-
-        Entity genProdInComp = mock(Entity.class);
-        EntityList genProdInComps = mockEntityList(asList(genProdInComp));
-
-        Entity prodInBatch = mock(Entity.class);
-        when(prodInBatch.getBelongsToField("batch")).thenReturn(batch2);
-
-        EntityList prodInBatches = mockEntityList(asList(prodInBatch));
-        when(genProdInComp.getHasManyField("productInBatches")).thenReturn(prodInBatches);
-        when(batch1Tr.getHasManyField("genealogyProductInComponents")).thenReturn(genProdInComps);
-
-        // when
-        List<Entity> tree = treeService.getUsedToProduceTree(batch2, true, false);
-
-        // then
-        assertEquals(2, tree.size());
-        assertEquals(batch2, tree.get(0));
-        assertEquals(batch1, tree.get(1));
-    }
 }
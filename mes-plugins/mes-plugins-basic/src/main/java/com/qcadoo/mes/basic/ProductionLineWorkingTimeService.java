@@ -0,0 +1,144 @@
+package com.qcadoo.mes.basic;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHoursComparator;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftsDataProvider;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendar;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendarCache;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Working time of production lines - shift hours with timetable exceptions of the line - compiled into
+ * {@link WorkingTimeCalendar}s, so adding working time to a date doesn't go through shifts and exceptions day by day.
+ *
+ * Calendars cover a horizon of {@link #CALENDAR_HORIZON_DAYS} days, doubled up to {@link #MAX_HORIZON_DAYS} days while it is
+ * not enough, widened to whole quarters and kept in {@link WorkingTimeCalendarCache} per tenant and production line. Timetable
+ * exceptions of the line are read once for the whole calendar.
+ */
+@Service
+public class ProductionLineWorkingTimeService {
+
+    private static final int CALENDAR_HORIZON_DAYS = 90;
+
+    private static final int MAX_HORIZON_DAYS = 1000;
+
+    private static final String L_PRODUCTION_LINE_CALENDAR = "productionLine";
+
+    @Autowired
+    private ShiftsDataProvider shiftsDataProvider;
+
+    @Autowired
+    private ShiftExceptionService shiftExceptionService;
+
+    @Autowired
+    private TimetableExceptionService timetableExceptionService;
+
+    @Autowired
+    private WorkingTimeCalendarCache workingTimeCalendarCache;
+
+    /**
+     * Adds working time of the production line to the date.
+     *
+     * @return moment at which given working time passes, or empty if it doesn't within {@link #MAX_HORIZON_DAYS} days
+     */
+    public OptionalLong addWorkingMillis(final Entity productionLine, final Date dateFrom, final long milliseconds) {
+        long from = dateFrom.getTime();
+
+        return find(productionLine, from, calendar -> calendar.addWorkingMillis(from, milliseconds));
+    }
+
+    /**
+     * @return first working moment of the production line not earlier than the date, or empty if there is none within
+     *         {@link #MAX_HORIZON_DAYS} days
+     */
+    public OptionalLong getNearestWorkingMoment(final Entity productionLine, final Date dateFrom) {
+        long from = dateFrom.getTime();
+
+        return find(productionLine, from, calendar -> calendar.getNearestWorkingMoment(from));
+    }
+
+    public void evictWorkingTimeCalendars() {
+        workingTimeCalendarCache.evict();
+    }
+
+    private OptionalLong find(final Entity productionLine, final long from,
+            final Function<WorkingTimeCalendar, OptionalLong> question) {
+        for (int horizonDays = CALENDAR_HORIZON_DAYS;; horizonDays *= 2) {
+            int days = Math.min(horizonDays, MAX_HORIZON_DAYS);
+
+            OptionalLong answer = question.apply(getWorkingTimeCalendar(productionLine, from, days));
+
+            if (answer.isPresent() || days == MAX_HORIZON_DAYS) {
+                return answer;
+            }
+        }
+    }
+
+    private WorkingTimeCalendar getWorkingTimeCalendar(final Entity productionLine, final long from, final int horizonDays) {
+        Long productionLineId = Objects.isNull(productionLine) ? null : productionLine.getId();
+        long to = from + (long) horizonDays * DateTimeConstants.MILLIS_PER_DAY;
+
+        return workingTimeCalendarCache.get(L_PRODUCTION_LINE_CALENDAR, productionLineId, from, to,
+                (calendarFrom, calendarTo) -> new WorkingTimeCalendar(getHours(productionLine, calendarFrom, calendarTo),
+                        new Date(calendarFrom), new Date(calendarTo)));
+    }
+
+    private List<ShiftHour> getHours(final Entity productionLine, final long from, final long to) {
+        List<Shift> shifts = shiftsDataProvider.findAll();
+        List<ShiftHour> hours = Lists.newArrayList();
+
+        // hours of the previous day can last past midnight
+        DateTime firstDay = new DateTime(from).withTimeAtStartOfDay().minusDays(1);
+
+        Map<Long, List<Entity>> exceptionsByShifts = getExceptionsByShifts(productionLine, shifts, firstDay.toDate(),
+                new Date(to));
+
+        for (DateTime dateOfDay = firstDay; dateOfDay.getMillis() < to; dateOfDay = dateOfDay.plusDays(1)) {
+            for (Shift shift : shifts) {
+                List<Entity> shiftExceptions = exceptionsByShifts.getOrDefault(shift.getId(), Collections.emptyList());
+
+                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(shift, dateOfDay, shiftExceptions)) {
+                    if (range.getFrom().getMillis() < to && from < range.getTo().getMillis()) {
+                        hours.add(new ShiftHour(new Date(Math.max(range.getFrom().getMillis(), from)), new Date(Math.min(range
+                                .getTo().getMillis(), to))));
+                    }
+                }
+            }
+        }
+
+        hours.sort(new ShiftHoursComparator());
+
+        return ShiftsServiceImpl.mergeOverlappedHours(hours);
+    }
+
+    private Map<Long, List<Entity>> getExceptionsByShifts(final Entity productionLine, final List<Shift> shifts,
+            final Date from, final Date to) {
+        if (Objects.isNull(productionLine)) {
+            return shifts.stream().collect(
+                    Collectors.toMap(Shift::getId, shift -> shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)));
+        }
+
+        List<Long> shiftIds = shifts.stream().map(Shift::getId).collect(Collectors.toList());
+
+        return timetableExceptionService.findForShifts(productionLine, shiftIds, from, to);
+    }
+
+}
@@ -9,6 +9,7 @@ import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.Entity;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -16,6 +17,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 public class ShiftExceptionService {
@@ -34,6 +36,12 @@ public class ShiftExceptionService {
             exceptions = timetableExceptionService.findFor(productionLine, shiftEntity, dateOfDay);
         }
 
+        return applyExceptions(shiftWorkDateTime, exceptions, shift, dateOfDay);
+    }
+
+    private List<DateTimeRange> applyExceptions(List<DateTimeRange> shiftWorkDateTime, final List<Entity> exceptions,
+            final Shift shift, final Date dateOfDay) {
+        Entity shiftEntity = shift.getEntity();
         Shift shiftForDay = new Shift(shiftEntity, new DateTime(dateOfDay), false);
 
         for (Entity exception : exceptions) {
@@ -66,6 +74,36 @@ public class ShiftExceptionService {
         return shiftWorkDateTime;
     }
 
+    /**
+     * Works like {@link #getShiftWorkDateTimes(Entity, Shift, DateTime)}, but takes timetable exceptions of the shift loaded
+     * up front for a longer period, instead of querying them for the day.
+     */
+    public List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final DateTime dateOfDay,
+            final List<Entity> shiftExceptions) {
+        List<DateTimeRange> shiftWorkDateTime = Lists.newArrayList();
+
+        if (shift.worksAt(dateOfDay.dayOfWeek().get())) {
+            for (TimeRange range : shift.findWorkTimeAt(dateOfDay.toLocalDate())) {
+                shiftWorkDateTime.add(new DateTimeRange(dateOfDay, range));
+            }
+        }
+
+        LocalDate day = dateOfDay.toLocalDate();
+
+        // the same days as in TimetableExceptionService.findFor for a single date
+        List<Entity> exceptionsOfDay = shiftExceptions.stream().filter(exception -> relatesTo(exception, day))
+                .collect(Collectors.toList());
+
+        return applyExceptions(shiftWorkDateTime, exceptionsOfDay, shift, dateOfDay.toDate());
+    }
+
+    private boolean relatesTo(final Entity exception, final LocalDate day) {
+        LocalDate fromDay = new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.FROM_DATE));
+        LocalDate toDay = new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.TO_DATE));
+
+        return !day.isBefore(fromDay) && !day.isAfter(toDay);
+    }
+
     private List<DateTimeRange> removeFreeTimeException(final List<DateTimeRange> shiftWorkDateTime, final Entity exception,
             final Shift shift) {
         Optional<DateTimeRange> exceptionRange = getExceptionRange(exception, shift, false);
@@ -30,6 +30,8 @@ import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendar;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendarCache;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -50,6 +52,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
@@ -90,12 +93,14 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     private static final String FROM_DATE_FIELD = "fromDate";
 
-    private static final long STEP = DateTimeConstants.MILLIS_PER_WEEK;
-
     private static final long MAX_TIMESTAMP = new DateTime(2100, 1, 1, 0, 0, 0, 0).toDate().getTime();
 
     private static final long MIN_TIMESTAMP = new DateTime(2000, 1, 1, 0, 0, 0, 0).toDate().getTime();
 
+    private static final String L_SHIFTS_CALENDAR = "shifts";
+
+    private static final long CALENDAR_HORIZON = 2L * 366 * DateTimeConstants.MILLIS_PER_DAY;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -105,6 +110,9 @@ public class ShiftsServiceImpl implements ShiftsService {
     @Autowired
     private ShiftExceptionService shiftExceptionService;
 
+    @Autowired
+    private WorkingTimeCalendarCache workingTimeCalendarCache;
+
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
     private static final Map<Integer, String> DAY_OF_WEEK = buildDayNumToNameMap();
@@ -351,29 +359,25 @@ public class ShiftsServiceImpl implements ShiftsService {
         }
 
         long start = dateFrom.getTime();
-        long remaining = seconds;
 
-        while (remaining >= 0) {
-            List<ShiftHour> hours = getHoursForAllShifts(new Date(start), new Date(start + STEP));
+        if (start > MAX_TIMESTAMP) {
+            return null;
+        }
 
-            for (ShiftHour hour : hours) {
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
+        // the horizon is doubled until the working time fits, so long calendars are built only when really needed
+        for (long horizon = CALENDAR_HORIZON;; horizon *= 2) {
+            long stop = Math.min(start + horizon, MAX_TIMESTAMP);
 
-                if (diff >= remaining) {
-                    return new Date(hour.getDateFrom().getTime() + (remaining * 1000));
-                } else {
-                    remaining -= diff;
-                }
-            }
+            OptionalLong dateTo = getWorkingTimeCalendar(start, stop).addWorkingSeconds(start, seconds);
 
-            start += STEP;
+            if (dateTo.isPresent()) {
+                return new Date(dateTo.getAsLong());
+            }
 
-            if (start > MAX_TIMESTAMP) {
+            if (stop == MAX_TIMESTAMP) {
                 return null;
             }
         }
-
-        return null;
     }
 
     @Override
@@ -384,35 +388,52 @@ public class ShiftsServiceImpl implements ShiftsService {
         }
 
         long stop = dateTo.getTime();
-        long remaining = seconds;
 
-        while (remaining >= 0) {
-            List<ShiftHour> hours = getHoursForAllShifts(new Date(stop - STEP), new Date(stop));
+        if (stop < MIN_TIMESTAMP) {
+            return null;
+        }
 
-            for (int i = hours.size() - 1; i >= 0; i--) {
-                ShiftHour hour = hours.get(i);
+        for (long horizon = CALENDAR_HORIZON;; horizon *= 2) {
+            long start = Math.max(stop - horizon, MIN_TIMESTAMP);
 
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
+            OptionalLong dateFrom = getWorkingTimeCalendar(start, stop).subtractWorkingSeconds(stop, seconds);
 
-                if (diff >= remaining) {
-                    return new Date(hour.getDateTo().getTime() - (remaining * 1000));
-                } else {
-                    remaining -= diff;
-                }
+            if (dateFrom.isPresent()) {
+                return new Date(dateFrom.getAsLong());
             }
 
-            stop -= STEP;
-
-            if (stop < MIN_TIMESTAMP) {
+            if (start == MIN_TIMESTAMP) {
                 return null;
             }
         }
-
-        return null;
     }
 
     @Override
     public List<ShiftHour> getHoursForAllShifts(final Date dateFrom, final Date dateTo) {
+        return getWorkingTimeCalendar(dateFrom.getTime(), dateTo.getTime()).getHours(dateFrom.getTime(), dateTo.getTime());
+    }
+
+    private WorkingTimeCalendar getWorkingTimeCalendar(final long from, final long to) {
+        return workingTimeCalendarCache.get(L_SHIFTS_CALENDAR, null, from, to, (calendarFrom, calendarTo) -> {
+            // hours of the previous day can last past midnight
+            Date hoursFrom = new DateTime(calendarFrom).withTimeAtStartOfDay().minusDays(1).toDate();
+
+            return new WorkingTimeCalendar(getHoursForAllShiftsFromEntities(hoursFrom, new Date(calendarTo)), new Date(
+                    calendarFrom), new Date(calendarTo));
+        });
+    }
+
+    public void evictWorkingTimeCalendar(final DataDefinition dataDefinition, final Entity entity) {
+        workingTimeCalendarCache.evict();
+    }
+
+    public boolean evictWorkingTimeCalendarOnDelete(final DataDefinition dataDefinition, final Entity entity) {
+        evictWorkingTimeCalendar(dataDefinition, entity);
+
+        return true;
+    }
+
+    private List<ShiftHour> getHoursForAllShiftsFromEntities(final Date dateFrom, final Date dateTo) {
         List<Entity> shifts = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find()
                 .list().getEntities();
 
@@ -561,7 +582,7 @@ public class ShiftsServiceImpl implements ShiftsService {
         }
     }
 
-    private List<ShiftHour> mergeOverlappedHours(final List<ShiftHour> hours) {
+    static List<ShiftHour> mergeOverlappedHours(final List<ShiftHour> hours) {
         if (hours.size() < 2) {
             return hours;
         }
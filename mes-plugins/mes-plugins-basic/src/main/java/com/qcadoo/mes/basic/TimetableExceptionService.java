@@ -2,18 +2,24 @@ package com.qcadoo.mes.basic;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 class TimetableExceptionService {
@@ -29,6 +35,50 @@ class TimetableExceptionService {
         return findFor(Lists.newArrayList(productionLine.getId()), Lists.newArrayList(shift.getId()), date, type);
     }
 
+    /**
+     * @return timetable exceptions of the production line overlapping given period, grouped by ids of shifts they relate to
+     */
+    Map<Long, List<Entity>> findForShifts(final Entity productionLine, final List<Long> shiftIds, final Date from,
+            final Date to) {
+        Map<Long, List<Entity>> shiftTimetableExceptions = Maps.newHashMap();
+
+        if (shiftIds.isEmpty()) {
+            return shiftTimetableExceptions;
+        }
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT timetableException.id AS exceptionId, shift.id AS shiftId");
+        query.append(" FROM #basic_shiftTimetableException timetableException");
+        query.append(" JOIN timetableException.productionLines productionLine");
+        query.append(" JOIN timetableException.shifts shift");
+        query.append(" WHERE productionLine.id = :productionLine");
+        query.append(" AND shift.id IN (:shifts)");
+        query.append(" AND timetableException.fromDate < :to AND timetableException.toDate >= :from");
+
+        List<Entity> exceptionsShifts = getShiftTimetableExceptionDD().find(query.toString())
+                .setLong("productionLine", productionLine.getId()).setParameterList("shifts", shiftIds)
+                .setParameter("from", from).setParameter("to", to).list().getEntities();
+
+        if (exceptionsShifts.isEmpty()) {
+            return shiftTimetableExceptions;
+        }
+
+        Set<Long> exceptionIds = exceptionsShifts.stream().map(exceptionShift -> exceptionShift.getLongField("exceptionId"))
+                .collect(Collectors.toSet());
+
+        Map<Long, Entity> exceptions = getShiftTimetableExceptionDD().find()
+                .add(SearchRestrictions.in("id", Lists.newArrayList(exceptionIds))).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, Function.identity()));
+
+        for (Entity exceptionShift : exceptionsShifts) {
+            shiftTimetableExceptions.computeIfAbsent(exceptionShift.getLongField("shiftId"), shiftId -> Lists.newArrayList())
+                    .add(exceptions.get(exceptionShift.getLongField("exceptionId")));
+        }
+
+        return shiftTimetableExceptions;
+    }
+
     private List<Entity> findFor(final List<Long> productionLineIds, final List<Long> shiftIds, final Date date,
             final String type) {
         List<Entity> shiftTimetableExceptions = Lists.newArrayList();
@@ -13,7 +13,6 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
-import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
@@ -34,44 +33,51 @@ public class DataProvider {
 
     public static final int MAX_RESULTS = 20;
 
-    private String prepareProductsQuery() {
-        return "SELECT product.id AS id, product.number AS code, product.number AS number, product.name AS name "
-                + "FROM basic_product product WHERE product.active = true AND product.number ilike :query ;";
-    }
+    private static final String L_PRODUCTS_CONDITION = "FROM basic_product product "
+            + "WHERE product.active = true AND product.number ilike :query ";
 
-    private String prepareProductsQueryWithLimit(int limit) {
-        return "SELECT product.id AS id, product.number AS code, product.number AS number, product.name AS name "
-                + "FROM basic_product product WHERE product.active = true AND product.number ilike :query LIMIT " + limit + ";";
-    }
+    private static final String L_ADDITIONAL_CODES_CONDITION = "FROM basic_additionalcode additionalcode "
+            + "JOIN basic_product product ON (additionalcode.product_id = product.id AND (product.number = :productnumber OR COALESCE(:productnumber,'')='' )) "
+            + "WHERE additionalcode.code ilike :query ";
 
-    private String prepareAdditionalCodeQuery(final String productnumber) {
-        String productNumberCondition = Strings.isNullOrEmpty(productnumber) ? ""
-                : "AND product.number = '" + productnumber + "'";
+    private static final String L_PALLET_NUMBERS_CONDITION = "FROM basic_palletnumber palletnumber "
+            + "WHERE palletnumber.active = true AND palletnumber.number ilike :query ";
 
-        return "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
-                + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id " + productNumberCondition + ")"
-                + "WHERE additionalcode.code ilike :query;";
+    /*
+     * Codes starting with the query go first. Lookups fetch one row more than they show, so matching rows are counted
+     * only when they don't fit on the list.
+     */
+
+    private String prepareProductsQueryWithLimit(int limit) {
+        return "SELECT product.id AS id, product.number AS code, product.number AS number, product.name AS name "
+                + L_PRODUCTS_CONDITION + "ORDER BY product.number NOT ilike :prefix, product.number LIMIT " + limit + ";";
     }
 
     private String prepareAdditionalCodeQueryWithLimit(int limit) {
         return "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
-                + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id AND (product.number = :productnumber OR COALESCE(:productnumber,'')='' ))"
-                + "WHERE additionalcode.code ilike :query LIMIT " + limit + ";";
-    }
-
-    private String preparePalletNumbersQuery() {
-        return "SELECT palletnumber.id AS id, palletnumber.number AS code, palletnumber.number AS number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true AND palletnumber.number ilike :query;";
+                + L_ADDITIONAL_CODES_CONDITION + "ORDER BY additionalcode.code NOT ilike :prefix, additionalcode.code LIMIT "
+                + limit + ";";
     }
 
     private String preparePalletNumbersQueryWithLimit(int limit) {
         return "SELECT palletnumber.id AS id, palletnumber.number AS code, palletnumber.number AS number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true AND palletnumber.number ilike :query LIMIT "
+                + L_PALLET_NUMBERS_CONDITION + "ORDER BY palletnumber.number NOT ilike :prefix, palletnumber.number LIMIT "
                 + limit + ";";
     }
 
+    private String prepareCountQuery(final String condition) {
+        return "SELECT count(*) AS cnt " + condition + ";";
+    }
+
+    private Map<String, Object> prepareQueryParameters(final String query) {
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("query", "%" + query + "%");
+        parameters.put("prefix", query + "%");
+
+        return parameters;
+    }
+
     private int countQueryResults(final String preparedQuery, final String query, final Map<String, Object> paramMap) {
         String countQuery = "SELECT count(*) AS cnt FROM (" + preparedQuery.replace(";", "") + ") sq;";
 
@@ -81,16 +87,33 @@ public class DataProvider {
     }
 
     public DataResponse getProductsResponseByQuery(final String query) {
-        return getDataResponse(query, prepareProductsQuery(), getProductsByQuery(query), Maps.newHashMap());
+        return getDataResponseWithLimit(prepareProductsQueryWithLimit(MAX_RESULTS + 1), prepareCountQuery(L_PRODUCTS_CONDITION),
+                prepareQueryParameters(query), ProductDTO.class);
     }
 
     public DataResponse getAdditionalCodesResponseByQuery(final String query, final String productnumber) {
-        return getDataResponse(query, prepareAdditionalCodeQuery(productnumber), getAdditionalCodesByQuery(query, productnumber),
-                Maps.newHashMap());
+        Map<String, Object> parameters = prepareQueryParameters(query);
+
+        parameters.put("productnumber", productnumber);
+
+        return getDataResponseWithLimit(prepareAdditionalCodeQueryWithLimit(MAX_RESULTS + 1),
+                prepareCountQuery(L_ADDITIONAL_CODES_CONDITION), parameters, AdditionalCodeDTO.class);
     }
 
     public DataResponse getPalletNumbersResponseByQuery(final String query) {
-        return getDataResponse(query, preparePalletNumbersQuery(), getPalletNumbersByQuery(query), Maps.newHashMap());
+        return getDataResponseWithLimit(preparePalletNumbersQueryWithLimit(MAX_RESULTS + 1),
+                prepareCountQuery(L_PALLET_NUMBERS_CONDITION), prepareQueryParameters(query), PalletNumberDTO.class);
+    }
+
+    private DataResponse getDataResponseWithLimit(final String preparedQuery, final String countQuery,
+            final Map<String, Object> paramMap, final Class<? extends AbstractDTO> dtoClass) {
+        List<? extends AbstractDTO> entities = jdbcTemplate.query(preparedQuery, paramMap, new BeanPropertyRowMapper<>(dtoClass));
+
+        if (entities.size() > MAX_RESULTS) {
+            return new DataResponse(Lists.newArrayList(), jdbcTemplate.queryForObject(countQuery, paramMap, Integer.class));
+        }
+
+        return new DataResponse(entities, entities.size());
     }
 
     public DataResponse getDataResponse(final String query, final String preparedQuery, final List<? extends AbstractDTO> entities,
@@ -123,9 +146,7 @@ public class DataProvider {
     public List<AbstractDTO> getProductsByQuery(final String query) {
         String _query = prepareProductsQueryWithLimit(MAX_RESULTS);
 
-        Map<String, Object> parameters = Maps.newHashMap();
-
-        parameters.put("query", "%" + query + "%");
+        Map<String, Object> parameters = prepareQueryParameters(query);
 
         SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
 
@@ -149,9 +170,8 @@ public class DataProvider {
     public List<AbstractDTO> getAdditionalCodesByQuery(final String query, final String productnumber) {
         String _query = prepareAdditionalCodeQueryWithLimit(MAX_RESULTS);
 
-        Map<String, Object> parameters = Maps.newHashMap();
+        Map<String, Object> parameters = prepareQueryParameters(query);
 
-        parameters.put("query", "%" + query + "%");
         parameters.put("productnumber", productnumber);
 
         SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
@@ -174,9 +194,7 @@ public class DataProvider {
     public List<AbstractDTO> getPalletNumbersByQuery(final String query) {
         String _query = preparePalletNumbersQueryWithLimit(MAX_RESULTS);
 
-        Map<String, Object> parameters = Maps.newHashMap();
-
-        parameters.put("query", "%" + query + "%");
+        Map<String, Object> parameters = prepareQueryParameters(query);
 
         SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
 
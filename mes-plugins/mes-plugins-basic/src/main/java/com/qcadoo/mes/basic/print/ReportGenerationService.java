@@ -0,0 +1,161 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Generates documents of reports in the background, on the application's task executor, instead of the request thread that
+ * fired the view event. The state of generation is persisted in the report's generationInProgress and generationStartDate
+ * fields, so it survives the request and other users see it too.
+ */
+@Service
+public class ReportGenerationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReportGenerationService.class);
+
+    public static final String GENERATION_IN_PROGRESS = "generationInProgress";
+
+    public static final String GENERATION_START_DATE = "generationStartDate";
+
+    static final long GENERATION_TIMEOUT = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Generation which didn't finish within {@link #GENERATION_TIMEOUT}, e.g. because the server was restarted while it was
+     * running, isn't in progress anymore, so the report can be generated again.
+     */
+    public boolean isGenerationInProgress(final Entity report) {
+        if (!report.getBooleanField(GENERATION_IN_PROGRESS)) {
+            return false;
+        }
+
+        Date generationStartDate = report.getDateField(GENERATION_START_DATE);
+
+        return (generationStartDate != null) && (System.currentTimeMillis() - generationStartDate.getTime() < GENERATION_TIMEOUT);
+    }
+
+    /**
+     * Marks the report as being generated and starts generation of its documents once the current transaction commits, so
+     * the background generation sees the report saved by the view event.
+     *
+     * @param fileNameUpdater
+     *            saves file names of documents in the report and returns the saved report, it runs in its own transaction
+     * @param generator
+     *            writes documents of the report returned by fileNameUpdater, it runs in a read only transaction
+     */
+    public void generateAfterCommit(final Entity report, final String fileNameField, final UnaryOperator<Entity> fileNameUpdater,
+            final ReportDocumentsGenerator generator) {
+        DataDefinition reportDD = report.getDataDefinition();
+        Long reportId = report.getId();
+
+        report.setField(GENERATION_IN_PROGRESS, true);
+        report.setField(GENERATION_START_DATE, new Date());
+        reportDD.save(report);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    generate(reportDD, reportId, fileNameField, fileNameUpdater, generator);
+                }
+            });
+        } else {
+            generate(reportDD, reportId, fileNameField, fileNameUpdater, generator);
+        }
+    }
+
+    @Async
+    public void generate(final DataDefinition reportDD, final Long reportId, final String fileNameField,
+            final UnaryOperator<Entity> fileNameUpdater, final ReportDocumentsGenerator generator) {
+        boolean generated = false;
+
+        try {
+            Entity report = updateFileName(reportDD, reportId, fileNameUpdater);
+
+            if (report != null) {
+                generateDocuments(report, generator);
+
+                generated = true;
+            }
+        } catch (Exception e) {
+            LOG.warn(String.format("Cannot generate documents of %s.%s with id = %s", reportDD.getPluginIdentifier(),
+                    reportDD.getName(), reportId), e);
+        } finally {
+            finishGeneration(reportDD, reportId, fileNameField, generated);
+        }
+    }
+
+    @Transactional
+    private Entity updateFileName(final DataDefinition reportDD, final Long reportId,
+            final UnaryOperator<Entity> fileNameUpdater) {
+        Entity report = reportDD.get(reportId);
+
+        if (report == null) {
+            return null;
+        }
+
+        return fileNameUpdater.apply(report);
+    }
+
+    // JDBC cursors stream rows with a fetch size only inside a transaction, documents don't change data so it's read only
+    @Transactional(readOnly = true)
+    private void generateDocuments(final Entity report, final ReportDocumentsGenerator generator) throws Exception {
+        generator.generateDocuments(report);
+    }
+
+    @Transactional
+    private void finishGeneration(final DataDefinition reportDD, final Long reportId, final String fileNameField,
+            final boolean generated) {
+        Entity report = reportDD.get(reportId);
+
+        if (report == null) {
+            return;
+        }
+
+        report.setField(GENERATION_IN_PROGRESS, false);
+        report.setField(GENERATION_START_DATE, null);
+
+        if (!generated) {
+            // documents weren't written, so the report can't be printed, but it can be generated again
+            report.setField(fileNameField, null);
+        }
+
+        reportDD.save(report);
+    }
+
+}
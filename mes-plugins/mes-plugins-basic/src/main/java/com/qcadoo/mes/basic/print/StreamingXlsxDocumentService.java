@@ -0,0 +1,92 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Base for saved XLSX reports which can have too many rows to be built as a whole in memory.
+ *
+ * Workbook is an {@link SXSSFWorkbook}, so only the last {@link #getRowAccessWindowSize()} rows of each sheet are kept in
+ * memory and older rows are flushed to a temporary file. Rows can be created only in ascending order and already flushed rows
+ * can't be read or changed, so sheets should be filled straight from query results.
+ */
+public abstract class StreamingXlsxDocumentService {
+
+    public static final String XLSX_EXTENSION = "xlsx";
+
+    private static final String L_FILE_NAME = "fileName";
+
+    private static final int L_ROW_ACCESS_WINDOW_SIZE = 500;
+
+    public void generateDocument(final Entity entity, final Locale locale) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(getRowAccessWindowSize());
+
+        try (OutputStream outputStream = new FileOutputStream(getFilePath(entity))) {
+            addSheets(workbook, entity, locale);
+
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    public static String getFilePath(final Entity entity) {
+        return entity.getStringField(L_FILE_NAME) + "." + XLSX_EXTENSION;
+    }
+
+    public static boolean isGenerated(final Entity entity) {
+        return (entity.getStringField(L_FILE_NAME) != null) && new File(getFilePath(entity)).exists();
+    }
+
+    protected Sheet createSheet(final Workbook workbook, final String title) {
+        return workbook.createSheet(WorkbookUtil.createSafeSheetName(title));
+    }
+
+    /**
+     * Creates row after the last one, for sheets which rows are created one after another, starting from the first one.
+     */
+    protected Row createNextRow(final Sheet sheet) {
+        return sheet.createRow(sheet.getPhysicalNumberOfRows());
+    }
+
+    protected int getRowAccessWindowSize() {
+        return L_ROW_ACCESS_WINDOW_SIZE;
+    }
+
+    protected abstract void addSheets(final Workbook workbook, final Entity entity, final Locale locale);
+
+}
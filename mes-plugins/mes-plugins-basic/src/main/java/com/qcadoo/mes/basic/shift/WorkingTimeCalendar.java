@@ -0,0 +1,218 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.OptionalLong;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+
+/**
+ * Immutable working time calendar compiled from shift hours for a fixed time horizon.
+ *
+ * Working intervals are kept as sorted, non overlapping arrays of epoch millis together with prefix sums of their
+ * durations, so adding working time, finding the nearest working moment and counting working time between two moments
+ * are binary searches. Questions that can't be answered within the horizon return an empty result.
+ */
+public final class WorkingTimeCalendar {
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    private final long horizonFrom;
+
+    private final long horizonTo;
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final long[] workedBefore;
+
+    /**
+     * @param hours
+     *            shift hours sorted by start and merged, so that they don't overlap
+     */
+    public WorkingTimeCalendar(final List<ShiftHour> hours, final Date horizonFrom, final Date horizonTo) {
+        this.horizonFrom = horizonFrom.getTime();
+        this.horizonTo = horizonTo.getTime();
+
+        long[] hourStarts = new long[hours.size()];
+        long[] hourEnds = new long[hours.size()];
+        int size = 0;
+
+        for (ShiftHour hour : hours) {
+            long start = hour.getDateFrom().getTime();
+            long end = hour.getDateTo().getTime();
+
+            if (start < end) {
+                hourStarts[size] = start;
+                hourEnds[size] = end;
+                size++;
+            }
+        }
+
+        starts = Arrays.copyOf(hourStarts, size);
+        ends = Arrays.copyOf(hourEnds, size);
+        workedBefore = new long[size + 1];
+
+        for (int i = 0; i < size; i++) {
+            workedBefore[i + 1] = workedBefore[i] + (ends[i] - starts[i]);
+        }
+    }
+
+    public boolean covers(final long from, final long to) {
+        return horizonFrom <= from && to <= horizonTo;
+    }
+
+    public long getHorizonFrom() {
+        return horizonFrom;
+    }
+
+    public long getHorizonTo() {
+        return horizonTo;
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    public OptionalLong addWorkingSeconds(final long from, final long seconds) {
+        return addWorkingMillis(from, seconds * MILLIS_PER_SECOND);
+    }
+
+    public OptionalLong addWorkingMillis(final long from, final long milliseconds) {
+        int index = firstEndingAfter(from);
+
+        if (index == starts.length) {
+            return OptionalLong.empty();
+        }
+
+        long start = Math.max(starts[index], from);
+        long remaining = milliseconds;
+
+        if (remaining <= ends[index] - start) {
+            return OptionalLong.of(start + remaining);
+        }
+
+        long target = workedBefore[index + 1] + remaining - (ends[index] - start);
+        int last = firstReaching(target);
+
+        if (last == starts.length) {
+            return OptionalLong.empty();
+        }
+
+        return OptionalLong.of(starts[last] + (target - workedBefore[last]));
+    }
+
+    public OptionalLong subtractWorkingSeconds(final long to, final long seconds) {
+        int index = lastStartingBefore(to);
+
+        if (index < 0) {
+            return OptionalLong.empty();
+        }
+
+        long end = Math.min(ends[index], to);
+        long remaining = seconds * MILLIS_PER_SECOND;
+
+        if (remaining <= end - starts[index]) {
+            return OptionalLong.of(end - remaining);
+        }
+
+        long target = workedBefore[index] - (remaining - (end - starts[index]));
+
+        if (target < 0) {
+            return OptionalLong.empty();
+        }
+
+        int first = lastNotAfter(target);
+
+        return OptionalLong.of(starts[first] + (target - workedBefore[first]));
+    }
+
+    public OptionalLong getNearestWorkingMoment(final long from) {
+        int index = firstEndingAfter(from);
+
+        if (index == starts.length) {
+            return OptionalLong.empty();
+        }
+
+        return OptionalLong.of(Math.max(starts[index], from));
+    }
+
+    public long getWorkingSecondsBetween(final long from, final long to) {
+        if (to <= from) {
+            return 0L;
+        }
+
+        return (workedUntil(to) - workedUntil(from)) / MILLIS_PER_SECOND;
+    }
+
+    public List<ShiftHour> getHours(final long from, final long to) {
+        List<ShiftHour> hours = Lists.newArrayList();
+
+        for (int i = firstEndingAfter(from); i < starts.length && starts[i] < to; i++) {
+            hours.add(new ShiftHour(new Date(Math.max(starts[i], from)), new Date(Math.min(ends[i], to))));
+        }
+
+        return hours;
+    }
+
+    private long workedUntil(final long moment) {
+        int index = lastStartingBefore(moment);
+
+        if (index < 0) {
+            return 0L;
+        }
+
+        return workedBefore[index] + (Math.min(ends[index], moment) - starts[index]);
+    }
+
+    private int firstEndingAfter(final long moment) {
+        int index = Arrays.binarySearch(ends, moment);
+
+        return index < 0 ? -index - 1 : index + 1;
+    }
+
+    private int lastStartingBefore(final long moment) {
+        int index = Arrays.binarySearch(starts, moment);
+
+        return index < 0 ? -index - 2 : index - 1;
+    }
+
+    private int firstReaching(final long worked) {
+        int index = Arrays.binarySearch(workedBefore, 1, workedBefore.length, worked);
+
+        return (index < 0 ? -index - 1 : index) - 1;
+    }
+
+    private int lastNotAfter(final long worked) {
+        int index = Arrays.binarySearch(workedBefore, 0, workedBefore.length - 1, worked);
+
+        return index < 0 ? -index - 2 : index;
+    }
+
+}
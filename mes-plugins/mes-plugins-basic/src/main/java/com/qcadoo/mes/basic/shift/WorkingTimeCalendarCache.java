@@ -0,0 +1,243 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Node local cache of {@link WorkingTimeCalendar}s, keyed by tenant, calendar name and production line.
+ *
+ * Calendars are built for asked ranges widened to whole calendar quarters, so questions starting at different moments of
+ * the same quarter share one calendar. Each key keeps at most {@link #L_MAX_CALENDARS_PER_KEY} calendars, and a calendar
+ * replaces the ones it covers.
+ *
+ * A watermark of shifts, timetable exceptions and their assignments is read from the database once per transaction (or on
+ * every question outside of one). When it differs from the one the calendars of the tenant were built with, they are
+ * dropped, so changes made on other nodes are noticed. Local changes evict calendars immediately and once more after the
+ * transaction completes, and a calendar built while an eviction was running is not stored.
+ */
+@Service
+public class WorkingTimeCalendarCache {
+
+    private static final int L_MAX_CALENDARS_PER_KEY = 4;
+
+    private static final String L_WATERMARK_QUERY = "SELECT concat_ws(':', "
+            + "(SELECT count(*) || '-' || COALESCE(max(id), 0) || '-' || COALESCE(sum(entityversion), 0) FROM basic_shift), "
+            + "(SELECT count(*) || '-' || COALESCE(max(id), 0) || '-' || COALESCE(sum(entityversion), 0) "
+            + "FROM basic_shifttimetableexception), "
+            + "(SELECT count(*) || '-' || COALESCE(sum(shift_id * 31 + shifttimetableexception_id), 0) "
+            + "FROM jointable_shift_shifttimetableexception), "
+            + "(SELECT count(*) || '-' || COALESCE(sum(productionline_id * 31 + shifttimetableexception_id), 0) "
+            + "FROM jointable_productionline_shifttimetableexception))";
+
+    private final Map<Key, LinkedList<WorkingTimeCalendar>> calendars = new ConcurrentHashMap<>();
+
+    private final Map<Integer, String> watermarks = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    /**
+     * @return cached calendar of the key covering given range, or a calendar built by the loader for the range widened to
+     *         whole quarters
+     */
+    public WorkingTimeCalendar get(final String calendarName, final Long productionLineId, final long from, final long to,
+            final Loader loader) {
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        validateWatermarkOncePerTransaction(tenantId);
+
+        Key key = new Key(tenantId, calendarName, productionLineId);
+        LinkedList<WorkingTimeCalendar> keyCalendars = calendars.computeIfAbsent(key, k -> new LinkedList<>());
+
+        synchronized (keyCalendars) {
+            for (Iterator<WorkingTimeCalendar> iterator = keyCalendars.iterator(); iterator.hasNext();) {
+                WorkingTimeCalendar calendar = iterator.next();
+
+                if (calendar.covers(from, to)) {
+                    iterator.remove();
+                    keyCalendars.addFirst(calendar);
+
+                    return calendar;
+                }
+            }
+        }
+
+        long loadGeneration = generation.get();
+
+        WorkingTimeCalendar calendar = loader.load(startOfQuarter(from), startOfNextQuarter(to));
+
+        if (generation.get() == loadGeneration) {
+            synchronized (keyCalendars) {
+                keyCalendars.removeIf(cached -> calendar.covers(cached.getHorizonFrom(), cached.getHorizonTo()));
+                keyCalendars.addFirst(calendar);
+
+                while (keyCalendars.size() > L_MAX_CALENDARS_PER_KEY) {
+                    keyCalendars.removeLast();
+                }
+            }
+
+            if (generation.get() != loadGeneration) {
+                synchronized (keyCalendars) {
+                    keyCalendars.remove(calendar);
+                }
+            }
+        }
+
+        return calendar;
+    }
+
+    public void evict() {
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        remove(tenantId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    remove(tenantId);
+                }
+            });
+        }
+    }
+
+    private void validateWatermarkOncePerTransaction(final int tenantId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            validateWatermark(tenantId);
+
+            return;
+        }
+
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+
+        validateWatermark(tenantId);
+
+        TransactionSynchronizationManager.bindResource(this, tenantId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(WorkingTimeCalendarCache.this);
+            }
+        });
+    }
+
+    private void validateWatermark(final int tenantId) {
+        String watermark = jdbcTemplate.queryForObject(L_WATERMARK_QUERY, Collections.emptyMap(), String.class);
+
+        if (!Objects.equals(watermark, watermarks.put(tenantId, watermark))) {
+            remove(tenantId);
+        }
+    }
+
+    private void remove(final int tenantId) {
+        generation.incrementAndGet();
+
+        calendars.keySet().removeIf(key -> key.tenantId == tenantId);
+    }
+
+    private long startOfQuarter(final long moment) {
+        DateTime startOfMonth = new DateTime(moment).withTimeAtStartOfDay().withDayOfMonth(1);
+
+        return startOfMonth.minusMonths((startOfMonth.getMonthOfYear() - 1) % 3).getMillis();
+    }
+
+    private long startOfNextQuarter(final long moment) {
+        long startOfQuarter = startOfQuarter(moment);
+
+        return startOfQuarter == moment ? moment : new DateTime(startOfQuarter).plusMonths(3).getMillis();
+    }
+
+    /**
+     * Builds a calendar for the given range.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        WorkingTimeCalendar load(long from, long to);
+
+    }
+
+    private static final class Key {
+
+        private final int tenantId;
+
+        private final String calendarName;
+
+        private final Long productionLineId;
+
+        private Key(final int tenantId, final String calendarName, final Long productionLineId) {
+            this.tenantId = tenantId;
+            this.calendarName = calendarName;
+            this.productionLineId = productionLineId;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return tenantId == other.tenantId && calendarName.equals(other.calendarName)
+                    && Objects.equals(productionLineId, other.productionLineId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, calendarName, productionLineId);
+        }
+
+    }
+
+}
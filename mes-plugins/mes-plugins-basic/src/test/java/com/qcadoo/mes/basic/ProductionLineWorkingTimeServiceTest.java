@@ -0,0 +1,180 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftsDataProvider;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendarCache;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ProductionLineWorkingTimeServiceTest {
+
+    private static final DateTime MONDAY = new DateTime(2013, 9, 2, 0, 0);
+
+    private static final long HOUR = 3600L * 1000L;
+
+    private ProductionLineWorkingTimeService productionLineWorkingTimeService;
+
+    @Mock
+    private ShiftsDataProvider shiftsDataProvider;
+
+    @Mock
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private TimetableExceptionService timetableExceptionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private Shift shift;
+
+    @Mock
+    private Entity productionLine, otherProductionLine;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        WorkingTimeCalendarCache workingTimeCalendarCache = new WorkingTimeCalendarCache();
+
+        ReflectionTestUtils.setField(workingTimeCalendarCache, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(workingTimeCalendarCache, "multiTenantService", multiTenantService);
+
+        productionLineWorkingTimeService = new ProductionLineWorkingTimeService();
+
+        ReflectionTestUtils.setField(productionLineWorkingTimeService, "shiftsDataProvider", shiftsDataProvider);
+        ReflectionTestUtils.setField(productionLineWorkingTimeService, "shiftExceptionService", shiftExceptionService);
+        ReflectionTestUtils.setField(productionLineWorkingTimeService, "timetableExceptionService", timetableExceptionService);
+        ReflectionTestUtils.setField(productionLineWorkingTimeService, "workingTimeCalendarCache", workingTimeCalendarCache);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+        given(jdbcTemplate.queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(String.class))).willReturn("1");
+
+        given(productionLine.getId()).willReturn(1L);
+        given(otherProductionLine.getId()).willReturn(2L);
+
+        given(shift.getId()).willReturn(7L);
+        given(shiftsDataProvider.findAll()).willReturn(Collections.singletonList(shift));
+        given(timetableExceptionService.findForShifts(any(Entity.class), anyListOf(Long.class), any(Date.class),
+                any(Date.class))).willReturn(Collections.emptyMap());
+        given(shiftExceptionService.getShiftWorkDateTimes(eq(shift), any(DateTime.class), anyListOf(Entity.class))).willAnswer(
+                invocation -> {
+                    DateTime dateOfDay = (DateTime) invocation.getArguments()[1];
+
+                    return Collections.singletonList(new DateTimeRange(dateOfDay.plusHours(6), dateOfDay.plusHours(14)));
+                });
+    }
+
+    @Test
+    public final void shouldAddWorkingTimeOfProductionLine() {
+        // given
+        DateTime dateFrom = MONDAY.plusHours(12);
+
+        // when
+        long dateTo = productionLineWorkingTimeService.addWorkingMillis(productionLine, dateFrom.toDate(), 3 * HOUR).getAsLong();
+
+        // then
+        assertEquals(MONDAY.plusDays(1).plusHours(7).getMillis(), dateTo);
+    }
+
+    @Test
+    public final void shouldReuseCalendarWithinDay() {
+        // given
+        productionLineWorkingTimeService.addWorkingMillis(productionLine, MONDAY.plusHours(7).toDate(), HOUR);
+
+        // when
+        long moment = productionLineWorkingTimeService.getNearestWorkingMoment(productionLine, MONDAY.plusHours(20).toDate())
+                .getAsLong();
+
+        // then
+        assertEquals(MONDAY.plusDays(1).plusHours(6).getMillis(), moment);
+
+        verify(shiftsDataProvider, times(1)).findAll();
+    }
+
+    @Test
+    public final void shouldReadTimetableExceptionsOnceForWholeCalendar() {
+        // when
+        productionLineWorkingTimeService.addWorkingMillis(productionLine, MONDAY.plusHours(7).toDate(), HOUR);
+
+        // then
+        verify(timetableExceptionService, times(1)).findForShifts(eq(productionLine), eq(Collections.singletonList(7L)),
+                any(Date.class), any(Date.class));
+    }
+
+    @Test
+    public final void shouldBuildCalendarPerProductionLine() {
+        // given
+        productionLineWorkingTimeService.addWorkingMillis(productionLine, MONDAY.plusHours(7).toDate(), HOUR);
+
+        // when
+        productionLineWorkingTimeService.addWorkingMillis(otherProductionLine, MONDAY.plusHours(7).toDate(), HOUR);
+
+        // then
+        verify(shiftsDataProvider, times(2)).findAll();
+    }
+
+    @Test
+    public final void shouldRebuildCalendarAfterEviction() {
+        // given
+        productionLineWorkingTimeService.addWorkingMillis(productionLine, MONDAY.plusHours(7).toDate(), HOUR);
+
+        // when
+        productionLineWorkingTimeService.evictWorkingTimeCalendars();
+
+        productionLineWorkingTimeService.addWorkingMillis(productionLine, MONDAY.plusHours(7).toDate(), HOUR);
+
+        // then
+        verify(shiftsDataProvider, times(2)).findAll();
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers.dataProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.controllers.dataProvider.dto.ProductDTO;
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+public class DataProviderTest {
+
+    private DataProvider dataProvider;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        dataProvider = new DataProvider();
+
+        ReflectionTestUtils.setField(dataProvider, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    public void shouldNotCountProductsIfTheyFitOnList() {
+        // given
+        List<Object> products = mockProducts(DataProvider.MAX_RESULTS);
+
+        given(jdbcTemplate.query(anyString(), anyMapOf(String.class, Object.class), any(RowMapper.class))).willReturn(products);
+
+        // when
+        DataResponse response = dataProvider.getProductsResponseByQuery("PRO");
+
+        // then
+        assertEquals(DataProvider.MAX_RESULTS, response.getNumberOfResults());
+        assertEquals(products, response.getEntities());
+
+        verify(jdbcTemplate, never()).queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(Integer.class));
+    }
+
+    @Test
+    public void shouldCountProductsIfTheyDontFitOnList() {
+        // given
+        given(jdbcTemplate.query(anyString(), anyMapOf(String.class, Object.class), any(RowMapper.class))).willReturn(
+                mockProducts(DataProvider.MAX_RESULTS + 1));
+        given(jdbcTemplate.queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(Integer.class))).willReturn(150);
+
+        // when
+        DataResponse response = dataProvider.getProductsResponseByQuery("PRO");
+
+        // then
+        assertEquals(150, response.getNumberOfResults());
+        assertTrue(response.getEntities().isEmpty());
+    }
+
+    private List<Object> mockProducts(final int count) {
+        List<Object> products = Lists.newArrayList();
+
+        for (int i = 0; i < count; i++) {
+            ProductDTO product = new ProductDTO();
+
+            product.setId((long) i);
+            product.setNumber("PRO" + i);
+
+            products.add(product);
+        }
+
+        return products;
+    }
+
+}
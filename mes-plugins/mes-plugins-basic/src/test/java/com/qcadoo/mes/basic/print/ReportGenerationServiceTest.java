@@ -0,0 +1,168 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.function.UnaryOperator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class ReportGenerationServiceTest {
+
+    private static final Long L_REPORT_ID = 1L;
+
+    private static final String L_FILE_NAME = "fileName";
+
+    private ReportGenerationService reportGenerationService;
+
+    @Mock
+    private DataDefinition reportDD;
+
+    @Mock
+    private Entity report, reportFromDB, reportWithFileName;
+
+    @Mock
+    private UnaryOperator<Entity> fileNameUpdater;
+
+    @Mock
+    private ReportDocumentsGenerator generator;
+
+    @Before
+    public void init() {
+        reportGenerationService = new ReportGenerationService();
+
+        MockitoAnnotations.initMocks(this);
+
+        given(report.getId()).willReturn(L_REPORT_ID);
+        given(report.getDataDefinition()).willReturn(reportDD);
+        given(reportDD.get(L_REPORT_ID)).willReturn(reportFromDB);
+        given(fileNameUpdater.apply(reportFromDB)).willReturn(reportWithFileName);
+    }
+
+    @Test
+    public void shouldGenerateDocumentsAndFinishGeneration() throws Exception {
+        // when
+        reportGenerationService.generateAfterCommit(report, L_FILE_NAME, fileNameUpdater, generator);
+
+        // then
+        InOrder inOrder = inOrder(report, reportDD, fileNameUpdater, generator, reportFromDB);
+
+        inOrder.verify(report).setField(ReportGenerationService.GENERATION_IN_PROGRESS, true);
+        inOrder.verify(report).setField(eq(ReportGenerationService.GENERATION_START_DATE), any(Date.class));
+        inOrder.verify(reportDD).save(report);
+        inOrder.verify(fileNameUpdater).apply(reportFromDB);
+        inOrder.verify(generator).generateDocuments(reportWithFileName);
+        inOrder.verify(reportFromDB).setField(ReportGenerationService.GENERATION_IN_PROGRESS, false);
+        inOrder.verify(reportFromDB).setField(ReportGenerationService.GENERATION_START_DATE, null);
+        inOrder.verify(reportDD).save(reportFromDB);
+
+        verify(reportFromDB, never()).setField(eq(L_FILE_NAME), any());
+    }
+
+    @Test
+    public void shouldClearFileNameAndFinishGenerationWhenGenerationFails() throws Exception {
+        // given
+        doThrow(new IOException()).when(generator).generateDocuments(reportWithFileName);
+
+        // when
+        reportGenerationService.generateAfterCommit(report, L_FILE_NAME, fileNameUpdater, generator);
+
+        // then
+        verify(reportFromDB).setField(ReportGenerationService.GENERATION_IN_PROGRESS, false);
+        verify(reportFromDB).setField(L_FILE_NAME, null);
+        verify(reportDD).save(reportFromDB);
+    }
+
+    @Test
+    public void shouldNotGenerateDocumentsWhenReportWasDeleted() throws Exception {
+        // given
+        given(reportDD.get(L_REPORT_ID)).willReturn(null);
+
+        // when
+        reportGenerationService.generateAfterCommit(report, L_FILE_NAME, fileNameUpdater, generator);
+
+        // then
+        verify(fileNameUpdater, never()).apply(any(Entity.class));
+        verify(generator, never()).generateDocuments(any(Entity.class));
+        verify(reportDD, never()).save(reportFromDB);
+    }
+
+    @Test
+    public void shouldReturnGenerationInProgressWhenItStartedRecently() {
+        // given
+        given(report.getBooleanField(ReportGenerationService.GENERATION_IN_PROGRESS)).willReturn(true);
+        given(report.getDateField(ReportGenerationService.GENERATION_START_DATE)).willReturn(new Date());
+
+        // when
+        boolean generationInProgress = reportGenerationService.isGenerationInProgress(report);
+
+        // then
+        assertTrue(generationInProgress);
+    }
+
+    @Test
+    public void shouldNotReturnGenerationInProgressWhenItTimedOut() {
+        // given
+        given(report.getBooleanField(ReportGenerationService.GENERATION_IN_PROGRESS)).willReturn(true);
+        given(report.getDateField(ReportGenerationService.GENERATION_START_DATE)).willReturn(
+                new Date(System.currentTimeMillis() - ReportGenerationService.GENERATION_TIMEOUT - 1));
+
+        // when
+        boolean generationInProgress = reportGenerationService.isGenerationInProgress(report);
+
+        // then
+        assertFalse(generationInProgress);
+    }
+
+    @Test
+    public void shouldNotReturnGenerationInProgressWithoutStartDate() {
+        // given
+        given(report.getBooleanField(ReportGenerationService.GENERATION_IN_PROGRESS)).willReturn(true);
+
+        // when
+        boolean generationInProgress = reportGenerationService.isGenerationInProgress(report);
+
+        // then
+        assertFalse(generationInProgress);
+    }
+
+}
@@ -0,0 +1,259 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class WorkingTimeCalendarCacheTest {
+
+    private static final DateTime MONDAY = new DateTime(2013, 9, 2, 0, 0);
+
+    private static final String L_SHIFTS = "shifts";
+
+    private WorkingTimeCalendarCache workingTimeCalendarCache;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        workingTimeCalendarCache = new WorkingTimeCalendarCache();
+
+        ReflectionTestUtils.setField(workingTimeCalendarCache, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(workingTimeCalendarCache, "multiTenantService", multiTenantService);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+        givenWatermark("1");
+    }
+
+    @After
+    public final void clear() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(workingTimeCalendarCache);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public final void shouldBuildCalendarForWholeQuarters() {
+        // when
+        WorkingTimeCalendar calendar = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertEquals(new DateTime(2013, 7, 1, 0, 0).getMillis(), calendar.getHorizonFrom());
+        assertEquals(new DateTime(2013, 10, 1, 0, 0).getMillis(), calendar.getHorizonTo());
+    }
+
+    @Test
+    public final void shouldReuseCalendarOfQuarterForOtherRangesWithinIt() {
+        // given
+        WorkingTimeCalendar calendar = get(L_SHIFTS, null, 0, 10);
+
+        // when
+        WorkingTimeCalendar cached = get(L_SHIFTS, null, 200, 500);
+
+        // then
+        assertSame(calendar, cached);
+    }
+
+    @Test
+    public final void shouldKeepCalendarsOfAlternatingQuarters() {
+        // given
+        WorkingTimeCalendar first = get(L_SHIFTS, null, 0, 10);
+        WorkingTimeCalendar second = getInMonths(L_SHIFTS, 3);
+
+        // when
+        WorkingTimeCalendar firstAgain = get(L_SHIFTS, null, 0, 10);
+        WorkingTimeCalendar secondAgain = getInMonths(L_SHIFTS, 3);
+
+        // then
+        assertNotSame(first, second);
+        assertSame(first, firstAgain);
+        assertSame(second, secondAgain);
+    }
+
+    @Test
+    public final void shouldReplaceCalendarsCoveredByWiderOne() {
+        // given
+        get(L_SHIFTS, null, 0, 10);
+
+        WorkingTimeCalendar wider = get(L_SHIFTS, null, 0, 24 * 60);
+
+        // when
+        WorkingTimeCalendar cached = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertSame(wider, cached);
+    }
+
+    @Test
+    public final void shouldDropLeastRecentlyUsedCalendar() {
+        // given
+        WorkingTimeCalendar oldest = get(L_SHIFTS, null, 0, 10);
+
+        for (int quarter = 1; quarter <= 4; quarter++) {
+            getInMonths(L_SHIFTS, quarter * 3);
+        }
+
+        // when
+        WorkingTimeCalendar reloaded = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertNotSame(oldest, reloaded);
+    }
+
+    @Test
+    public final void shouldSeparateTenantsAndProductionLines() {
+        // given
+        WorkingTimeCalendar calendar = get(L_SHIFTS, null, 0, 10);
+
+        // when
+        WorkingTimeCalendar otherLine = get("productionLine", 5L, 0, 10);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(2);
+
+        WorkingTimeCalendar otherTenant = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertNotSame(calendar, otherLine);
+        assertNotSame(calendar, otherTenant);
+    }
+
+    @Test
+    public final void shouldDropCalendarsWhenWatermarkChanges() {
+        // given
+        WorkingTimeCalendar calendar = get(L_SHIFTS, null, 0, 10);
+
+        givenWatermark("2");
+
+        // when
+        WorkingTimeCalendar reloaded = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertNotSame(calendar, reloaded);
+    }
+
+    @Test
+    public final void shouldReadWatermarkOncePerTransaction() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        WorkingTimeCalendar calendar = get(L_SHIFTS, null, 0, 10);
+
+        givenWatermark("2");
+
+        // when
+        WorkingTimeCalendar cached = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertSame(calendar, cached);
+
+        verify(jdbcTemplate, times(1)).queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(String.class));
+    }
+
+    @Test
+    public final void shouldDropCalendarsOnEvict() {
+        // given
+        WorkingTimeCalendar calendar = get(L_SHIFTS, null, 0, 10);
+
+        // when
+        workingTimeCalendarCache.evict();
+
+        WorkingTimeCalendar reloaded = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertNotSame(calendar, reloaded);
+    }
+
+    @Test
+    public final void shouldNotStoreCalendarLoadedDuringEvict() {
+        // given
+        WorkingTimeCalendarCache.Loader evictingLoader = (from, to) -> {
+            workingTimeCalendarCache.evict();
+
+            return calendar(from, to);
+        };
+
+        WorkingTimeCalendar stale = workingTimeCalendarCache.get(L_SHIFTS, null, millis(0), millis(10), evictingLoader);
+
+        // when
+        WorkingTimeCalendar reloaded = get(L_SHIFTS, null, 0, 10);
+
+        // then
+        assertNotSame(stale, reloaded);
+    }
+
+    private WorkingTimeCalendar get(final String calendarName, final Long productionLineId, final long fromHour,
+            final long toHour) {
+        return workingTimeCalendarCache.get(calendarName, productionLineId, millis(fromHour), millis(toHour), this::calendar);
+    }
+
+    private WorkingTimeCalendar getInMonths(final String calendarName, final int months) {
+        long from = MONDAY.plusMonths(months).getMillis();
+
+        return workingTimeCalendarCache.get(calendarName, null, from, from + 10, this::calendar);
+    }
+
+    private WorkingTimeCalendar calendar(final long from, final long to) {
+        return new WorkingTimeCalendar(Collections.emptyList(), new DateTime(from).toDate(), new DateTime(to).toDate());
+    }
+
+    private long millis(final long hour) {
+        return MONDAY.plusHours((int) hour).getMillis();
+    }
+
+    private void givenWatermark(final String watermark) {
+        given(jdbcTemplate.queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(String.class))).willReturn(
+                watermark);
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+
+public class WorkingTimeCalendarTest {
+
+    private static final DateTime MONDAY = new DateTime(2013, 9, 2, 0, 0);
+
+    private WorkingTimeCalendar calendar;
+
+    @Before
+    public final void init() {
+        List<ShiftHour> hours = Lists.newArrayList(hour(MONDAY.plusHours(6), MONDAY.plusHours(14)),
+                hour(MONDAY.plusHours(22), MONDAY.plusDays(1).plusHours(2)),
+                hour(MONDAY.plusDays(1).plusHours(6), MONDAY.plusDays(1).plusHours(14)));
+
+        calendar = new WorkingTimeCalendar(hours, MONDAY.toDate(), MONDAY.plusDays(2).toDate());
+    }
+
+    @Test
+    public final void shouldAddWorkingSecondsAcrossShiftHours() {
+        // given
+        long from = MONDAY.plusHours(12).getMillis();
+
+        // when
+        long withinHour = calendar.addWorkingSeconds(from, 3600).getAsLong();
+        long toHourEnd = calendar.addWorkingSeconds(from, 2 * 3600).getAsLong();
+        long overnight = calendar.addWorkingSeconds(from, 5 * 3600).getAsLong();
+        long nextDay = calendar.addWorkingSeconds(from, 7 * 3600).getAsLong();
+
+        // then
+        assertEquals(MONDAY.plusHours(13).getMillis(), withinHour);
+        assertEquals(MONDAY.plusHours(14).getMillis(), toHourEnd);
+        assertEquals(MONDAY.plusHours(25).getMillis(), overnight);
+        assertEquals(MONDAY.plusDays(1).plusHours(7).getMillis(), nextDay);
+    }
+
+    @Test
+    public final void shouldAddWorkingMillisAcrossShiftHours() {
+        // given
+        long from = MONDAY.plusHours(13).plusMinutes(59).getMillis();
+
+        // when
+        long dateTo = calendar.addWorkingMillis(from, 60_000L + 1500L).getAsLong();
+
+        // then
+        assertEquals(MONDAY.plusHours(22).getMillis() + 1500L, dateTo);
+    }
+
+    @Test
+    public final void shouldStartAddingFromNextShiftHourWhenNotWorking() {
+        // given
+        long from = MONDAY.plusHours(3).getMillis();
+
+        // when
+        long dateTo = calendar.addWorkingSeconds(from, 1800).getAsLong();
+
+        // then
+        assertEquals(MONDAY.plusHours(6).plusMinutes(30).getMillis(), dateTo);
+    }
+
+    @Test
+    public final void shouldReturnEmptyWhenWorkingTimeExceedsCalendar() {
+        // given
+        long from = MONDAY.getMillis();
+
+        // when & then
+        assertFalse(calendar.addWorkingSeconds(from, 21 * 3600).isPresent());
+        assertFalse(calendar.subtractWorkingSeconds(MONDAY.plusDays(2).getMillis(), 21 * 3600).isPresent());
+        assertFalse(calendar.getNearestWorkingMoment(MONDAY.plusDays(1).plusHours(15).getMillis()).isPresent());
+    }
+
+    @Test
+    public final void shouldSubtractWorkingSecondsAcrossShiftHours() {
+        // given
+        long to = MONDAY.plusDays(1).plusHours(8).getMillis();
+
+        // when
+        long withinHour = calendar.subtractWorkingSeconds(to, 3600).getAsLong();
+        long toHourStart = calendar.subtractWorkingSeconds(to, 2 * 3600).getAsLong();
+        long overnight = calendar.subtractWorkingSeconds(to, 3 * 3600).getAsLong();
+        long previousDay = calendar.subtractWorkingSeconds(to, 8 * 3600).getAsLong();
+
+        // then
+        assertEquals(MONDAY.plusDays(1).plusHours(7).getMillis(), withinHour);
+        assertEquals(MONDAY.plusDays(1).plusHours(6).getMillis(), toHourStart);
+        assertEquals(MONDAY.plusHours(25).getMillis(), overnight);
+        assertEquals(MONDAY.plusHours(12).getMillis(), previousDay);
+    }
+
+    @Test
+    public final void shouldFindNearestWorkingMoment() {
+        // when & then
+        assertEquals(MONDAY.plusHours(7).getMillis(), calendar.getNearestWorkingMoment(MONDAY.plusHours(7).getMillis())
+                .getAsLong());
+        assertEquals(MONDAY.plusHours(22).getMillis(), calendar.getNearestWorkingMoment(MONDAY.plusHours(14).getMillis())
+                .getAsLong());
+    }
+
+    @Test
+    public final void shouldCountWorkingSecondsBetween() {
+        // when & then
+        assertEquals(10 * 3600L, calendar.getWorkingSecondsBetween(MONDAY.getMillis(), MONDAY.plusDays(1).getMillis()));
+        assertEquals(8 * 3600L,
+                calendar.getWorkingSecondsBetween(MONDAY.plusHours(12).getMillis(), MONDAY.plusDays(1).plusHours(8).getMillis()));
+        assertEquals(0L, calendar.getWorkingSecondsBetween(MONDAY.plusHours(15).getMillis(), MONDAY.plusHours(21).getMillis()));
+    }
+
+    @Test
+    public final void shouldReturnHoursClippedToRange() {
+        // when
+        List<ShiftHour> hours = calendar.getHours(MONDAY.plusHours(10).getMillis(), MONDAY.plusHours(23).getMillis());
+
+        // then
+        assertEquals(2, hours.size());
+        assertEquals(MONDAY.plusHours(10).toDate(), hours.get(0).getDateFrom());
+        assertEquals(MONDAY.plusHours(14).toDate(), hours.get(0).getDateTo());
+        assertEquals(MONDAY.plusHours(22).toDate(), hours.get(1).getDateFrom());
+        assertEquals(MONDAY.plusHours(23).toDate(), hours.get(1).getDateTo());
+    }
+
+    private ShiftHour hour(final DateTime from, final DateTime to) {
+        return new ShiftHour(from.toDate(), to.toDate());
+    }
+
+}
@@ -107,6 +107,10 @@ public final class CostCalculationFields {
 
     public static final String GENERATED = "generated";
 
+    public static final String GENERATION_IN_PROGRESS = "generationInProgress";
+
+    public static final String GENERATION_START_DATE = "generationStartDate";
+
     public static final String FILE_NAME = "fileName";
 
     public static final String COMPONENT_COST = "componentCosts";
@@ -47,6 +47,8 @@ public class CostCalculationHooks {
         costCalculation.setField(CostCalculationFields.FILE_NAME, null);
         costCalculation.setField(CostCalculationFields.GENERATED, false);
         costCalculation.setField(CostCalculationFields.DATE, null);
+        costCalculation.setField(CostCalculationFields.GENERATION_IN_PROGRESS, false);
+        costCalculation.setField(CostCalculationFields.GENERATION_START_DATE, null);
     }
 
     public void clearGeneratedCosts(final DataDefinition costCalculationDD, final Entity costCalculation) {
@@ -23,16 +23,16 @@
  */
 package com.qcadoo.mes.costCalculation.print;
 
-import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import com.lowagie.text.DocumentException;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.print.ReportGenerationService;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -61,7 +61,18 @@ public class CostCalculationReportService {
     @Autowired
     private CostCalculationPdfService costCalculationPdfService;
 
+    @Autowired
+    private ReportGenerationService reportGenerationService;
+
     public void printCostCalculationReport(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        Entity costCalculation = getCostCalculation((Long) state.getFieldValue());
+
+        if ((costCalculation != null) && reportGenerationService.isGenerationInProgress(costCalculation)) {
+            state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+
+            return;
+        }
+
         reportService.printGeneratedReport(view, state, new String[] { args[0], CostCalculationConstants.PLUGIN_IDENTIFIER,
                 CostCalculationConstants.MODEL_COST_CALCULATION });
     }
@@ -77,6 +88,10 @@ public class CostCalculationReportService {
             if (costCalculation == null) {
                 state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
 
+                return;
+            } else if (reportGenerationService.isGenerationInProgress(costCalculation)) {
+                state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+
                 return;
             } else if (StringUtils.hasText(costCalculation.getStringField(CostCalculationFields.FILE_NAME))) {
                 state.addMessage("qcadooReport.errorMessage.documentsWasNotGenerated", MessageType.FAILURE);
@@ -104,15 +119,16 @@ public class CostCalculationReportService {
 
             costCalculation = getCostCalculation((Long) state.getFieldValue());
 
-            try {
-                generateCostCalculationDocuments(state, costCalculation);
+            Locale locale = state.getLocale();
 
-                state.performEvent(view, "reset", new String[0]);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            }
+            reportGenerationService.generateAfterCommit(costCalculation, CostCalculationFields.FILE_NAME,
+                    costCalculationToGenerate -> fileService.updateReportFileName(costCalculationToGenerate,
+                            CostCalculationFields.DATE, "costCalculation.costCalculation.report.fileName"),
+                    costCalculationToGenerate -> costCalculationPdfService.generateDocument(costCalculationToGenerate, locale));
+
+            state.performEvent(view, "reset", new String[0]);
+
+            state.addMessage("basic.report.generationStarted", MessageType.INFO);
         }
     }
 
@@ -121,12 +137,4 @@ public class CostCalculationReportService {
                 CostCalculationConstants.MODEL_COST_CALCULATION).get(costCalculationId);
     }
 
-    private void generateCostCalculationDocuments(final ComponentState state, final Entity costCalculation) throws IOException,
-            DocumentException {
-        Entity costCalculationWithFileName = fileService.updateReportFileName(costCalculation, CostCalculationFields.DATE,
-                "costCalculation.costCalculation.report.fileName");
-
-        costCalculationPdfService.generateDocument(costCalculationWithFileName, state.getLocale());
-    }
-
 }
@@ -0,0 +1,179 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNormsForOrders;
+
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Orders sequence on a production line minimising total tardiness against deadlines first and total changeover time
+ * second.
+ *
+ * Search starts from orders sorted by deadline and moves single orders to other positions as long as it improves the
+ * sequence and time budget lasts, so the result is never later against deadlines than the earliest deadline first order.
+ */
+final class OrdersSequencer {
+
+    private final long startTime;
+
+    private final long[] durations;
+
+    private final long[] deadlines;
+
+    private final long[][] changeovers;
+
+    private long tardiness;
+
+    private long changeoversTime;
+
+    /**
+     * @param durations
+     *            durations of orders in millis
+     * @param deadlines
+     *            deadlines of orders in millis, {@link Long#MAX_VALUE} for orders without deadline
+     * @param changeovers
+     *            changeover time in millis from order (first index) to order (second index)
+     */
+    OrdersSequencer(final long startTime, final long[] durations, final long[] deadlines, final long[][] changeovers) {
+        this.startTime = startTime;
+        this.durations = durations;
+        this.deadlines = deadlines;
+        this.changeovers = changeovers;
+    }
+
+    /**
+     * @return indexes of orders in found sequence
+     */
+    int[] sequence(final long timeBudgetMillis) {
+        long stopTime = System.currentTimeMillis() + timeBudgetMillis;
+
+        int[] sequence = IntStream.range(0, durations.length).boxed()
+                .sorted(Comparator.comparingLong((Integer order) -> deadlines[order])).mapToInt(Integer::intValue).toArray();
+        int[] candidate = new int[sequence.length];
+
+        evaluate(sequence);
+
+        long bestTardiness = tardiness;
+        long bestChangeoversTime = changeoversTime;
+        boolean improved = true;
+
+        while (improved && System.currentTimeMillis() < stopTime) {
+            improved = false;
+
+            for (int from = 0; from < sequence.length && System.currentTimeMillis() < stopTime; ++from) {
+                for (int to = 0; to < sequence.length; ++to) {
+                    if (from == to) {
+                        continue;
+                    }
+
+                    move(sequence, from, to, candidate);
+                    evaluate(candidate);
+
+                    if (tardiness < bestTardiness || (tardiness == bestTardiness && changeoversTime < bestChangeoversTime)) {
+                        System.arraycopy(candidate, 0, sequence, 0, sequence.length);
+
+                        bestTardiness = tardiness;
+                        bestChangeoversTime = changeoversTime;
+                        improved = true;
+                    }
+                }
+            }
+        }
+
+        return sequence;
+    }
+
+    long getChangeoversTime(final int[] sequence) {
+        evaluate(sequence);
+
+        return changeoversTime;
+    }
+
+    long getTardiness(final int[] sequence) {
+        evaluate(sequence);
+
+        return tardiness;
+    }
+
+    long getDuration(final int order) {
+        return durations[order];
+    }
+
+    /**
+     * @return start times of orders in given sequence, each one after the previous order and changeover to it
+     */
+    long[] getStartTimes(final int[] sequence) {
+        long[] startTimes = new long[sequence.length];
+        long time = startTime;
+
+        for (int i = 0; i < sequence.length; ++i) {
+            int order = sequence[i];
+
+            if (i > 0) {
+                time += changeovers[sequence[i - 1]][order];
+            }
+
+            startTimes[i] = time;
+            time += durations[order];
+        }
+
+        return startTimes;
+    }
+
+    private void move(final int[] sequence, final int from, final int to, final int[] result) {
+        System.arraycopy(sequence, 0, result, 0, sequence.length);
+
+        int order = sequence[from];
+
+        if (from < to) {
+            System.arraycopy(sequence, from + 1, result, from, to - from);
+        } else {
+            System.arraycopy(sequence, to, result, to + 1, from - to);
+        }
+
+        result[to] = order;
+    }
+
+    private void evaluate(final int[] sequence) {
+        long time = startTime;
+
+        tardiness = 0;
+        changeoversTime = 0;
+
+        for (int i = 0; i < sequence.length; ++i) {
+            int order = sequence[i];
+
+            if (i > 0) {
+                long changeover = changeovers[sequence[i - 1]][order];
+
+                changeoversTime += changeover;
+                time += changeover;
+            }
+
+            time += durations[order];
+            tardiness += Math.max(0, time - deadlines[order]);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNormsForOrders;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsMatrix;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsSearchService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class OrdersSequencingService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrdersSequencingService.class);
+
+    private static final long L_DEFAULT_TIME_BUDGET_MILLIS = 2000L;
+
+    @Autowired
+    private ChangeoverNormsSearchService changeoverNormsSearchService;
+
+    public List<Entity> sequenceOrders(final List<Entity> orders, final Entity productionLine, final Date startDate) {
+        return sequenceOrders(orders, productionLine, startDate, L_DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    /**
+     * Sequences orders on the production line, so they keep their deadlines as far as possible and take as little time for
+     * changeovers between them as possible. Orders are planned one after another from the start date, each taking the time
+     * between its planned dates.
+     *
+     * @return given orders in found sequence
+     */
+    public List<Entity> sequenceOrders(final List<Entity> orders, final Entity productionLine, final Date startDate,
+            final long timeBudgetMillis) {
+        if (orders.size() < 2) {
+            return Lists.newArrayList(orders);
+        }
+
+        OrdersSequencer sequencer = createSequencer(orders, productionLine, startDate);
+        int[] sequence = sequence(sequencer, timeBudgetMillis);
+
+        List<Entity> sequencedOrders = Lists.newArrayListWithCapacity(sequence.length);
+
+        for (int order : sequence) {
+            sequencedOrders.add(orders.get(order));
+        }
+
+        return sequencedOrders;
+    }
+
+    /**
+     * Sequences orders like {@link #sequenceOrders(List, Entity, Date)} and plans them one after another from the start
+     * date, leaving time for changeovers between them. Orders get new planned dates, but aren't saved.
+     *
+     * @return given orders in found sequence
+     */
+    public List<Entity> scheduleOrders(final List<Entity> orders, final Entity productionLine, final Date startDate) {
+        OrdersSequencer sequencer = createSequencer(orders, productionLine, startDate);
+        int[] sequence = sequence(sequencer, L_DEFAULT_TIME_BUDGET_MILLIS);
+        long[] startTimes = sequencer.getStartTimes(sequence);
+
+        List<Entity> scheduledOrders = Lists.newArrayListWithCapacity(sequence.length);
+
+        for (int i = 0; i < sequence.length; ++i) {
+            Entity order = orders.get(sequence[i]);
+
+            order.setField(OrderFields.DATE_FROM, new Date(startTimes[i]));
+            order.setField(OrderFields.DATE_TO, new Date(startTimes[i] + sequencer.getDuration(sequence[i])));
+
+            scheduledOrders.add(order);
+        }
+
+        return scheduledOrders;
+    }
+
+    private OrdersSequencer createSequencer(final List<Entity> orders, final Entity productionLine, final Date startDate) {
+        int size = orders.size();
+        long[] durations = new long[size];
+        long[] deadlines = new long[size];
+        Long[] technologiesIds = new Long[size];
+        Long[] technologyGroupsIds = new Long[size];
+
+        for (int i = 0; i < size; ++i) {
+            Entity order = orders.get(i);
+            Date dateFrom = order.getDateField(OrderFields.DATE_FROM);
+            Date dateTo = order.getDateField(OrderFields.DATE_TO);
+            Date deadline = order.getDateField(OrderFields.DEADLINE);
+
+            durations[i] = (dateFrom == null || dateTo == null) ? 0L : Math.max(0L, dateTo.getTime() - dateFrom.getTime());
+            deadlines[i] = deadline == null ? Long.MAX_VALUE : deadline.getTime();
+
+            Entity technology = getTechnology(order);
+
+            if (technology != null) {
+                Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
+
+                technologiesIds[i] = technology.getId();
+                technologyGroupsIds[i] = technologyGroup == null ? null : technologyGroup.getId();
+            }
+        }
+
+        long[][] changeovers = getChangeovers(technologiesIds, technologyGroupsIds,
+                productionLine == null ? null : productionLine.getId());
+
+        return new OrdersSequencer(startDate.getTime(), durations, deadlines, changeovers);
+    }
+
+    private int[] sequence(final OrdersSequencer sequencer, final long timeBudgetMillis) {
+        long start = System.currentTimeMillis();
+        int[] sequence = sequencer.sequence(timeBudgetMillis);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("%d orders sequenced in %d ms, changeovers take %d s, tardiness %d s", sequence.length,
+                    System.currentTimeMillis() - start, sequencer.getChangeoversTime(sequence) / 1000,
+                    sequencer.getTardiness(sequence) / 1000));
+        }
+
+        return sequence;
+    }
+
+    private long[][] getChangeovers(final Long[] technologiesIds, final Long[] technologyGroupsIds, final Long productionLineId) {
+        int size = technologiesIds.length;
+        long[][] changeovers = new long[size][size];
+
+        ChangeoverNormsMatrix changeoverNormsMatrix = changeoverNormsSearchService.getChangeoverNormsMatrix();
+
+        for (int from = 0; from < size; ++from) {
+            for (int to = 0; to < size; ++to) {
+                if (from == to || technologiesIds[from] == null || technologiesIds[to] == null) {
+                    continue;
+                }
+
+                Integer duration = changeoverNormsMatrix.findBestMatchingDuration(technologiesIds[from],
+                        technologyGroupsIds[from], technologiesIds[to], technologyGroupsIds[to], productionLineId);
+
+                changeovers[from][to] = Objects.isNull(duration) ? 0L : duration * 1000L;
+            }
+        }
+
+        return changeovers;
+    }
+
+    private Entity getTechnology(final Entity order) {
+        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
+
+        if (technology == null) {
+            technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        }
+
+        return technology;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNormsForOrders.listeners;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.qcadoo.mes.lineChangeoverNormsForOrders.OrdersSequencingService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class OrdersPlanningListListenersLCNFO {
+
+    private static final String L_SEQUENCE_ORDERS = "lineChangeoverNormsForOrders.ordersPlanningList.sequenceOrders";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private OrdersSequencingService ordersSequencingService;
+
+    @Transactional
+    public void sequenceOrders(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        GridComponent ordersGrid = (GridComponent) state;
+
+        List<Entity> orders = getOrderDD().find().add(SearchRestrictions.in("id", ordersGrid.getSelectedEntitiesIds())).list()
+                .getEntities();
+
+        if (!canBeSequenced(view, orders)) {
+            return;
+        }
+
+        Entity productionLine = orders.get(0).getBelongsToField(OrderFields.PRODUCTION_LINE);
+        Date startDate = orders.stream().map(order -> order.getDateField(OrderFields.DATE_FROM)).min(Date::compareTo).get();
+
+        for (Entity order : ordersSequencingService.scheduleOrders(orders, productionLine, startDate)) {
+            Entity savedOrder = order.getDataDefinition().save(order);
+
+            if (!savedOrder.isValid()) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+
+                view.addMessage(L_SEQUENCE_ORDERS + ".orderNotSaved", MessageType.FAILURE,
+                        savedOrder.getStringField(OrderFields.NUMBER));
+
+                return;
+            }
+        }
+
+        view.addMessage(L_SEQUENCE_ORDERS + ".success", MessageType.SUCCESS);
+    }
+
+    private boolean canBeSequenced(final ViewDefinitionState view, final List<Entity> orders) {
+        if (orders.size() < 2) {
+            view.addMessage(L_SEQUENCE_ORDERS + ".tooFewOrders", MessageType.INFO);
+
+            return false;
+        }
+
+        Long productionLineId = getProductionLineId(orders.get(0));
+
+        for (Entity order : orders) {
+            String number = order.getStringField(OrderFields.NUMBER);
+
+            if (OrderState.of(order) != OrderState.PENDING) {
+                view.addMessage(L_SEQUENCE_ORDERS + ".orderNotPending", MessageType.FAILURE, number);
+
+                return false;
+            }
+
+            if (productionLineId == null || !Objects.equals(productionLineId, getProductionLineId(order))) {
+                view.addMessage(L_SEQUENCE_ORDERS + ".differentProductionLines", MessageType.FAILURE);
+
+                return false;
+            }
+
+            if (order.getDateField(OrderFields.DATE_FROM) == null || order.getDateField(OrderFields.DATE_TO) == null) {
+                view.addMessage(L_SEQUENCE_ORDERS + ".orderWithoutDates", MessageType.FAILURE, number);
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Long getProductionLineId(final Entity order) {
+        Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+
+        return productionLine == null ? null : productionLine.getId();
+    }
+
+    private DataDefinition getOrderDD() {
+        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
+    }
+
+}
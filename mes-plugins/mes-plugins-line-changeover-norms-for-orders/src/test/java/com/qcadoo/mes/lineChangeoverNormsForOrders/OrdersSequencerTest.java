@@ -0,0 +1,104 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNormsForOrders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OrdersSequencerTest {
+
+    private static final long L_HOUR = 3600000L;
+
+    private static final long L_NO_DEADLINE = Long.MAX_VALUE;
+
+    @Test
+    public final void shouldGroupOrdersWithSameTechnology() {
+        // given
+        long[] durations = { L_HOUR, L_HOUR, L_HOUR, L_HOUR };
+        long[] deadlines = { L_NO_DEADLINE, L_NO_DEADLINE, L_NO_DEADLINE, L_NO_DEADLINE };
+        // orders 0 and 2 use one technology, orders 1 and 3 another one
+        long[][] changeovers = { { 0, L_HOUR, 0, L_HOUR }, { L_HOUR, 0, L_HOUR, 0 }, { 0, L_HOUR, 0, L_HOUR },
+                { L_HOUR, 0, L_HOUR, 0 } };
+
+        OrdersSequencer sequencer = new OrdersSequencer(0L, durations, deadlines, changeovers);
+
+        // when
+        int[] sequence = sequencer.sequence(1000L);
+
+        // then
+        assertEquals(3 * L_HOUR, sequencer.getChangeoversTime(new int[] { 0, 1, 2, 3 }));
+        assertEquals(L_HOUR, sequencer.getChangeoversTime(sequence));
+        assertEquals(0L, sequencer.getTardiness(sequence));
+    }
+
+    @Test
+    public final void shouldKeepDeadlinesBeforeChangeovers() {
+        // given
+        long[] durations = { L_HOUR, L_HOUR, L_HOUR };
+        long[] deadlines = { L_HOUR, 2 * L_HOUR + L_HOUR / 2, L_NO_DEADLINE };
+        // grouping orders 0 and 2 would make order 1 late
+        long[][] changeovers = { { 0, L_HOUR / 4, 0 }, { L_HOUR / 4, 0, L_HOUR / 4 }, { 0, L_HOUR / 4, 0 } };
+
+        OrdersSequencer sequencer = new OrdersSequencer(0L, durations, deadlines, changeovers);
+
+        // when
+        int[] sequence = sequencer.sequence(1000L);
+
+        // then
+        assertArrayEquals(new int[] { 0, 1, 2 }, sequence);
+        assertEquals(0L, sequencer.getTardiness(sequence));
+    }
+
+    @Test
+    public final void shouldSequenceSingleOrder() {
+        // given
+        OrdersSequencer sequencer = new OrdersSequencer(0L, new long[] { L_HOUR }, new long[] { 0L }, new long[][] { { 0 } });
+
+        // when
+        int[] sequence = sequencer.sequence(1000L);
+
+        // then
+        assertArrayEquals(new int[] { 0 }, sequence);
+        assertEquals(L_HOUR, sequencer.getTardiness(sequence));
+    }
+
+    @Test
+    public final void shouldStartOrdersAfterChangeovers() {
+        // given
+        long[] durations = { L_HOUR, 2 * L_HOUR, L_HOUR };
+        long[] deadlines = { L_NO_DEADLINE, L_NO_DEADLINE, L_NO_DEADLINE };
+        long[][] changeovers = { { 0, L_HOUR / 2, 0 }, { L_HOUR / 4, 0, L_HOUR / 4 }, { 0, L_HOUR / 2, 0 } };
+
+        OrdersSequencer sequencer = new OrdersSequencer(L_HOUR, durations, deadlines, changeovers);
+
+        // when
+        long[] startTimes = sequencer.getStartTimes(new int[] { 0, 1, 2 });
+
+        // then
+        assertArrayEquals(new long[] { L_HOUR, 2 * L_HOUR + L_HOUR / 2, 4 * L_HOUR + 3 * L_HOUR / 4 }, startTimes);
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNormsForOrders.listeners;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.lineChangeoverNormsForOrders.OrdersSequencingService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+public class OrdersPlanningListListenersLCNFOTest {
+
+    private static final String L_SEQUENCE_ORDERS = "lineChangeoverNormsForOrders.ordersPlanningList.sequenceOrders";
+
+    private OrdersPlanningListListenersLCNFO ordersPlanningListListenersLCNFO;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private OrdersSequencingService ordersSequencingService;
+
+    @Mock
+    private ViewDefinitionState view;
+
+    @Mock
+    private GridComponent ordersGrid;
+
+    @Mock
+    private DataDefinition orderDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private Entity firstOrder, secondOrder, productionLine;
+
+    private final Date firstDateFrom = new Date(2000000L);
+
+    private final Date secondDateFrom = new Date(1000000L);
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ordersPlanningListListenersLCNFO = new OrdersPlanningListListenersLCNFO();
+
+        ReflectionTestUtils.setField(ordersPlanningListListenersLCNFO, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ordersPlanningListListenersLCNFO, "ordersSequencingService", ordersSequencingService);
+
+        given(ordersGrid.getSelectedEntitiesIds()).willReturn(Sets.newHashSet(1L, 2L));
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(orderDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(firstOrder, secondOrder));
+
+        given(productionLine.getId()).willReturn(1L);
+
+        stubOrder(firstOrder, "ORDER-1", firstDateFrom);
+        stubOrder(secondOrder, "ORDER-2", secondDateFrom);
+    }
+
+    @Test
+    public void shouldScheduleOrdersFromEarliestStartDate() {
+        // given
+        List<Entity> scheduledOrders = Lists.newArrayList(secondOrder, firstOrder);
+
+        given(ordersSequencingService.scheduleOrders(anyListOf(Entity.class), eq(productionLine), eq(secondDateFrom)))
+                .willReturn(scheduledOrders);
+
+        // when
+        ordersPlanningListListenersLCNFO.sequenceOrders(view, ordersGrid, null);
+
+        // then
+        verify(orderDD).save(firstOrder);
+        verify(orderDD).save(secondOrder);
+        verify(view).addMessage(L_SEQUENCE_ORDERS + ".success", MessageType.SUCCESS);
+    }
+
+    @Test
+    public void shouldNotSequenceOrdersWhichAreNotPending() {
+        // given
+        given(secondOrder.getStringField(OrderFields.STATE)).willReturn(OrderStateStringValues.ACCEPTED);
+
+        // when
+        ordersPlanningListListenersLCNFO.sequenceOrders(view, ordersGrid, null);
+
+        // then
+        verify(view).addMessage(L_SEQUENCE_ORDERS + ".orderNotPending", MessageType.FAILURE, "ORDER-2");
+        verify(ordersSequencingService, never()).scheduleOrders(anyListOf(Entity.class), any(Entity.class), any(Date.class));
+    }
+
+    @Test
+    public void shouldNotSequenceOrdersFromDifferentProductionLines() {
+        // given
+        given(secondOrder.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(null);
+
+        // when
+        ordersPlanningListListenersLCNFO.sequenceOrders(view, ordersGrid, null);
+
+        // then
+        verify(view).addMessage(L_SEQUENCE_ORDERS + ".differentProductionLines", MessageType.FAILURE);
+        verify(ordersSequencingService, never()).scheduleOrders(anyListOf(Entity.class), any(Entity.class), any(Date.class));
+    }
+
+    private void stubOrder(final Entity order, final String number, final Date dateFrom) {
+        given(order.getStringField(OrderFields.NUMBER)).willReturn(number);
+        given(order.getStringField(OrderFields.STATE)).willReturn(OrderStateStringValues.PENDING);
+        given(order.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(productionLine);
+        given(order.getDateField(OrderFields.DATE_FROM)).willReturn(dateFrom);
+        given(order.getDateField(OrderFields.DATE_TO)).willReturn(new Date(dateFrom.getTime() + 3600000L));
+        given(order.getDataDefinition()).willReturn(orderDD);
+        given(orderDD.save(order)).willReturn(order);
+        given(order.isValid()).willReturn(true);
+    }
+
+}
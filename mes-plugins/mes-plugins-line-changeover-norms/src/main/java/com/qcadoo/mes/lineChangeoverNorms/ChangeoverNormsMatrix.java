@@ -0,0 +1,161 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Changeover norms indexed by pairs of technologies or technology groups and production line, so the best matching norm
+ * for a pair of orders is found with a few map lookups instead of a query.
+ *
+ * Matching is the same as in {@link ChangeoverNormsSearchServiceImpl#findBestMatching}: norms for technologies go before
+ * norms for technology groups, norms with production line before norms without it, and the newest norm wins.
+ *
+ * Matrix is an immutable snapshot of norms, so callers searching many pairs of orders at once can get it from
+ * {@link ChangeoverNormsSearchService#getChangeoverNormsMatrix()} and use it without going to the database again.
+ */
+public class ChangeoverNormsMatrix {
+
+    private static final Comparator<Norm> BEST_MATCHING_FIRST = Comparator.comparing((Norm norm) -> norm.changeoverType)
+            .thenComparing(norm -> norm.productionLineId == null).thenComparing(norm -> -norm.id);
+
+    private final Map<List<Long>, Norm> normsForTechnologies = Maps.newHashMap();
+
+    private final Map<List<Long>, Norm> normsForTechnologyGroups = Maps.newHashMap();
+
+    ChangeoverNormsMatrix(final Collection<Norm> norms) {
+        for (Norm norm : norms) {
+            if (norm.fromTechnologyId != null && norm.toTechnologyId != null) {
+                normsForTechnologies.merge(Arrays.asList(norm.fromTechnologyId, norm.toTechnologyId, norm.productionLineId),
+                        norm, ChangeoverNormsMatrix::better);
+            }
+            if (norm.fromTechnologyGroupId != null && norm.toTechnologyGroupId != null) {
+                normsForTechnologyGroups.merge(
+                        Arrays.asList(norm.fromTechnologyGroupId, norm.toTechnologyGroupId, norm.productionLineId), norm,
+                        ChangeoverNormsMatrix::better);
+            }
+        }
+    }
+
+    /**
+     * @return duration of the best matching changeover norm or null if there is none
+     */
+    public Integer findBestMatchingDuration(final Long fromTechnologyId, final Long fromTechnologyGroupId,
+            final Long toTechnologyId, final Long toTechnologyGroupId, final Long productionLineId) {
+        Norm norm = findBestMatching(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId,
+                productionLineId);
+
+        return norm == null ? null : norm.getDuration();
+    }
+
+    Norm findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId) {
+        boolean matchTechnologies = fromTechnologyId != null && toTechnologyId != null;
+        boolean matchTechnologyGroups = fromTechnologyGroupId != null && toTechnologyGroupId != null;
+
+        Preconditions.checkArgument(matchTechnologies || matchTechnologyGroups,
+                "you have to provide pair of technologies or pair of technology groups.");
+
+        Norm bestMatching = null;
+
+        if (matchTechnologies) {
+            bestMatching = better(bestMatching,
+                    find(normsForTechnologies, fromTechnologyId, toTechnologyId, productionLineId));
+        }
+        if (matchTechnologyGroups) {
+            bestMatching = better(bestMatching,
+                    find(normsForTechnologyGroups, fromTechnologyGroupId, toTechnologyGroupId, productionLineId));
+        }
+
+        return bestMatching;
+    }
+
+    private Norm find(final Map<List<Long>, Norm> norms, final Long fromId, final Long toId, final Long productionLineId) {
+        Norm norm = norms.get(Arrays.asList(fromId, toId, null));
+
+        if (productionLineId != null) {
+            norm = better(norm, norms.get(Arrays.asList(fromId, toId, productionLineId)));
+        }
+
+        return norm;
+    }
+
+    private static Norm better(final Norm first, final Norm second) {
+        if (first == null || second == null) {
+            return first == null ? second : first;
+        }
+
+        return BEST_MATCHING_FIRST.compare(first, second) <= 0 ? first : second;
+    }
+
+    static final class Norm {
+
+        private final long id;
+
+        private final String changeoverType;
+
+        private final Long fromTechnologyId;
+
+        private final Long toTechnologyId;
+
+        private final Long fromTechnologyGroupId;
+
+        private final Long toTechnologyGroupId;
+
+        private final Long productionLineId;
+
+        private final Integer duration;
+
+        Norm(final long id, final String changeoverType, final Long fromTechnologyId, final Long toTechnologyId,
+                final Long fromTechnologyGroupId, final Long toTechnologyGroupId, final Long productionLineId,
+                final Integer duration) {
+            this.id = id;
+            this.changeoverType = Objects.toString(changeoverType, "");
+            this.fromTechnologyId = fromTechnologyId;
+            this.toTechnologyId = toTechnologyId;
+            this.fromTechnologyGroupId = fromTechnologyGroupId;
+            this.toTechnologyGroupId = toTechnologyGroupId;
+            this.productionLineId = productionLineId;
+            this.duration = duration;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        Integer getDuration() {
+            return duration;
+        }
+
+    }
+
+}
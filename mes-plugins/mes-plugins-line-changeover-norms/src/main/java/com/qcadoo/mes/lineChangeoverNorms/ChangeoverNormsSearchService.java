@@ -33,6 +33,26 @@ public interface ChangeoverNormsSearchService {
     Entity findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
             final Long toTechnologyGroupId, final Long productionLineId);
 
+    /**
+     * Same as {@link #findBestMatching(Long, Long, Long, Long, Long)}, but returns only duration of the norm and doesn't touch
+     * the database once norms are loaded, so it can be called for many pairs of orders.
+     *
+     * @return duration of the best matching changeover norm or null if there is none
+     */
+    Integer findBestMatchingDuration(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId);
+
+    /**
+     * Returns changeover norms checked against the database, so they can be searched for many pairs of orders without further
+     * queries. Norms are checked at most once per transaction.
+     */
+    ChangeoverNormsMatrix getChangeoverNormsMatrix();
+
+    /**
+     * Drops loaded changeover norms, so they are loaded again on next search. Has to be called when norms change.
+     */
+    void evictChangeoverNormsMatrix();
+
     Entity searchMatchingChangeroverNormsForTechnologyWithLine(final Entity fromTechnology, final Entity toTechnology,
             final Entity productionLine);
 
@@ -28,10 +28,21 @@ import static com.qcadoo.model.api.search.SearchRestrictions.eq;
 import static com.qcadoo.model.api.search.SearchRestrictions.isNull;
 import static com.qcadoo.model.api.search.SearchRestrictions.or;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Preconditions;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsMatrix.Norm;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsConstants;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.model.api.DataDefinition;
@@ -42,18 +53,158 @@ import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchDisjunction;
 import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 @Service
 public class ChangeoverNormsSearchServiceImpl implements ChangeoverNormsSearchService {
 
     private static final String DOT_ID = ".id";
 
+    private static final String L_WATERMARK_QUERY = "SELECT count(*) || '-' || COALESCE(max(id), 0) || '-' "
+            + "|| COALESCE(sum(entityversion), 0) FROM linechangeovernorms_linechangeovernorms";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    /*
+     * Matrices are node local, so each one is kept with the watermark of norms it was built from and rebuilt when the
+     * watermark in the database differs - also after changes made on other nodes. A matrix built while an eviction was
+     * running is not stored.
+     */
+    private final Map<Integer, TenantChangeoverNormsMatrix> changeoverNormsMatrices = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
     @Override
     public Entity findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
             final Long toTechnologyGroupId, final Long productionLineId) {
+        Norm norm = getChangeoverNormsMatrix().findBestMatching(fromTechnologyId, fromTechnologyGroupId, toTechnologyId,
+                toTechnologyGroupId, productionLineId);
+
+        if (norm == null) {
+            return null;
+        }
+
+        Entity changeoverNorm = getChangeoverDataDef().get(norm.getId());
+
+        if (changeoverNorm == null) {
+            evictChangeoverNormsMatrix();
+
+            return findBestMatchingInDatabase(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId,
+                    productionLineId);
+        }
+
+        return changeoverNorm;
+    }
+
+    @Override
+    public Integer findBestMatchingDuration(final Long fromTechnologyId, final Long fromTechnologyGroupId,
+            final Long toTechnologyId, final Long toTechnologyGroupId, final Long productionLineId) {
+        return getChangeoverNormsMatrix().findBestMatchingDuration(fromTechnologyId, fromTechnologyGroupId, toTechnologyId,
+                toTechnologyGroupId, productionLineId);
+    }
+
+    @Override
+    public void evictChangeoverNormsMatrix() {
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        removeChangeoverNormsMatrix(tenantId);
+
+        TransactionSynchronizationManager.unbindResourceIfPossible(this);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    removeChangeoverNormsMatrix(tenantId);
+                }
+            });
+        }
+    }
+
+    private void removeChangeoverNormsMatrix(final int tenantId) {
+        generation.incrementAndGet();
+
+        changeoverNormsMatrices.remove(tenantId);
+    }
+
+    @Override
+    public ChangeoverNormsMatrix getChangeoverNormsMatrix() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return getValidatedChangeoverNormsMatrix();
+        }
+
+        ChangeoverNormsMatrix matrix = (ChangeoverNormsMatrix) TransactionSynchronizationManager.getResource(this);
+
+        if (matrix == null) {
+            matrix = getValidatedChangeoverNormsMatrix();
+
+            TransactionSynchronizationManager.bindResource(this, matrix);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ChangeoverNormsSearchServiceImpl.this);
+                }
+            });
+        }
+
+        return matrix;
+    }
+
+    private ChangeoverNormsMatrix getValidatedChangeoverNormsMatrix() {
+        int tenantId = multiTenantService.getCurrentTenantId();
+        String watermark = jdbcTemplate.queryForObject(L_WATERMARK_QUERY, Collections.emptyMap(), String.class);
+
+        TenantChangeoverNormsMatrix tenantMatrix = changeoverNormsMatrices.get(tenantId);
+
+        if (tenantMatrix != null && tenantMatrix.watermark.equals(watermark)) {
+            return tenantMatrix.matrix;
+        }
+
+        long loadGeneration = generation.get();
+
+        tenantMatrix = new TenantChangeoverNormsMatrix(watermark, new ChangeoverNormsMatrix(getNorms()));
+
+        if (generation.get() == loadGeneration) {
+            changeoverNormsMatrices.put(tenantId, tenantMatrix);
+
+            if (generation.get() != loadGeneration) {
+                changeoverNormsMatrices.remove(tenantId, tenantMatrix);
+            }
+        }
+
+        return tenantMatrix.matrix;
+    }
+
+    private List<Norm> getNorms() {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT norm.id AS id, norm.changeoverType AS changeoverType, norm.duration AS duration, ");
+        query.append("fromTechnology.id AS fromTechnologyId, toTechnology.id AS toTechnologyId, ");
+        query.append("fromTechnologyGroup.id AS fromTechnologyGroupId, toTechnologyGroup.id AS toTechnologyGroupId, ");
+        query.append("productionLine.id AS productionLineId ");
+        query.append("FROM #lineChangeoverNorms_lineChangeoverNorms norm ");
+        query.append("LEFT JOIN norm.fromTechnology fromTechnology LEFT JOIN norm.toTechnology toTechnology ");
+        query.append("LEFT JOIN norm.fromTechnologyGroup fromTechnologyGroup LEFT JOIN norm.toTechnologyGroup toTechnologyGroup ");
+        query.append("LEFT JOIN norm.productionLine productionLine");
+
+        return getChangeoverDataDef().find(query.toString()).list().getEntities().stream()
+                .map(norm -> new Norm(norm.getLongField("id"), norm.getStringField("changeoverType"),
+                        norm.getLongField("fromTechnologyId"), norm.getLongField("toTechnologyId"),
+                        norm.getLongField("fromTechnologyGroupId"), norm.getLongField("toTechnologyGroupId"),
+                        norm.getLongField("productionLineId"), norm.getIntegerField("duration")))
+                .collect(Collectors.toList());
+    }
+
+    private Entity findBestMatchingInDatabase(final Long fromTechnologyId, final Long fromTechnologyGroupId,
+            final Long toTechnologyId, final Long toTechnologyGroupId, final Long productionLineId) {
         SearchCriteriaBuilder scb = getChangeoverDataDef().find();
 
         scb.add(getTechnologiesRestrictions(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId));
@@ -142,4 +293,17 @@ public class ChangeoverNormsSearchServiceImpl implements ChangeoverNormsSearchSe
                 LineChangeoverNormsConstants.MODEL_LINE_CHANGEOVER_NORMS);
     }
 
+    private static final class TenantChangeoverNormsMatrix {
+
+        private final String watermark;
+
+        private final ChangeoverNormsMatrix matrix;
+
+        private TenantChangeoverNormsMatrix(final String watermark, final ChangeoverNormsMatrix matrix) {
+            this.watermark = watermark;
+            this.matrix = matrix;
+        }
+
+    }
+
 }
@@ -0,0 +1,108 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsMatrix.Norm;
+
+public class ChangeoverNormsMatrixTest {
+
+    private static final String FOR_TECHNOLOGY = "01forTechnology";
+
+    private static final String FOR_TECHNOLOGY_GROUP = "02forTechnologyGroup";
+
+    private static final Long FROM_TECH_ID = 1L;
+
+    private static final Long TO_TECH_ID = 2L;
+
+    private static final Long FROM_TECH_GROUP_ID = 101L;
+
+    private static final Long TO_TECH_GROUP_ID = 202L;
+
+    private static final Long PRODUCTION_LINE_ID = 1001L;
+
+    private static final Long OTHER_PRODUCTION_LINE_ID = 1002L;
+
+    @Test
+    public void shouldPreferNormForTechnologiesWithProductionLine() {
+        // given
+        ChangeoverNormsMatrix matrix = new ChangeoverNormsMatrix(Arrays.asList(
+                new Norm(1L, FOR_TECHNOLOGY_GROUP, null, null, FROM_TECH_GROUP_ID, TO_TECH_GROUP_ID, PRODUCTION_LINE_ID, 10),
+                new Norm(2L, FOR_TECHNOLOGY, FROM_TECH_ID, TO_TECH_ID, null, null, null, 20),
+                new Norm(3L, FOR_TECHNOLOGY, FROM_TECH_ID, TO_TECH_ID, null, null, PRODUCTION_LINE_ID, 30),
+                new Norm(4L, FOR_TECHNOLOGY, FROM_TECH_ID, TO_TECH_ID, null, null, OTHER_PRODUCTION_LINE_ID, 40)));
+
+        // when
+        Norm norm = matrix.findBestMatching(FROM_TECH_ID, FROM_TECH_GROUP_ID, TO_TECH_ID, TO_TECH_GROUP_ID,
+                PRODUCTION_LINE_ID);
+
+        // then
+        Assert.assertEquals(3L, norm.getId());
+    }
+
+    @Test
+    public void shouldFallBackToNormForTechnologyGroupsAndNewestNorm() {
+        // given
+        ChangeoverNormsMatrix matrix = new ChangeoverNormsMatrix(Arrays.asList(
+                new Norm(1L, FOR_TECHNOLOGY_GROUP, null, null, FROM_TECH_GROUP_ID, TO_TECH_GROUP_ID, null, 10),
+                new Norm(2L, FOR_TECHNOLOGY_GROUP, null, null, FROM_TECH_GROUP_ID, TO_TECH_GROUP_ID, null, 20),
+                new Norm(3L, FOR_TECHNOLOGY, TO_TECH_ID, FROM_TECH_ID, null, null, null, 30)));
+
+        // when
+        Norm norm = matrix.findBestMatching(FROM_TECH_ID, FROM_TECH_GROUP_ID, TO_TECH_ID, TO_TECH_GROUP_ID,
+                PRODUCTION_LINE_ID);
+
+        // then
+        Assert.assertEquals(2L, norm.getId());
+        Assert.assertEquals(Integer.valueOf(20), norm.getDuration());
+    }
+
+    @Test
+    public void shouldNotMatchNormsWithProductionLineWhenLineIsNotGiven() {
+        // given
+        ChangeoverNormsMatrix matrix = new ChangeoverNormsMatrix(Arrays.asList(new Norm(1L, FOR_TECHNOLOGY, FROM_TECH_ID,
+                TO_TECH_ID, null, null, PRODUCTION_LINE_ID, 10)));
+
+        // when
+        Norm norm = matrix.findBestMatching(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        // then
+        Assert.assertNull(norm);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionWithoutPairOfTechnologiesOrGroups() {
+        // given
+        ChangeoverNormsMatrix matrix = new ChangeoverNormsMatrix(Arrays.<Norm> asList());
+
+        // when
+        matrix.findBestMatching(FROM_TECH_ID, null, null, TO_TECH_GROUP_ID, PRODUCTION_LINE_ID);
+    }
+
+}
@@ -0,0 +1,232 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ChangeoverNormsSearchServiceImplTest {
+
+    private static final String FOR_TECHNOLOGY = "01forTechnology";
+
+    private static final Long FROM_TECH_ID = 1L;
+
+    private static final Long TO_TECH_ID = 2L;
+
+    private ChangeoverNormsSearchServiceImpl changeoverNormsSearchService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition changeoverDataDefinition;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private SearchQueryBuilder searchQueryBuilder;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        changeoverNormsSearchService = new ChangeoverNormsSearchServiceImpl();
+
+        ReflectionTestUtils.setField(changeoverNormsSearchService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(changeoverNormsSearchService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(changeoverNormsSearchService, "multiTenantService", multiTenantService);
+
+        given(dataDefinitionService.get(LineChangeoverNormsConstants.PLUGIN_IDENTIFIER,
+                LineChangeoverNormsConstants.MODEL_LINE_CHANGEOVER_NORMS)).willReturn(changeoverDataDefinition);
+        given(changeoverDataDefinition.find(anyString())).willReturn(searchQueryBuilder);
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+
+        stubWatermark("1-1-0");
+        stubNorm(10);
+    }
+
+    @After
+    public final void cleanUp() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(changeoverNormsSearchService);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public final void shouldReuseMatrixWhileNormsDontChange() {
+        // when
+        Integer firstDuration = findDuration();
+        Integer secondDuration = findDuration();
+
+        // then
+        assertEquals(Integer.valueOf(10), firstDuration);
+        assertEquals(Integer.valueOf(10), secondDuration);
+        verify(changeoverDataDefinition, times(1)).find(anyString());
+    }
+
+    @Test
+    public final void shouldRebuildMatrixWhenWatermarkChanges() {
+        // given
+        findDuration();
+
+        stubWatermark("1-1-1");
+        stubNorm(20);
+
+        // when
+        Integer duration = findDuration();
+
+        // then
+        assertEquals(Integer.valueOf(20), duration);
+        verify(changeoverDataDefinition, times(2)).find(anyString());
+    }
+
+    @Test
+    public final void shouldKeepMatricesOfTenantsApart() {
+        // given
+        findDuration();
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(2);
+        stubNorm(20);
+
+        // when
+        Integer otherTenantDuration = findDuration();
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+
+        Integer duration = findDuration();
+
+        // then
+        assertEquals(Integer.valueOf(20), otherTenantDuration);
+        assertEquals(Integer.valueOf(10), duration);
+        verify(changeoverDataDefinition, times(2)).find(anyString());
+    }
+
+    @Test
+    public final void shouldRebuildMatrixAfterEviction() {
+        // given
+        findDuration();
+
+        stubNorm(20);
+
+        // when
+        changeoverNormsSearchService.evictChangeoverNormsMatrix();
+
+        Integer duration = findDuration();
+
+        // then
+        assertEquals(Integer.valueOf(20), duration);
+        verify(changeoverDataDefinition, times(2)).find(anyString());
+    }
+
+    @Test
+    public final void shouldReadWatermarkOncePerTransaction() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        Integer firstDuration = findDuration();
+        Integer secondDuration = changeoverNormsSearchService.getChangeoverNormsMatrix().findBestMatchingDuration(FROM_TECH_ID,
+                null, TO_TECH_ID, null, null);
+
+        // then
+        assertEquals(Integer.valueOf(10), firstDuration);
+        assertEquals(Integer.valueOf(10), secondDuration);
+        verify(jdbcTemplate, times(1)).queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(String.class));
+    }
+
+    @Test
+    public final void shouldReadWatermarkAgainAfterEvictionInTransaction() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        findDuration();
+
+        stubWatermark("1-1-1");
+        stubNorm(20);
+
+        // when
+        changeoverNormsSearchService.evictChangeoverNormsMatrix();
+
+        Integer duration = findDuration();
+
+        // then
+        assertEquals(Integer.valueOf(20), duration);
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(String.class));
+    }
+
+    private Integer findDuration() {
+        return changeoverNormsSearchService.findBestMatchingDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+    }
+
+    private void stubWatermark(final String watermark) {
+        given(jdbcTemplate.queryForObject(anyString(), anyMapOf(String.class, Object.class), eq(String.class))).willReturn(
+                watermark);
+    }
+
+    private void stubNorm(final int duration) {
+        Entity norm = mock(Entity.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(norm.getLongField("id")).willReturn(1L);
+        given(norm.getStringField("changeoverType")).willReturn(FOR_TECHNOLOGY);
+        given(norm.getLongField("fromTechnologyId")).willReturn(FROM_TECH_ID);
+        given(norm.getLongField("toTechnologyId")).willReturn(TO_TECH_ID);
+        given(norm.getIntegerField("duration")).willReturn(duration);
+
+        given(searchResult.getEntities()).willReturn(Collections.singletonList(norm));
+        given(searchQueryBuilder.list()).willReturn(searchResult);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.qcadoo.mes.materialFlowResources;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+
+/**
+ * Quantities reserved by positions validated earlier in the same batch. Those positions are not saved yet, so their
+ * reservations are not visible in resource stock and have to be subtracted from available quantities by hand.
+ */
+public class BatchReservedQuantities {
+
+    private final Table<Long, Long, BigDecimal> reservedForLocationAndProduct = HashBasedTable.create();
+
+    private final Map<Long, BigDecimal> reservedForResource = Maps.newHashMap();
+
+    public BigDecimal getReservedQuantity(final Long locationId, final Long productId) {
+        if (locationId == null || productId == null) {
+            return BigDecimal.ZERO;
+        }
+
+        BigDecimal reservedQuantity = reservedForLocationAndProduct.get(locationId, productId);
+
+        return reservedQuantity == null ? BigDecimal.ZERO : reservedQuantity;
+    }
+
+    public BigDecimal getReservedQuantity(final Long resourceId) {
+        if (resourceId == null) {
+            return BigDecimal.ZERO;
+        }
+
+        return reservedForResource.getOrDefault(resourceId, BigDecimal.ZERO);
+    }
+
+    public void reserve(final Long locationId, final Long productId, final Long resourceId, final BigDecimal quantity) {
+        if (quantity == null) {
+            return;
+        }
+
+        if (locationId != null && productId != null) {
+            reservedForLocationAndProduct.put(locationId, productId, getReservedQuantity(locationId, productId).add(quantity));
+        }
+
+        if (resourceId != null) {
+            reservedForResource.merge(resourceId, quantity, BigDecimal::add);
+        }
+    }
+
+}
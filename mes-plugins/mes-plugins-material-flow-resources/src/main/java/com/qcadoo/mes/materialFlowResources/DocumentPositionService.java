@@ -3,9 +3,11 @@ package com.qcadoo.mes.materialFlowResources;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,12 +15,16 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.BasicException;
 import com.qcadoo.mes.basic.GridResponse;
 import com.qcadoo.mes.basic.LookupUtils;
 import com.qcadoo.mes.basic.controllers.dataProvider.DataProvider;
@@ -118,6 +124,85 @@ public class DocumentPositionService {
         }
     }
 
+    /**
+     * Creates many positions at once. Positions are validated one by one, valid ones are inserted with single batch together
+     * with their reservations. Quantities of positions accepted earlier in the batch count as reserved when later positions
+     * are validated.
+     *
+     * @param documentPositionVOs
+     *            positions to create
+     * @return validation errors of positions which were not created, by index of position in given list
+     */
+    @Transactional
+    public Map<Integer, String> createPositions(final List<DocumentPositionDTO> documentPositionVOs) {
+        Map<Integer, String> errors = Maps.newLinkedHashMap();
+        List<Map<String, Object>> positionsParams = Lists.newArrayList();
+        BatchReservedQuantities batchReservedQuantities = new BatchReservedQuantities();
+
+        for (int index = 0; index < documentPositionVOs.size(); index++) {
+            DocumentPositionDTO documentPositionVO = documentPositionVOs.get(index);
+
+            if (documentPositionVO == null) {
+                errors.put(index, "documentGrid.required.documentPosition");
+
+                continue;
+            } else if (documentPositionVO.getDocument() == null) {
+                errors.put(index, "documentGrid.required.documentPosition.document");
+
+                continue;
+            }
+
+            try {
+                Map<String, Object> params = validator.validateAndTryMapBeforeCreate(documentPositionVO,
+                        batchReservedQuantities);
+
+                params.put("resourcenumber", documentPositionVO.getResource());
+
+                positionsParams.add(params);
+            } catch (BasicException e) {
+                errors.put(index, e.getMessage());
+            } catch (EmptyResultDataAccessException e) {
+                errors.put(index, "documentGrid.error.position.document.notFound");
+            }
+        }
+
+        if (positionsParams.isEmpty()) {
+            return errors;
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('materialflowresources_position_id_seq') FROM generate_series(1, :count)",
+                Collections.singletonMap("count", positionsParams.size()), Long.class);
+
+        for (int index = 0; index < positionsParams.size(); index++) {
+            positionsParams.get(index).put("id", ids.get(index));
+        }
+
+        // positions may map to different sets of columns, so each set is inserted with its own statement
+        Map<Set<String>, List<Map<String, Object>>> positionsParamsByColumns = positionsParams.stream().collect(
+                Collectors.groupingBy(params -> Sets.newLinkedHashSet(params.keySet()), LinkedHashMap::new,
+                        Collectors.toList()));
+
+        positionsParamsByColumns.forEach(this::insertPositions);
+
+        reservationsService.createReservationsFromDocumentPositions(positionsParams);
+
+        positionsParams.stream().map(params -> (Long) params.get("document_id")).distinct()
+                .forEach(this::updateDocumentPositionsNumbers);
+
+        return errors;
+    }
+
+    private void insertPositions(final Set<String> columns, final List<Map<String, Object>> positionsParams) {
+        String keys = columns.stream().collect(Collectors.joining(", "));
+        String values = columns.stream().map(key -> ":" + key).collect(Collectors.joining(", "));
+
+        String query = String.format("INSERT INTO materialflowresources_position (%s) VALUES (%s)", keys, values);
+
+        jdbcTemplate.batchUpdate(query, positionsParams.stream().map(MapSqlParameterSource::new)
+                .toArray(SqlParameterSource[]::new));
+    }
+
     public void update(final Long id, final DocumentPositionDTO documentPositionVO) {
         Map<String, Object> params = validator.validateAndTryMapBeforeUpdate(documentPositionVO);
 
@@ -223,32 +308,12 @@ public class DocumentPositionService {
     }
 
     public void updateDocumentPositionsNumbers(final Long documentId) {
-        String query = "SELECT p.*, p.document_id AS document, product.number AS product, product.unit, additionalcode.code AS additionalcode, palletnumber.number AS palletnumber, "
-                + "location.number AS storagelocationnumber\n"
-                + "	FROM materialflowresources_position p\n"
-                + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
-                + "	LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id)\n"
-                + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
-                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId ORDER BY p.number";
-
-        List<DocumentPositionDTO> list = jdbcTemplate.query(query, Collections.singletonMap("documentId", documentId),
-                new BeanPropertyRowMapper(DocumentPositionDTO.class));
-        int index = 1;
-
-        for (DocumentPositionDTO documentPositionDTO : list) {
-            documentPositionDTO.setNumber(index);
-
-            Map<String, Object> parameters = Maps.newHashMap();
+        String query = "UPDATE materialflowresources_position p SET number = numbered.number "
+                + "FROM (SELECT id, row_number() OVER (ORDER BY number, id) AS number "
+                + "FROM materialflowresources_position WHERE document_id = :documentId) numbered "
+                + "WHERE p.id = numbered.id AND p.number IS DISTINCT FROM numbered.number";
 
-            parameters.put("number", documentPositionDTO.getNumber());
-            parameters.put("id", documentPositionDTO.getId());
-
-            String _query = "UPDATE materialflowresources_position SET number = :number WHERE id = :id ";
-
-            jdbcTemplate.update(_query, parameters);
-
-            index++;
-        }
+        jdbcTemplate.update(query, Collections.singletonMap("documentId", documentId));
     }
 
     public Long findDocumentByPosition(final Long positionId) {
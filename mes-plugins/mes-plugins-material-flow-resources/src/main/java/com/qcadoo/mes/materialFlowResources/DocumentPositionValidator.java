@@ -30,6 +30,7 @@ import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
 import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+import com.qcadoo.mes.materialFlowResources.service.ResourceReservationsLedger;
 
 @Service
 public class DocumentPositionValidator {
@@ -43,19 +44,38 @@ public class DocumentPositionValidator {
     @Autowired
     private DocumentPositionService documentPositionService;
 
+    @Autowired
+    private ResourceReservationsLedger resourceReservationsLedger;
+
     public Map<String, Object> validateAndTryMapBeforeCreate(final DocumentPositionDTO documentPositionDTO) {
-        return validateAndMap(documentPositionDTO);
+        return validateAndMap(documentPositionDTO, new BatchReservedQuantities());
+    }
+
+    /**
+     * Validates position created together with other positions. Quantities reserved by positions accepted earlier in the
+     * batch are subtracted from available quantities, and quantity of this position is added to them when it is valid.
+     *
+     * @param documentPositionDTO
+     *            position to validate
+     * @param batchReservedQuantities
+     *            quantities reserved by positions accepted earlier in the batch
+     * @return params of position
+     */
+    public Map<String, Object> validateAndTryMapBeforeCreate(final DocumentPositionDTO documentPositionDTO,
+            final BatchReservedQuantities batchReservedQuantities) {
+        return validateAndMap(documentPositionDTO, batchReservedQuantities);
     }
 
     public Map<String, Object> validateAndTryMapBeforeUpdate(final DocumentPositionDTO documentPositionDTO) {
-        return validateAndMap(documentPositionDTO);
+        return validateAndMap(documentPositionDTO, new BatchReservedQuantities());
     }
 
     public void validateBeforeDelete(final Long id) {
 
     }
 
-    private Map<String, Object> validateAndMap(final DocumentPositionDTO position) {
+    private Map<String, Object> validateAndMap(final DocumentPositionDTO position,
+            final BatchReservedQuantities batchReservedQuantities) {
         Preconditions.checkNotNull(position, "documentGrid.required.documentPosition");
         Preconditions.checkNotNull(position.getDocument(), "documentGrid.required.documentPosition.document");
 
@@ -67,6 +87,8 @@ public class DocumentPositionValidator {
 
         Map<String, Object> params = null;
 
+        boolean reservesQuantity = false;
+
         if (isGridReadOnly(document)) {
             errors.add("documentGrid.error.position.documentAccepted");
         } else if (isAcceptationInProgress(document)) {
@@ -89,8 +111,10 @@ public class DocumentPositionValidator {
             errors.addAll(validateResources(position, document));
             errors.addAll(validatePallet(position, document));
 
-            if (errors.isEmpty()) {
-                errors.addAll(validateAvailableQuantity(position, document, errors));
+            if (errors.isEmpty() && makesReservation(document)) {
+                reservesQuantity = true;
+
+                errors.addAll(validateAvailableQuantity(position, document, errors, batchReservedQuantities));
             }
             params = tryMapDocumentPositionVOToParams(position, errors);
         }
@@ -99,6 +123,11 @@ public class DocumentPositionValidator {
             throw new BasicException(errors.stream().collect(Collectors.joining("\n")));
         }
 
+        if (reservesQuantity) {
+            batchReservedQuantities.reserve(document.getLocationFrom_id(), (Long) params.get("product_id"),
+                    (Long) params.get("resource_id"), position.getQuantity());
+        }
+
         return params;
     }
 
@@ -123,31 +152,37 @@ public class DocumentPositionValidator {
         return Lists.newArrayList();
     }
 
+    private boolean makesReservation(final DocumentDTO document) {
+        if (DocumentType.isOutbound(document.getType()) && !document.getInBuffer()) {
+            String query = "SELECT draftmakesreservation FROM materialflow_location WHERE id = :location_id";
+
+            return Boolean.TRUE.equals(jdbcTemplate.queryForObject(query,
+                    Collections.singletonMap("location_id", document.getLocationFrom_id()), Boolean.class));
+        }
+
+        return false;
+    }
+
     private List<String> validateAvailableQuantity(final DocumentPositionDTO position, final DocumentDTO document,
-            final List<String> errors) {
-        String type = document.getType();
+            final List<String> errors, final BatchReservedQuantities batchReservedQuantities) {
+        Long productId = tryGetProductIdByNumber(position.getProduct(), errors);
+        Long locationId = document.getLocationFrom_id();
 
-        if (DocumentType.isOutbound(type) && !document.getInBuffer()) {
-            String query = "SELECT draftmakesreservation FROM materialflow_location WHERE id = :location_id";
-            Boolean enabled = jdbcTemplate.queryForObject(query,
-                    Collections.singletonMap("location_id", document.getLocationFrom_id()), Boolean.class);
+        BigDecimal availableQuantity = getAvailableQuantityForProductAndLocation(position, productId, locationId);
+        BigDecimal quantity = position.getQuantity();
 
-            if (enabled) {
-                BigDecimal availableQuantity = getAvailableQuantityForProductAndLocation(position,
-                        tryGetProductIdByNumber(position.getProduct(), errors), document.getLocationFrom_id());
-                BigDecimal quantity = position.getQuantity();
+        if (availableQuantity == null
+                || quantity.compareTo(availableQuantity.subtract(batchReservedQuantities.getReservedQuantity(locationId,
+                        productId))) > 0) {
+            errors.add("documentGrid.error.position.quantity.notEnoughResources");
+        } else {
+            if (!StringUtils.isEmpty(position.getResource())) {
+                BigDecimal resourceAvailableQuantity = getAvailableQuantityForResource(position, productId, locationId);
 
-                if (availableQuantity == null || quantity.compareTo(availableQuantity) > 0) {
+                if (resourceAvailableQuantity == null
+                        || quantity.compareTo(resourceAvailableQuantity.subtract(batchReservedQuantities
+                                .getReservedQuantity(getResourceId(position)))) > 0) {
                     errors.add("documentGrid.error.position.quantity.notEnoughResources");
-                } else {
-                    if (!StringUtils.isEmpty(position.getResource())) {
-                        BigDecimal resourceAvailableQuantity = getAvailableQuantityForResource(position,
-                                tryGetProductIdByNumber(position.getProduct(), errors), document.getLocationFrom_id());
-
-                        if (resourceAvailableQuantity == null || quantity.compareTo(resourceAvailableQuantity) > 0) {
-                            errors.add("documentGrid.error.position.quantity.notEnoughResources");
-                        }
-                    }
                 }
             }
         }
@@ -155,6 +190,12 @@ public class DocumentPositionValidator {
         return Lists.newArrayList();
     }
 
+    private Long getResourceId(final DocumentPositionDTO position) {
+        ResourceDTO resource = documentPositionService.getResourceByNumber(position.getResource());
+
+        return resource == null ? null : resource.getId();
+    }
+
     private BigDecimal getAvailableQuantityForResource(final DocumentPositionDTO position, final Long productId,
             final Long locationId) {
         Long positionId = 0L;
@@ -177,6 +218,8 @@ public class DocumentPositionValidator {
             return BigDecimal.ZERO;
         }
 
+        resourceReservationsLedger.flush();
+
         String query = "SELECT availableQuantity FROM materialflowresources_resource WHERE id = :resource_id";
 
         Map<String, Object> params = Maps.newHashMap();
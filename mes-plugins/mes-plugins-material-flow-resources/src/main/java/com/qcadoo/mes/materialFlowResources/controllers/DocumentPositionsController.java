@@ -4,6 +4,7 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
@@ -70,6 +71,12 @@ public class DocumentPositionsController {
         documentPositionService.updateDocumentPositionsNumbers(documentPositionVO.getDocument());
     }
 
+    @ResponseBody
+    @RequestMapping(value = "bulk", method = RequestMethod.PUT, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<Integer, String> createAll(@RequestBody List<DocumentPositionDTO> documentPositionVOs) {
+        return documentPositionService.createPositions(documentPositionVOs);
+    }
+
     @ResponseBody
     @RequestMapping(value = "{ids}", method = RequestMethod.DELETE)
     public void delete(@PathVariable String ids) {
@@ -0,0 +1,135 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Candidate resources of one warehouse for all products of a document, loaded with a single query already ordered by the
+ * warehouse algorithm. Resources are picked in memory, so every change of picked resources has to be reported back by
+ * {@link #update(Entity)} or {@link #remove(Entity)}.
+ */
+class DocumentResources {
+
+    private final ListMultimap<Long, Entity> resourcesByProduct = ArrayListMultimap.create();
+
+    private final boolean fillResourceIrrespectiveOfConversion;
+
+    DocumentResources(final List<Entity> resources, final boolean fillResourceIrrespectiveOfConversion) {
+        this.fillResourceIrrespectiveOfConversion = fillResourceIrrespectiveOfConversion;
+
+        for (Entity resource : resources) {
+            resourcesByProduct.put(resource.getBelongsToField(ResourceFields.PRODUCT).getId(), resource);
+        }
+    }
+
+    /**
+     * Returns available resources of product in the same order as the query for single position did: resources with
+     * matching conversion first, resources with given additional code before the others, and resources with different
+     * conversion at the end, if document position parameters allow it.
+     */
+    List<Entity> getResources(final Long productId, final Entity additionalCode, final BigDecimal conversion) {
+        List<Entity> resources = getResources(productId, additionalCode, conversion, false);
+
+        if (fillResourceIrrespectiveOfConversion) {
+            resources.addAll(getResources(productId, additionalCode, conversion, true));
+        }
+
+        return resources;
+    }
+
+    private List<Entity> getResources(final Long productId, final Entity additionalCode, final BigDecimal conversion,
+            final boolean resourceIrrespectiveOfConversion) {
+        List<Entity> withAdditionalCode = Lists.newArrayList();
+        List<Entity> others = Lists.newArrayList();
+
+        for (Entity resource : resourcesByProduct.get(productId)) {
+            if (!isAvailable(resource) || !matchesConversion(resource, conversion, resourceIrrespectiveOfConversion)) {
+                continue;
+            }
+
+            if (additionalCode != null && hasAdditionalCode(resource, additionalCode)) {
+                withAdditionalCode.add(resource);
+            } else {
+                others.add(resource);
+            }
+        }
+
+        withAdditionalCode.addAll(others);
+
+        return withAdditionalCode;
+    }
+
+    void update(final Entity resource) {
+        List<Entity> resources = resourcesByProduct.get(resource.getBelongsToField(ResourceFields.PRODUCT).getId());
+
+        for (int i = 0; i < resources.size(); i++) {
+            if (Objects.equals(resources.get(i).getId(), resource.getId())) {
+                resources.set(i, resource);
+            }
+        }
+    }
+
+    void remove(final Entity resource) {
+        resourcesByProduct.get(resource.getBelongsToField(ResourceFields.PRODUCT).getId()).removeIf(
+                res -> Objects.equals(res.getId(), resource.getId()));
+    }
+
+    void reserve(final Entity resource, final BigDecimal quantity) {
+        resource.setField(ResourceFields.AVAILABLE_QUANTITY,
+                resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY).subtract(quantity));
+    }
+
+    private boolean isAvailable(final Entity resource) {
+        BigDecimal availableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+        return availableQuantity != null && availableQuantity.compareTo(BigDecimal.ZERO) > 0;
+    }
+
+    private boolean matchesConversion(final Entity resource, final BigDecimal conversion,
+            final boolean resourceIrrespectiveOfConversion) {
+        BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+
+        if (resourceConversion == null || conversion == null) {
+            return false;
+        }
+
+        return resourceIrrespectiveOfConversion == (resourceConversion.compareTo(conversion) != 0);
+    }
+
+    private boolean hasAdditionalCode(final Entity resource, final Entity additionalCode) {
+        Entity resourceAdditionalCode = resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE);
+
+        return resourceAdditionalCode != null && Objects.equals(resourceAdditionalCode.getId(), additionalCode.getId());
+    }
+
+}
@@ -4,12 +4,16 @@ import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
@@ -89,6 +93,35 @@ public class ReservationsService {
         resourceReservationsService.updateResourceQuantites(params, BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)));
     }
 
+    /**
+     * Creates new reservations for many positions with single batch and updates resource stock. Uses jdbcTemplate.
+     *
+     * Warning! If logic in this method is changed, it should also be applied to corresponding single position method.
+     *
+     * @param positionsParams
+     *            list of maps containing keys: id (position id), quantity, product_id, document_id, resource_id
+     * @see ReservationsService#createReservationFromDocumentPosition(Map)
+     */
+    public void createReservationsFromDocumentPositions(final List<Map<String, Object>> positionsParams) {
+        Map<Object, Boolean> reservationsEnabledForDocuments = Maps.newHashMap();
+
+        List<Map<String, Object>> reservationsParams = positionsParams
+                .stream()
+                .filter(params -> reservationsEnabledForDocuments.computeIfAbsent(params.get("document_id"),
+                        documentId -> reservationsEnabledForDocumentPositions(params))).collect(Collectors.toList());
+
+        if (reservationsParams.isEmpty()) {
+            return;
+        }
+
+        String query = "INSERT INTO materialflowresources_reservation (location_id, product_id, quantity, position_id, resource_id) "
+                + "VALUES ((SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id), :product_id, :quantity, :id, :resource_id)";
+
+        jdbcTemplate.batchUpdate(query, reservationsParams.stream().map(MapSqlParameterSource::new)
+                .toArray(SqlParameterSource[]::new));
+        resourceReservationsService.updateResourcesQuantites(reservationsParams);
+    }
+
     /**
      * Creates new reservation for position and updates resource stock. Uses framework.
      *
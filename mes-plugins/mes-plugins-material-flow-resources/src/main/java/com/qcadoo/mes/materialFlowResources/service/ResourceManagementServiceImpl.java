@@ -29,19 +29,23 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.exception.LockAcquisitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.CalculationQuantityService;
 import com.qcadoo.mes.basic.ParameterService;
@@ -65,7 +69,6 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchOrder;
 import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
@@ -90,6 +93,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Autowired
     private PalletNumberDisposalService palletNumberDisposalService;
 
@@ -257,82 +263,59 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private SearchCriteriaBuilder getSearchCriteriaForResourceForProductAndWarehouse(final Entity product, final Entity warehouse) {
-        return dataDefinitionService
-                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
-                .add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
-                .add(SearchRestrictions.belongsTo(ResourceFields.PRODUCT, product))
-                .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO));
-
-    }
-
-    public Multimap<Long, BigDecimal> getQuantitiesInWarehouse(final Entity warehouse,
+    public Map<Long, BigDecimal> getQuantitiesInWarehouse(final Entity warehouse,
             final Multimap<Entity, Entity> productsAndPositions) {
-        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
+        Map<Long, BigDecimal> result = Maps.newHashMap();
+        ListMultimap<Long, BigDecimal> conversionsForProducts = ArrayListMultimap.create();
 
         for (Map.Entry<Entity, Entity> productAndPosition : productsAndPositions.entries()) {
-            Entity additionalCode = productAndPosition.getValue().getBelongsToField(PositionFields.ADDITIONAL_CODE);
-            BigDecimal conversion = productAndPosition.getValue().getDecimalField(PositionFields.CONVERSION);
-
-            List<Entity> resources = Lists.newArrayList();
-
-            if (additionalCode != null) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
+            Entity product = productAndPosition.getKey();
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
+            BigDecimal conversion;
 
-                resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode)).list()
-                        .getEntities();
-
-                scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(), warehouse);
+            if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+                conversion = productAndPosition.getValue().getDecimalField(PositionFields.CONVERSION);
+            } else {
+                conversion = BigDecimal.ONE;
+            }
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
+            result.put(product.getId(), BigDecimal.ZERO);
 
-                resources.addAll(scb
-                        .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                                SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))).list().getEntities());
+            if (conversion != null && !containsConversion(conversionsForProducts.get(product.getId()), conversion)) {
+                conversionsForProducts.put(product.getId(), conversion);
             }
+        }
 
-            if (resources.isEmpty()) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
+        if (conversionsForProducts.isEmpty()) {
+            return result;
+        }
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
+        String query = "SELECT resource.product_id, resource.conversion, SUM(resource.availablequantity) AS availablequantity "
+                + "FROM materialflowresources_resource resource WHERE resource.location_id = :locationId "
+                + "AND resource.product_id IN (:productIds) AND resource.availablequantity > 0 "
+                + "GROUP BY resource.product_id, resource.conversion";
 
-                resources = scb.list().getEntities();
-            }
+        Map<String, Object> params = Maps.newHashMap();
 
-            if (result.containsKey(productAndPosition.getKey().getId())) {
-                BigDecimal currentQuantity = result.get(productAndPosition.getKey().getId()).stream()
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+        params.put("locationId", warehouse.getId());
+        params.put("productIds", conversionsForProducts.keySet());
 
-                result.put(productAndPosition.getKey().getId(),
-                        (resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).reduce(
-                                BigDecimal.ZERO, BigDecimal::add)).add(currentQuantity));
-            } else {
-                result.put(
-                        productAndPosition.getKey().getId(),
-                        resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
-                                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        jdbcTemplate.query(query, params, rs -> {
+            Long productId = rs.getLong("product_id");
+            BigDecimal conversion = rs.getBigDecimal("conversion");
+
+            if (conversion != null && containsConversion(conversionsForProducts.get(productId), conversion)) {
+                result.merge(productId, rs.getBigDecimal("availablequantity"), BigDecimal::add);
             }
-        }
+        });
 
         return result;
     }
 
+    private boolean containsConversion(final List<BigDecimal> conversions, final BigDecimal conversion) {
+        return conversions.stream().anyMatch(c -> c.compareTo(conversion) == 0);
+    }
+
     private Multimap<Entity, Entity> getProductsAndPositionsFromDocument(final Entity document) {
         Multimap<Entity, Entity> map = ArrayListMultimap.create();
 
@@ -343,13 +326,6 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return map;
     }
 
-    private BigDecimal getQuantityOfProductFromMultimap(final Multimap<Long, BigDecimal> quantitiesForWarehouse,
-            final Entity product) {
-        List<BigDecimal> quantities = Lists.newArrayList(quantitiesForWarehouse.get(product.getId()));
-
-        return quantities.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
-    }
-
     private void updateResourcesForReleaseDocuments(final Entity document) {
         Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_FROM);
 
@@ -360,18 +336,22 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         NotEnoughResourcesErrorMessageHolder errorMessageHolder = notEnoughResourcesErrorMessageHolderFactory.create();
 
-        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouse,
+        Map<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouse,
                 getProductsAndPositionsFromDocument(document));
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        DocumentResources documentResources = getDocumentResources(warehouse, positions, warehouseAlgorithm);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            List<Entity> generatedPositions = updateResources(warehouse, position, warehouseAlgorithm);
+            List<Entity> generatedPositions = updateResources(warehouse, position, documentResources);
 
             enoughResources = enoughResources && position.isValid();
 
             if (!position.isValid()) {
-                BigDecimal quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
+                BigDecimal quantityInWarehouse = quantitiesForWarehouse.getOrDefault(product.getId(), BigDecimal.ZERO);
 
                 BigDecimal quantity = position.getDecimalField(QUANTITY);
 
@@ -430,12 +410,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private List<Entity> updateResources(final Entity warehouse, final Entity position,
-            final WarehouseAlgorithm warehouseAlgorithm) {
+            final DocumentResources documentResources) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(product, position, documentResources);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -472,6 +452,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
                     resource.getDataDefinition().delete(resource.getId());
 
+                    documentResources.remove(resource);
+
                     palletNumberDisposalService.tryToDispose(palletNumberToDispose);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
@@ -487,6 +469,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     if (!savedResource.isValid()) {
                         throw new InvalidResourceException(savedResource);
                     }
+
+                    documentResources.update(savedResource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceAvailableQuantity));
@@ -517,6 +501,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     throw new InvalidResourceException(savedResource);
                 }
 
+                documentResources.update(savedResource);
+
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
 
                 newPosition.setField(PositionFields.GIVEN_QUANTITY, givenQuantity);
@@ -546,18 +532,23 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         NotEnoughResourcesErrorMessageHolder errorMessageHolder = notEnoughResourcesErrorMessageHolderFactory.create();
 
-        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouseFrom,
+        Map<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouseFrom,
                 getProductsAndPositionsFromDocument(document));
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        DocumentResources documentResources = getDocumentResources(warehouseFrom, positions, warehouseAlgorithm);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            List<Entity> generatedPositions = moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm);
+            List<Entity> generatedPositions = moveResources(warehouseFrom, warehouseTo, position, date,
+                    documentResources);
 
             enoughResources = enoughResources && position.isValid();
 
             if (!position.isValid()) {
-                BigDecimal quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
+                BigDecimal quantityInWarehouse = quantitiesForWarehouse.getOrDefault(product.getId(), BigDecimal.ZERO);
 
                 BigDecimal quantity = position.getDecimalField(QUANTITY);
 
@@ -593,12 +584,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private List<Entity> moveResources(final Entity warehouseFrom, final Entity warehouseTo, final Entity position,
-            final Object date, final WarehouseAlgorithm warehouseAlgorithm) {
+            final Object date, final DocumentResources documentResources) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(product, position, documentResources);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -635,6 +626,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
                     resource.getDataDefinition().delete(resource.getId());
 
+                    documentResources.remove(resource);
+
                     palletNumberDisposalService.tryToDispose(palletNumberToDispose);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
@@ -651,6 +644,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     if (!savedResource.isValid()) {
                         throw new InvalidResourceException(savedResource);
                     }
+
+                    documentResources.update(savedResource);
                 }
 
                 Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date);
@@ -687,6 +682,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     throw new InvalidResourceException(savedResource);
                 }
 
+                documentResources.update(savedResource);
+
                 Entity newResource = createResource(position, warehouseTo, resource, quantity, date);
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
@@ -717,8 +714,50 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> getResourcesForWarehouseProductAndAlgorithm(final Entity warehouse, final Entity product,
-            final Entity position, final WarehouseAlgorithm warehouseAlgorithm) {
+    private DocumentResources getDocumentResources(final Entity warehouse, final List<Entity> positions,
+            final WarehouseAlgorithm warehouseAlgorithm) {
+        Set<Long> productIds = positions.stream()
+                .filter(position -> Objects.isNull(position.getBelongsToField(PositionFields.RESOURCE)))
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).collect(Collectors.toSet());
+
+        List<Entity> resources = Lists.newArrayList();
+
+        if (!productIds.isEmpty()) {
+            SearchCriteriaBuilder scb = dataDefinitionService
+                    .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
+                    .add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                    .add(SearchRestrictions.in(ResourceFields.PRODUCT + ".id", productIds))
+                    .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO));
+
+            for (SearchOrder searchOrder : getSearchOrdersForAlgorithm(warehouseAlgorithm)) {
+                scb.addOrder(searchOrder);
+            }
+
+            resources = scb.list().getEntities();
+        }
+
+        Entity documentPositionParameters = parameterService.getParameter().getBelongsToField(
+                ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
+
+        return new DocumentResources(resources, documentPositionParameters.getBooleanField("fillResourceIrrespectiveOfConversion"));
+    }
+
+    private List<SearchOrder> getSearchOrdersForAlgorithm(final WarehouseAlgorithm warehouseAlgorithm) {
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            return Lists.newArrayList(SearchOrders.desc(ResourceFields.TIME));
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            return Lists.newArrayList(SearchOrders.asc(ResourceFields.EXPIRATION_DATE),
+                    SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            return Lists.newArrayList(SearchOrders.desc(ResourceFields.EXPIRATION_DATE),
+                    SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
+        } else {
+            return Lists.newArrayList(SearchOrders.asc(ResourceFields.TIME));
+        }
+    }
+
+    private List<Entity> getResourcesForWarehouseProductAndAlgorithm(final Entity product, final Entity position,
+            final DocumentResources documentResources) {
         List<Entity> resources = Lists.newArrayList();
 
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
@@ -740,115 +779,21 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
 
             resources.add(resource);
-        } else if (WarehouseAlgorithm.FIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFEFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLEFO(warehouse, product, additionalCode, position);
-        }
-
-        return resources;
-    }
-
-    private List<Entity> getResourcesForLocationCommonCodeConversion(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position, boolean resourceIrrespectiveOfConversion,
-            SearchOrder... searchOrders) {
-        class SearchCriteriaHelper {
-
-            private List<Entity> getAll() {
-                return getAllThatSatisfies(null);
-            }
-
-            private List<Entity> getAllThatSatisfies(SearchCriterion searchCriterion) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-                if (resourceIrrespectiveOfConversion) {
-                    if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                        scb.add(SearchRestrictions.ne(PositionFields.CONVERSION,
-                                position.getDecimalField(PositionFields.CONVERSION)));
-                    } else {
-                        scb.add(SearchRestrictions.ne(ResourceFields.CONVERSION, BigDecimal.ONE));
-                    }
-                } else {
-                    if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                        scb.add(SearchRestrictions.eq(PositionFields.CONVERSION,
-                                position.getDecimalField(PositionFields.CONVERSION)));
-                    } else {
-                        scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                    }
-                }
-
-                Optional.ofNullable(searchCriterion).ifPresent(scb::add);
-
-                for (SearchOrder searchOrder : searchOrders) {
-                    scb.addOrder(searchOrder);
-                }
+        } else {
+            BigDecimal conversion;
 
-                return scb.list().getEntities();
+            if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+                conversion = position.getDecimalField(PositionFields.CONVERSION);
+            } else {
+                conversion = BigDecimal.ONE;
             }
-        }
-
-        List<Entity> resources = Lists.newArrayList();
-
-        if (additionalCode != null) {
-            resources = new SearchCriteriaHelper().getAllThatSatisfies(SearchRestrictions.belongsTo(
-                    ResourceFields.ADDITIONAL_CODE, additionalCode));
-
-            resources.addAll(new SearchCriteriaHelper().getAllThatSatisfies(SearchRestrictions.or(
-                    SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                    SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))));
-        }
 
-        if (resources.isEmpty()) {
-            resources = new SearchCriteriaHelper().getAll();
+            resources = documentResources.getResources(product.getId(), additionalCode, conversion);
         }
 
         return resources;
     }
 
-    private List<Entity> getResourcesForLocationCommonCode(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position, SearchOrder... searchOrders) {
-        List<Entity> resources = getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, false,
-                searchOrders);
-        Entity documentPositionParameters = parameterService.getParameter().getBelongsToField(
-                ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
-
-        boolean fillResourceIrrespectiveOfConversion = documentPositionParameters
-                .getBooleanField("fillResourceIrrespectiveOfConversion");
-        if (fillResourceIrrespectiveOfConversion) {
-            resources.addAll(getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, true,
-                    searchOrders));
-        }
-        return resources;
-    }
-
-    private List<Entity> getResourcesForLocationAndProductFIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.asc(ResourceFields.TIME));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.desc(ResourceFields.TIME));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductFEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.asc(ResourceFields.EXPIRATION_DATE), SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.desc(ResourceFields.EXPIRATION_DATE), SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
-    }
-
     @Transactional(isolation = Isolation.REPEATABLE_READ)
     public void fillResourcesInDocument(final ViewDefinitionState view, final Entity document) throws LockAcquisitionException {
         logger.info("FILL RESOURCES STARTED IN DOCUMENT: id = " + document.getId() + " number = "
@@ -861,11 +806,13 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_FROM);
         WarehouseAlgorithm warehouseAlgorithm = WarehouseAlgorithm.parseString(warehouse
                 .getStringField(LocationFieldsMFR.ALGORITHM));
+        DocumentResources documentResources = getDocumentResources(warehouse, positions, warehouseAlgorithm);
+        boolean reservationsEnabled = reservationsService.reservationsEnabledForDocumentPositions(document);
         boolean valid = true;
 
         for (Entity position : positions) {
             if (position.getBelongsToField(PositionFields.RESOURCE) == null) {
-                List<Entity> newPositions = matchResourcesToPosition(position, warehouse, warehouseAlgorithm);
+                List<Entity> newPositions = matchResourcesToPosition(position, documentResources, reservationsEnabled);
                 if (!newPositions.isEmpty()) {
                     logger.info("GENERATED POSITIONS IN DOCUMENT: id = " + document.getId() + ", FOR POSITION: id = "
                             + position.getId() + ", size = " + newPositions.size());
@@ -907,8 +854,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> matchResourcesToPosition(final Entity position, final Entity warehouse,
-            final WarehouseAlgorithm warehouseAlgorithm) {
+    private List<Entity> matchResourcesToPosition(final Entity position, final DocumentResources documentResources,
+            final boolean reservationsEnabled) {
         DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_POSITION);
 
@@ -916,7 +863,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(product, position, documentResources);
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
         BigDecimal conversion = position.getDecimalField(PositionFields.CONVERSION);
         String givenUnit = position.getStringField(PositionFields.GIVEN_UNIT);
@@ -943,10 +890,18 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
                 setPositionQuantityAndGivenQuantity(resourceAvailableQuantity, newPosition);
                 newPositions.add(newPosition);
+
+                if (reservationsEnabled) {
+                    documentResources.reserve(resource, resourceAvailableQuantity);
+                }
             } else {
                 setPositionQuantityAndGivenQuantity(quantity, newPosition);
                 newPositions.add(newPosition);
 
+                if (reservationsEnabled) {
+                    documentResources.reserve(resource, quantity);
+                }
+
                 return newPositions;
             }
         }
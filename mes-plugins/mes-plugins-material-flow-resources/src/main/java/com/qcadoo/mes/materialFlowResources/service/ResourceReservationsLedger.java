@@ -0,0 +1,165 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Ledger of reserved quantity deltas per resource, bound to the current transaction.
+ *
+ * Every reservation change made through jdbc appends a delta instead of updating the resource row right away. Deltas for
+ * the same resource are summed, and all of them are written with a single batch update before the transaction commits,
+ * in resource id order, so concurrently edited documents lock resources in the same order. Deltas which sum up to zero
+ * are not written at all.
+ *
+ * Code which reads reserved or available quantity of resources in the same transaction should call {@link #flush()}
+ * first.
+ */
+@Service
+public class ResourceReservationsLedger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceReservationsLedger.class);
+
+    private static final String L_RESOURCE_ID = "resource_id";
+
+    private static final String L_QUANTITY_TO_ADD = "quantity_to_add";
+
+    private final LongAdder recordedDeltas = new LongAdder();
+
+    private final LongAdder appliedUpdates = new LongAdder();
+
+    private final LongAdder flushes = new LongAdder();
+
+    private final LongAdder flushTimeNanos = new LongAdder();
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    void record(final Object resourceId, final BigDecimal quantityToAdd) {
+        if (!(resourceId instanceof Number) || quantityToAdd == null || quantityToAdd.signum() == 0) {
+            return;
+        }
+
+        recordedDeltas.increment();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            getPendingDeltas().merge(((Number) resourceId).longValue(), quantityToAdd, BigDecimal::add);
+        } else {
+            apply(Collections.singletonMap(((Number) resourceId).longValue(), quantityToAdd));
+        }
+    }
+
+    /**
+     * Writes deltas recorded in the current transaction to resources, so following reads of reserved and available
+     * quantities see them.
+     */
+    public void flush() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<Long, BigDecimal> pendingDeltas = (Map<Long, BigDecimal>) TransactionSynchronizationManager.getResource(this);
+
+        if (pendingDeltas == null || pendingDeltas.isEmpty()) {
+            return;
+        }
+
+        Map<Long, BigDecimal> deltas = new TreeMap<>(pendingDeltas);
+
+        pendingDeltas.clear();
+
+        apply(deltas);
+    }
+
+    public long getRecordedDeltasCount() {
+        return recordedDeltas.sum();
+    }
+
+    public long getAppliedUpdatesCount() {
+        return appliedUpdates.sum();
+    }
+
+    public long getFlushesCount() {
+        return flushes.sum();
+    }
+
+    public double getAverageFlushTimeMillis() {
+        long flushesCount = flushes.sum();
+
+        return flushesCount == 0 ? 0d : flushTimeNanos.sum() / 1e6 / flushesCount;
+    }
+
+    private Map<Long, BigDecimal> getPendingDeltas() {
+        @SuppressWarnings("unchecked")
+        Map<Long, BigDecimal> pendingDeltas = (Map<Long, BigDecimal>) TransactionSynchronizationManager.getResource(this);
+
+        if (pendingDeltas == null) {
+            pendingDeltas = Maps.newHashMap();
+
+            TransactionSynchronizationManager.bindResource(this, pendingDeltas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    flush();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ResourceReservationsLedger.this);
+                }
+            });
+        }
+
+        return pendingDeltas;
+    }
+
+    private void apply(final Map<Long, BigDecimal> deltas) {
+        long start = System.nanoTime();
+
+        List<Map<String, Object>> params = Lists.newArrayList();
+
+        deltas.forEach((resourceId, quantityToAdd) -> {
+            if (quantityToAdd.signum() != 0) {
+                Map<String, Object> resourceParams = Maps.newHashMap();
+
+                resourceParams.put(L_RESOURCE_ID, resourceId);
+                resourceParams.put(L_QUANTITY_TO_ADD, quantityToAdd);
+
+                params.add(resourceParams);
+            }
+        });
+
+        if (!params.isEmpty()) {
+            String query = "UPDATE materialflowresources_resource SET reservedquantity = reservedquantity + :quantity_to_add, "
+                    + "availablequantity = availablequantity - :quantity_to_add WHERE id = :resource_id";
+
+            jdbcTemplate.batchUpdate(query, params.toArray(new Map[params.size()]));
+        }
+
+        appliedUpdates.add(params.size());
+        flushes.increment();
+        flushTimeNanos.add(System.nanoTime() - start);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Resource reservations ledger: %d resources updated, %d deltas recorded, %d updates applied",
+                    params.size(), recordedDeltas.sum(), appliedUpdates.sum()));
+        }
+    }
+
+}
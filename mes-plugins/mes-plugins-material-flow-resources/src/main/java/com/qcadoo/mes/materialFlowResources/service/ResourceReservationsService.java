@@ -1,15 +1,16 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 
@@ -17,23 +18,25 @@ import com.qcadoo.model.api.Entity;
 public class ResourceReservationsService {
 
     @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private DataDefinitionService dataDefinitionService;
 
     @Autowired
-    private DataDefinitionService dataDefinitionService;
+    private ResourceReservationsLedger resourceReservationsLedger;
 
     void updateResourceQuantites(Map<String, Object> params, BigDecimal quantityToAdd) {
-        if (params.get("resource_id") != null) {
-            params.put("quantity_to_add", quantityToAdd);
-            String query = "UPDATE materialflowresources_resource SET reservedquantity = reservedquantity + :quantity_to_add, "
-                    + "availablequantity = availablequantity - :quantity_to_add WHERE id = :resource_id";
-            jdbcTemplate.update(query, params);
-        }
+        resourceReservationsLedger.record(params.get("resource_id"), quantityToAdd);
+    }
+
+    void updateResourcesQuantites(List<Map<String, Object>> positionsParams) {
+        positionsParams.forEach(params -> resourceReservationsLedger.record(params.get("resource_id"),
+                BigDecimalUtils.convertNullToZero(params.get("quantity"))));
     }
 
     public void updateResourceQuantites(Entity position, BigDecimal quantityToAdd) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
         if (resource != null) {
+            resourceReservationsLedger.flush();
+
             resource = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                     MaterialFlowResourcesConstants.MODEL_RESOURCE).get(resource.getId());
             if (resource != null) {
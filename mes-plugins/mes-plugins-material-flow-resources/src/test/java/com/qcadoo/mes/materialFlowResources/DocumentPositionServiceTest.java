@@ -0,0 +1,216 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.BasicException;
+import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
+
+public class DocumentPositionServiceTest {
+
+    private static final Long L_DOCUMENT_ID = 1L;
+
+    private DocumentPositionService documentPositionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DocumentPositionValidator validator;
+
+    @Mock
+    private ReservationsService reservationsService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        documentPositionService = new DocumentPositionService();
+
+        setField(documentPositionService, "jdbcTemplate", jdbcTemplate);
+        setField(documentPositionService, "validator", validator);
+        setField(documentPositionService, "reservationsService", reservationsService);
+    }
+
+    @Test
+    public void shouldCreateValidPositionsAndReturnErrorsOfInvalidOnes() {
+        // given
+        DocumentPositionDTO valid = new DocumentPositionDTO();
+        DocumentPositionDTO invalid = new DocumentPositionDTO();
+        DocumentPositionDTO withoutDocument = new DocumentPositionDTO();
+        DocumentPositionDTO withUnknownDocument = new DocumentPositionDTO();
+        DocumentPositionDTO otherValid = new DocumentPositionDTO();
+
+        valid.setDocument(L_DOCUMENT_ID);
+        invalid.setDocument(L_DOCUMENT_ID);
+        withUnknownDocument.setDocument(2L);
+        otherValid.setDocument(L_DOCUMENT_ID);
+
+        given(validator.validateAndTryMapBeforeCreate(same(valid), any(BatchReservedQuantities.class))).willReturn(
+                createParams());
+        given(validator.validateAndTryMapBeforeCreate(same(invalid), any(BatchReservedQuantities.class))).willThrow(
+                new BasicException("documentGrid.error.position.quantity.notEnoughResources"));
+        given(validator.validateAndTryMapBeforeCreate(same(withUnknownDocument), any(BatchReservedQuantities.class)))
+                .willThrow(new EmptyResultDataAccessException(1));
+        given(validator.validateAndTryMapBeforeCreate(same(otherValid), any(BatchReservedQuantities.class))).willReturn(
+                createParams());
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(10L, 11L));
+
+        // when
+        Map<Integer, String> errors = documentPositionService.createPositions(Lists.newArrayList(valid, invalid,
+                withoutDocument, withUnknownDocument, null, otherValid));
+
+        // then
+        assertEquals(4, errors.size());
+        assertEquals("documentGrid.error.position.quantity.notEnoughResources", errors.get(1));
+        assertEquals("documentGrid.required.documentPosition.document", errors.get(2));
+        assertEquals("documentGrid.error.position.document.notFound", errors.get(3));
+        assertEquals("documentGrid.required.documentPosition", errors.get(4));
+
+        verify(validator, never()).validateAndTryMapBeforeCreate(same(withoutDocument), any(BatchReservedQuantities.class));
+
+        ArgumentCaptor<SqlParameterSource[]> batchCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate).batchUpdate(anyString(), batchCaptor.capture());
+
+        SqlParameterSource[] batch = batchCaptor.getValue();
+
+        assertEquals(2, batch.length);
+        assertEquals(10L, batch[0].getValue("id"));
+        assertEquals(11L, batch[1].getValue("id"));
+
+        verify(reservationsService).createReservationsFromDocumentPositions(any(List.class));
+    }
+
+    @Test
+    public void shouldInsertPositionsWithDifferentColumnsSeparately() {
+        // given
+        DocumentPositionDTO first = new DocumentPositionDTO();
+        DocumentPositionDTO second = new DocumentPositionDTO();
+        DocumentPositionDTO third = new DocumentPositionDTO();
+
+        first.setDocument(L_DOCUMENT_ID);
+        second.setDocument(L_DOCUMENT_ID);
+        third.setDocument(L_DOCUMENT_ID);
+
+        Map<String, Object> paramsWithBatch = createParams();
+
+        paramsWithBatch.put("batch_id", 3L);
+
+        given(validator.validateAndTryMapBeforeCreate(any(DocumentPositionDTO.class), any(BatchReservedQuantities.class)))
+                .willReturn(createParams(), paramsWithBatch, createParams());
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(10L, 11L, 12L));
+
+        // when
+        Map<Integer, String> errors = documentPositionService.createPositions(Lists.newArrayList(first, second, third));
+
+        // then
+        assertTrue(errors.isEmpty());
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource[]> batchCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate, times(2)).batchUpdate(queryCaptor.capture(), batchCaptor.capture());
+
+        List<String> queries = queryCaptor.getAllValues();
+        List<SqlParameterSource[]> batches = batchCaptor.getAllValues();
+
+        assertFalse(queries.get(0).contains("batch_id"));
+        assertEquals(2, batches.get(0).length);
+        assertEquals(10L, batches.get(0)[0].getValue("id"));
+        assertEquals(12L, batches.get(0)[1].getValue("id"));
+
+        assertTrue(queries.get(1).contains("batch_id"));
+        assertEquals(1, batches.get(1).length);
+        assertEquals(11L, batches.get(1)[0].getValue("id"));
+    }
+
+    @Test
+    public void shouldShareReservedQuantitiesBetweenPositionsOfBatch() {
+        // given
+        DocumentPositionDTO first = new DocumentPositionDTO();
+        DocumentPositionDTO second = new DocumentPositionDTO();
+
+        first.setDocument(L_DOCUMENT_ID);
+        second.setDocument(L_DOCUMENT_ID);
+
+        given(validator.validateAndTryMapBeforeCreate(any(DocumentPositionDTO.class), any(BatchReservedQuantities.class)))
+                .willReturn(createParams(), createParams());
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(10L, 11L));
+
+        // when
+        documentPositionService.createPositions(Lists.newArrayList(first, second));
+
+        // then
+        ArgumentCaptor<BatchReservedQuantities> firstCaptor = ArgumentCaptor.forClass(BatchReservedQuantities.class);
+        ArgumentCaptor<BatchReservedQuantities> secondCaptor = ArgumentCaptor.forClass(BatchReservedQuantities.class);
+
+        verify(validator).validateAndTryMapBeforeCreate(same(first), firstCaptor.capture());
+        verify(validator).validateAndTryMapBeforeCreate(same(second), secondCaptor.capture());
+
+        assertTrue(firstCaptor.getValue() == secondCaptor.getValue());
+    }
+
+    private Map<String, Object> createParams() {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("document_id", L_DOCUMENT_ID);
+        params.put("product_id", 2L);
+        params.put("quantity", BigDecimal.ONE);
+
+        return params;
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.BasicException;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+
+public class DocumentPositionValidatorTest {
+
+    private static final Long L_DOCUMENT_ID = 1L;
+
+    private static final Long L_LOCATION_ID = 2L;
+
+    private static final Long L_PRODUCT_ID = 3L;
+
+    private static final String L_PRODUCT_NUMBER = "product";
+
+    private DocumentPositionValidator documentPositionValidator;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TranslationService translationService;
+
+    @Mock
+    private DocumentPositionService documentPositionService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        documentPositionValidator = new DocumentPositionValidator();
+
+        setField(documentPositionValidator, "jdbcTemplate", jdbcTemplate);
+        setField(documentPositionValidator, "translationService", translationService);
+        setField(documentPositionValidator, "documentPositionService", documentPositionService);
+
+        DocumentDTO document = new DocumentDTO();
+
+        document.setId(L_DOCUMENT_ID);
+        document.setState(DocumentState.DRAFT.getStringValue());
+        document.setType(DocumentType.RELEASE.getStringValue());
+        document.setLocationFrom_id(L_LOCATION_ID);
+        document.setInBuffer(false);
+        document.setAcceptationInProgress(false);
+
+        given(jdbcTemplate.queryForObject(contains("FROM materialflowresources_document"),
+                anyMapOf(String.class, Object.class), any(BeanPropertyRowMapper.class))).willReturn(document);
+        given(jdbcTemplate.queryForObject(contains("draftmakesreservation"), anyMapOf(String.class, Object.class),
+                eq(Boolean.class))).willReturn(true);
+        given(jdbcTemplate.queryForObject(contains("FROM basic_product"), anyMapOf(String.class, Object.class),
+                eq(Long.class))).willReturn(L_PRODUCT_ID);
+        given(jdbcTemplate.query(contains("FROM materialflowresources_resourcestockdto"),
+                anyMapOf(String.class, Object.class), any(ResultSetExtractor.class))).willReturn(BigDecimal.TEN);
+    }
+
+    @Test
+    public void shouldAcceptPositionsWhichTogetherFitInAvailableQuantity() {
+        // given
+        BatchReservedQuantities batchReservedQuantities = new BatchReservedQuantities();
+
+        // when
+        documentPositionValidator.validateAndTryMapBeforeCreate(createPosition(new BigDecimal("6")), batchReservedQuantities);
+        Map<String, Object> params = documentPositionValidator.validateAndTryMapBeforeCreate(
+                createPosition(new BigDecimal("4")), batchReservedQuantities);
+
+        // then
+        assertEquals(L_PRODUCT_ID, params.get("product_id"));
+        assertEquals(0, BigDecimal.TEN.compareTo(batchReservedQuantities.getReservedQuantity(L_LOCATION_ID, L_PRODUCT_ID)));
+    }
+
+    @Test
+    public void shouldRejectPositionWhichTogetherWithEarlierPositionsExceedsAvailableQuantity() {
+        // given
+        BatchReservedQuantities batchReservedQuantities = new BatchReservedQuantities();
+
+        documentPositionValidator.validateAndTryMapBeforeCreate(createPosition(new BigDecimal("6")), batchReservedQuantities);
+
+        // when
+        try {
+            documentPositionValidator.validateAndTryMapBeforeCreate(createPosition(new BigDecimal("6")),
+                    batchReservedQuantities);
+
+            fail();
+        } catch (BasicException e) {
+            // then
+            assertTrue(e.getMessage().contains("documentGrid.error.position.quantity.notEnoughResources"));
+        }
+
+        assertEquals(0, new BigDecimal("6").compareTo(batchReservedQuantities.getReservedQuantity(L_LOCATION_ID, L_PRODUCT_ID)));
+    }
+
+    @Test
+    public void shouldNotCountSinglePositionsAsReserved() {
+        // when
+        documentPositionValidator.validateAndTryMapBeforeCreate(createPosition(new BigDecimal("6")));
+        documentPositionValidator.validateAndTryMapBeforeCreate(createPosition(new BigDecimal("6")));
+    }
+
+    private DocumentPositionDTO createPosition(final BigDecimal quantity) {
+        DocumentPositionDTO position = new DocumentPositionDTO();
+
+        position.setDocument(L_DOCUMENT_ID);
+        position.setProduct(L_PRODUCT_NUMBER);
+        position.setUnit("szt");
+        position.setGivenunit("szt");
+        position.setQuantity(quantity);
+        position.setGivenquantity(quantity);
+        position.setConversion(BigDecimal.ONE);
+        position.setBatch("");
+
+        return position;
+    }
+
+}
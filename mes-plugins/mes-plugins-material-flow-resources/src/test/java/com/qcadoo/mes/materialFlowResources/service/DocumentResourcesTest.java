@@ -0,0 +1,136 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.model.api.Entity;
+
+public class DocumentResourcesTest {
+
+    private static final Long L_PRODUCT_ID = 1L;
+
+    private final Entity product = mockEntity(L_PRODUCT_ID);
+
+    private final Entity additionalCode = mockEntity(10L);
+
+    private final Entity otherAdditionalCode = mockEntity(11L);
+
+    @Test
+    public void shouldReturnResourcesWithAdditionalCodeFirst() {
+        // given
+        Entity first = mockResource(1L, null, BigDecimal.ONE, BigDecimal.TEN);
+        Entity second = mockResource(2L, otherAdditionalCode, BigDecimal.ONE, BigDecimal.TEN);
+        Entity third = mockResource(3L, additionalCode, BigDecimal.ONE, BigDecimal.TEN);
+
+        DocumentResources documentResources = new DocumentResources(Lists.newArrayList(first, second, third), false);
+
+        // when
+        List<Entity> resources = documentResources.getResources(L_PRODUCT_ID, additionalCode, BigDecimal.ONE);
+
+        // then
+        assertEquals(Lists.newArrayList(third, first, second), resources);
+    }
+
+    @Test
+    public void shouldAppendResourcesWithOtherConversionWhenAllowed() {
+        // given
+        Entity first = mockResource(1L, null, new BigDecimal("2"), BigDecimal.TEN);
+        Entity second = mockResource(2L, null, BigDecimal.ONE, BigDecimal.TEN);
+
+        DocumentResources documentResources = new DocumentResources(Lists.newArrayList(first, second), true);
+
+        // when
+        List<Entity> resources = documentResources.getResources(L_PRODUCT_ID, null, BigDecimal.ONE);
+
+        // then
+        assertEquals(Lists.newArrayList(second, first), resources);
+    }
+
+    @Test
+    public void shouldSkipRemovedAndUnavailableResources() {
+        // given
+        Entity first = mockResource(1L, null, BigDecimal.ONE, BigDecimal.TEN);
+        Entity second = mockResource(2L, null, BigDecimal.ONE, BigDecimal.ZERO);
+        Entity third = mockResource(3L, null, BigDecimal.ONE, BigDecimal.TEN);
+
+        DocumentResources documentResources = new DocumentResources(Lists.newArrayList(first, second, third), false);
+
+        // when
+        documentResources.remove(first);
+
+        List<Entity> resources = documentResources.getResources(L_PRODUCT_ID, null, BigDecimal.ONE);
+
+        // then
+        assertEquals(Lists.newArrayList(third), resources);
+    }
+
+    @Test
+    public void shouldReplaceUpdatedResourceInPlace() {
+        // given
+        Entity first = mockResource(1L, null, BigDecimal.ONE, BigDecimal.TEN);
+        Entity second = mockResource(2L, null, BigDecimal.ONE, BigDecimal.TEN);
+        Entity savedFirst = mockResource(1L, null, BigDecimal.ONE, BigDecimal.ONE);
+
+        DocumentResources documentResources = new DocumentResources(Lists.newArrayList(first, second), false);
+
+        // when
+        documentResources.update(savedFirst);
+
+        List<Entity> resources = documentResources.getResources(L_PRODUCT_ID, null, BigDecimal.ONE);
+
+        // then
+        assertEquals(Lists.newArrayList(savedFirst, second), resources);
+    }
+
+    private Entity mockResource(final Long id, final Entity resourceAdditionalCode, final BigDecimal conversion,
+            final BigDecimal availableQuantity) {
+        Entity resource = mockEntity(id);
+
+        given(resource.getBelongsToField(ResourceFields.PRODUCT)).willReturn(product);
+        given(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE)).willReturn(resourceAdditionalCode);
+        given(resource.getDecimalField(ResourceFields.CONVERSION)).willReturn(conversion);
+        given(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(availableQuantity);
+
+        return resource;
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+}
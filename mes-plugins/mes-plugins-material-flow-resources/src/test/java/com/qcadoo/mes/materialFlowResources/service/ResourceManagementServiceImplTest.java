@@ -0,0 +1,176 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.model.api.Entity;
+
+public class ResourceManagementServiceImplTest {
+
+    private ResourceManagementServiceImpl resourceManagementService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity warehouse;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceManagementService = new ResourceManagementServiceImpl();
+
+        ReflectionTestUtils.setField(resourceManagementService, "jdbcTemplate", jdbcTemplate);
+
+        given(warehouse.getId()).willReturn(100L);
+    }
+
+    @Test
+    public void shouldSumQuantitiesOfConversionsUsedByPositionsOfSameProduct() throws Exception {
+        // given
+        Entity productWithAdditionalUnit = mockProduct(1L, "kg");
+        Entity product = mockProduct(2L, null);
+
+        Multimap<Entity, Entity> productsAndPositions = ArrayListMultimap.create();
+
+        productsAndPositions.put(productWithAdditionalUnit, mockPosition(new BigDecimal("2")));
+        productsAndPositions.put(productWithAdditionalUnit, mockPosition(new BigDecimal("2.000")));
+        productsAndPositions.put(productWithAdditionalUnit, mockPosition(new BigDecimal("3")));
+        productsAndPositions.put(product, mockPosition(new BigDecimal("5")));
+        productsAndPositions.put(product, mockPosition(null));
+
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = (RowCallbackHandler) invocation.getArguments()[2];
+
+            handler.processRow(mockRow(1L, "2", "10"));
+            handler.processRow(mockRow(1L, "3", "5"));
+            handler.processRow(mockRow(1L, "4", "100"));
+            handler.processRow(mockRow(2L, "1", "7"));
+            handler.processRow(mockRow(2L, "5", "50"));
+
+            return null;
+        }).when(jdbcTemplate).query(anyString(), anyMapOf(String.class, Object.class), any(RowCallbackHandler.class));
+
+        // when
+        Map<Long, BigDecimal> quantities = resourceManagementService.getQuantitiesInWarehouse(warehouse, productsAndPositions);
+
+        // then
+        assertEquals(2, quantities.size());
+        assertEquals(0, new BigDecimal("15").compareTo(quantities.get(1L)));
+        assertEquals(0, new BigDecimal("7").compareTo(quantities.get(2L)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> paramsCaptor = ArgumentCaptor.forClass((Class) Map.class);
+
+        verify(jdbcTemplate).query(anyString(), paramsCaptor.capture(), any(RowCallbackHandler.class));
+
+        assertEquals(100L, paramsCaptor.getValue().get("locationId"));
+        assertEquals(2, ((Collection<?>) paramsCaptor.getValue().get("productIds")).size());
+    }
+
+    @Test
+    public void shouldReturnZeroForProductsWithoutResources() throws Exception {
+        // given
+        Entity product = mockProduct(2L, null);
+
+        Multimap<Entity, Entity> productsAndPositions = ArrayListMultimap.create();
+
+        productsAndPositions.put(product, mockPosition(BigDecimal.ONE));
+        productsAndPositions.put(product, mockPosition(BigDecimal.ONE));
+
+        // when
+        Map<Long, BigDecimal> quantities = resourceManagementService.getQuantitiesInWarehouse(warehouse, productsAndPositions);
+
+        // then
+        assertEquals(1, quantities.size());
+        assertEquals(BigDecimal.ZERO, quantities.get(2L));
+    }
+
+    @Test
+    public void shouldNotQueryForDocumentWithoutPositions() {
+        // when
+        Map<Long, BigDecimal> quantities = resourceManagementService.getQuantitiesInWarehouse(warehouse,
+                ArrayListMultimap.create());
+
+        // then
+        assertEquals(0, quantities.size());
+        verify(jdbcTemplate, never()).query(anyString(), anyMapOf(String.class, Object.class), any(RowCallbackHandler.class));
+    }
+
+    private Entity mockProduct(final Long id, final String additionalUnit) {
+        Entity product = mock(Entity.class);
+
+        given(product.getId()).willReturn(id);
+        given(product.getStringField(ProductFields.ADDITIONAL_UNIT)).willReturn(additionalUnit);
+
+        return product;
+    }
+
+    private Entity mockPosition(final BigDecimal conversion) {
+        Entity position = mock(Entity.class);
+
+        given(position.getDecimalField(PositionFields.CONVERSION)).willReturn(conversion);
+
+        return position;
+    }
+
+    private ResultSet mockRow(final Long productId, final String conversion, final String availableQuantity) throws Exception {
+        ResultSet resultSet = mock(ResultSet.class);
+
+        given(resultSet.getLong("product_id")).willReturn(productId);
+        given(resultSet.getBigDecimal("conversion")).willReturn(new BigDecimal(conversion));
+        given(resultSet.getBigDecimal("availablequantity")).willReturn(new BigDecimal(availableQuantity));
+
+        return resultSet;
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ResourceReservationsLedgerTest {
+
+    private ResourceReservationsLedger resourceReservationsLedger;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceReservationsLedger = new ResourceReservationsLedger();
+
+        ReflectionTestUtils.setField(resourceReservationsLedger, "jdbcTemplate", jdbcTemplate);
+
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @After
+    public void clear() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(resourceReservationsLedger);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldCoalesceDeltasPerResourceUntilFlush() {
+        // when
+        resourceReservationsLedger.record(2L, BigDecimal.ONE);
+        resourceReservationsLedger.record(1L, BigDecimal.TEN);
+        resourceReservationsLedger.record(2L, new BigDecimal("2.5"));
+        resourceReservationsLedger.record(3L, BigDecimal.ONE);
+        resourceReservationsLedger.record(3L, BigDecimal.ONE.negate());
+
+        // then
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Map[].class));
+
+        // when
+        resourceReservationsLedger.flush();
+
+        // then
+        ArgumentCaptor<Map[]> paramsCaptor = ArgumentCaptor.forClass(Map[].class);
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), paramsCaptor.capture());
+
+        Map[] params = paramsCaptor.getValue();
+
+        assertEquals(2, params.length);
+        assertEquals(1L, params[0].get("resource_id"));
+        assertEquals(BigDecimal.TEN, params[0].get("quantity_to_add"));
+        assertEquals(2L, params[1].get("resource_id"));
+        assertEquals(new BigDecimal("3.5"), params[1].get("quantity_to_add"));
+        assertEquals(5, resourceReservationsLedger.getRecordedDeltasCount());
+        assertEquals(2, resourceReservationsLedger.getAppliedUpdatesCount());
+    }
+
+    @Test
+    public void shouldApplyDeltaImmediatelyWithoutTransaction() {
+        // given
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // when
+        resourceReservationsLedger.record(1L, BigDecimal.ONE);
+
+        // then
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(Map[].class));
+    }
+
+}
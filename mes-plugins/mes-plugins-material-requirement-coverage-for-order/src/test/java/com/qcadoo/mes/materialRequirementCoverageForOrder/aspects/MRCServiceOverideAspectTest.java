@@ -0,0 +1,79 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirementCoverageForOrder.aspects;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orderSupplies.coverage.MaterialRequirementCoverageServiceImpl;
+
+public class MRCServiceOverideAspectTest {
+
+    private MRCServiceOverideAspect mrcServiceOverideAspect;
+
+    @Mock
+    private ProceedingJoinPoint pjp;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        mrcServiceOverideAspect = new MRCServiceOverideAspect();
+    }
+
+    @Test
+    public void shouldAddProductTypeAndPlannedQuantityToCoverageProductFields() throws Throwable {
+        // given
+        given(pjp.proceed()).willReturn(Lists.newArrayList("otherField"));
+
+        // when
+        List<String> additionalFields = mrcServiceOverideAspect.aroundGetAdditionalCoverageProductFields(pjp);
+
+        // then
+        assertEquals(Arrays.asList("otherField", "productType", "planedQuantity"), additionalFields);
+    }
+
+    @Test
+    public void shouldAdviseExistingPublicMethod() throws NoSuchMethodException {
+        // when
+        Method method = MaterialRequirementCoverageServiceImpl.class.getMethod("getAdditionalCoverageProductFields");
+
+        // then
+        assertEquals(List.class, method.getReturnType());
+        assertEquals(Modifier.PUBLIC, method.getModifiers() & Modifier.PUBLIC);
+    }
+
+}
@@ -95,7 +95,7 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
                 .getProductComponentQuantities(technology, plannedQuantity, operationRunsFromProductionQuantities);
 
         return evaluateOperationTime(null, operationComponent, includeTpz, includeAdditionalTime,
-                operationRunsFromProductionQuantities, productionLine, false, productComponentQuantities);
+                operationRunsFromProductionQuantities, productionLine, false, productComponentQuantities, Maps.newHashMap());
     }
 
     @Override
@@ -111,7 +111,7 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
                 .getProductComponentQuantities(technology, plannedQuantity, operationRunsFromProductionQuantities);
 
         return evaluateOperationTime(order, operationComponent, includeTpz, includeAdditionalTime,
-                operationRunsFromProductionQuantities, productionLine, true, productComponentQuantities);
+                operationRunsFromProductionQuantities, productionLine, true, productComponentQuantities, Maps.newHashMap());
     }
 
     @Override
@@ -173,9 +173,11 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
 
     }
 
+    // walks the entity tree on purpose: offsets and effective times of every operation are saved along the way
     private int evaluateOperationTime(final Entity order, final Entity operationComponent, final boolean includeTpz,
             final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns, final Entity productionLine,
-            final boolean maxForWorkstation, final OperationProductComponentWithQuantityContainer productComponentQuantities) {
+            final boolean maxForWorkstation, final OperationProductComponentWithQuantityContainer productComponentQuantities,
+            final Map<Long, QuantitiesForOneMainProduct> quantitiesForOneMainProduct) {
 
         int operationTime = evaluateSingleOperationTime(operationComponent, includeTpz, includeAdditionalTime, operationRuns,
                 productionLine, maxForWorkstation);
@@ -184,14 +186,15 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
         List<Entity> childs = Lists.newArrayList(operationComponent.getHasManyField("children"));
         for (Entity child : childs) {
             int childTime = evaluateOperationTime(order, child, includeTpz, includeAdditionalTime, operationRuns, productionLine,
-                    maxForWorkstation, productComponentQuantities);
+                    maxForWorkstation, productComponentQuantities, quantitiesForOneMainProduct);
 
             if ("02specified".equals(child.getStringField("nextOperationAfterProducedType"))) {
 
                 int childTimeTotal = evaluateSingleOperationTime(child, includeTpz, includeAdditionalTime, operationRuns,
                         productionLine, true);
                 int childTimeForQuantity = evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(child,
-                        includeTpz, false, operationRuns, productionLine, true, productComponentQuantities);
+                        includeTpz, false, operationRuns, productionLine, true, productComponentQuantities,
+                        quantitiesForOneMainProduct);
 
                 int difference = childTimeTotal - childTimeForQuantity;
                 childTime -= difference;
@@ -255,6 +258,16 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
             final boolean includeTpz, final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns,
             final Entity productionLine, final boolean maxForWorkstation,
             final OperationProductComponentWithQuantityContainer productComponentQuantities) {
+        return evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(operationComponent, includeTpz,
+                includeAdditionalTime, operationRuns, productionLine, maxForWorkstation, productComponentQuantities,
+                Maps.newHashMap());
+    }
+
+    private int evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(Entity operationComponent,
+            final boolean includeTpz, final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns,
+            final Entity productionLine, final boolean maxForWorkstation,
+            final OperationProductComponentWithQuantityContainer productComponentQuantities,
+            final Map<Long, QuantitiesForOneMainProduct> quantitiesForOneMainProduct) {
         operationComponent = operationComponent.getDataDefinition().get(operationComponent.getId());
         BigDecimal cycles = BigDecimal.ONE;
         BigDecimal nextOperationAfterProducedQuantity = BigDecimalUtils.convertNullToZero(operationComponent
@@ -264,7 +277,7 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
 
         if (nextOperationAfterProducedQuantity.compareTo(productComponentQuantity) != 1) {
             cycles = getQuantityCyclesNeededToProducedNextOperationAfterProducedQuantity(technologyOperationComponent,
-                    nextOperationAfterProducedQuantity);
+                    nextOperationAfterProducedQuantity, quantitiesForOneMainProduct);
         } else {
             cycles = operationRuns.get(technologyOperationComponent.getId());
         }
@@ -281,17 +294,16 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     }
 
     private BigDecimal getQuantityCyclesNeededToProducedNextOperationAfterProducedQuantity(final Entity operationComponent,
-            final BigDecimal nextOperationAfterProducedQuantity) {
+            final BigDecimal nextOperationAfterProducedQuantity,
+            final Map<Long, QuantitiesForOneMainProduct> quantitiesForOneMainProduct) {
         MathContext mc = numberService.getMathContext();
         Entity technology = operationComponent.getBelongsToField("technology");
 
-        Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
-
-        OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesService
-                .getProductComponentQuantities(technology, BigDecimal.ONE, operationRunsFromProductionQuantities);
+        QuantitiesForOneMainProduct quantities = quantitiesForOneMainProduct.computeIfAbsent(technology.getId(),
+                technologyId -> new QuantitiesForOneMainProduct(technology));
 
-        BigDecimal operationsRunsForOneMainProduct = operationRunsFromProductionQuantities.get(operationComponent.getId());
-        BigDecimal quantityOutputProductProduced = productQuantities.get(getOutputProduct(operationComponent));
+        BigDecimal operationsRunsForOneMainProduct = quantities.operationRuns.get(operationComponent.getId());
+        BigDecimal quantityOutputProductProduced = quantities.productQuantities.get(getOutputProduct(operationComponent));
         BigDecimal cycles = operationsRunsForOneMainProduct.multiply(nextOperationAfterProducedQuantity, mc).divide(
                 quantityOutputProductProduced, mc);
 
@@ -351,4 +363,22 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
             Entity productionLine) {
         return estimateOperationTimeConsumption(operationComponent, plannedQuantity, true, true, productionLine);
     }
+
+    /**
+     * Operation runs and product quantities of a technology for one main product. They don't depend on the operation, so
+     * they are computed once per technology while evaluating a tree of operations, instead of once per operation which
+     * starts its next operation after a specified quantity.
+     */
+    private final class QuantitiesForOneMainProduct {
+
+        private final Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+
+        private final OperationProductComponentWithQuantityContainer productQuantities;
+
+        private QuantitiesForOneMainProduct(final Entity technology) {
+            productQuantities = productQuantitiesService.getProductComponentQuantities(technology, BigDecimal.ONE,
+                    operationRuns);
+        }
+
+    }
 }
@@ -1,5 +1,6 @@
 package com.qcadoo.mes.operationalTasks.states;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.mes.newstates.StateExecutorService;
 import com.qcadoo.mes.operationalTasks.constants.OperationalTaskFields;
 import com.qcadoo.mes.operationalTasks.constants.OperationalTasksConstants;
@@ -43,10 +44,8 @@ public class OperationalTaskOrderStateService {
                     .add(SearchRestrictions.belongsTo(OperationalTaskFields.ORDER, order)).list().getEntities();
 
             String userLogin = securityService.getCurrentUserName();
-            for (Entity ot : tasksForOrder) {
-                stateExecutorService.changeState(OperationalTasksServiceMarker.class, ot, userLogin,
-                        OperationalTaskStateStringValues.STARTED);
-            }
+            stateExecutorService.changeState(OperationalTasksServiceMarker.class, tasksForOrder, userLogin,
+                    OperationalTaskStateStringValues.STARTED);
         } catch (Exception exc) {
             stateChangeContext
                     .addMessage("operationalTasks.operationalTask.error.startOperationalTask", StateMessageType.FAILURE);
@@ -59,16 +58,18 @@ public class OperationalTaskOrderStateService {
         String userLogin = securityService.getCurrentUserName();
         List<Entity> positions = schedule.getHasManyField(ScheduleFields.POSITIONS);
         try {
+            List<Entity> operationalTasks = Lists.newArrayList();
             for (Entity pos : positions) {
                 Entity operationalTask = dataDefinitionService
                         .get(OperationalTasksConstants.PLUGIN_IDENTIFIER, OperationalTasksConstants.MODEL_OPERATIONAL_TASK)
                         .find().add(SearchRestrictions.belongsTo(OperationalTaskFields.SCHEDULE_POSITION, pos)).setMaxResults(1)
                         .uniqueResult();
                 if (Objects.nonNull(operationalTask)) {
-                    stateExecutorService.changeState(OperationalTasksServiceMarker.class, operationalTask, userLogin,
-                            OperationalTaskStateStringValues.REJECTED);
+                    operationalTasks.add(operationalTask);
                 }
             }
+            stateExecutorService.changeState(OperationalTasksServiceMarker.class, operationalTasks, userLogin,
+                    OperationalTaskStateStringValues.REJECTED);
         } catch (Exception exc) {
             schedule.addGlobalError("operationalTasks.operationalTask.error.rejectOperationalTask");
             LOG.error("Error when rejected operational task.", exc);
@@ -267,33 +267,67 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageDate;
     }
 
-    private void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
+    void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
+        List<Entity> coverageProducts = entities;
+
         List<Entity> selectedOrders = materialRequirementCoverage.getHasManyField("coverageOrders");
         if (!selectedOrders.isEmpty()) {
-            List<Entity> filtredEntities = entities.stream()
-                    .filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER)).collect(Collectors.toList());
-            for (Entity covProduct : filtredEntities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
-            }
-        } else {
-            for (Entity covProduct : entities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
+            coverageProducts = entities.stream().filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER))
+                    .collect(Collectors.toList());
+        }
+
+        if (coverageProducts.isEmpty()) {
+            return;
+        }
+
+        List<Long> coverageProductsIds = getCoverageProductsIds(coverageProducts.size());
+        List<String> additionalFields = getAdditionalCoverageProductFields();
+
+        List<SqlParameterSource> coverageProductsParameters = Lists.newArrayListWithCapacity(coverageProducts.size());
+        List<SqlParameterSource> coverageProductLoggingsParameters = Lists.newArrayList();
+
+        for (int i = 0; i < coverageProducts.size(); i++) {
+            Entity covProduct = coverageProducts.get(i);
+            Long coverageProductId = coverageProductsIds.get(i);
+
+            coverageProductsParameters.add(getCoverageProductParameters(materialRequirementCoverage, covProduct,
+                    coverageProductId, additionalFields));
+
+            for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
+                coverageProductLoggingsParameters.add(getCoverageProductLoggingParameters(log, coverageProductId));
             }
         }
+
+        String sql = "INSERT INTO ordersupplies_coverageproduct "
+                + "(id, materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
+                + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
+                + "productunit, produceQuantity, fromSelectedOrder, allProductsType, company_id"
+                + additionalFields.stream().map(field -> ", " + field).collect(Collectors.joining()) + ") "
+                + "VALUES (:id, :materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
+                + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
+                + ":productunit, :produceQuantity, :fromSelectedOrder, :allProductsType, :company_id"
+                + additionalFields.stream().map(field -> ", :" + field).collect(Collectors.joining()) + ")";
+
+        jdbcTemplate.batchUpdate(sql, coverageProductsParameters.toArray(new SqlParameterSource[0]));
+
+        if (!coverageProductLoggingsParameters.isEmpty()) {
+            String sqlLog = "INSERT INTO ordersupplies_coverageproductlogging(coverageproduct_id, date, "
+                    + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
+                    + "VALUES (:coverageproduct_id, :date, :order_id, :delivery_id, :operation_id, "
+                    + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal)";
+
+            jdbcTemplate.batchUpdate(sqlLog, coverageProductLoggingsParameters.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    private List<Long> getCoverageProductsIds(final int count) {
+        return jdbcTemplate.queryForList("SELECT nextval('ordersupplies_coverageproduct_id_seq') FROM generate_series(1, :count)",
+                new MapSqlParameterSource("count", count), Long.class);
     }
 
-    private void saveCoverageProductLogging(Entity log) {
-        String sqlLog = "INSERT INTO ordersupplies_coverageproductlogging(coverageproduct_id, date, "
-                + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
-                + "VALUES (currval('ordersupplies_coverageproduct_id_seq'), :date, :order_id, :delivery_id, :operation_id, "
-                + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal);";
+    private SqlParameterSource getCoverageProductLoggingParameters(final Entity log, final Long coverageProductId) {
         Map<String, Object> parametersLogg = new HashMap<String, Object>();
+        parametersLogg.put("coverageproduct_id", coverageProductId);
         parametersLogg.put("date", log.getDateField(CoverageProductLoggingFields.DATE));
 
         if (log.getBelongsToField(CoverageProductLoggingFields.DELIVERY) != null) {
@@ -321,20 +355,13 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         parametersLogg.put("state", log.getStringField(CoverageProductLoggingFields.STATE));
         parametersLogg.put("warehouseNumber", log.getStringField(CoverageProductLoggingFields.WAREHOUSE_NUMBER));
         parametersLogg.put("deliveryNumberExternal", log.getStringField("deliveryNumberExternal"));
-        SqlParameterSource nParameters = new MapSqlParameterSource(parametersLogg);
-        jdbcTemplate.update(sqlLog, nParameters);
+        return new MapSqlParameterSource(parametersLogg);
     }
 
-    private void saveCoverageProduct(Entity materialRequirementCoverage, Entity covProduct) {
-        String sql = "INSERT INTO ordersupplies_coverageproduct "
-                + "(materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
-                + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
-                + "productunit, produceQuantity, fromSelectedOrder, allProductsType, company_id) "
-                + "VALUES (:materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
-                + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
-                + ":productunit, :produceQuantity, :fromSelectedOrder, :allProductsType, :company_id)";
-
+    private SqlParameterSource getCoverageProductParameters(final Entity materialRequirementCoverage, final Entity covProduct,
+            final Long coverageProductId, final List<String> additionalFields) {
         Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("id", coverageProductId);
         parameters.put("materialrequirementcoverage_id", materialRequirementCoverage.getId());
         parameters.put("product_id", covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
         Entity company = covProduct.getBelongsToField(CoverageProductFields.COMPANY);
@@ -359,8 +386,15 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.UNIT));
         parameters.put("fromSelectedOrder", covProduct.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER));
         parameters.put("allProductsType", covProduct.getStringField("allProductsType"));
-        SqlParameterSource namedParameters = new MapSqlParameterSource(parameters);
-        jdbcTemplate.update(sql, namedParameters);
+        for (String field : additionalFields) {
+            parameters.put(field, covProduct.getField(field));
+        }
+        return new MapSqlParameterSource(parameters);
+    }
+
+    // Do not remove, around by aspect
+    public List<String> getAdditionalCoverageProductFields() {
+        return Lists.newArrayList();
     }
 
     // Do not remove, around by aspect
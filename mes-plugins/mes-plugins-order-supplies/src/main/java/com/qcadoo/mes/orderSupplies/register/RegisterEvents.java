@@ -56,6 +56,8 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -63,11 +65,22 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 @Service
 public class RegisterEvents {
 
+    private static final Logger LOG = LoggerFactory.getLogger(RegisterEvents.class);
+
+    private static final long STATISTICS_LOG_INTERVAL = 100;
+
+    private final LongAdder recomputations = new LongAdder();
+
+    private final LongAdder recomputationTimeNanos = new LongAdder();
+
+    private final LongAdder skippedRecomputations = new LongAdder();
+
     @Autowired
     private RegisterService registerService;
 
@@ -109,6 +122,14 @@ public class RegisterEvents {
             orderDB = orderDD.find(query.toString()).setLong("id", order.getId()).setMaxResults(1).uniqueResult();
         }
 
+        if (registerFilled && orderDB != null && checkIfOnlyNumberOrDatesInOrderChange(order, orderDB)
+                && registerService.updateRegistryEntriesNumberAndDates(order)) {
+            skippedRecomputations.increment();
+            logRecomputationStatistics();
+
+            return;
+        }
+
         if (OrderState.of(order) == OrderState.IN_PROGRESS && checkIfOrderChange(order, orderDB)) {
             orderDB = order.getDataDefinition().get(order.getId());
             List<Entity> entries = orderDB.getHasManyField(OrderFieldsOS.COVERAGE_REGISTERS);
@@ -353,6 +374,8 @@ public class RegisterEvents {
     }
 
     public void createRegistryEntriesForOrder(Entity order, boolean plannedQuantityChanged) {
+        long start = System.nanoTime();
+
         OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = productQuantitiesService
                 .getProductComponentQuantitiesWithoutNonComponents(Lists.newArrayList(order), true);
 
@@ -388,6 +411,33 @@ public class RegisterEvents {
         }
         addOutputEntry(operationProductComponentWithQuantityContainer, order, entries, plannedQuantityChanged);
         order.setField(OrderFieldsOS.COVERAGE_REGISTERS, entries);
+
+        long recomputationTime = System.nanoTime() - start;
+
+        recomputations.increment();
+        recomputationTimeNanos.add(recomputationTime);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Registry entries of order %s created in %d ms", order.getStringField(OrderFields.NUMBER),
+                    recomputationTime / 1000000));
+        }
+
+        logRecomputationStatistics();
+    }
+
+    private void logRecomputationStatistics() {
+        long recomputationsCount = recomputations.sum();
+        long skippedRecomputationsCount = skippedRecomputations.sum();
+
+        if ((recomputationsCount + skippedRecomputationsCount) % STATISTICS_LOG_INTERVAL != 0 || !LOG.isInfoEnabled()) {
+            return;
+        }
+
+        double averageRecomputationTime = recomputationsCount == 0 ? 0d
+                : recomputationTimeNanos.sum() / 1e6 / recomputationsCount;
+
+        LOG.info(String.format("Registry entries recomputed for %d orders (average %.1f ms), recomputation skipped for %d orders",
+                recomputationsCount, averageRecomputationTime, skippedRecomputationsCount));
     }
 
     private void addOutputEntry(
@@ -496,6 +546,10 @@ public class RegisterEvents {
         if (order.getDecimalField(OrderFields.PLANNED_QUANTITY).compareTo(orderDB.getDecimalField(OrderFields.PLANNED_QUANTITY)) != 0) {
             return true;
         }
+        return checkIfTypeOfProductionRecordingChange(order, orderDB);
+    }
+
+    private boolean checkIfTypeOfProductionRecordingChange(final Entity order, final Entity orderDB) {
         if (order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING) == null) {
             return false;
         }
@@ -508,4 +562,18 @@ public class RegisterEvents {
         }
         return false;
     }
+
+    /**
+     * Registry entries depend on number and dates of the order only through their own order number and date, so when nothing
+     * else changed they can be moved instead of being created again from the technology.
+     */
+    private boolean checkIfOnlyNumberOrDatesInOrderChange(final Entity order, final Entity orderDB) {
+        if (order.getBelongsToField(OrderFields.TECHNOLOGY) == null || checkIfTechnologyInOrderChange(order, orderDB)) {
+            return false;
+        }
+        if (checkIfPlannedQuantityChange(order, orderDB) || checkIfTypeOfProductionRecordingChange(order, orderDB)) {
+            return false;
+        }
+        return checkIfOrderChange(order, orderDB);
+    }
 }
@@ -55,10 +55,12 @@ import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.sql.Types;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -494,4 +496,37 @@ public class RegisterService {
 
         return entities.stream().map(en -> en.getLongField("productId")).collect(Collectors.toList());
     }
+
+    /**
+     * Moves existing registry entries of the order to its current number and dates, without exploding its technology again.
+     * Output entries created from technology get the finish date of the order, all the others - including entries created
+     * from production counting quantities - the start date, as if the entries were created again.
+     *
+     * @return false if the order has no registry entries created from its technology, so they have to be created
+     */
+    public boolean updateRegistryEntriesNumberAndDates(final Entity order) {
+        MapSqlParameterSource params = new MapSqlParameterSource("orderId", order.getId());
+
+        Long technologyEntriesCount = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM ordersupplies_coverageregister WHERE order_id = :orderId "
+                        + "AND NOT COALESCE(fromproductioncountingquantity, false)", params, Long.class);
+
+        if (technologyEntriesCount == null || technologyEntriesCount == 0) {
+            return false;
+        }
+
+        params.addValue("orderNumber", order.getStringField(OrderFields.NUMBER));
+        params.addValue("startDate", order.getDateField(OrderFields.START_DATE), Types.TIMESTAMP);
+        params.addValue("finishDate", order.getDateField(OrderFields.FINISH_DATE), Types.TIMESTAMP);
+
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ordersupplies_coverageregister SET ordernumber = :orderNumber, ");
+        query.append("date = CASE WHEN eventtype = '05orderOutput' AND NOT COALESCE(fromproductioncountingquantity, false) ");
+        query.append("THEN :finishDate ELSE :startDate END ");
+        query.append("WHERE order_id = :orderId");
+
+        jdbcTemplate.update(query.toString(), params);
+
+        return true;
+    }
 }
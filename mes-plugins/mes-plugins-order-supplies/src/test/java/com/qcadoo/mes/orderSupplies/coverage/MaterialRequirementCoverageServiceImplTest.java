@@ -0,0 +1,153 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orderSupplies.constants.CoverageProductFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class MaterialRequirementCoverageServiceImplTest {
+
+    private static final String L_PRODUCT_TYPE = "productType";
+
+    private static final String L_PLANNED_QUANTITY = "planedQuantity";
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity materialRequirementCoverage, coverageProduct, product;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        EntityList coverageOrders = mockEntityList();
+        EntityList coverageProductLoggings = mockEntityList();
+
+        given(materialRequirementCoverage.getId()).willReturn(1L);
+        given(materialRequirementCoverage.getHasManyField("coverageOrders")).willReturn(coverageOrders);
+
+        given(coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT)).willReturn(product);
+        given(coverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)).willReturn(
+                coverageProductLoggings);
+        given(coverageProduct.getField(L_PRODUCT_TYPE)).willReturn("02intermediate");
+        given(coverageProduct.getField(L_PLANNED_QUANTITY)).willReturn(BigDecimal.TEN);
+
+        given(product.getId()).willReturn(2L);
+
+        given(jdbcTemplate.queryForList(anyString(), any(SqlParameterSource.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(3L));
+    }
+
+    @Test
+    public void shouldInsertAdditionalCoverageProductFields() {
+        // given
+        MaterialRequirementCoverageServiceImpl materialRequirementCoverageService = new MaterialRequirementCoverageServiceImpl() {
+
+            @Override
+            public List<String> getAdditionalCoverageProductFields() {
+                return Lists.newArrayList(L_PRODUCT_TYPE, L_PLANNED_QUANTITY);
+            }
+
+        };
+
+        ReflectionTestUtils.setField(materialRequirementCoverageService, "jdbcTemplate", jdbcTemplate);
+
+        // when
+        materialRequirementCoverageService.saveCoverage(materialRequirementCoverage, Lists.newArrayList(coverageProduct));
+
+        // then
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate).batchUpdate(sqlCaptor.capture(), parametersCaptor.capture());
+
+        String sql = sqlCaptor.getValue();
+
+        assertTrue(sql.contains(", productType, planedQuantity) "));
+        assertTrue(sql.endsWith(", :productType, :planedQuantity)"));
+
+        SqlParameterSource parameters = parametersCaptor.getValue()[0];
+
+        assertEquals(3L, parameters.getValue("id"));
+        assertEquals("02intermediate", parameters.getValue(L_PRODUCT_TYPE));
+        assertEquals(BigDecimal.TEN, parameters.getValue(L_PLANNED_QUANTITY));
+    }
+
+    @Test
+    public void shouldInsertOnlyOwnFieldsWithoutAdditionalFields() {
+        // given
+        MaterialRequirementCoverageServiceImpl materialRequirementCoverageService = new MaterialRequirementCoverageServiceImpl();
+
+        ReflectionTestUtils.setField(materialRequirementCoverageService, "jdbcTemplate", jdbcTemplate);
+
+        // when
+        materialRequirementCoverageService.saveCoverage(materialRequirementCoverage, Lists.newArrayList(coverageProduct));
+
+        // then
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate).batchUpdate(sqlCaptor.capture(), parametersCaptor.capture());
+
+        assertFalse(sqlCaptor.getValue().contains(L_PRODUCT_TYPE));
+        assertFalse(parametersCaptor.getValue()[0].hasValue(L_PRODUCT_TYPE));
+    }
+
+    private EntityList mockEntityList() {
+        List<Entity> entities = Collections.emptyList();
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.isEmpty()).willReturn(true);
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+
+        return entityList;
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.register;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.model.api.Entity;
+
+public class RegisterServiceTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private static final String L_ORDER_NUMBER = "ORDER-1";
+
+    private RegisterService registerService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity order;
+
+    private final Date startDate = new Date(1000000L);
+
+    private final Date finishDate = new Date(2000000L);
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        registerService = new RegisterService();
+
+        ReflectionTestUtils.setField(registerService, "jdbcTemplate", jdbcTemplate);
+
+        given(order.getId()).willReturn(L_ORDER_ID);
+        given(order.getStringField(OrderFields.NUMBER)).willReturn(L_ORDER_NUMBER);
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(startDate);
+        given(order.getDateField(OrderFields.FINISH_DATE)).willReturn(finishDate);
+    }
+
+    @Test
+    public void shouldNotUpdateEntriesIfOrderHasNoTechnologyEntries() {
+        // given
+        given(jdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(Long.class))).willReturn(0L);
+
+        // when
+        boolean updated = registerService.updateRegistryEntriesNumberAndDates(order);
+
+        // then
+        assertFalse(updated);
+        verify(jdbcTemplate, never()).update(anyString(), any(MapSqlParameterSource.class));
+    }
+
+    @Test
+    public void shouldGiveFinishDateOnlyToTechnologyOutputEntries() {
+        // given
+        given(jdbcTemplate.queryForObject(anyString(), any(MapSqlParameterSource.class), eq(Long.class))).willReturn(3L);
+
+        // when
+        boolean updated = registerService.updateRegistryEntriesNumberAndDates(order);
+
+        // then
+        assertTrue(updated);
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MapSqlParameterSource> paramsCaptor = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+
+        verify(jdbcTemplate).update(queryCaptor.capture(), paramsCaptor.capture());
+
+        String query = queryCaptor.getValue();
+
+        assertTrue(query.contains("ordernumber = :orderNumber"));
+        assertTrue(query.contains(
+                "CASE WHEN eventtype = '05orderOutput' AND NOT COALESCE(fromproductioncountingquantity, false) THEN :finishDate ELSE :startDate END"));
+        assertTrue(query.endsWith("WHERE order_id = :orderId"));
+
+        MapSqlParameterSource params = paramsCaptor.getValue();
+
+        assertEquals(L_ORDER_ID, params.getValue("orderId"));
+        assertEquals(L_ORDER_NUMBER, params.getValue("orderNumber"));
+        assertEquals(startDate, params.getValue("startDate"));
+        assertEquals(finishDate, params.getValue("finishDate"));
+    }
+
+}
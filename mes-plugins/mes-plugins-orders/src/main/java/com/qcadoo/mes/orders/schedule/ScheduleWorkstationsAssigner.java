@@ -0,0 +1,222 @@
+package com.qcadoo.mes.orders.schedule;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+
+/**
+ * List scheduler assigning schedule positions to workstations.
+ *
+ * Positions form a precedence graph: a position can start only after all positions of the same order whose operation is
+ * a child of its operation have ended (plus their additional time). Positions whose children are all placed are kept in a
+ * priority queue ordered by the earliest start they can get on any of their workstations and then by their rank (the
+ * schedule sort order), so the workstation which frees up first always gets the next operation available for it.
+ *
+ * Workstation availability only grows while scheduling, so a queued start time is a lower bound - it is recomputed when
+ * the position leaves the queue and the position is queued again if it got later.
+ */
+class ScheduleWorkstationsAssigner {
+
+    private final long scheduleStartTime;
+
+    private final Map<Long, Long> workstationsFinishTimes;
+
+    private final boolean shortestTime;
+
+    private final Set<Long> usedWorkstations = Sets.newHashSet();
+
+    ScheduleWorkstationsAssigner(final long scheduleStartTime, final Map<Long, Long> workstationsFinishTimes,
+            final boolean shortestTime) {
+        this.scheduleStartTime = scheduleStartTime;
+        this.workstationsFinishTimes = Maps.newHashMap(workstationsFinishTimes);
+        this.shortestTime = shortestTime;
+    }
+
+    /**
+     * Assigns workstations and times to positions. Positions without machine work time are not assigned, as well as all
+     * positions of orders which have an operation without workstations.
+     *
+     * @return positions which got assigned
+     */
+    List<Position> assign(final Collection<Position> positions) {
+        Set<Long> ordersWithOperationWithoutWorkstations = Sets.newHashSet();
+
+        for (Position position : positions) {
+            if (position.machineWorkTime > 0 && position.workstationsIds.isEmpty()) {
+                ordersWithOperationWithoutWorkstations.add(position.orderId);
+            }
+        }
+
+        Table<Long, Long, Position> positionsByOrderAndOperation = HashBasedTable.create();
+
+        for (Position position : positions) {
+            position.scheduled = position.machineWorkTime > 0
+                    && !ordersWithOperationWithoutWorkstations.contains(position.orderId);
+
+            positionsByOrderAndOperation.put(position.orderId, position.operationId, position);
+        }
+
+        for (Position position : positions) {
+            Position parent = position.parentOperationId == null ? null
+                    : positionsByOrderAndOperation.get(position.orderId, position.parentOperationId);
+
+            if (parent == null || !parent.scheduled) {
+                continue;
+            }
+
+            if (position.scheduled) {
+                position.parent = parent;
+                parent.pendingChildren++;
+            } else if (position.endTime != null) {
+                parent.readyTime = Math.max(parent.readyTime, position.endTime + position.additionalTime * 1000L);
+            }
+        }
+
+        PriorityQueue<Position> readyPositions = new PriorityQueue<>(
+                (first, second) -> first.queuedStartTime != second.queuedStartTime
+                        ? Long.compare(first.queuedStartTime, second.queuedStartTime)
+                        : Integer.compare(first.rank, second.rank));
+
+        for (Position position : positions) {
+            if (position.scheduled && position.pendingChildren == 0) {
+                enqueue(readyPositions, position);
+            }
+        }
+
+        List<Position> assignedPositions = Lists.newArrayList();
+
+        while (!readyPositions.isEmpty()) {
+            Position position = readyPositions.poll();
+
+            long queuedStartTime = position.queuedStartTime;
+
+            chooseWorkstation(position);
+
+            if (position.queuedStartTime > queuedStartTime) {
+                readyPositions.add(position);
+
+                continue;
+            }
+
+            position.startTime = position.queuedStartTime;
+            position.endTime = position.startTime + position.machineWorkTime * 1000L;
+
+            workstationsFinishTimes.put(position.workstationId, position.endTime);
+            usedWorkstations.add(position.workstationId);
+            assignedPositions.add(position);
+
+            Position parent = position.parent;
+
+            if (parent != null) {
+                parent.readyTime = Math.max(parent.readyTime, position.endTime + position.additionalTime * 1000L);
+
+                if (--parent.pendingChildren == 0) {
+                    enqueue(readyPositions, parent);
+                }
+            }
+        }
+
+        return assignedPositions;
+    }
+
+    private void enqueue(final PriorityQueue<Position> readyPositions, final Position position) {
+        chooseWorkstation(position);
+
+        readyPositions.add(position);
+    }
+
+    private void chooseWorkstation(final Position position) {
+        Long bestWorkstationId = null;
+        long bestStartTime = Long.MAX_VALUE;
+        boolean bestUsed = false;
+
+        for (Long workstationId : position.workstationsIds) {
+            long startTime = Math.max(Math.max(scheduleStartTime, position.readyTime),
+                    workstationsFinishTimes.getOrDefault(workstationId, scheduleStartTime));
+            boolean used = !shortestTime && usedWorkstations.contains(workstationId);
+
+            if (bestWorkstationId == null || (used && !bestUsed) || (used == bestUsed && startTime < bestStartTime)) {
+                bestWorkstationId = workstationId;
+                bestStartTime = startTime;
+                bestUsed = used;
+            }
+        }
+
+        position.workstationId = bestWorkstationId;
+        position.queuedStartTime = bestStartTime;
+    }
+
+    static final class Position {
+
+        private final Long id;
+
+        private final Long orderId;
+
+        private final Long operationId;
+
+        private final Long parentOperationId;
+
+        private final int rank;
+
+        private final int machineWorkTime;
+
+        private final int additionalTime;
+
+        private final List<Long> workstationsIds;
+
+        private Long workstationId;
+
+        private long startTime;
+
+        private Long endTime;
+
+        private boolean scheduled;
+
+        private Position parent;
+
+        private int pendingChildren;
+
+        private long readyTime = Long.MIN_VALUE;
+
+        private long queuedStartTime;
+
+        Position(final Long id, final Long orderId, final Long operationId, final Long parentOperationId, final int rank,
+                final int machineWorkTime, final int additionalTime, final Long endTime, final List<Long> workstationsIds) {
+            this.id = id;
+            this.orderId = orderId;
+            this.operationId = operationId;
+            this.parentOperationId = parentOperationId;
+            this.rank = rank;
+            this.machineWorkTime = machineWorkTime;
+            this.additionalTime = additionalTime;
+            this.endTime = endTime;
+            this.workstationsIds = workstationsIds;
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        Long getWorkstationId() {
+            return workstationId;
+        }
+
+        long getStartTime() {
+            return startTime;
+        }
+
+        long getEndTime() {
+            return endTime;
+        }
+
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.qcadoo.mes.orders.schedule;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.ScheduleFields;
+import com.qcadoo.mes.orders.constants.ScheduleSortOrder;
+import com.qcadoo.mes.orders.constants.ScheduleWorkstationAssignCriterion;
+import com.qcadoo.mes.orders.schedule.ScheduleWorkstationsAssigner.Position;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.plugin.api.PluginManager;
+
+@Service
+public class ScheduleWorkstationsAssignmentService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleWorkstationsAssignmentService.class);
+
+    private static final String L_OPERATIONAL_TASKS = "operationalTasks";
+
+    private static final String L_SCHEDULE_ID = "scheduleId";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PluginManager pluginManager;
+
+    @Transactional
+    public void assignOperationsToWorkstations(final Entity schedule) {
+        long start = System.currentTimeMillis();
+
+        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
+        boolean descending = ScheduleSortOrder.DESCENDING.getStringValue()
+                .equals(schedule.getStringField(ScheduleFields.SORT_ORDER));
+        boolean shortestTime = ScheduleWorkstationAssignCriterion.SHORTEST_TIME.getStringValue()
+                .equals(schedule.getStringField(ScheduleFields.WORKSTATION_ASSIGN_CRITERION));
+
+        MapSqlParameterSource params = new MapSqlParameterSource(L_SCHEDULE_ID, schedule.getId());
+
+        params.addValue("scheduleStartTime", scheduleStartTime);
+
+        ListMultimap<Long, Long> operationsWorkstations = getOperationsWorkstations(params);
+        List<Position> positions = getPositions(params, descending, operationsWorkstations);
+        long previousMakespan = getMakespan(params);
+
+        ScheduleWorkstationsAssigner assigner = new ScheduleWorkstationsAssigner(scheduleStartTime.getTime(),
+                getWorkstationsFinishTimes(params), shortestTime);
+
+        List<Position> assignedPositions = assigner.assign(positions);
+
+        updatePositions(assignedPositions);
+
+        if (LOG.isInfoEnabled()) {
+            long makespan = assignedPositions.stream().mapToLong(Position::getEndTime).max().orElse(scheduleStartTime.getTime());
+
+            LOG.info(String.format(
+                    "Schedule %d: %d of %d positions assigned to workstations in %d ms, makespan %d s (previously %d s)",
+                    schedule.getId(), assignedPositions.size(), positions.size(), System.currentTimeMillis() - start,
+                    Math.max(0, makespan - scheduleStartTime.getTime()) / 1000,
+                    Math.max(0, previousMakespan - scheduleStartTime.getTime()) / 1000));
+        }
+    }
+
+    private ListMultimap<Long, Long> getOperationsWorkstations(final MapSqlParameterSource params) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT tocw.technologyoperationcomponent_id, tocw.workstation_id ");
+        query.append("FROM jointable_technologyoperationcomponent_workstation tocw ");
+        query.append("WHERE tocw.technologyoperationcomponent_id IN (SELECT sp.technologyoperationcomponent_id ");
+        query.append("FROM orders_scheduleposition sp WHERE sp.schedule_id = :scheduleId) ");
+        query.append("ORDER BY tocw.technologyoperationcomponent_id, tocw.workstation_id");
+
+        ListMultimap<Long, Long> operationsWorkstations = ArrayListMultimap.create();
+
+        jdbcTemplate.query(query.toString(), params, rs -> {
+            operationsWorkstations.put(rs.getLong("technologyoperationcomponent_id"), rs.getLong("workstation_id"));
+        });
+
+        return operationsWorkstations;
+    }
+
+    private List<Position> getPositions(final MapSqlParameterSource params, final boolean descending,
+            final ListMultimap<Long, Long> operationsWorkstations) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT sp.id, sp.order_id, sp.technologyoperationcomponent_id, toc.parent_id, ");
+        query.append("COALESCE(sp.machineworktime, 0) AS machineworktime, COALESCE(sp.additionaltime, 0) AS additionaltime, ");
+        query.append("sp.endtime ");
+        query.append("FROM orders_scheduleposition sp ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.id = sp.technologyoperationcomponent_id ");
+        query.append("WHERE sp.schedule_id = :scheduleId ");
+        query.append("ORDER BY toc.nodenumber DESC, sp.machineworktime ").append(descending ? "DESC" : "ASC").append(", sp.id");
+
+        List<Position> positions = Lists.newArrayList();
+
+        jdbcTemplate.query(query.toString(), params, rs -> {
+            Long operationId = rs.getLong("technologyoperationcomponent_id");
+            Long parentOperationId = rs.getLong("parent_id");
+
+            if (rs.wasNull()) {
+                parentOperationId = null;
+            }
+
+            Timestamp endTime = rs.getTimestamp("endtime");
+
+            positions.add(new Position(rs.getLong("id"), rs.getLong("order_id"), operationId,
+                    parentOperationId, positions.size(), rs.getInt("machineworktime"),
+                    rs.getInt("additionaltime"), endTime == null ? null : endTime.getTime(),
+                    operationsWorkstations.get(operationId)));
+        });
+
+        return positions;
+    }
+
+    private long getMakespan(final MapSqlParameterSource params) {
+        Timestamp makespan = jdbcTemplate.queryForObject(
+                "SELECT MAX(endtime) FROM orders_scheduleposition WHERE schedule_id = :scheduleId AND workstation_id IS NOT NULL",
+                params, Timestamp.class);
+
+        return makespan == null ? 0L : makespan.getTime();
+    }
+
+    private Map<Long, Long> getWorkstationsFinishTimes(final MapSqlParameterSource params) {
+        Map<Long, Long> workstationsFinishTimes = Maps.newHashMap();
+
+        if (!pluginManager.isPluginEnabled(L_OPERATIONAL_TASKS)) {
+            return workstationsFinishTimes;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT ot.workstation_id, MAX(ot.finishdate) AS finishdate ");
+        query.append("FROM operationaltasks_operationaltask ot ");
+        query.append("WHERE ot.finishdate > :scheduleStartTime AND ot.workstation_id IN (");
+        query.append("SELECT tocw.workstation_id FROM jointable_technologyoperationcomponent_workstation tocw ");
+        query.append("JOIN orders_scheduleposition sp ON sp.technologyoperationcomponent_id = tocw.technologyoperationcomponent_id ");
+        query.append("WHERE sp.schedule_id = :scheduleId) ");
+        query.append("GROUP BY ot.workstation_id");
+
+        jdbcTemplate.query(query.toString(), params, rs -> {
+            workstationsFinishTimes.put(rs.getLong("workstation_id"), rs.getTimestamp("finishdate").getTime());
+        });
+
+        return workstationsFinishTimes;
+    }
+
+    private void updatePositions(final List<Position> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] params = positions.stream()
+                .map(position -> new MapSqlParameterSource("id", position.getId())
+                        .addValue("workstationId", position.getWorkstationId())
+                        .addValue("startTime", new Timestamp(position.getStartTime()))
+                        .addValue("endTime", new Timestamp(position.getEndTime())))
+                .toArray(MapSqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate("UPDATE orders_scheduleposition SET workstation_id = :workstationId, "
+                + "starttime = :startTime, endtime = :endTime WHERE id = :id", params);
+    }
+
+}
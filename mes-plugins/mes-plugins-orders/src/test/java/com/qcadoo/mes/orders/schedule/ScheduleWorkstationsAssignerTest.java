@@ -0,0 +1,112 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.qcadoo.mes.orders.schedule.ScheduleWorkstationsAssigner.Position;
+
+public class ScheduleWorkstationsAssignerTest {
+
+    private static final long START = 1_000_000L;
+
+    private static final Long ORDER_ID = 1L;
+
+    @Test
+    public void shouldStartParentAfterChildrenWithAdditionalTime() {
+        // given
+        Position child = new Position(1L, ORDER_ID, 11L, 10L, 0, 60, 30, null, Arrays.asList(100L));
+        Position parent = new Position(2L, ORDER_ID, 10L, null, 1, 120, 0, null, Arrays.asList(200L));
+
+        ScheduleWorkstationsAssigner assigner = new ScheduleWorkstationsAssigner(START, Collections.emptyMap(), true);
+
+        // when
+        List<Position> assignedPositions = assigner.assign(Arrays.asList(parent, child));
+
+        // then
+        assertEquals(2, assignedPositions.size());
+        assertEquals(START, child.getStartTime());
+        assertEquals(START + 60_000L, child.getEndTime());
+        assertEquals(START + 90_000L, parent.getStartTime());
+        assertEquals(START + 210_000L, parent.getEndTime());
+    }
+
+    @Test
+    public void shouldAssignWorkstationWhichFinishesFirst() {
+        // given
+        Map<Long, Long> workstationsFinishTimes = ImmutableMap.of(100L, START + 600_000L);
+
+        Position position = new Position(1L, ORDER_ID, 10L, null, 0, 60, 0, null, Arrays.asList(100L, 200L));
+
+        ScheduleWorkstationsAssigner assigner = new ScheduleWorkstationsAssigner(START, workstationsFinishTimes, true);
+
+        // when
+        assigner.assign(Collections.singletonList(position));
+
+        // then
+        assertEquals(Long.valueOf(200L), position.getWorkstationId());
+        assertEquals(START, position.getStartTime());
+    }
+
+    @Test
+    public void shouldPreferUsedWorkstationsWhenAssigningToLeastWorkstations() {
+        // given
+        Position first = new Position(1L, ORDER_ID, 10L, null, 0, 60, 0, null, Arrays.asList(100L));
+        Position second = new Position(2L, 2L, 20L, null, 1, 60, 0, null, Arrays.asList(200L, 100L));
+
+        ScheduleWorkstationsAssigner assigner = new ScheduleWorkstationsAssigner(START, Collections.emptyMap(), false);
+
+        // when
+        assigner.assign(Arrays.asList(first, second));
+
+        // then
+        assertEquals(Long.valueOf(100L), second.getWorkstationId());
+        assertEquals(START + 60_000L, second.getStartTime());
+    }
+
+    @Test
+    public void shouldSkipOrdersWithOperationWithoutWorkstations() {
+        // given
+        Position child = new Position(1L, ORDER_ID, 11L, 10L, 0, 60, 0, null, Collections.emptyList());
+        Position parent = new Position(2L, ORDER_ID, 10L, null, 1, 60, 0, null, Arrays.asList(100L));
+        Position other = new Position(3L, 2L, 20L, null, 2, 60, 0, null, Arrays.asList(100L));
+
+        ScheduleWorkstationsAssigner assigner = new ScheduleWorkstationsAssigner(START, Collections.emptyMap(), true);
+
+        // when
+        List<Position> assignedPositions = assigner.assign(Arrays.asList(child, parent, other));
+
+        // then
+        assertEquals(Collections.singletonList(other), assignedPositions);
+    }
+
+}
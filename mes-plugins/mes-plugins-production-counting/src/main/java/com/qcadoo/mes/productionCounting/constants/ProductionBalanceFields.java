@@ -47,6 +47,10 @@ public final class ProductionBalanceFields {
 
     public static final String GENERATED = "generated";
 
+    public static final String GENERATION_IN_PROGRESS = "generationInProgress";
+
+    public static final String GENERATION_START_DATE = "generationStartDate";
+
     public static final String NAME = "name";
 
     public static final String NUMBER = "number";
@@ -39,6 +39,8 @@ public class ProductionBalanceHooks {
     private void clearGeneratedOnCopy(final Entity productionBalance) {
         productionBalance.setField(ProductionBalanceFields.FILE_NAME, null);
         productionBalance.setField(ProductionBalanceFields.GENERATED, false);
+        productionBalance.setField(ProductionBalanceFields.GENERATION_IN_PROGRESS, false);
+        productionBalance.setField(ProductionBalanceFields.GENERATION_START_DATE, null);
         productionBalance.setField(ProductionBalanceFields.DATE, null);
         productionBalance.setField(ProductionBalanceFields.WORKER, null);
     }
@@ -34,6 +34,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.print.ReportGenerationService;
+import com.qcadoo.mes.basic.print.StreamingXlsxDocumentService;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.productionCounting.ProductionCountingService;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
@@ -68,6 +70,9 @@ public class ProductionBalanceDetailsListeners {
     @Autowired
     private ProductionBalanceXlsService productionBalanceXlsService;
 
+    @Autowired
+    private ReportGenerationService reportGenerationService;
+
     @Transactional
     public void generateProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         state.performEvent(view, "save");
@@ -80,6 +85,10 @@ public class ProductionBalanceDetailsListeners {
             if (productionBalance == null) {
                 state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
 
+                return;
+            } else if (reportGenerationService.isGenerationInProgress(productionBalance)) {
+                state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+
                 return;
             } else if (StringUtils.isNotEmpty(productionBalance.getStringField(ProductionBalanceFields.FILE_NAME))) {
                 state.addMessage("productionCounting.productionBalance.report.error.documentsWasGenerated", MessageType.FAILURE);
@@ -91,18 +100,22 @@ public class ProductionBalanceDetailsListeners {
                 fillReportValues(productionBalance);
             }
 
-            if (!productionBalance.getHasManyField(ProductionBalanceFields.ORDERS).isEmpty()) {
-                generateProductionBalanceDocumentXls(productionBalance, state.getLocale());
-            } else {
+            if (productionBalance.getHasManyField(ProductionBalanceFields.ORDERS).isEmpty()) {
                 state.addMessage("productionCounting.productionBalance.report.error.noOrders", MessageType.FAILURE);
 
                 return;
             }
+
+            Locale locale = state.getLocale();
+
+            reportGenerationService.generateAfterCommit(productionBalance, ProductionBalanceFields.FILE_NAME,
+                    productionBalanceToGenerate -> fileService.updateReportFileName(productionBalanceToGenerate,
+                            ProductionBalanceFields.DATE, "productionCounting.productionBalance.report.fileName"),
+                    productionBalanceToGenerate -> generateProductionBalanceDocumentXls(productionBalanceToGenerate, locale));
+
             state.performEvent(view, "reset");
 
-            state.addMessage(
-                    "productionCounting.productionBalanceDetails.window.mainTab.productionBalanceDetails.generatedMessage",
-                    MessageType.SUCCESS);
+            state.addMessage("basic.report.generationStarted", MessageType.INFO);
         }
     }
 
@@ -113,13 +126,8 @@ public class ProductionBalanceDetailsListeners {
     }
 
     private void generateProductionBalanceDocumentXls(final Entity productionBalance, final Locale locale) {
-        String localePrefix = "productionCounting.productionBalance.report.fileName";
-
-        Entity productionBalanceWithFileName = fileService.updateReportFileName(productionBalance, ProductionBalanceFields.DATE,
-                localePrefix);
-
         try {
-            productionBalanceXlsService.generateDocument(productionBalanceWithFileName, locale);
+            productionBalanceXlsService.generateDocument(productionBalance, locale);
 
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving productionBalance report", e);
@@ -127,6 +135,22 @@ public class ProductionBalanceDetailsListeners {
     }
 
     public void printProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        Long productionBalanceId = (Long) state.getFieldValue();
+
+        Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+        if ((productionBalance != null) && reportGenerationService.isGenerationInProgress(productionBalance)) {
+            state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+
+            return;
+        }
+
+        if ((productionBalance != null) && StreamingXlsxDocumentService.isGenerated(productionBalance)) {
+            view.redirectTo("/productionCounting/productionBalance.xlsx?id=" + productionBalanceId, true, false);
+
+            return;
+        }
+
         reportService.printGeneratedReport(view, state, new String[] { args[0], ProductionCountingConstants.PLUGIN_IDENTIFIER,
                 ProductionCountingConstants.MODEL_PRODUCTION_BALANCE });
     }
@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.LogService;
@@ -18,6 +19,7 @@ import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStat
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateChangeFields;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
 import com.qcadoo.mes.productionCounting.states.listener.ProductionTrackingListenerService;
+import com.qcadoo.mes.productionCounting.xls.ProductionBalanceAggregateService;
 import com.qcadoo.mes.states.StateChangeEntityDescriber;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.security.api.UserService;
@@ -36,6 +38,9 @@ public class ProductionTrackingStateService extends BasicStateService implements
     @Autowired
     private ProductionTrackingService productionTrackingService;
 
+    @Autowired
+    private ProductionBalanceAggregateService productionBalanceAggregateService;
+
     @Autowired
     private LogService logService;
 
@@ -94,6 +99,15 @@ public class ProductionTrackingStateService extends BasicStateService implements
         }
 
         if (entity.isValid()) {
+            if (ProductionTrackingStateStringValues.ACCEPTED.equals(sourceState)
+                    || ProductionTrackingStateStringValues.ACCEPTED.equals(targetState)) {
+                // aggregates are refreshed with plain SQL, so pending changes of tracking have to reach the database first
+                TransactionAspectSupport.currentTransactionStatus().flush();
+
+                productionBalanceAggregateService.refreshForOrder(entity.getBelongsToField(ProductionTrackingFields.ORDER)
+                        .getId());
+            }
+
             logActivities(entity, stateChangeEntity, targetState);
         }
         return entity;
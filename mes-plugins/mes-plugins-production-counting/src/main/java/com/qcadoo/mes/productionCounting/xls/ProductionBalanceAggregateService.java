@@ -0,0 +1,82 @@
+package com.qcadoo.mes.productionCounting.xls;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps per order sums of accepted production trackings (used, produced and waste quantities per operation and product), so
+ * production balance reports don't have to aggregate raw tracking components on every generation.
+ */
+@Service
+public class ProductionBalanceAggregateService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionBalanceAggregateService.class);
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Transactional
+    public void refreshForOrder(final Long orderId) {
+        refreshForOrders(Collections.singletonList(orderId));
+    }
+
+    @Transactional
+    public void refreshForOrders(final List<Long> ordersIds) {
+        if (ordersIds.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource("ordersIds", ordersIds);
+
+        // concurrent refreshes of the same order would both delete and then both insert its aggregates, so orders are
+        // locked first, always in the same order to avoid deadlocks
+        jdbcTemplate.queryForList("SELECT id FROM orders_order WHERE id IN (:ordersIds) ORDER BY id FOR UPDATE", params,
+                Long.class);
+        jdbcTemplate.update("DELETE FROM productioncounting_productionbalanceaggregate WHERE order_id IN (:ordersIds)", params);
+        jdbcTemplate.update(buildInsertQuery("AND pt.order_id IN (:ordersIds) "), params);
+    }
+
+    @Transactional
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        // blocks refreshes of single orders until the whole table is rebuilt
+        jdbcTemplate.update("LOCK TABLE productioncounting_productionbalanceaggregate IN SHARE ROW EXCLUSIVE MODE",
+                new MapSqlParameterSource());
+        jdbcTemplate.update("DELETE FROM productioncounting_productionbalanceaggregate", new MapSqlParameterSource());
+        int rows = jdbcTemplate.update(buildInsertQuery(""), new MapSqlParameterSource());
+
+        LOG.info(String.format("Production balance aggregates rebuilt: %d rows in %d ms", rows,
+                System.currentTimeMillis() - start));
+    }
+
+    private String buildInsertQuery(final String ordersClause) {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO productioncounting_productionbalanceaggregate ");
+        query.append("(order_id, technologyoperationcomponent_id, product_id, role, wasteunit, usedquantity, wasteusedquantity, wastesquantity) ");
+        query.append("SELECT pt.order_id, pt.technologyoperationcomponent_id, topic.product_id, '01used', topic.wasteunit, ");
+        query.append("COALESCE(SUM(topic.usedquantity), 0), COALESCE(SUM(topic.wasteusedquantity), 0), 0 ");
+        query.append("FROM productioncounting_productiontracking pt ");
+        query.append("JOIN productioncounting_trackingoperationproductincomponent topic ON topic.productiontracking_id = pt.id ");
+        query.append("WHERE pt.state = '02accepted' ").append(ordersClause);
+        query.append("GROUP BY pt.order_id, pt.technologyoperationcomponent_id, topic.product_id, topic.wasteunit ");
+        query.append("UNION ALL ");
+        query.append("SELECT pt.order_id, pt.technologyoperationcomponent_id, topoc.product_id, '02produced', NULL, ");
+        query.append("COALESCE(SUM(topoc.usedquantity), 0), 0, COALESCE(SUM(topoc.wastesquantity), 0) ");
+        query.append("FROM productioncounting_productiontracking pt ");
+        query.append("JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id ");
+        query.append("WHERE pt.state = '02accepted' ").append(ordersClause);
+        query.append("GROUP BY pt.order_id, pt.technologyoperationcomponent_id, topoc.product_id ");
+
+        return query.toString();
+    }
+
+}
@@ -1,9 +1,13 @@
 package com.qcadoo.mes.productionCounting.xls;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
@@ -24,10 +28,12 @@ import com.qcadoo.model.api.Entity;
 @Repository
 class ProductionBalanceRepository {
 
+    private static final int L_FETCH_SIZE = 1000;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
-    List<ProducedQuantity> getProducedQuantities(final List<Long> ordersIds) {
+    void streamProducedQuantities(final List<Long> ordersIds, final Consumer<ProducedQuantity> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -36,32 +42,29 @@ class ProductionBalanceRepository {
         query.append("MIN(o.plannedquantity) AS plannedQuantity, ");
         appendProducedQuantity(query);
         query.append("AS producedQuantity, ");
-        query.append("COALESCE(SUM(topoc.wastesquantity), 0) AS wastesQuantity, ");
+        query.append("COALESCE(SUM(pba.wastesquantity), 0) AS wastesQuantity, ");
         query.append("COALESCE(prodWaste.producedWastes, 0) AS producedWastes, ");
         appendProducedQuantity(query);
         query.append("- MIN(o.plannedQuantity) AS deviation, ");
         query.append("prod.unit AS productUnit ");
         query.append("FROM orders_order o ");
         query.append("JOIN basic_product prod ON o.product_id = prod.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id AND topoc.product_id = prod.id ");
+        query.append("LEFT JOIN productioncounting_productionbalanceaggregate pba ON pba.order_id = o.id AND pba.product_id = prod.id AND pba.role = '02produced' ");
         query.append("LEFT JOIN ");
-        query.append("(SELECT pcq.order_id as orderId, wastePt.order_id AS wastePtOrderId, COALESCE(SUM(wasteTopoc.usedquantity), 0) AS producedWastes ");
+        query.append("(SELECT pcq.order_id AS orderId, COALESCE(SUM(wastePba.usedquantity), 0) AS producedWastes ");
         query.append("FROM basicproductioncounting_productioncountingquantity pcq ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent wasteTopoc ON  wasteTopoc.product_id = pcq.product_id ");
-        query.append("LEFT JOIN productioncounting_productiontracking wastePt ON wasteTopoc.productiontracking_id = wastePt.id AND wastePt.state = '02accepted' ");
-        query.append("WHERE pcq.typeofmaterial = '04waste' AND pcq.role = '02produced' ");
-        query.append("GROUP BY orderId, wastePtOrderId) prodWaste ON prodWaste.orderId = o.id AND prodWaste.wastePtOrderId = o.id ");
+        query.append("JOIN productioncounting_productionbalanceaggregate wastePba ON wastePba.order_id = pcq.order_id AND wastePba.product_id = pcq.product_id AND wastePba.role = '02produced' ");
+        query.append("WHERE pcq.typeofmaterial = '04waste' AND pcq.role = '02produced' AND pcq.order_id IN (:ordersIds) ");
+        query.append("GROUP BY orderId) prodWaste ON prodWaste.orderId = o.id ");
         appendWhereClause(query);
         query.append("GROUP BY orderNumber, productNumber, productName, productUnit, prodWaste.producedWastes ");
         query.append("ORDER BY orderNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProducedQuantity.class));
+        stream(query.toString(), ordersIds, ProducedQuantity.class, consumer);
     }
 
     private void appendProducedQuantity(StringBuilder query) {
-        query.append("COALESCE(SUM(topoc.usedquantity), 0) ");
+        query.append("COALESCE(SUM(pba.usedquantity), 0) ");
     }
 
     private void appendWhereClause(StringBuilder query) {
@@ -74,9 +77,8 @@ class ProductionBalanceRepository {
         appendMaterialCostsSelectionClause(query, entity);
         query.append("NULL AS operationNumber ");
         appendMaterialCostsFromClause(query, entity);
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductincomponent topic ON topic.productiontracking_id = pt.id AND topic.product_id = p.id ");
-        query.append("GROUP BY o.id, o.number, p.number, p.name, p.unit, topic.wasteunit) ");
+        query.append("LEFT JOIN productioncounting_productionbalanceaggregate pba ON pba.order_id = o.id AND pba.product_id = p.id AND pba.role = '01used' ");
+        query.append("GROUP BY o.id, o.number, p.number, p.name, p.unit, pba.wasteunit) ");
         query.append("UNION ");
         appendForEachPlannedQuantities(query);
         appendMaterialCostsSelectionClause(query, entity);
@@ -84,9 +86,8 @@ class ProductionBalanceRepository {
         appendMaterialCostsFromClause(query, entity);
         query.append("JOIN technologies_operation op ON q.operation_id = op.id ");
         query.append("JOIN technologies_technologyoperationcomponent toc ON toc.operation_id = op.id AND o.technology_id = toc.technology_id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.technologyoperationcomponent_id = toc.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductincomponent topic ON topic.productiontracking_id = pt.id AND topic.product_id = p.id ");
-        query.append("GROUP BY o.id, o.number, op.number, p.number, p.name, p.unit, topic.wasteunit) ");
+        query.append("LEFT JOIN productioncounting_productionbalanceaggregate pba ON pba.order_id = o.id AND pba.technologyoperationcomponent_id = toc.id AND pba.product_id = p.id AND pba.role = '01used' ");
+        query.append("GROUP BY o.id, o.number, op.number, p.number, p.name, p.unit, pba.wasteunit) ");
         query.append("ORDER BY orderNumber, operationNumber, productNumber ");
 
         return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
@@ -150,7 +151,7 @@ class ProductionBalanceRepository {
         query.append("p.number AS productNumber, ");
         query.append("p.name AS productName, ");
         query.append("p.unit AS productUnit, ");
-        query.append("topic.wasteunit AS usedWasteUnit, ");
+        query.append("pba.wasteunit AS usedWasteUnit, ");
         appendPlannedQuantity(query);
         query.append("AS plannedQuantity, ");
         appendUsedQuantity(query);
@@ -167,7 +168,7 @@ class ProductionBalanceRepository {
         query.append("- ");
         appendPlannedCost(query, entity);
         query.append("AS valueDeviation, ");
-        query.append("COALESCE(SUM(topic.wasteusedquantity), 0) AS usedWasteQuantity, ");
+        query.append("COALESCE(SUM(pba.wasteusedquantity), 0) AS usedWasteQuantity, ");
     }
 
     private void appendMaterialCostsFromClause(StringBuilder query, Entity entity) {
@@ -237,10 +238,10 @@ class ProductionBalanceRepository {
     }
 
     private void appendUsedQuantity(StringBuilder query) {
-        query.append("(COALESCE(SUM(topic.usedquantity), 0) - MIN(q.childsQuantity)) ");
+        query.append("(COALESCE(SUM(pba.usedquantity), 0) - MIN(q.childsQuantity)) ");
     }
 
-    List<PieceworkDetails> getPieceworkDetails(List<Long> ordersIds) {
+    void streamPieceworkDetails(List<Long> ordersIds, Consumer<PieceworkDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -255,11 +256,10 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, operationNumber ");
         query.append("ORDER BY orderNumber, operationNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(PieceworkDetails.class));
+        stream(query.toString(), ordersIds, PieceworkDetails.class, consumer);
     }
 
-    List<LaborTime> getLaborTime(List<Long> ordersIds) {
+    void streamLaborTime(List<Long> ordersIds, Consumer<LaborTime> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -281,11 +281,10 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, operationNumber, staffNumber, staffName, staffSurname, staffLaborHourlyCost, wageGroupName ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTime.class));
+        stream(query.toString(), ordersIds, LaborTime.class, consumer);
     }
 
-    List<LaborTimeDetails> getLaborTimeDetails(Entity entity, List<Long> ordersIds) {
+    void streamLaborTimeDetails(Entity entity, List<Long> ordersIds, Consumer<LaborTimeDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("(WITH planned_time (order_id, staff_time, machine_time) AS (SELECT o.id AS orderId, ");
         appendPlannedStaffTime(entity, query);
@@ -392,8 +391,19 @@ class ProductionBalanceRepository {
         query.append("AND o.typeofproductionrecording = '03forEach') ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTimeDetails.class));
+        stream(query.toString(), ordersIds, LaborTimeDetails.class, consumer);
+    }
+
+    private <T> void stream(final String query, final List<Long> ordersIds, final Class<T> mappedClass,
+            final Consumer<T> consumer) {
+        // rows are read with a cursor, so they don't have to fit in memory at once
+        JdbcTemplate streamingJdbcTemplate = new JdbcTemplate(((JdbcTemplate) jdbcTemplate.getJdbcOperations()).getDataSource());
+        streamingJdbcTemplate.setFetchSize(L_FETCH_SIZE);
+
+        RowMapper<T> rowMapper = BeanPropertyRowMapper.newInstance(mappedClass);
+
+        new NamedParameterJdbcTemplate(streamingJdbcTemplate).query(query, new MapSqlParameterSource("ordersIds", ordersIds),
+                (RowCallbackHandler) resultSet -> consumer.accept(rowMapper.mapRow(resultSet, resultSet.getRow())));
     }
 
     List<ProductionCost> getProductionCosts(Entity entity, List<Long> ordersIds) {
@@ -706,8 +716,7 @@ class ProductionBalanceRepository {
         query.append("AS sellPrice ");
         query.append("FROM orders_order o ");
         query.append("JOIN basic_product prod ON o.product_id = prod.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id AND topoc.product_id = prod.id ");
+        query.append("LEFT JOIN productioncounting_productionbalanceaggregate pba ON pba.order_id = o.id AND pba.product_id = prod.id AND pba.role = '02produced' ");
         query.append("LEFT JOIN grouped_material_cost gmc ON gmc.order_id = o.id ");
         query.append("JOIN grouped_production_cost gpc ON gpc.order_id = o.id ");
         appendWhereClause(query);
@@ -884,8 +893,7 @@ class ProductionBalanceRepository {
         query.append("AS sellPrice ");
         query.append("FROM orders_order o ");
         query.append("JOIN basic_product prod ON o.product_id = prod.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id AND topoc.product_id = prod.id ");
+        query.append("LEFT JOIN productioncounting_productionbalanceaggregate pba ON pba.order_id = o.id AND pba.product_id = prod.id AND pba.role = '02produced' ");
         query.append("JOIN order_balance_rec obr ON obr.order_id = o.id ");
         appendWhereClause(query);
         query.append("AND o.root_id IS NULL ");
@@ -0,0 +1,52 @@
+package com.qcadoo.mes.productionCounting.xls;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.qcadoo.mes.basic.print.StreamingXlsxDocumentService;
+import com.qcadoo.mes.productionCounting.ProductionCountingService;
+import com.qcadoo.model.api.Entity;
+
+@Controller
+public class ProductionBalanceXlsController {
+
+    private static final String L_XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    @Autowired
+    private ProductionCountingService productionCountingService;
+
+    @RequestMapping(value = "/productionCounting/productionBalance.xlsx", method = RequestMethod.GET)
+    public void printProductionBalance(@RequestParam("id") final Long productionBalanceId, final HttpServletResponse response)
+            throws IOException {
+        Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+        if ((productionBalance == null) || !StreamingXlsxDocumentService.isGenerated(productionBalance)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        File file = new File(StreamingXlsxDocumentService.getFilePath(productionBalance));
+
+        response.setContentType(L_XLSX_CONTENT_TYPE);
+        response.setHeader("Content-disposition", "attachment; filename=" + file.getName());
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+            IOUtils.copy(inputStream, response.getOutputStream());
+        }
+
+        response.flushBuffer();
+    }
+
+}
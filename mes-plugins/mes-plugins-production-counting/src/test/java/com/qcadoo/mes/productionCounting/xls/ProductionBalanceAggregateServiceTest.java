@@ -0,0 +1,154 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+
+public class ProductionBalanceAggregateServiceTest {
+
+    private ProductionBalanceAggregateService productionBalanceAggregateService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionBalanceAggregateService = new ProductionBalanceAggregateService();
+
+        ReflectionTestUtils.setField(productionBalanceAggregateService, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    public void shouldReplaceAggregatesOfGivenOrders() {
+        // given
+        List<Long> ordersIds = Lists.newArrayList(1L, 2L);
+
+        // when
+        productionBalanceAggregateService.refreshForOrders(ordersIds);
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource> paramsCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+
+        inOrder.verify(jdbcTemplate).queryForList(
+                eq("SELECT id FROM orders_order WHERE id IN (:ordersIds) ORDER BY id FOR UPDATE"), paramsCaptor.capture(),
+                eq(Long.class));
+        inOrder.verify(jdbcTemplate).update(queryCaptor.capture(), paramsCaptor.capture());
+        inOrder.verify(jdbcTemplate).update(queryCaptor.capture(), paramsCaptor.capture());
+
+        String deleteQuery = queryCaptor.getAllValues().get(0);
+        String insertQuery = queryCaptor.getAllValues().get(1);
+
+        assertTrue(deleteQuery.startsWith("DELETE FROM productioncounting_productionbalanceaggregate"));
+        assertTrue(deleteQuery.contains("order_id IN (:ordersIds)"));
+
+        assertTrue(insertQuery.startsWith("INSERT INTO productioncounting_productionbalanceaggregate"));
+        assertEquals(2, countOccurrences(insertQuery, "AND pt.order_id IN (:ordersIds)"));
+        assertEquals(2, countOccurrences(insertQuery, "pt.state = '02accepted'"));
+        assertTrue(insertQuery.contains("'01used'"));
+        assertTrue(insertQuery.contains("'02produced'"));
+
+        for (SqlParameterSource params : paramsCaptor.getAllValues()) {
+            assertEquals(ordersIds, params.getValue("ordersIds"));
+        }
+    }
+
+    @Test
+    public void shouldRefreshSingleOrder() {
+        // when
+        productionBalanceAggregateService.refreshForOrder(3L);
+
+        // then
+        ArgumentCaptor<MapSqlParameterSource> paramsCaptor = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+
+        verify(jdbcTemplate, times(2)).update(anyString(), paramsCaptor.capture());
+
+        assertEquals(Collections.singletonList(3L), paramsCaptor.getValue().getValue("ordersIds"));
+    }
+
+    @Test
+    public void shouldNotTouchAggregatesWithoutOrders() {
+        // when
+        productionBalanceAggregateService.refreshForOrders(Collections.emptyList());
+
+        // then
+        verifyZeroInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void shouldRebuildAggregatesOfAllOrders() {
+        // when
+        productionBalanceAggregateService.rebuild();
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(jdbcTemplate, times(3)).update(queryCaptor.capture(), any(SqlParameterSource.class));
+
+        assertTrue(queryCaptor.getAllValues().get(0).startsWith(
+                "LOCK TABLE productioncounting_productionbalanceaggregate"));
+        assertEquals("DELETE FROM productioncounting_productionbalanceaggregate", queryCaptor.getAllValues().get(1));
+        assertFalse(queryCaptor.getAllValues().get(2).contains(":ordersIds"));
+    }
+
+    private int countOccurrences(final String text, final String part) {
+        int count = 0;
+
+        for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+
+        return count;
+    }
+
+}
@@ -19,6 +19,10 @@ public final class PPSReportFields {
 
     public static final String GENERATED = "generated";
 
+    public static final String GENERATION_IN_PROGRESS = "generationInProgress";
+
+    public static final String GENERATION_START_DATE = "generationStartDate";
+
     public static final String CREATE_USER = "createUser";
 
     public static final String CREATE_DATE = "createDate";
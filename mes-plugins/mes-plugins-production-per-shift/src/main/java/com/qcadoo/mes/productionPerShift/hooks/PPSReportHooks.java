@@ -66,6 +66,8 @@ public class PPSReportHooks {
     public void clearGenerated(final DataDefinition reportDD, final Entity report) {
         report.setField(PPSReportFields.GENERATED, false);
         report.setField(PPSReportFields.FILE_NAME, null);
+        report.setField(PPSReportFields.GENERATION_IN_PROGRESS, false);
+        report.setField(PPSReportFields.GENERATION_START_DATE, null);
     }
 
 }
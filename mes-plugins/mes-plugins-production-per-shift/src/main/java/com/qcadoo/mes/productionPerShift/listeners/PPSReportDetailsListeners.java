@@ -33,6 +33,7 @@ import org.springframework.util.StringUtils;
 
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.PageSize;
+import com.qcadoo.mes.basic.print.ReportGenerationService;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.report.print.PPSReportXlsService;
@@ -59,7 +60,18 @@ public class PPSReportDetailsListeners {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private ReportGenerationService reportGenerationService;
+
     public void printReport(final ViewDefinitionState viewDefinitionState, final ComponentState state, final String[] args) {
+        Entity report = getReportFromDB((Long) state.getFieldValue());
+
+        if ((report != null) && reportGenerationService.isGenerationInProgress(report)) {
+            state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+
+            return;
+        }
+
         reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
                 ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PPS_REPORT });
     }
@@ -74,6 +86,9 @@ public class PPSReportDetailsListeners {
             if (report == null) {
                 state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
                 return;
+            } else if (reportGenerationService.isGenerationInProgress(report)) {
+                state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+                return;
             } else if (StringUtils.hasText(report.getStringField(PPSReportFields.FILE_NAME))) {
                 state.addMessage("productionPerShift.report.error.documentsWasGenerated", MessageType.FAILURE);
                 return;
@@ -84,28 +99,22 @@ public class PPSReportDetailsListeners {
             }
             report = getReportFromDB((Long) state.getFieldValue());
 
-            try {
-                generateReportDocuments(report, state.getLocale());
+            Locale locale = state.getLocale();
 
-                state.performEvent(viewDefinitionState, "reset", new String[0]);
+            reportGenerationService.generateAfterCommit(report, PPSReportFields.FILE_NAME,
+                    reportToGenerate -> fileService.updateReportFileName(reportToGenerate, PPSReportFields.CREATE_DATE,
+                            "productionPerShift.report.fileName"),
+                    reportToGenerate -> generateReportDocuments(reportToGenerate, locale));
 
-                state.addMessage("productionPerShift.window.mainTab.goodFoodReportDetails.generatedMessage", MessageType.SUCCESS);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            }
+            state.performEvent(viewDefinitionState, "reset", new String[0]);
+
+            state.addMessage("basic.report.generationStarted", MessageType.INFO);
         }
     }
 
     public void generateReportDocuments(final Entity goodFoodReport, final Locale locale) throws IOException, DocumentException {
-
-        String localePrefix = "productionPerShift.report.fileName";
-
-        Entity reportWithFileName = fileService.updateReportFileName(goodFoodReport, PPSReportFields.CREATE_DATE, localePrefix);
-
         try {
-            ppsReportXlsService.generateDocument(reportWithFileName, locale, PageSize.A3);
+            ppsReportXlsService.generateDocument(goodFoodReport, locale, PageSize.A3);
 
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving goodFood report");
@@ -23,6 +23,8 @@
  */
 package com.qcadoo.mes.productionPerShift.report;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.mes.basic.ShiftsService;
@@ -36,18 +38,17 @@ import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
 import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
-import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.security.api.UserService;
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -59,6 +60,11 @@ public class PPSReportXlsHelper {
 
     private static final Integer ONE = 1;
 
+    private static final String DAILY_PROGRESS_QUANTITIES_HQL = "select pfd.corrected as corrected, "
+            + "pfd.actualDateOfDay as actualDateOfDay, shift.id as shiftId, dp.quantity as quantity "
+            + "from #productionPerShift_progressForDay pfd left join pfd.dailyProgress dp left join dp.shift shift "
+            + "where pfd.productionPerShift.id = :productionPerShiftId order by pfd.id, dp.id";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -160,39 +166,37 @@ public class PPSReportXlsHelper {
         return Days.daysBetween(dateFrom.toDateMidnight(), dateTo.toDateMidnight()).getDays();
     }
 
-    public Entity getDailyProgress(final Entity productionPerShift, final Date day, final Entity shift) {
-        Entity order = getOrder(productionPerShift);
-        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
-        Entity toc = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
-
-        DataDefinition progressForDayDD = dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
-                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY);
-
-        List<Entity> correctedProgressForDay = progressForDayDD.find()
-                .add(SearchRestrictions.belongsTo(ProgressForDayFields.PRODUCTION_PER_SHIFT, productionPerShift))
-                .add(SearchRestrictions.eq(ProgressForDayFields.CORRECTED, true)).list().getEntities();
-        Entity progressForDay;
-
-        if (correctedProgressForDay.isEmpty()) {
-            progressForDay = progressForDayDD.find()
-                    .add(SearchRestrictions.belongsTo(ProgressForDayFields.PRODUCTION_PER_SHIFT, productionPerShift))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.ACTUAL_DATE_OF_DAY, day))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.CORRECTED, false)).setMaxResults(1).uniqueResult();
-        } else {
-            progressForDay = progressForDayDD.find()
-                    .add(SearchRestrictions.belongsTo(ProgressForDayFields.PRODUCTION_PER_SHIFT, productionPerShift))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.ACTUAL_DATE_OF_DAY, day))
-                    .add(SearchRestrictions.eq(ProgressForDayFields.CORRECTED, true)).setMaxResults(1).uniqueResult();
-        }
+    /**
+     * @return quantities of daily progresses of the production per shift by day and shift id - the corrected ones if the
+     *         production per shift has corrected progresses, the planned ones otherwise
+     */
+    public Table<LocalDate, Long, BigDecimal> getDailyProgressQuantities(final Entity productionPerShift) {
+        List<Entity> projections = dataDefinitionService
+                .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY)
+                .find(DAILY_PROGRESS_QUANTITIES_HQL).setLong("productionPerShiftId", productionPerShift.getId()).list()
+                .getEntities();
 
-        if (progressForDay == null) {
-            return null;
-        } else {
-            Entity dailyProgress = progressForDay.getHasManyField(ProgressForDayFields.DAILY_PROGRESS).find()
-                    .add(SearchRestrictions.belongsTo(DailyProgressFields.SHIFT, shift)).setMaxResults(1).uniqueResult();
+        boolean corrected = projections.stream()
+                .anyMatch(projection -> projection.getBooleanField(ProgressForDayFields.CORRECTED));
+
+        Table<LocalDate, Long, BigDecimal> quantities = HashBasedTable.create();
 
-            return dailyProgress;
+        for (Entity projection : projections) {
+            Date day = projection.getDateField(ProgressForDayFields.ACTUAL_DATE_OF_DAY);
+            Long shiftId = (Long) projection.getField("shiftId");
+
+            if (projection.getBooleanField(ProgressForDayFields.CORRECTED) != corrected || day == null || shiftId == null) {
+                continue;
+            }
+
+            LocalDate dayDate = new LocalDate(day);
+
+            if (!quantities.contains(dayDate, shiftId)) {
+                quantities.put(dayDate, shiftId, projection.getDecimalField(DailyProgressFields.QUANTITY));
+            }
         }
+
+        return quantities;
     }
 
     public String getDocumentAuthor(final String login) {
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.productionPerShift.report.print;
 
+import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
@@ -48,6 +49,7 @@ import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.constants.ShiftFields;
@@ -55,7 +57,6 @@ import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
-import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportConstants;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
 import com.qcadoo.mes.productionPerShift.report.PPSReportXlsHelper;
@@ -236,6 +237,7 @@ public class PPSReportXlsService extends XlsDocumentService {
 
         List<Entity> productionPerShifts = ppsReportXlsHelper.getProductionPerShiftForReport(report);
         List<Entity> shifts = ppsReportXlsHelper.getShifts();
+        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(report);
         Shift shiftFirst = new Shift(shifts.get(0));
         List<TimeRange> ranges = shiftFirst.findWorkTimeAt(new LocalDate(report.getDateField(PPSReportFields.DATE_FROM)));
         LocalTime startTime = ranges.get(0).getFrom();
@@ -278,7 +280,7 @@ public class PPSReportXlsService extends XlsDocumentService {
                     colIndex++;
                 }
                 isFirstRow = false;
-                addSeriesForChangeOver(sheet, report, row, changeover, order, styleContainer, columns);
+                addSeriesForChangeOver(shifts, days, row, changeover, order, styleContainer, columns);
             }
             HSSFRow row = sheet.createRow(rowNum++);
             int colIndex = 0;
@@ -307,12 +309,12 @@ public class PPSReportXlsService extends XlsDocumentService {
                 colIndex++;
             }
 
-            addSeriesOfDailyProgress(sheet, report, row, productionPerShift, greyBg, styleContainer, columns);
+            addSeriesOfDailyProgress(shifts, days, row, productionPerShift, greyBg, styleContainer, columns);
 
             oldProductionLineNumber = newProductionLineNumber;
         }
 
-        setColumnWidths(sheet, columns);
+        setColumnWidths(sheet, columns, days.size() * shifts.size());
     }
 
     private boolean isChangeOverOnThisPrint(final Entity order, final Entity report, final LocalTime startTime) {
@@ -322,25 +324,24 @@ public class PPSReportXlsService extends XlsDocumentService {
         return startOrderDate.after(date.toDate());
     }
 
-    private void addSeriesOfDailyProgress(final HSSFSheet sheet, final Entity entity, final HSSFRow row,
+    private void addSeriesOfDailyProgress(final List<Entity> shifts, final List<DateTime> days, final HSSFRow row,
             final Entity productionPerShift, final boolean rowNumberIsEven, PPSReportXlsStyleContainer styleContainer,
             List<ReportColumn> columns) {
 
-        List<Entity> shifts = ppsReportXlsHelper.getShifts();
-        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(entity);
+        Table<LocalDate, Long, BigDecimal> dailyProgressQuantities = ppsReportXlsHelper
+                .getDailyProgressQuantities(productionPerShift);
 
         int columnNumber = columns.size();
 
         for (DateTime day : days) {
             for (Entity shift : shifts) {
                 HSSFCell cellDailyProgress = row.createCell(columnNumber);
-                Entity dailyProgress = ppsReportXlsHelper.getDailyProgress(productionPerShift, day.toDate(), shift);
+                BigDecimal quantity = dailyProgressQuantities.get(day.toLocalDate(), shift.getId());
 
-                if (dailyProgress == null) {
+                if (quantity == null) {
                     cellDailyProgress.setCellValue("");
                 } else {
-                    cellDailyProgress.setCellValue(numberService
-                            .formatWithMinimumFractionDigits(dailyProgress.getDecimalField(DailyProgressFields.QUANTITY), 0));
+                    cellDailyProgress.setCellValue(numberService.formatWithMinimumFractionDigits(quantity, 0));
                 }
 
                 if (rowNumberIsEven) {
@@ -350,17 +351,13 @@ public class PPSReportXlsService extends XlsDocumentService {
                 }
 
                 columnNumber++;
-
-                sheet.autoSizeColumn((short) columnNumber);
             }
         }
     }
 
-    private void addSeriesForChangeOver(final HSSFSheet sheet, final Entity entity, final HSSFRow row, final Entity changeover,
-            final Entity order, PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
+    private void addSeriesForChangeOver(final List<Entity> shifts, final List<DateTime> days, final HSSFRow row,
+            final Entity changeover, final Entity order, PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
         Map<Integer, DayShiftHolder> mapCells = Maps.newHashMap();
-        List<Entity> shifts = ppsReportXlsHelper.getShifts();
-        List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(entity);
         Date startDateOrder = order.getDateField(OrderFields.START_DATE);
         Shift shiftFirst = new Shift(shifts.get(0));
         List<TimeRange> ranges = shiftFirst.findWorkTimeAt(days.get(0).toLocalDate());
@@ -377,7 +374,6 @@ public class PPSReportXlsService extends XlsDocumentService {
                     cellDailyProgress.setCellValue("");
                     ppsReportXlsStyleHelper.setChangeoverDataStyle(cellDailyProgress, styleContainer);
                     columnNumber++;
-                    sheet.autoSizeColumn((short) columnNumber);
                 }
             }
         } else {
@@ -391,8 +387,6 @@ public class PPSReportXlsService extends XlsDocumentService {
                     mapCells.put(columnNumber, holder);
 
                     columnNumber++;
-
-                    sheet.autoSizeColumn((short) columnNumber);
                 }
             }
             columnNumber = columns.size();
@@ -500,7 +494,12 @@ public class PPSReportXlsService extends XlsDocumentService {
         return Optional.of(startShitTime);
     }
 
-    private void setColumnWidths(final HSSFSheet sheet, List<ReportColumn> columns) {
+    private void setColumnWidths(final HSSFSheet sheet, List<ReportColumn> columns, final int numberOfDayShiftColumns) {
+
+        // sizing a column goes through all rows, so it's done once, after all rows are created
+        for (int columnNumber = columns.size(); columnNumber <= columns.size() + numberOfDayShiftColumns; columnNumber++) {
+            sheet.autoSizeColumn(columnNumber);
+        }
 
         int index = 0;
         for (ReportColumn column : columns) {
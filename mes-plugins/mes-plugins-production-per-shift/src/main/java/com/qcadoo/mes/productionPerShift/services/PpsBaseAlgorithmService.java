@@ -55,8 +55,6 @@ public abstract class PpsBaseAlgorithmService {
     @Autowired
     private ParameterService parameterService;
 
-    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
-
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
         Entity order = productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER);
         if (progressForDaysContainer.getOrder() != null) {
@@ -91,7 +89,10 @@ public abstract class PpsBaseAlgorithmService {
         if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
             plannedQuantity = basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
         }
-        calculateRegisteredQuantity(progressForDaysContainer, order, productionPerShift, plannedQuantity);
+        // kept local, as the service is a singleton shared by all generations
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = getDailyProgressesWithTrackingRecords(productionPerShift);
+
+        calculateRegisteredQuantity(progressForDaysContainer, dailyProgressesWithTrackingRecords, plannedQuantity);
 
         BigDecimal alreadyPlannedQuantity = BigDecimal.ZERO;
         List<Entity> progressForDays = Lists.newLinkedList();
@@ -106,7 +107,7 @@ public abstract class PpsBaseAlgorithmService {
 
             DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
                     productionPerShift, order, shifts, currentDate, orderStartDate, shouldBeCorrected, progressForDays.size(),
-                    alreadyPlannedQuantity, allowIncompleteUnits);
+                    alreadyPlannedQuantity, allowIncompleteUnits, dailyProgressesWithTrackingRecords);
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -127,16 +128,12 @@ public abstract class PpsBaseAlgorithmService {
     private DailyProgressContainer fillDailyProgressWithShifts(ProgressForDaysContainer progressForDaysContainer,
             Entity productionPerShift, Entity order, List<Shift> shifts, DateTime dateOfDay, Date orderStartDate,
             boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity,
-            boolean allowIncompleteUnits) {
+            boolean allowIncompleteUnits, Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords) {
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
 
         for (Shift shift : shifts) {
-            Entity dailyProgress = null;
-            if (dailyProgressesWithTrackingRecords != null) {
-                DailyProgressKey key = new DailyProgressKey(shift.getId(), dateOfDay);
-                dailyProgress = dailyProgressesWithTrackingRecords.get(key);
-            }
+            Entity dailyProgress = dailyProgressesWithTrackingRecords.get(new DailyProgressKey(shift.getId(), dateOfDay));
             if (dailyProgress != null) {
                 BigDecimal producedQuantity = dailyProgress.getDecimalField(DailyProgressFields.QUANTITY);
                 progressForDaysContainer.setAlreadyRegisteredQuantity(progressForDaysContainer.getAlreadyRegisteredQuantity()
@@ -222,18 +219,22 @@ public abstract class PpsBaseAlgorithmService {
         }).toList();
     }
 
-    private BigDecimal calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer, final Entity order,
-            final Entity pps, BigDecimal plannedQuantity) {
-        BigDecimal alreadyRegisteredQuantity = progressForDaysContainer.getAlreadyRegisteredQuantity();
-        if (pps != null) {
-            dailyProgressesWithTrackingRecords = dailyProgressService.getDailyProgressesWithTrackingRecords(pps);
+    private Map<DailyProgressKey, Entity> getDailyProgressesWithTrackingRecords(final Entity pps) {
+        if (pps == null) {
+            return Collections.emptyMap();
+        }
+
+        return dailyProgressService.getDailyProgressesWithTrackingRecords(pps);
+    }
 
+    private BigDecimal calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer,
+            final Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords, BigDecimal plannedQuantity) {
+        BigDecimal alreadyRegisteredQuantity = progressForDaysContainer.getAlreadyRegisteredQuantity();
+        if (!dailyProgressesWithTrackingRecords.isEmpty()) {
             for (Map.Entry<DailyProgressKey, Entity> entry : dailyProgressesWithTrackingRecords.entrySet()) {
                 alreadyRegisteredQuantity = alreadyRegisteredQuantity.add(entry.getKey().getQuantity());
             }
             progressForDaysContainer.setAlreadyRegisteredQuantity(alreadyRegisteredQuantity);
-        } else {
-            dailyProgressesWithTrackingRecords = null;
         }
         progressForDaysContainer
                 .setPlannedQuantity(plannedQuantity.subtract(alreadyRegisteredQuantity, numberService.getMathContext()));
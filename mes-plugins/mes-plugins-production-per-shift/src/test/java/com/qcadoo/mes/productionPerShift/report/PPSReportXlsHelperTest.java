@@ -0,0 +1,166 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.report;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBooleanField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDateField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDecimalField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubField;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
+import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class PPSReportXlsHelperTest {
+
+    private static final Long L_PRODUCTION_PER_SHIFT_ID = 1L;
+
+    private static final Long L_SHIFT_1 = 11L;
+
+    private static final Long L_SHIFT_2 = 12L;
+
+    private static final LocalDate L_DAY_1 = new LocalDate(2016, 3, 7);
+
+    private static final LocalDate L_DAY_2 = new LocalDate(2016, 3, 8);
+
+    private PPSReportXlsHelper ppsReportXlsHelper;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition progressForDayDD;
+
+    @Mock
+    private SearchQueryBuilder searchQueryBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private Entity productionPerShift;
+
+    @Before
+    public void init() {
+        ppsReportXlsHelper = new PPSReportXlsHelper();
+
+        MockitoAnnotations.initMocks(this);
+
+        ReflectionTestUtils.setField(ppsReportXlsHelper, "dataDefinitionService", dataDefinitionService);
+
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY)).willReturn(progressForDayDD);
+        given(progressForDayDD.find(anyString())).willReturn(searchQueryBuilder);
+        given(searchQueryBuilder.setLong(anyString(), anyLong())).willReturn(searchQueryBuilder);
+        given(searchQueryBuilder.list()).willReturn(searchResult);
+
+        given(productionPerShift.getId()).willReturn(L_PRODUCTION_PER_SHIFT_ID);
+    }
+
+    @Test
+    public void shouldReturnPlannedQuantitiesWhenThereAreNoCorrectedProgresses() {
+        // given
+        stubProjections(Lists.newArrayList(mockProjection(false, L_DAY_1, L_SHIFT_1, "10"),
+                mockProjection(false, L_DAY_1, L_SHIFT_2, "20"), mockProjection(false, L_DAY_2, L_SHIFT_1, "30"),
+                mockProjection(false, L_DAY_2, L_SHIFT_1, "35"), mockProjection(false, L_DAY_2, null, null)));
+
+        // when
+        Table<LocalDate, Long, BigDecimal> quantities = ppsReportXlsHelper.getDailyProgressQuantities(productionPerShift);
+
+        // then
+        verify(searchQueryBuilder).setLong("productionPerShiftId", L_PRODUCTION_PER_SHIFT_ID);
+
+        assertEquals(3, quantities.size());
+        assertEquals(new BigDecimal("10"), quantities.get(L_DAY_1, L_SHIFT_1));
+        assertEquals(new BigDecimal("20"), quantities.get(L_DAY_1, L_SHIFT_2));
+        assertEquals(new BigDecimal("30"), quantities.get(L_DAY_2, L_SHIFT_1));
+    }
+
+    @Test
+    public void shouldReturnOnlyCorrectedQuantitiesWhenThereAreCorrectedProgresses() {
+        // given
+        stubProjections(Lists.newArrayList(mockProjection(false, L_DAY_1, L_SHIFT_1, "10"),
+                mockProjection(false, L_DAY_1, L_SHIFT_2, "20"), mockProjection(false, L_DAY_2, L_SHIFT_1, "30"),
+                mockProjection(true, L_DAY_1, L_SHIFT_1, "15"), mockProjection(true, L_DAY_2, L_SHIFT_2, "25")));
+
+        // when
+        Table<LocalDate, Long, BigDecimal> quantities = ppsReportXlsHelper.getDailyProgressQuantities(productionPerShift);
+
+        // then
+        assertEquals(2, quantities.size());
+        assertEquals(new BigDecimal("15"), quantities.get(L_DAY_1, L_SHIFT_1));
+        assertEquals(new BigDecimal("25"), quantities.get(L_DAY_2, L_SHIFT_2));
+    }
+
+    @Test
+    public void shouldReturnNoQuantitiesWhenThereAreNoProgresses() {
+        // given
+        stubProjections(Lists.newArrayList());
+
+        // when
+        Table<LocalDate, Long, BigDecimal> quantities = ppsReportXlsHelper.getDailyProgressQuantities(productionPerShift);
+
+        // then
+        assertEquals(0, quantities.size());
+    }
+
+    private void stubProjections(final List<Entity> projections) {
+        given(searchResult.getEntities()).willReturn(projections);
+    }
+
+    private Entity mockProjection(final boolean corrected, final LocalDate day, final Long shiftId, final String quantity) {
+        Entity projection = mockEntity();
+
+        stubBooleanField(projection, ProgressForDayFields.CORRECTED, corrected);
+        stubDateField(projection, ProgressForDayFields.ACTUAL_DATE_OF_DAY, day.toDate());
+        stubField(projection, "shiftId", shiftId);
+        stubDecimalField(projection, DailyProgressFields.QUANTITY, (quantity == null) ? null : new BigDecimal(quantity));
+
+        return projection;
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.qcadoo.mes.newstates;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Notified by {@link StateExecutorService} after each entity of a bulk state change, successful or not.
+ */
+public interface StateChangeProgressListener {
+
+    void onEntityProcessed(Entity entity, StateChangeReport report, int totalCount);
+
+}
@@ -0,0 +1,46 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Result of changing state of many entities at once - entities whose state was changed and those whose change failed.
+ */
+public class StateChangeReport {
+
+    private final List<Entity> successfulEntities = Lists.newArrayList();
+
+    private final List<Entity> failedEntities = Lists.newArrayList();
+
+    void addSuccessful(final Entity entity) {
+        successfulEntities.add(entity);
+    }
+
+    void addFailed(final Entity entity) {
+        failedEntities.add(entity);
+    }
+
+    public List<Entity> getSuccessfulEntities() {
+        return Collections.unmodifiableList(successfulEntities);
+    }
+
+    public List<Entity> getFailedEntities() {
+        return Collections.unmodifiableList(failedEntities);
+    }
+
+    public int getSuccessfulCount() {
+        return successfulEntities.size();
+    }
+
+    public int getTotalCount() {
+        return successfulEntities.size() + failedEntities.size();
+    }
+
+    public boolean isSuccessful() {
+        return failedEntities.isEmpty();
+    }
+
+}
@@ -9,6 +9,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
@@ -23,6 +24,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.states.StateChangeEntityDescriber;
@@ -53,6 +55,8 @@ public class StateExecutorService {
 
     public static final String USER_CHANGE_STATE = "user";
 
+    private static final int PROGRESS_LOG_INTERVAL = 50;
+
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -64,6 +68,8 @@ public class StateExecutorService {
 
     private ComponentMessagesHolder componentMessagesHolder;
 
+    private final Map<Class<?>, List<? extends StateService>> changeStateServices = Maps.newHashMap();
+
     private static final Logger LOGGER = Logger.getLogger(StateExecutorService.class);
 
     public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args) {
@@ -73,14 +79,22 @@ public class StateExecutorService {
 
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference("grid");
         if (maybeGridComponent.isPresent()) {
-            maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
-                entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
-                entity.setField(USER_CHANGE_STATE, userId);
+            List<Entity> entities = maybeGridComponent.get().getSelectedEntities().stream().map(entity -> {
+                Entity masterEntity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
+                masterEntity.setField(USER_CHANGE_STATE, userId);
 
-                entity = changeState(serviceMarker, entity, userLogin, args[0]);
+                return masterEntity;
+            }).collect(Collectors.toList());
 
-                copyMessages(entity);
-            });
+            StateChangeReport report = changeState(serviceMarker, entities, userLogin, args[0], this::logProgress);
+
+            if (report.getTotalCount() == 1 && report.isSuccessful()) {
+                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+            } else if (report.getTotalCount() > 1) {
+                view.addMessage("states.messages.change.summary", report.isSuccessful() ? ComponentState.MessageType.SUCCESS
+                        : ComponentState.MessageType.INFO, String.valueOf(report.getSuccessfulCount()),
+                        String.valueOf(report.getTotalCount()));
+            }
 
         } else {
             Optional<FormComponent> maybeForm = view.tryFindComponentByReference("form");
@@ -97,7 +111,48 @@ public class StateExecutorService {
     }
 
     public <M extends StateService> Entity changeState(Class<M> serviceMarker, Entity entity, String userLogin, String targetState) {
+        return changeState(lookupChangeStateServices(serviceMarker), entity, userLogin, targetState, null);
+    }
+
+    /**
+     * Changes state of all given entities one by one, resolving state services only once. Per entity success messages are
+     * not added to the view, callers should report the summary instead.
+     */
+    public <M extends StateService> StateChangeReport changeState(Class<M> serviceMarker, List<Entity> entities,
+            String userLogin, String targetState) {
+        return changeState(serviceMarker, entities, userLogin, targetState, null);
+    }
+
+    /**
+     * Works like {@link #changeState(Class, List, String, String)}, notifying given listener after each entity.
+     */
+    public <M extends StateService> StateChangeReport changeState(Class<M> serviceMarker, List<Entity> entities,
+            String userLogin, String targetState, StateChangeProgressListener progressListener) {
         List<M> services = lookupChangeStateServices(serviceMarker);
+        StateChangeReport report = new StateChangeReport();
+
+        for (Entity entity : entities) {
+            entity = changeState(services, entity, userLogin, targetState, report);
+
+            copyMessages(entity);
+
+            if (progressListener != null) {
+                progressListener.onEntityProcessed(entity, report, entities.size());
+            }
+        }
+
+        return report;
+    }
+
+    private void logProgress(final Entity entity, final StateChangeReport report, final int totalCount) {
+        if (report.getTotalCount() % PROGRESS_LOG_INTERVAL == 0 || report.getTotalCount() == totalCount) {
+            LOG.info(String.format("Bulk state change of %s: %d of %d processed, %d failed", entity.getDataDefinition()
+                    .getName(), report.getTotalCount(), totalCount, report.getFailedEntities().size()));
+        }
+    }
+
+    private <M extends StateService> Entity changeState(List<M> services, Entity entity, String userLogin,
+            String targetState, StateChangeReport report) {
         StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
         String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
 
@@ -113,7 +168,12 @@ public class StateExecutorService {
             if (entity.isValid()) {
                 copyMessages(entity);
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
-                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+
+                if (report == null) {
+                    message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+                } else {
+                    report.addSuccessful(entity);
+                }
                 LOG.info(String.format("Change state successful. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
@@ -121,6 +181,7 @@ public class StateExecutorService {
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
                 entity = rollbackStateChange(entity, sourceState);
                 message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+                markFailed(report, entity);
                 LOG.info(String.format("Change state failure. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
@@ -131,12 +192,14 @@ public class StateExecutorService {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            markFailed(report, entity);
             return entity;
 
         } catch (AnotherChangeInProgressException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            markFailed(report, entity);
             message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("Another state change in progress. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
@@ -144,6 +207,7 @@ public class StateExecutorService {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            markFailed(report, entity);
             message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("State change - transition not allowed. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
@@ -151,6 +215,7 @@ public class StateExecutorService {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            markFailed(report, entity);
             message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("State change exception. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
@@ -282,7 +347,12 @@ public class StateExecutorService {
         return entity.isValid();
     }
 
+    @SuppressWarnings("unchecked")
     private <M extends StateService> List<M> lookupChangeStateServices(Class<M> serviceMarker) {
+        return (List<M>) changeStateServices.computeIfAbsent(serviceMarker, marker -> findChangeStateServices(serviceMarker));
+    }
+
+    private <M extends StateService> List<M> findChangeStateServices(Class<M> serviceMarker) {
         Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
 
         List<M> services = new ArrayList<>();
@@ -360,6 +430,12 @@ public class StateExecutorService {
         return saved;
     }
 
+    private void markFailed(StateChangeReport report, Entity entity) {
+        if (report != null) {
+            report.addFailed(entity);
+        }
+    }
+
     private void message(String msg, ComponentState.MessageType messageType) {
         if (componentMessagesHolder != null) {
             componentMessagesHolder.addMessage(msg, messageType);
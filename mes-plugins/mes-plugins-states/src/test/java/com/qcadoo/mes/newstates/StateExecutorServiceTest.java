@@ -0,0 +1,219 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.security.api.SecurityService;
+
+public class StateExecutorServiceTest {
+
+    private static final String L_STATE = "state";
+
+    private static final String L_SOURCE_STATE = "01draft";
+
+    private static final String L_TARGET_STATE = "02accepted";
+
+    private StateExecutorService stateExecutorService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private TestStateService stateService;
+
+    @Mock
+    private StateChangeEntityDescriber describer;
+
+    @Mock
+    private DataDefinition stateChangeDD, ownerDD;
+
+    @Mock
+    private Entity stateChange;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        stateExecutorService = new StateExecutorService();
+
+        ReflectionTestUtils.setField(stateExecutorService, "applicationContext", applicationContext);
+        ReflectionTestUtils.setField(stateExecutorService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(stateExecutorService, "securityService", securityService);
+
+        given(applicationContext.getBeansOfType(TestStateService.class)).willReturn(
+                Collections.singletonMap("testStateService", stateService));
+
+        given(stateService.getChangeEntityDescriber()).willReturn(describer);
+
+        Answer<Entity> returnOwner = invocation -> (Entity) invocation.getArguments()[0];
+
+        given(stateService.onValidate(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(returnOwner);
+        given(stateService.onBeforeSave(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(returnOwner);
+        given(stateService.onAfterSave(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(returnOwner);
+
+        given(describer.getOwnerStateFieldName()).willReturn(L_STATE);
+        given(describer.getDataDefinition()).willReturn(stateChangeDD);
+
+        given(stateChangeDD.create()).willReturn(stateChange);
+        given(stateChangeDD.find()).willReturn(searchCriteriaBuilder);
+        given(stateChangeDD.save(stateChange)).willReturn(stateChange);
+
+        given(stateChange.getDataDefinition()).willReturn(stateChangeDD);
+        given(stateChange.isValid()).willReturn(true);
+
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getTotalNumberOfEntities()).willReturn(0);
+
+        given(ownerDD.getName()).willReturn("order");
+    }
+
+    @Test
+    public void shouldReportSuccessfulAndFailedEntitiesOfBulkStateChange() {
+        // given
+        Entity accepted = mockOwner(1L, true);
+        Entity rejected = mockOwner(2L, false);
+        Entity broken = mockOwner(3L, true);
+        Entity acceptedToo = mockOwner(4L, true);
+
+        given(ownerDD.save(broken)).willThrow(new IllegalStateException("Broken hook"));
+
+        // when
+        StateChangeReport report = stateExecutorService.changeState(TestStateService.class,
+                Lists.newArrayList(accepted, rejected, broken, acceptedToo), "admin", L_TARGET_STATE);
+
+        // then
+        assertEquals(Arrays.asList(accepted, acceptedToo), report.getSuccessfulEntities());
+        assertEquals(Arrays.asList(rejected, broken), report.getFailedEntities());
+        assertEquals(2, report.getSuccessfulCount());
+        assertEquals(4, report.getTotalCount());
+        assertFalse(report.isSuccessful());
+
+        verify(accepted).setField(L_STATE, L_TARGET_STATE);
+        verify(rejected).setField(L_STATE, L_SOURCE_STATE);
+        verify(broken).setField(L_STATE, L_SOURCE_STATE);
+        verify(applicationContext).getBeansOfType(TestStateService.class);
+    }
+
+    @Test
+    public void shouldNotifyProgressListenerAfterEachEntity() {
+        // given
+        List<Entity> entities = Lists.newArrayList(mockOwner(1L, false), mockOwner(2L, true));
+        List<String> progress = Lists.newArrayList();
+
+        StateChangeProgressListener progressListener = (entity, report, totalCount) -> progress.add(entity.getId() + ":"
+                + report.getSuccessfulCount() + "/" + report.getTotalCount() + "/" + totalCount);
+
+        // when
+        StateChangeReport report = stateExecutorService.changeState(TestStateService.class, entities, "admin",
+                L_TARGET_STATE, progressListener);
+
+        // then
+        assertEquals(Arrays.asList("1:0/1/2", "2:1/2/2"), progress);
+        assertEquals(1, report.getSuccessfulCount());
+    }
+
+    @Test
+    public void shouldReportSuccessfulBatch() {
+        // when
+        StateChangeReport report = stateExecutorService.changeState(TestStateService.class,
+                Lists.newArrayList(mockOwner(1L, true), mockOwner(2L, true)), "admin", L_TARGET_STATE);
+
+        // then
+        assertTrue(report.isSuccessful());
+        assertEquals(2, report.getSuccessfulCount());
+        assertTrue(report.getFailedEntities().isEmpty());
+    }
+
+    @Test
+    public void shouldReportEmptyBatchAsSuccessful() {
+        // when
+        StateChangeReport report = stateExecutorService.changeState(TestStateService.class, Lists.newArrayList(), "admin",
+                L_TARGET_STATE);
+
+        // then
+        assertTrue(report.isSuccessful());
+        assertEquals(0, report.getTotalCount());
+    }
+
+    private Entity mockOwner(final Long id, final boolean valid) {
+        Entity owner = mock(Entity.class);
+
+        given(owner.getId()).willReturn(id);
+        given(owner.getDataDefinition()).willReturn(ownerDD);
+        given(owner.getStringField(L_STATE)).willReturn(L_SOURCE_STATE);
+        given(owner.isValid()).willReturn(valid);
+
+        given(ownerDD.save(eq(owner))).willReturn(owner);
+
+        return owner;
+    }
+
+    public interface TestStateService extends StateService {
+
+    }
+
+}
@@ -59,7 +59,7 @@ public class DefaultTechnologiesProvider {
             + "inner join p.parent as pp                                  \n"
             + "inner join pp.technologies as pt                           \n"
             + "where                                                      \n"
-            + "tech.id = :technologyId                                    \n"
+            + "tech.id in :technologyIds                                  \n"
             + "and                                                        \n"
             + "p.id not in :excludedProductIds                            \n"
             + "and                                                        \n"
@@ -74,25 +74,33 @@ public class DefaultTechnologiesProvider {
             + "inner join opic.product p                                  \n"
             + "inner join p.technologies t                                \n"
             + "where                                                      \n"
-            + "tech.id = :technologyId                                    \n"
+            + "tech.id in :technologyIds                                  \n"
             + "and                                                        \n"
             + "t.master = true                                            \n";
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
-    public ImmutableMap<ProductId, TechnologyId> forAllInputProductsFrom(final TechnologyId technologyId) {
+    /**
+     * Master technologies of input products are properties of products only, so they can be fetched for input products of
+     * many technologies at once.
+     */
+    public ImmutableMap<ProductId, TechnologyId> forAllInputProductsFrom(final Collection<TechnologyId> technologiesIds) {
+        if (technologiesIds.isEmpty()) {
+            return ImmutableMap.of();
+        }
+        Set<Long> ids = technologiesIds.stream().map(TechnologyId::get).collect(Collectors.toSet());
         ImmutableMap.Builder<ProductId, TechnologyId> builder = ImmutableMap.builder();
-        ImmutableMap<ProductId, TechnologyId> masterTechnologies = findProdMasterTechnologies(technologyId);
+        ImmutableMap<ProductId, TechnologyId> masterTechnologies = findProdMasterTechnologies(ids);
         builder.putAll(masterTechnologies);
-        builder.putAll(findParentProdMasterTechnologies(technologyId, masterTechnologies.keySet()));
+        builder.putAll(findParentProdMasterTechnologies(ids, masterTechnologies.keySet()));
         return builder.build();
     }
 
-    private ImmutableMap<ProductId, TechnologyId> findParentProdMasterTechnologies(final TechnologyId technologyId,
+    private ImmutableMap<ProductId, TechnologyId> findParentProdMasterTechnologies(final Set<Long> technologiesIds,
             final Set<ProductId> excludedProducts) {
         SearchQueryBuilder sqb = getInputProductComponentDD().find(PARENT_PROD_MASTER_TECHS_QUERY);
-        sqb.setLong("technologyId", technologyId.get());
+        sqb.setParameterList("technologyIds", technologiesIds);
         Set<Long> excludedProductIds = excludedProducts.stream().map(ProductId::get).collect(Collectors.toSet());
         excludedProductIds.add(-1L);
         sqb.setParameterList("excludedProductIds", excludedProductIds);
@@ -100,9 +108,9 @@ public class DefaultTechnologiesProvider {
         return technologiesMapFrom(projections);
     }
 
-    private ImmutableMap<ProductId, TechnologyId> findProdMasterTechnologies(final TechnologyId technologyId) {
+    private ImmutableMap<ProductId, TechnologyId> findProdMasterTechnologies(final Set<Long> technologiesIds) {
         SearchQueryBuilder sqb = getInputProductComponentDD().find(PROD_TECHS_QUERY);
-        sqb.setLong("technologyId", technologyId.get());
+        sqb.setParameterList("technologyIds", technologiesIds);
         List<Entity> projections = sqb.list().getEntities();
         return technologiesMapFrom(projections);
     }
@@ -41,6 +41,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -54,6 +55,7 @@ import static com.qcadoo.model.api.search.SearchRestrictions.*;
 public class TechnologyStructureTreeDataProvider {
 
     private static final String INPUT_PRODUCTS_HQL = "select                                      \n"
+            + "tech.id as techId,                                                                 \n"
             + "toc.id as tocId,                                                                   \n"
             + "prod.id as prodId,                                                                 \n"
             + "opic.quantity as quantity,                                                         \n"
@@ -71,10 +73,11 @@ public class TechnologyStructureTreeDataProvider {
             + "where                                                                              \n"
             + "(toc.children is empty)                                                            \n"
             + "and                                                                                \n"
-            + "tech.id = :techId                                                                  \n"
+            + "tech.id in :techIds                                                                \n"
             + "order by prodId asc                                                                \n";
 
     private static final String OUTPUT_PRODUCTS_HQL = "select                                     \n"
+            + "tech.id as techId,                                                                 \n"
             + "toc.id as tocId,                                                                   \n"
             + "parent.id as parentId,                                                             \n"
             + "prod.id as prodId,                                                                 \n"
@@ -97,11 +100,12 @@ public class TechnologyStructureTreeDataProvider {
             + "    (toc.parent is not null and parentInputProd.id = prod.id)                      \n"
             + ")                                                                                  \n"
             + "and                                                                                \n"
-            + "tech.id = :techId                                                                  \n"
+            + "tech.id in :techIds                                                                \n"
             + "order by prodId asc                                                                \n";
 
     private static final String inComponentHQL = "select DISTINCT                                                    \n"
             + "            opic.id as opicId,                                                                        \n"
+            + "            tech.id as techId,                                                                        \n"
             + "            toc.id as tocId,                                                                          \n"
             + "            parentToc.id as parentId,                                                                 \n"
             + "             inputProd.id as prodId,                                                                  \n"
@@ -128,7 +132,7 @@ public class TechnologyStructureTreeDataProvider {
             + "            left join toc.parent as parentToc                                                         \n"
             + "            left join toc.children as children                                                        \n"
             + "            where                                                                                     \n"
-            + "            tech.id = :techId order by prodId asc ";
+            + "            tech.id in :techIds order by prodId asc ";
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
@@ -136,27 +140,48 @@ public class TechnologyStructureTreeDataProvider {
     @Autowired
     private DefaultTechnologiesProvider defaultTechnologiesProvider;
 
-    public Multimap<Optional<TechnologyOperationId>, ProductInfo> findIntermediates(final TechnologyId technologyId) {
-        return findAndGroup(OUTPUT_PRODUCTS_HQL, technologyId, "parentId", ImmutableMap.of(), false);
+    /**
+     * @return intermediates of given technologies, grouped by technology and then by parent operation, with a single query
+     */
+    public Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> findIntermediates(
+            final Collection<TechnologyId> technologiesIds) {
+        return findAndGroup(OUTPUT_PRODUCTS_HQL, technologiesIds, "parentId", ImmutableMap.of(), false);
     }
 
-    public Multimap<Optional<TechnologyOperationId>, ProductInfo> findMaterialsAndComponents(final TechnologyId technologyId) {
+    /**
+     * @return materials and components of given technologies, grouped by technology and then by operation, with a single
+     *         query
+     */
+    public Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> findMaterialsAndComponents(
+            final Collection<TechnologyId> technologiesIds) {
         ImmutableMap<ProductId, TechnologyId> defaultTechnologies = defaultTechnologiesProvider
-                .forAllInputProductsFrom(technologyId);
-        return findAndGroup(inComponentHQL, technologyId, "tocId", defaultTechnologies, true);
+                .forAllInputProductsFrom(technologiesIds);
+        return findAndGroup(inComponentHQL, technologiesIds, "tocId", defaultTechnologies, true);
     }
 
-    private Multimap<Optional<TechnologyOperationId>, ProductInfo> findAndGroup(final String hqlQuery, final TechnologyId techId,
-            final String groupBy, final Map<ProductId, TechnologyId> defaultTechnologies, boolean filterIntermediate) {
-        List<Entity> entities = getGeneratorTreeNodeDD().find(hqlQuery).setLong("techId", techId.get()).list().getEntities();
+    private Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> findAndGroup(final String hqlQuery,
+            final Collection<TechnologyId> techIds, final String groupBy, final Map<ProductId, TechnologyId> defaultTechnologies,
+            boolean filterIntermediate) {
+        if (techIds.isEmpty()) {
+            return ImmutableMap.of();
+        }
+        List<Entity> entities = getGeneratorTreeNodeDD().find(hqlQuery)
+                .setParameterList("techIds", techIds.stream().map(TechnologyId::get).collect(Collectors.toSet())).list()
+                .getEntities();
         if(filterIntermediate){
             entities = entities.stream().filter(p -> (Long) p.getField("isIntermediate") == 0l)
                     .collect(Collectors.toList());
         }
-        Multimap<Optional<TechnologyOperationId>, Entity> groupedProjections = Multimaps.index(entities, (e) -> Optional
-                .ofNullable((Long) e.getField(groupBy)).map(TechnologyOperationId::new));
-        return ImmutableMultimap.copyOf(Multimaps.transformValues(groupedProjections,
-                p -> buildProductInfo(p, defaultTechnologies)));
+        Multimap<TechnologyId, Entity> projectionsByTechnology = Multimaps.index(entities,
+                (e) -> new TechnologyId((Long) e.getField("techId")));
+        Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> grouped = Maps.newHashMap();
+        projectionsByTechnology.asMap().forEach((techId, projections) -> {
+            Multimap<Optional<TechnologyOperationId>, Entity> groupedProjections = Multimaps.index(projections, (e) -> Optional
+                    .ofNullable((Long) e.getField(groupBy)).map(TechnologyOperationId::new));
+            grouped.put(techId, ImmutableMultimap.copyOf(Multimaps.transformValues(groupedProjections,
+                    p -> buildProductInfo(p, defaultTechnologies))));
+        });
+        return grouped;
     }
 
     private ProductInfo buildProductInfo(final Entity projection, final Map<ProductId, TechnologyId> defaultTechnologies) {
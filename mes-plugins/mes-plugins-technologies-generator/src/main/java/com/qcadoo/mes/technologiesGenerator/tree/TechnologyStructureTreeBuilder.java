@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,8 +35,11 @@ import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.technologies.domain.TechnologyId;
 import com.qcadoo.mes.technologies.tree.domain.TechnologyOperationId;
 import com.qcadoo.mes.technologiesGenerator.GeneratorSettings;
@@ -60,22 +64,91 @@ public class TechnologyStructureTreeBuilder {
 
     public Builder buildGeneratorFor(final TechnologyId technologyId, final Optional<TechnologyId> defaultTechnologyId,
             final ContextId contextId, final GeneratorSettings settings) {
-        Multimap<Optional<TechnologyOperationId>, ProductInfo> intermediates = technologyStructureTreeDataProvider
-                .findIntermediates(technologyId);
-        Preconditions.checkState(intermediates.isEmpty() || intermediates.get(Optional.empty()).size() == 1,
-                "Tree has to have exactly one root node!");
-        Multimap<Optional<TechnologyOperationId>, ProductInfo> materialsAndComponents = technologyStructureTreeDataProvider
-                .findMaterialsAndComponents(technologyId);
-        Map<TechnologyId, Entity> existingCustomizedNodes = technologyStructureTreeDataProvider
-                .findExistingCustomizedNodes(contextId);
-
-        return new Builder(contextId, technologyId, defaultTechnologyId, settings, intermediates, materialsAndComponents,
-                existingCustomizedNodes);
+        return new TechnologiesStructures(contextId, settings).buildGeneratorFor(technologyId, defaultTechnologyId);
+    }
+
+    /**
+     * Structures of all technologies taking part in one generation. Existing customized nodes of the context are fetched
+     * once, and technologies are fetched level by level of the product structure - each level with a single query for
+     * intermediates and a single one for materials and components - instead of one technology at a time.
+     */
+    private final class TechnologiesStructures {
+
+        private final GeneratorSettings settings;
+
+        private final Map<TechnologyId, Entity> existingCustomizedNodes;
+
+        private final Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> intermediates = Maps
+                .newHashMap();
+
+        private final Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> materialsAndComponents = Maps
+                .newHashMap();
+
+        private TechnologiesStructures(final ContextId contextId, final GeneratorSettings settings) {
+            this.settings = settings;
+            this.existingCustomizedNodes = technologyStructureTreeDataProvider.findExistingCustomizedNodes(contextId);
+        }
+
+        private Builder buildGeneratorFor(final TechnologyId technologyId, final Optional<TechnologyId> defaultTechnologyId) {
+            if (!intermediates.containsKey(technologyId)) {
+                fetchStructures(technologyId);
+            }
+
+            Multimap<Optional<TechnologyOperationId>, ProductInfo> technologyIntermediates = intermediates.get(technologyId);
+            Preconditions.checkState(
+                    technologyIntermediates.isEmpty() || technologyIntermediates.get(Optional.empty()).size() == 1,
+                    "Tree has to have exactly one root node!");
+
+            return new Builder(this, technologyId, defaultTechnologyId, technologyIntermediates,
+                    materialsAndComponents.get(technologyId));
+        }
+
+        private void fetchStructures(final TechnologyId technologyId) {
+            Set<TechnologyId> level = Sets.newHashSet();
+            addWithCustomizedTechnology(level, technologyId);
+
+            while (!level.isEmpty()) {
+                level.removeAll(intermediates.keySet());
+
+                Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> levelIntermediates =
+                        technologyStructureTreeDataProvider.findIntermediates(level);
+                Map<TechnologyId, Multimap<Optional<TechnologyOperationId>, ProductInfo>> levelMaterialsAndComponents =
+                        technologyStructureTreeDataProvider.findMaterialsAndComponents(level);
+
+                Set<TechnologyId> nextLevel = Sets.newHashSet();
+
+                for (TechnologyId levelTechnologyId : level) {
+                    intermediates.put(levelTechnologyId,
+                            levelIntermediates.getOrDefault(levelTechnologyId, ImmutableMultimap.of()));
+                    materialsAndComponents.put(levelTechnologyId,
+                            levelMaterialsAndComponents.getOrDefault(levelTechnologyId, ImmutableMultimap.of()));
+
+                    if (settings.shouldFetchTechnologiesForComponents()) {
+                        materialsAndComponents.get(levelTechnologyId).values().stream().map(ProductInfo::getProductTechnology)
+                                .filter(Optional::isPresent).map(Optional::get)
+                                .forEach(productTechnologyId -> addWithCustomizedTechnology(nextLevel, productTechnologyId));
+                    }
+                }
+
+                level = nextLevel;
+            }
+        }
+
+        private void addWithCustomizedTechnology(final Set<TechnologyId> level, final TechnologyId technologyId) {
+            level.add(technologyId);
+
+            Entity existingNode = existingCustomizedNodes.get(technologyId);
+
+            if (existingNode != null) {
+                level.add(new TechnologyId(existingNode.getBelongsToField(GeneratorTreeNodeFields.PRODUCT_TECHNOLOGY).getId()));
+            }
+        }
+
     }
 
     private final class Builder {
 
-        private final ContextId contextId;
+        private final TechnologiesStructures structures;
 
         private final TechnologyId technologyId;
 
@@ -89,18 +162,17 @@ public class TechnologyStructureTreeBuilder {
 
         private final Map<TechnologyId, Entity> existingCustomizedNodes;
 
-        private Builder(final ContextId contextId, final TechnologyId technologyId,
-                final Optional<TechnologyId> defaultTechnologyId, final GeneratorSettings settings,
+        private Builder(final TechnologiesStructures structures, final TechnologyId technologyId,
+                final Optional<TechnologyId> defaultTechnologyId,
                 final Multimap<Optional<TechnologyOperationId>, ProductInfo> intermediates,
-                final Multimap<Optional<TechnologyOperationId>, ProductInfo> materialsAndComponents,
-                final Map<TechnologyId, Entity> existingCustomizedNodes) {
-            this.contextId = contextId;
+                final Multimap<Optional<TechnologyOperationId>, ProductInfo> materialsAndComponents) {
+            this.structures = structures;
             this.technologyId = technologyId;
             this.defaultTechnologyId = defaultTechnologyId;
-            this.settings = settings;
+            this.settings = structures.settings;
             this.intermediates = intermediates;
             this.materialsAndComponents = materialsAndComponents;
-            this.existingCustomizedNodes = existingCustomizedNodes;
+            this.existingCustomizedNodes = structures.existingCustomizedNodes;
         }
 
         public Optional<TechnologyStructureNode> build() {
@@ -111,7 +183,7 @@ public class TechnologyStructureTreeBuilder {
 
             if (!defaultTechnologyId.isPresent()) {
                 Optional<TechnologyId> maybePrevTech = root.flatMap(this::findCustomizedTechFor);
-                return forTechnology(maybePrevTech.orElse(technologyId), Optional.of(technologyId), contextId, settings);
+                return structures.buildGeneratorFor(maybePrevTech.orElse(technologyId), Optional.of(technologyId)).build();
             }
 
             return root.map(
@@ -144,7 +216,7 @@ public class TechnologyStructureTreeBuilder {
                     () -> productInfo.getProductTechnology().orElseThrow(
                             () -> new IllegalStateException("Missing technology for component's product")));
 
-            return forTechnology(prodTech, productInfo.getProductTechnology(), contextId, settings).map(
+            return structures.buildGeneratorFor(prodTech, productInfo.getProductTechnology()).build().map(
                     n -> n.withProductTechnology(Optional.of(prodTech))
                             .withOriginalTechnology(productInfo.getProductTechnology()));
         }
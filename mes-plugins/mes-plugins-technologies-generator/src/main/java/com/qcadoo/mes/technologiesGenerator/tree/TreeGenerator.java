@@ -23,8 +23,11 @@
  */
 package com.qcadoo.mes.technologiesGenerator.tree;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -33,10 +36,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.commons.functional.Either;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
-import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.domain.OperationId;
 import com.qcadoo.mes.technologies.domain.TechnologyId;
 import com.qcadoo.mes.technologies.tree.builder.api.TechnologyOperationComponent;
@@ -59,6 +62,19 @@ public class TreeGenerator {
 
     private static final Logger LOG = LoggerFactory.getLogger(TreeGenerator.class);
 
+    private static final String OPERATION_COMPONENTS_HQL = "select                                \n"
+            + "toc.id as tocId,                                                                   \n"
+            + "division.id as divisionId,                                                         \n"
+            + "technologyGroup.id as technologyGroupId,                                           \n"
+            + "tech.standardPerformanceTechnology as standardPerformanceTechnology                \n"
+            + "from                                                                               \n"
+            + "#technologies_technologyOperationComponent toc                                     \n"
+            + "left join toc.division as division                                                 \n"
+            + "left join toc.technology as tech                                                   \n"
+            + "left join tech.technologyGroup as technologyGroup                                  \n"
+            + "where                                                                              \n"
+            + "toc.id in :tocIds                                                                  \n";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -122,26 +138,49 @@ public class TreeGenerator {
         }).orElseGet(() -> Either.left("Cannot find context entity, perhaps it was deleted during structure generation.."));
     }
 
+    /**
+     * Builds the whole tree of unsaved node entities, so it's saved at once together with the root node. Data of all
+     * technology operation components used by nodes is fetched with a single query.
+     */
     private Entity generate(final TechnologyStructureNode rootNode, final Entity generatorContext) {
-        return buildEntity(rootNode, generatorContext, getGeneratorTreeNodeDD());
+        Set<Long> tocIds = Sets.newHashSet();
+        collectTocIds(rootNode, tocIds);
+        return buildEntity(rootNode, generatorContext, getGeneratorTreeNodeDD(), findOperationComponents(tocIds));
+    }
+
+    private void collectTocIds(final TechnologyStructureNode node, final Set<Long> tocIds) {
+        TechnologyOperationId tocId = node.getProductInfo().getTocId();
+        if (tocId != null) {
+            tocIds.add(tocId.get());
+        }
+        node.getChildren().forEach(child -> collectTocIds(child, tocIds));
+    }
+
+    private Map<Long, Entity> findOperationComponents(final Set<Long> tocIds) {
+        if (tocIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Entity> projections = dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)
+                .find(OPERATION_COMPONENTS_HQL).setParameterList("tocIds", tocIds).list().getEntities();
+        return Maps.uniqueIndex(projections, p -> (Long) p.getField("tocId"));
     }
 
     private Entity buildEntity(final TechnologyStructureNode node, final Entity generatorContext,
-            final DataDefinition dataDefinition) {
+            final DataDefinition dataDefinition, final Map<Long, Entity> operationComponents) {
         Entity entity = dataDefinition.create();
-        setUpChildrenField(node, generatorContext, dataDefinition, entity);
+        setUpChildrenField(node, generatorContext, dataDefinition, entity, operationComponents);
 
         ProductInfo productInfo = node.getProductInfo();
         setBelongsToField(entity, GeneratorTreeNodeFields.PRODUCT, productInfo.getProduct().get());
         setUpProductTechnologyFields(entity, productInfo);
         setBelongsToField(entity, GeneratorTreeNodeFields.GENERATOR_CONTEXT, generatorContext);
         setUpOperationField(entity, productInfo);
-        setUpDivisionField(entity, productInfo);
-        setUpTechnologyGeneratorAndPerformance(entity,productInfo);
+        setUpOperationComponentFields(entity, productInfo, operationComponents);
 
         entity.setField(GeneratorTreeNodeFields.QUANTITY, productInfo.getQuantity());
         entity.setField(GeneratorTreeNodeFields.ENTITY_TYPE, node.getType().getStringValue());
-        return entity.getDataDefinition().save(entity);
+        return entity;
     }
 
     private void setUpProductTechnologyFields(final Entity entity, final ProductInfo productInfo) {
@@ -156,22 +195,24 @@ public class TreeGenerator {
         setBelongsToField(entity, GeneratorTreeNodeFields.OPERATION, operationId.get());
     }
 
-    private void setUpDivisionField(final Entity entity, final ProductInfo productInfo) {
+    private void setUpOperationComponentFields(final Entity entity, final ProductInfo productInfo,
+            final Map<Long, Entity> operationComponents) {
         TechnologyOperationId tocId = productInfo.getTocId();
         if (tocId != null) {
-            Entity toc = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                    TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).get(tocId.get());
+            Entity toc = operationComponents.get(tocId.get());
             if (toc != null) {
-                setBelongsToField(entity, GeneratorTreeNodeFields.DIVISION,
-                        toc.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
+                setBelongsToField(entity, GeneratorTreeNodeFields.DIVISION, (Long) toc.getField("divisionId"));
+                setBelongsToField(entity, GeneratorTreeNodeFields.TECHNOLOGY_GROUP, (Long) toc.getField("technologyGroupId"));
+                entity.setField(GeneratorTreeNodeFields.STANDARD_PERFORMANCE_TECHNOLOGY,
+                        toc.getDecimalField("standardPerformanceTechnology"));
             }
         }
     }
 
     private void setUpChildrenField(final TechnologyStructureNode node, final Entity generatorContext,
-            final DataDefinition dataDefinition, final Entity entity) {
-        List<Entity> children = node.getChildren().stream().map((n) -> buildEntity(n, generatorContext, dataDefinition))
-                .collect(Collectors.toList());
+            final DataDefinition dataDefinition, final Entity entity, final Map<Long, Entity> operationComponents) {
+        List<Entity> children = node.getChildren().stream()
+                .map((n) -> buildEntity(n, generatorContext, dataDefinition, operationComponents)).collect(Collectors.toList());
         entity.setField(GeneratorTreeNodeFields.CHILDREN, children);
     }
 
@@ -201,17 +242,4 @@ public class TreeGenerator {
                 TechnologiesGeneratorConstants.MODEL_GENERATOR_TREE_NODE);
     }
 
-    private void setUpTechnologyGeneratorAndPerformance(final Entity entity, final ProductInfo productInfo) {
-        TechnologyOperationId tocId = productInfo.getTocId();
-        if (tocId != null) {
-            Entity tech = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                    TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).get(tocId.get()).getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY);
-            if (tech != null) {
-                setBelongsToField(entity, GeneratorTreeNodeFields.TECHNOLOGY_GROUP,
-                        tech.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP));
-                entity.setField(GeneratorTreeNodeFields.STANDARD_PERFORMANCE_TECHNOLOGY,tech.getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY));
-            }
-        }
-    }
-
 }
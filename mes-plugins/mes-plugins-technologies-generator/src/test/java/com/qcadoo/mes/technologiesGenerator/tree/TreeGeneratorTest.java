@@ -0,0 +1,426 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologiesGenerator.tree;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBooleanField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubDecimalField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.commons.functional.Either;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologiesGenerator.GeneratorSettings;
+import com.qcadoo.mes.technologiesGenerator.constants.GeneratorContextFields;
+import com.qcadoo.mes.technologiesGenerator.constants.GeneratorTreeNodeFields;
+import com.qcadoo.mes.technologiesGenerator.constants.TechnologiesGeneratorConstants;
+import com.qcadoo.mes.technologiesGenerator.dataProvider.DefaultTechnologiesProvider;
+import com.qcadoo.mes.technologiesGenerator.dataProvider.GeneratorContextDataProvider;
+import com.qcadoo.mes.technologiesGenerator.dataProvider.TechnologyStructureTreeDataProvider;
+import com.qcadoo.mes.technologiesGenerator.domain.ContextId;
+import com.qcadoo.mes.technologiesGenerator.domain.TechnologyStructureNodeType;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+
+/**
+ * Generates the tree of a technology with an intermediate and a component, whose technology was customized in the context
+ * before:
+ *
+ * <pre>
+ * T1: P1 (toc 11) <- P2 (toc 12) <- P4
+ *                 <- P3 (master technology T2, customized as T3)
+ * T2: P3 (toc 21) <- P5
+ * T3: P3 (toc 31) <- P6
+ * </pre>
+ */
+public class TreeGeneratorTest {
+
+    private static final Long L_CONTEXT_ID = 50L;
+
+    private static final Long L_T1 = 1L;
+
+    private static final Long L_T2 = 2L;
+
+    private static final Long L_T3 = 3L;
+
+    private static final Long L_P1 = 101L;
+
+    private static final Long L_P2 = 102L;
+
+    private static final Long L_P3 = 103L;
+
+    private static final Long L_P4 = 104L;
+
+    private static final Long L_P5 = 105L;
+
+    private static final Long L_P6 = 106L;
+
+    private static final Set<Long> L_FIRST_LEVEL = ImmutableSet.of(L_T1);
+
+    private static final Set<Long> L_SECOND_LEVEL = ImmutableSet.of(L_T2, L_T3);
+
+    private TreeGenerator treeGenerator;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private GeneratorContextDataProvider generatorContextDataProvider;
+
+    @Mock
+    private DataDefinition generatorTreeNodeDD, generatorContextDD, operationProductInComponentDD,
+            technologyOperationComponentDD;
+
+    @Mock
+    private SearchCriteriaBuilder nodesCriteriaBuilder;
+
+    @Mock
+    private SearchResult emptyResult;
+
+    @Mock
+    private Entity context;
+
+    private final List<Set<Long>> intermediatesQueries = Lists.newArrayList();
+
+    private final List<Set<Long>> materialsAndComponentsQueries = Lists.newArrayList();
+
+    private final List<Set<Long>> defaultTechnologiesQueries = Lists.newArrayList();
+
+    private final List<Set<Long>> operationComponentsQueries = Lists.newArrayList();
+
+    private final List<Entity> nodeEntities = Lists.newArrayList();
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        DefaultTechnologiesProvider defaultTechnologiesProvider = new DefaultTechnologiesProvider();
+        ReflectionTestUtils.setField(defaultTechnologiesProvider, "dataDefinitionService", dataDefinitionService);
+
+        TechnologyStructureTreeDataProvider technologyStructureTreeDataProvider = new TechnologyStructureTreeDataProvider();
+        ReflectionTestUtils.setField(technologyStructureTreeDataProvider, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(technologyStructureTreeDataProvider, "defaultTechnologiesProvider",
+                defaultTechnologiesProvider);
+
+        TechnologyStructureTreeBuilder technologyStructureTreeBuilder = new TechnologyStructureTreeBuilder();
+        ReflectionTestUtils.setField(technologyStructureTreeBuilder, "technologyStructureTreeDataProvider",
+                technologyStructureTreeDataProvider);
+
+        treeGenerator = new TreeGenerator();
+        ReflectionTestUtils.setField(treeGenerator, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(treeGenerator, "technologyStructureTreeDataProvider", technologyStructureTreeDataProvider);
+        ReflectionTestUtils.setField(treeGenerator, "technologyStructureTreeBuilder", technologyStructureTreeBuilder);
+        ReflectionTestUtils.setField(treeGenerator, "generatorContextDataProvider", generatorContextDataProvider);
+
+        given(dataDefinitionService.get(TechnologiesGeneratorConstants.PLUGIN_IDENTIFIER,
+                TechnologiesGeneratorConstants.MODEL_GENERATOR_TREE_NODE)).willReturn(generatorTreeNodeDD);
+        given(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT)).willReturn(operationProductInComponentDD);
+        given(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)).willReturn(technologyOperationComponentDD);
+
+        given(emptyResult.getEntities()).willReturn(Collections.emptyList());
+
+        stubContext();
+        stubExistingCustomizedNodes();
+        stubStructureQueries();
+        stubOperationComponentsQuery();
+        stubNodeEntities();
+    }
+
+    @Test
+    public final void shouldGenerateMultiLevelTreeWithCustomizedComponent() {
+        // when
+        Either<String, ContextId> result = treeGenerator.generate(context, new GeneratorSettings(true, false, false, context));
+
+        // then
+        assertTrue(result.isRight());
+        assertEquals(L_CONTEXT_ID, result.getRight().get());
+
+        Entity root = nodeEntities.get(0);
+        Map<Long, Entity> nodesByProduct = Maps.newHashMap();
+        collectNodes(root, nodesByProduct);
+
+        assertEquals(5, nodesByProduct.size());
+        assertEquals(L_P1, root.getField(GeneratorTreeNodeFields.PRODUCT));
+
+        assertNode(nodesByProduct.get(L_P1), TechnologyStructureNodeType.COMPONENT, 7L, 8L, "10");
+        assertNode(nodesByProduct.get(L_P2), TechnologyStructureNodeType.INTERMEDIATE, 9L, 8L, "10");
+        assertNode(nodesByProduct.get(L_P4), TechnologyStructureNodeType.MATERIAL, 9L, 8L, "10");
+        assertNode(nodesByProduct.get(L_P3), TechnologyStructureNodeType.CUSTOMIZED_COMPONENT, 17L, 18L, "20");
+        assertNode(nodesByProduct.get(L_P6), TechnologyStructureNodeType.MATERIAL, 17L, 18L, "20");
+
+        assertEquals(L_T3, nodesByProduct.get(L_P3).getField(GeneratorTreeNodeFields.PRODUCT_TECHNOLOGY));
+        assertEquals(L_T2, nodesByProduct.get(L_P3).getField(GeneratorTreeNodeFields.ORIGINAL_TECHNOLOGY));
+        assertNull(nodesByProduct.get(L_P5));
+
+        // structures are fetched level by level
+        assertEquals(Lists.newArrayList(L_FIRST_LEVEL, L_SECOND_LEVEL), intermediatesQueries);
+        assertEquals(Lists.newArrayList(L_FIRST_LEVEL, L_SECOND_LEVEL), materialsAndComponentsQueries);
+        assertEquals(Lists.newArrayList(L_FIRST_LEVEL, L_FIRST_LEVEL, L_SECOND_LEVEL, L_SECOND_LEVEL),
+                defaultTechnologiesQueries);
+        assertEquals(Lists.newArrayList(Sets.newHashSet(11L, 12L, 31L)), operationComponentsQueries);
+        verify(nodesCriteriaBuilder, times(1)).list();
+
+        // the whole tree is saved at once from the root
+        verify(generatorTreeNodeDD, times(1)).save(any(Entity.class));
+        verify(generatorTreeNodeDD).save(root);
+        verify(context).setField(GeneratorContextFields.GENERATED, true);
+    }
+
+    private void assertNode(final Entity node, final TechnologyStructureNodeType type, final Long divisionId,
+            final Long technologyGroupId, final String standardPerformance) {
+        assertEquals(type.getStringValue(), node.getField(GeneratorTreeNodeFields.ENTITY_TYPE));
+        assertEquals(divisionId, node.getField(GeneratorTreeNodeFields.DIVISION));
+        assertEquals(technologyGroupId, node.getField(GeneratorTreeNodeFields.TECHNOLOGY_GROUP));
+        assertEquals(new BigDecimal(standardPerformance), node.getField(GeneratorTreeNodeFields.STANDARD_PERFORMANCE_TECHNOLOGY));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectNodes(final Entity node, final Map<Long, Entity> nodesByProduct) {
+        nodesByProduct.put((Long) node.getField(GeneratorTreeNodeFields.PRODUCT), node);
+
+        for (Entity child : (List<Entity>) node.getField(GeneratorTreeNodeFields.CHILDREN)) {
+            collectNodes(child, nodesByProduct);
+        }
+    }
+
+    private void stubContext() {
+        Entity technology = mockEntity(L_T1);
+
+        given(context.getId()).willReturn(L_CONTEXT_ID);
+        given(context.getDataDefinition()).willReturn(generatorContextDD);
+        given(context.isValid()).willReturn(true);
+        given(context.getBelongsToField(GeneratorContextFields.TECHNOLOGY)).willReturn(technology);
+        given(generatorContextDD.getPluginIdentifier()).willReturn(TechnologiesGeneratorConstants.PLUGIN_IDENTIFIER);
+        given(generatorContextDD.getName()).willReturn(TechnologiesGeneratorConstants.MODEL_GENERATOR_CONTEXT);
+        given(generatorContextDD.save(context)).willReturn(context);
+        given(generatorContextDataProvider.find(new ContextId(L_CONTEXT_ID))).willReturn(Optional.of(context));
+    }
+
+    private void stubExistingCustomizedNodes() {
+        Entity existingNode = mockEntity(1000L);
+        stubBelongsToField(existingNode, GeneratorTreeNodeFields.ORIGINAL_TECHNOLOGY, mockEntity(L_T2));
+        stubBelongsToField(existingNode, GeneratorTreeNodeFields.PRODUCT_TECHNOLOGY, mockEntity(L_T3));
+
+        SearchResult existingNodes = mock(SearchResult.class);
+        given(existingNodes.getEntities()).willReturn(Lists.newArrayList(existingNode));
+
+        given(generatorTreeNodeDD.find()).willReturn(nodesCriteriaBuilder);
+        given(nodesCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(nodesCriteriaBuilder);
+        given(nodesCriteriaBuilder.createCriteria(anyString(), anyString(), any(JoinType.class))).willReturn(
+                nodesCriteriaBuilder);
+        given(nodesCriteriaBuilder.setProjection(any(SearchProjection.class))).willReturn(nodesCriteriaBuilder);
+        given(nodesCriteriaBuilder.setMaxResults(1)).willReturn(nodesCriteriaBuilder);
+        given(nodesCriteriaBuilder.list()).willReturn(existingNodes);
+    }
+
+    private void stubStructureQueries() {
+        Map<Long, List<Entity>> intermediates = ImmutableMap.of(
+                L_T1,
+                Lists.newArrayList(mockProjection(L_T1, 11L, null, L_P1, 1001L, true),
+                        mockProjection(L_T1, 12L, 11L, L_P2, 1002L, true)), L_T2,
+                Lists.newArrayList(mockProjection(L_T2, 21L, null, L_P3, 2001L, true)), L_T3,
+                Lists.newArrayList(mockProjection(L_T3, 31L, null, L_P3, 3001L, true)));
+        Map<Long, List<Entity>> materialsAndComponents = ImmutableMap.of(
+                L_T1,
+                Lists.newArrayList(mockProjection(L_T1, 11L, null, L_P2, 1001L, false, 1L),
+                        mockProjection(L_T1, 11L, null, L_P3, 1001L, false, 0L),
+                        mockProjection(L_T1, 12L, 11L, L_P4, 1002L, false, 0L)), L_T2,
+                Lists.newArrayList(mockProjection(L_T2, 21L, null, L_P5, 2001L, false, 0L)), L_T3,
+                Lists.newArrayList(mockProjection(L_T3, 31L, null, L_P6, 3001L, false, 0L)));
+
+        SearchQueryBuilder intermediatesQuery = mockQuery("techIds", resultsByLevel(intermediates), intermediatesQueries);
+        SearchQueryBuilder materialsAndComponentsQuery = mockQuery("techIds", resultsByLevel(materialsAndComponents),
+                materialsAndComponentsQueries);
+
+        given(generatorTreeNodeDD.find(contains("'1' as isIntermediate"))).willReturn(intermediatesQuery);
+        given(generatorTreeNodeDD.find(contains("select DISTINCT"))).willReturn(materialsAndComponentsQuery);
+
+        Entity masterTechnology = mockEntity();
+        stubField(masterTechnology, "prodId", L_P3);
+        stubField(masterTechnology, "techId", L_T2);
+
+        SearchResult masterTechnologies = mock(SearchResult.class);
+        given(masterTechnologies.getEntities()).willReturn(Lists.newArrayList(masterTechnology));
+
+        SearchQueryBuilder masterTechnologiesQuery = mockQuery("technologyIds",
+                ImmutableMap.of(L_FIRST_LEVEL, masterTechnologies), defaultTechnologiesQueries);
+        SearchQueryBuilder parentMasterTechnologiesQuery = mockQuery("technologyIds", ImmutableMap.of(),
+                defaultTechnologiesQueries);
+
+        given(operationProductInComponentDD.find(anyString())).willReturn(masterTechnologiesQuery);
+        given(operationProductInComponentDD.find(contains("p.parent"))).willReturn(parentMasterTechnologiesQuery);
+    }
+
+    private void stubOperationComponentsQuery() {
+        List<Entity> operationComponents = Lists.newArrayList(mockOperationComponent(11L, 7L, 8L, "10"),
+                mockOperationComponent(12L, 9L, 8L, "10"), mockOperationComponent(21L, 7L, 8L, "10"),
+                mockOperationComponent(31L, 17L, 18L, "20"));
+
+        SearchResult operationComponentsResult = mock(SearchResult.class);
+        given(operationComponentsResult.getEntities()).willReturn(operationComponents);
+
+        SearchQueryBuilder operationComponentsQuery = mockQuery("tocIds",
+                ImmutableMap.of(Sets.newHashSet(11L, 12L, 31L), operationComponentsResult), operationComponentsQueries);
+
+        given(technologyOperationComponentDD.find(anyString())).willReturn(operationComponentsQuery);
+    }
+
+    private void stubNodeEntities() {
+        for (int i = 0; i < 10; ++i) {
+            nodeEntities.add(mockNodeEntity());
+        }
+
+        Iterator<Entity> createdNodes = nodeEntities.iterator();
+
+        given(generatorTreeNodeDD.create()).willAnswer(invocation -> createdNodes.next());
+        given(generatorTreeNodeDD.save(any(Entity.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+    }
+
+    private Map<Set<Long>, SearchResult> resultsByLevel(final Map<Long, List<Entity>> projectionsByTechnology) {
+        Map<Set<Long>, SearchResult> results = Maps.newHashMap();
+
+        for (Set<Long> level : Lists.newArrayList(L_FIRST_LEVEL, L_SECOND_LEVEL)) {
+            List<Entity> projections = Lists.newArrayList();
+            level.forEach(technologyId -> projections.addAll(projectionsByTechnology.get(technologyId)));
+
+            SearchResult result = mock(SearchResult.class);
+            given(result.getEntities()).willReturn(projections);
+
+            results.put(level, result);
+        }
+
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SearchQueryBuilder mockQuery(final String parameterName, final Map<Set<Long>, SearchResult> results,
+            final List<Set<Long>> queries) {
+        SearchQueryBuilder query = mock(SearchQueryBuilder.class);
+        AtomicReference<Set<Long>> parameter = new AtomicReference<>();
+
+        given(query.setParameterList(anyString(), anyCollection())).willAnswer(invocation -> {
+            if (parameterName.equals(invocation.getArguments()[0])) {
+                parameter.set(Sets.newHashSet((Collection<Long>) invocation.getArguments()[1]));
+                queries.add(parameter.get());
+            }
+
+            return query;
+        });
+        given(query.list()).willAnswer(invocation -> results.getOrDefault(parameter.get(), emptyResult));
+
+        return query;
+    }
+
+    private Entity mockProjection(final Long technologyId, final Long tocId, final Long parentId, final Long productId,
+            final Long operationId, final boolean intermediate) {
+        Entity projection = mockEntity();
+
+        stubField(projection, "techId", technologyId);
+        stubField(projection, "tocId", tocId);
+        stubField(projection, "parentId", parentId);
+        stubField(projection, "prodId", productId);
+        stubField(projection, "operationId", operationId);
+        stubDecimalField(projection, "quantity", BigDecimal.ONE);
+        stubBooleanField(projection, "isIntermediate", intermediate);
+
+        return projection;
+    }
+
+    private Entity mockProjection(final Long technologyId, final Long tocId, final Long parentId, final Long productId,
+            final Long operationId, final boolean intermediate, final Long intermediatesCount) {
+        Entity projection = mockProjection(technologyId, tocId, parentId, productId, operationId, intermediate);
+
+        stubField(projection, "isIntermediate", intermediatesCount);
+
+        return projection;
+    }
+
+    private Entity mockOperationComponent(final Long tocId, final Long divisionId, final Long technologyGroupId,
+            final String standardPerformance) {
+        Entity operationComponent = mockEntity();
+
+        stubField(operationComponent, "tocId", tocId);
+        stubField(operationComponent, "divisionId", divisionId);
+        stubField(operationComponent, "technologyGroupId", technologyGroupId);
+        stubDecimalField(operationComponent, "standardPerformanceTechnology", new BigDecimal(standardPerformance));
+
+        return operationComponent;
+    }
+
+    private Entity mockNodeEntity() {
+        Map<String, Object> fields = Maps.newHashMap();
+        Entity node = mock(Entity.class);
+
+        doAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).when(node)
+                .setField(anyString(), any());
+        given(node.getField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(node.getDataDefinition()).willReturn(generatorTreeNodeDD);
+        given(node.isValid()).willReturn(true);
+
+        return node;
+    }
+
+}
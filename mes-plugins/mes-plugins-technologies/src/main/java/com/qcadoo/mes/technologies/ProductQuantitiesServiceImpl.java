@@ -71,6 +71,9 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private TechnologyExplosionCache technologyExplosionCache;
+
     @Override
     public ProductQuantitiesHolder getProductComponentQuantities(final Entity technology, final BigDecimal givenQuantity) {
         Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
@@ -194,6 +197,33 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     public OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForTechnology(final Entity technology,
             final BigDecimal givenQuantity, final Map<Long, BigDecimal> operationRuns,
             final Set<OperationProductComponentHolder> nonComponents) {
+        if (!technologyExplosionCache.isCacheable(technology)) {
+            return explodeTechnology(technology, givenQuantity, operationRuns, nonComponents);
+        }
+
+        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = technologyExplosionCache
+                .get(technology, givenQuantity, operationRuns, nonComponents);
+
+        if (operationProductComponentWithQuantityContainer == null) {
+            Map<Long, BigDecimal> technologyOperationRuns = Maps.newHashMap();
+            Set<OperationProductComponentHolder> technologyNonComponents = Sets.newHashSet();
+
+            operationProductComponentWithQuantityContainer = explodeTechnology(technology, givenQuantity,
+                    technologyOperationRuns, technologyNonComponents);
+
+            technologyExplosionCache.put(technology, givenQuantity, operationProductComponentWithQuantityContainer,
+                    technologyOperationRuns, technologyNonComponents);
+
+            operationRuns.putAll(technologyOperationRuns);
+            nonComponents.addAll(technologyNonComponents);
+        }
+
+        return operationProductComponentWithQuantityContainer;
+    }
+
+    private OperationProductComponentWithQuantityContainer explodeTechnology(final Entity technology,
+            final BigDecimal givenQuantity, final Map<Long, BigDecimal> operationRuns,
+            final Set<OperationProductComponentHolder> nonComponents) {
         OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
 
         EntityTree operationComponents = getOperationComponentsFromTechnology(technology);
@@ -216,8 +246,10 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForOrders(final List<Entity> orders,
             final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents,
             final boolean onTheFly) {
-        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
+        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newLinkedHashMap();
 
+        // explosion walks lazily loaded operation trees, so it has to stay on the thread owning the session and the tenant;
+        // orders sharing a technology and quantity are served by TechnologyExplosionCache after the first of them
         for (Entity order : orders) {
             BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
 
@@ -0,0 +1,239 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Cache of technology explosions (operation product component quantities, operation runs and non components) computed by
+ * {@link ProductQuantitiesServiceImpl}, keyed by tenant, technology id, technology state and given quantity.
+ *
+ * Only accepted and outdated technologies are cached, because their operation trees can't be modified. Each entry keeps the
+ * entity version of the technology it was computed for and is used only while the technology still has that version, so
+ * changes made by other nodes are noticed too. Entries of a technology are also evicted on each of its state changes, once
+ * immediately and once after the transaction completes.
+ */
+@Service
+public class TechnologyExplosionCache {
+
+    private static final int L_MAX_SIZE = 10000;
+
+    private final Map<Key, Explosion> cache = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    public boolean isCacheable(final Entity technology) {
+        if (technology.getId() == null) {
+            return false;
+        }
+
+        String state = technology.getStringField(TechnologyFields.STATE);
+
+        return TechnologyStateStringValues.ACCEPTED.equals(state) || TechnologyStateStringValues.OUTDATED.equals(state);
+    }
+
+    public OperationProductComponentWithQuantityContainer get(final Entity technology, final BigDecimal givenQuantity,
+            final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents) {
+        Key key = new Key(multiTenantService.getCurrentTenantId(), technology, givenQuantity);
+        Explosion explosion = cache.get(key);
+
+        if (explosion == null || explosion.technologyVersion != getTechnologyVersion(technology.getId())) {
+            if (explosion != null) {
+                cache.remove(key, explosion);
+            }
+
+            misses.increment();
+
+            return null;
+        }
+
+        hits.increment();
+
+        operationRuns.putAll(explosion.operationRuns);
+        nonComponents.addAll(explosion.nonComponents);
+
+        return copy(explosion.productQuantities);
+    }
+
+    public void put(final Entity technology, final BigDecimal givenQuantity,
+            final OperationProductComponentWithQuantityContainer productQuantities, final Map<Long, BigDecimal> operationRuns,
+            final Set<OperationProductComponentHolder> nonComponents) {
+        if (cache.size() >= L_MAX_SIZE) {
+            cache.clear();
+        }
+
+        cache.put(new Key(multiTenantService.getCurrentTenantId(), technology, givenQuantity), new Explosion(
+                getTechnologyVersion(technology.getId()), copy(productQuantities), operationRuns, nonComponents));
+    }
+
+    public void evict(final Long technologyId) {
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        remove(tenantId, technologyId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    remove(tenantId, technologyId);
+                }
+            });
+        }
+    }
+
+    private void remove(final int tenantId, final Long technologyId) {
+        cache.keySet().removeIf(key -> key.tenantId == tenantId && key.technologyId.equals(technologyId));
+    }
+
+    private long getTechnologyVersion(final Long technologyId) {
+        List<Long> versions = jdbcTemplate.queryForList(
+                "SELECT COALESCE(entityversion, 0) FROM technologies_technology WHERE id = :technologyId",
+                Collections.singletonMap("technologyId", technologyId), Long.class);
+
+        return versions.isEmpty() ? -1L : versions.get(0);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitsCount = hits.sum();
+        long total = hitsCount + misses.sum();
+
+        return total == 0 ? 0 : (double) hitsCount / total;
+    }
+
+    private OperationProductComponentWithQuantityContainer copy(
+            final OperationProductComponentWithQuantityContainer productQuantities) {
+        OperationProductComponentWithQuantityContainer copy = new OperationProductComponentWithQuantityContainer();
+
+        for (Entry<OperationProductComponentHolder, BigDecimal> productQuantity : productQuantities.asMap().entrySet()) {
+            copy.put(productQuantity.getKey(), productQuantity.getValue());
+        }
+
+        return copy;
+    }
+
+    private static final class Key {
+
+        private final int tenantId;
+
+        private final Long technologyId;
+
+        private final String state;
+
+        private final BigDecimal givenQuantity;
+
+        private Key(final int tenantId, final Entity technology, final BigDecimal givenQuantity) {
+            this.tenantId = tenantId;
+            this.technologyId = technology.getId();
+            this.state = technology.getStringField(TechnologyFields.STATE);
+            this.givenQuantity = givenQuantity == null ? null : givenQuantity.stripTrailingZeros();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, technologyId, state, givenQuantity);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return tenantId == other.tenantId && technologyId.equals(other.technologyId) && Objects.equals(state, other.state)
+                    && Objects.equals(givenQuantity, other.givenQuantity);
+        }
+
+    }
+
+    private static final class Explosion {
+
+        private final long technologyVersion;
+
+        private final OperationProductComponentWithQuantityContainer productQuantities;
+
+        private final Map<Long, BigDecimal> operationRuns;
+
+        private final Set<OperationProductComponentHolder> nonComponents;
+
+        private Explosion(final long technologyVersion, final OperationProductComponentWithQuantityContainer productQuantities,
+                final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents) {
+            this.technologyVersion = technologyVersion;
+            this.productQuantities = productQuantities;
+            this.operationRuns = ImmutableMap.copyOf(operationRuns);
+            this.nonComponents = ImmutableSet.copyOf(nonComponents);
+        }
+
+    }
+
+}
@@ -0,0 +1,267 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ProductQuantitiesServiceImplExplosionTest {
+
+    private static final int L_TECHNOLOGIES = 20;
+
+    private static final int L_ORDERS = 500;
+
+    private static final int L_MATERIALS = 30;
+
+    private ProductQuantitiesService explodingService;
+
+    private ProductQuantitiesService cachingService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition operationProductInComponentDD, operationProductOutComponentDD;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private final Random random = new Random(42L);
+
+    private long nextId = 1L;
+
+    private List<Entity> orders;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(operationProductInComponentDD.getName()).willReturn(TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
+        given(operationProductOutComponentDD.getName()).willReturn(TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).willReturn(
+                Collections.singletonList(1L));
+
+        TechnologyExplosionCache technologyExplosionCache = new TechnologyExplosionCache();
+
+        ReflectionTestUtils.setField(technologyExplosionCache, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(technologyExplosionCache, "multiTenantService", multiTenantService);
+
+        explodingService = buildService(mock(TechnologyExplosionCache.class));
+        cachingService = buildService(technologyExplosionCache);
+
+        List<Entity> materials = Lists.newArrayList();
+
+        for (int i = 0; i < L_MATERIALS; i++) {
+            materials.add(mockEntity());
+        }
+
+        List<Entity> technologies = Lists.newArrayList();
+
+        for (int i = 0; i < L_TECHNOLOGIES; i++) {
+            technologies.add(mockTechnology(materials));
+        }
+
+        orders = Lists.newArrayList();
+
+        for (int i = 0; i < L_ORDERS; i++) {
+            Entity order = mockEntity();
+
+            given(order.getBelongsToField("technology")).willReturn(technologies.get(random.nextInt(L_TECHNOLOGIES)));
+            given(order.getDecimalField("plannedQuantity")).willReturn(BigDecimal.valueOf(1 + random.nextInt(3)));
+
+            orders.add(order);
+        }
+    }
+
+    @Test
+    public void shouldReturnSameQuantitiesAsExplosionWithoutCache() {
+        // when
+        Map<Long, BigDecimal> explodedQuantities = explodingService.getNeededProductQuantities(orders,
+                MrpAlgorithm.ALL_PRODUCTS_IN, true);
+        Map<Long, BigDecimal> cachedQuantities = cachingService.getNeededProductQuantities(orders,
+                MrpAlgorithm.ALL_PRODUCTS_IN, true);
+        Map<Long, BigDecimal> cachedAgainQuantities = cachingService.getNeededProductQuantities(orders,
+                MrpAlgorithm.ALL_PRODUCTS_IN, true);
+
+        // then
+        assertFalse(explodedQuantities.isEmpty());
+        assertEquals(explodedQuantities, cachedQuantities);
+        assertEquals(explodedQuantities, cachedAgainQuantities);
+    }
+
+    @Test
+    public void shouldReturnSameComponentsQuantitiesAsExplosionWithoutCache() {
+        // when
+        Map<Long, BigDecimal> explodedQuantities = explodingService.getNeededProductQuantities(orders,
+                MrpAlgorithm.ONLY_COMPONENTS, true);
+        Map<Long, BigDecimal> cachedQuantities = cachingService.getNeededProductQuantities(orders,
+                MrpAlgorithm.ONLY_COMPONENTS, true);
+
+        // then
+        assertFalse(explodedQuantities.isEmpty());
+        assertEquals(explodedQuantities, cachedQuantities);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowExceptionIfOrderDoesntContainTechnology() {
+        // given
+        given(orders.get(L_ORDERS / 2).getBelongsToField("technology")).willReturn(null);
+
+        // when
+        cachingService.getNeededProductQuantities(orders, MrpAlgorithm.ALL_PRODUCTS_IN, true);
+    }
+
+    private ProductQuantitiesService buildService(final TechnologyExplosionCache technologyExplosionCache) {
+        ProductQuantitiesService productQuantitiesService = new ProductQuantitiesServiceImpl();
+
+        ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(productQuantitiesService, "technologyExplosionCache", technologyExplosionCache);
+
+        return productQuantitiesService;
+    }
+
+    private Entity mockTechnology(final List<Entity> materials) {
+        Entity technology = mockEntity();
+        Entity product = mockEntity();
+        Entity intermediate = mockEntity();
+
+        Entity root = mockEntity();
+        Entity child = mockEntity();
+
+        given(root.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE)).willReturn(
+                random.nextBoolean());
+        given(child.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE)).willReturn(
+                random.nextBoolean());
+
+        mockEntityList(root, TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS,
+                mockOperationProductComponent(root, product, operationProductOutComponentDD));
+        mockEntityList(root, TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
+                mockOperationProductComponent(root, intermediate, operationProductInComponentDD),
+                mockOperationProductComponent(root, randomMaterial(materials), operationProductInComponentDD));
+        mockEntityList(root, TechnologyOperationComponentFields.CHILDREN, child);
+
+        mockEntityList(child, TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS,
+                mockOperationProductComponent(child, intermediate, operationProductOutComponentDD));
+        mockEntityList(child, TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
+                mockOperationProductComponent(child, randomMaterial(materials), operationProductInComponentDD),
+                mockOperationProductComponent(child, randomMaterial(materials), operationProductInComponentDD));
+        mockEntityList(child, TechnologyOperationComponentFields.CHILDREN);
+
+        List<Entity> operationComponents = Lists.newArrayList(root, child);
+        EntityTree tree = mock(EntityTree.class);
+
+        given(tree.getRoot()).willReturn(root);
+        given(tree.iterator()).willAnswer(invocation -> operationComponents.iterator());
+
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.ACCEPTED);
+        given(technology.getBelongsToField(TechnologyFields.PRODUCT)).willReturn(product);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(tree);
+
+        return technology;
+    }
+
+    private Entity mockOperationProductComponent(final Entity operationComponent, final Entity product,
+            final DataDefinition dataDefinition) {
+        Entity operationProductComponent = mockEntity();
+
+        given(operationProductComponent.getDataDefinition()).willReturn(dataDefinition);
+        given(operationProductComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT)).willReturn(product);
+        given(operationProductComponent.getBelongsToField(OperationProductInComponentFields.OPERATION_COMPONENT)).willReturn(
+                operationComponent);
+        given(operationProductComponent.getDecimalField(OperationProductInComponentFields.QUANTITY)).willReturn(
+                randomQuantity());
+
+        return operationProductComponent;
+    }
+
+    private void mockEntityList(final Entity entity, final String fieldName, final Entity... entities) {
+        List<Entity> list = Lists.newArrayList(entities);
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> list.iterator());
+        given(entityList.isEmpty()).willReturn(list.isEmpty());
+        given(entity.getHasManyField(fieldName)).willReturn(entityList);
+    }
+
+    private Entity mockEntity() {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(nextId++);
+
+        return entity;
+    }
+
+    private Entity randomMaterial(final List<Entity> materials) {
+        return materials.get(random.nextInt(materials.size()));
+    }
+
+    private BigDecimal randomQuantity() {
+        return BigDecimal.valueOf(1 + random.nextInt(40), 1);
+    }
+
+}
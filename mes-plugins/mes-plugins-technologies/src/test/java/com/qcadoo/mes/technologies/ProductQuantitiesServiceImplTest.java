@@ -112,6 +112,7 @@ public class ProductQuantitiesServiceImplTest {
         productQuantitiesService = new ProductQuantitiesServiceImpl();
 
         ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesService, "technologyExplosionCache", new TechnologyExplosionCache());
 
         when(order.getBelongsToField("technology")).thenReturn(technology);
 
@@ -0,0 +1,229 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class TechnologyExplosionCacheTest {
+
+    private TechnologyExplosionCache technologyExplosionCache;
+
+    @Mock
+    private Entity technology;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private OperationProductComponentHolder holder;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        technologyExplosionCache = new TechnologyExplosionCache();
+
+        ReflectionTestUtils.setField(technologyExplosionCache, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(technologyExplosionCache, "multiTenantService", multiTenantService);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+        givenTechnologyVersion(0L);
+
+        given(technology.getId()).willReturn(1L);
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.ACCEPTED);
+
+        holder = new OperationProductComponentHolder(2L, 3L, null, null,
+                OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT);
+    }
+
+    @Test
+    public void shouldNotCacheDraftTechnology() {
+        // given
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.DRAFT);
+
+        // when
+        boolean cacheable = technologyExplosionCache.isCacheable(technology);
+
+        // then
+        assertFalse(cacheable);
+    }
+
+    @Test
+    public void shouldReturnCopyOfCachedExplosion() {
+        // given
+        OperationProductComponentWithQuantityContainer productQuantities = new OperationProductComponentWithQuantityContainer();
+        productQuantities.put(holder, new BigDecimal("10"));
+
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        operationRuns.put(3L, new BigDecimal("5"));
+
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet(holder);
+
+        technologyExplosionCache.put(technology, new BigDecimal("5.000"), productQuantities, operationRuns, nonComponents);
+
+        Map<Long, BigDecimal> cachedOperationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> cachedNonComponents = Sets.newHashSet();
+
+        // when
+        OperationProductComponentWithQuantityContainer cached = technologyExplosionCache.get(technology, new BigDecimal("5"),
+                cachedOperationRuns, cachedNonComponents);
+
+        // then
+        assertTrue(technologyExplosionCache.isCacheable(technology));
+        assertNotSame(productQuantities, cached);
+        assertEquals(productQuantities, cached);
+        assertEquals(operationRuns, cachedOperationRuns);
+        assertEquals(nonComponents, cachedNonComponents);
+        assertEquals(1L, technologyExplosionCache.getHits());
+    }
+
+    @Test
+    public void shouldMissAfterEviction() {
+        // given
+        technologyExplosionCache.put(technology, BigDecimal.ONE, new OperationProductComponentWithQuantityContainer(),
+                Maps.newHashMap(), Sets.newHashSet());
+
+        technologyExplosionCache.evict(1L);
+
+        // when
+        OperationProductComponentWithQuantityContainer cached = technologyExplosionCache.get(technology, BigDecimal.ONE,
+                Maps.newHashMap(), Sets.newHashSet());
+
+        // then
+        assertNull(cached);
+        assertEquals(1L, technologyExplosionCache.getMisses());
+    }
+
+    @Test
+    public void shouldMissForDifferentState() {
+        // given
+        technologyExplosionCache.put(technology, BigDecimal.ONE, new OperationProductComponentWithQuantityContainer(),
+                Maps.newHashMap(), Sets.newHashSet());
+
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.OUTDATED);
+
+        // when
+        OperationProductComponentWithQuantityContainer cached = technologyExplosionCache.get(technology, BigDecimal.ONE,
+                Maps.newHashMap(), Sets.newHashSet());
+
+        // then
+        assertNull(cached);
+    }
+
+    @Test
+    public void shouldMissForOtherTenant() {
+        // given
+        technologyExplosionCache.put(technology, BigDecimal.ONE, new OperationProductComponentWithQuantityContainer(),
+                Maps.newHashMap(), Sets.newHashSet());
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(2);
+
+        // when
+        OperationProductComponentWithQuantityContainer cached = technologyExplosionCache.get(technology, BigDecimal.ONE,
+                Maps.newHashMap(), Sets.newHashSet());
+
+        // then
+        assertNull(cached);
+    }
+
+    @Test
+    public void shouldMissAfterTechnologyWasSavedElsewhere() {
+        // given
+        technologyExplosionCache.put(technology, BigDecimal.ONE, new OperationProductComponentWithQuantityContainer(),
+                Maps.newHashMap(), Sets.newHashSet());
+
+        givenTechnologyVersion(1L);
+
+        // when
+        OperationProductComponentWithQuantityContainer cached = technologyExplosionCache.get(technology, BigDecimal.ONE,
+                Maps.newHashMap(), Sets.newHashSet());
+
+        // then
+        assertNull(cached);
+        assertEquals(1L, technologyExplosionCache.getMisses());
+    }
+
+    @Test
+    public void shouldEvictAgainAfterTransactionCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            // given
+            technologyExplosionCache.evict(1L);
+
+            technologyExplosionCache.put(technology, BigDecimal.ONE, new OperationProductComponentWithQuantityContainer(),
+                    Maps.newHashMap(), Sets.newHashSet());
+
+            // when
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+
+            // then
+            assertNull(technologyExplosionCache.get(technology, BigDecimal.ONE, Maps.newHashMap(), Sets.newHashSet()));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void givenTechnologyVersion(final Long version) {
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(version));
+    }
+
+}
@@ -40,8 +40,8 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.*;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsMatrix;
 import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsSearchService;
-import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.mes.lineChangeoverNormsForOrders.constants.OrderFieldsLCNFO;
 import com.qcadoo.mes.timeGapsPreview.TimeGapsContext;
 import com.qcadoo.mes.timeGapsPreview.provider.helper.OrderIntervalsModelHelper;
@@ -62,7 +62,8 @@ public class OrderAndChangeoverIntervalsProvider implements IntervalsProvider {
         Multimap<Long, Interval> intervals = HashMultimap.create();
         Set<Order> orders = buildOrders(orderIntervalsModelHelper.getOrdersProjection(context));
         intervals.putAll(ordersToIntervals(orders));
-        Multimap<Long, Interval> changeoverIntervals = getChangeovers(getGaps(groupedByStartDate(orders)));
+        Multimap<Long, Interval> changeoverIntervals = getChangeovers(getGaps(groupedByStartDate(orders)),
+                changeoverNormsSearchService.getChangeoverNormsMatrix());
         intervals.putAll(changeoverIntervals);
         Multimap<Long, Interval> filteredIntervals = Multimaps.filterValues(intervals, new Predicate<Interval>() {
 
@@ -124,17 +125,18 @@ public class OrderAndChangeoverIntervalsProvider implements IntervalsProvider {
     }
 
     // TODO it can be optimized by searching only the longest changeover between orders listed in given orderGaps set.
-    private Multimap<Long, Interval> getChangeovers(final Multimap<Long, OrdersGap> orderGaps) {
+    private Multimap<Long, Interval> getChangeovers(final Multimap<Long, OrdersGap> orderGaps,
+            final ChangeoverNormsMatrix changeoverNormsMatrix) {
         return Multimaps.transformValues(orderGaps, new Function<OrdersGap, Interval>() {
 
             @Override
             public Interval apply(final OrdersGap orderGap) {
-                return gapToInterval(orderGap);
+                return gapToInterval(orderGap, changeoverNormsMatrix);
             }
         });
     }
 
-    private Interval gapToInterval(final OrdersGap orderGap) {
+    private Interval gapToInterval(final OrdersGap orderGap, final ChangeoverNormsMatrix changeoverNormsMatrix) {
         Integer ownChangeoverDuration = orderGap.to.ownLineChangeoverDuration;
         if (ownChangeoverDuration != null) {
             DateTime end = orderGap.to.interval.getStart();
@@ -149,17 +151,16 @@ public class OrderAndChangeoverIntervalsProvider implements IntervalsProvider {
             if (fromTechId == null || toTechId == null) {
                 return null;
             }
-            Entity maybeChangeover = changeoverNormsSearchService.findBestMatching(fromTechId, fromTechGroupId, toTechId,
-                    toTechGroupId, productionLineId);
-            if (maybeChangeover == null) {
+            Integer maybeChangeoverDuration = changeoverNormsMatrix.findBestMatchingDuration(fromTechId, fromTechGroupId,
+                    toTechId, toTechGroupId, productionLineId);
+            if (maybeChangeoverDuration == null) {
                 return null;
             }
-            return changeoverToInterval(maybeChangeover, orderGap.to.interval.getStart());
+            return changeoverToInterval(maybeChangeoverDuration, orderGap.to.interval.getStart());
         }
     }
 
-    private Interval changeoverToInterval(final Entity changeover, final DateTime endDate) {
-        Integer durationSeconds = changeover.getIntegerField(LineChangeoverNormsFields.DURATION);
+    private Interval changeoverToInterval(final Integer durationSeconds, final DateTime endDate) {
         DateTime startDate;
         if (durationSeconds > 0) {
             startDate = endDate.minusSeconds(durationSeconds);
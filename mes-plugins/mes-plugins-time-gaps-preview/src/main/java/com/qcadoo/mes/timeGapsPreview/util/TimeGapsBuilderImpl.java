@@ -23,24 +23,37 @@
  */
 package com.qcadoo.mes.timeGapsPreview.util;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.SortedSet;
 
+import org.joda.time.Chronology;
 import org.joda.time.Interval;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 
+/**
+ * Occupied intervals are kept as plain start and end millis. Their union is computed by sorting starts and ends separately
+ * and sweeping through both with a counter of currently open intervals - a block of occupied time starts when the counter
+ * leaves zero and ends when it gets back to it. Starts are taken before ends at the same moment, so abutting intervals are
+ * joined.
+ */
 public class TimeGapsBuilderImpl implements TimeGapsBuilder {
 
+    private static final int L_INITIAL_CAPACITY = 64;
+
     private final Interval searchInterval;
 
-    private final SortedSet<Interval> occupiedIntervals;
+    private long[] starts = new long[L_INITIAL_CAPACITY];
+
+    private long[] ends = new long[L_INITIAL_CAPACITY];
+
+    private int size = 0;
 
     public TimeGapsBuilderImpl(final Interval interval) {
         Preconditions.checkArgument(interval != null, "Search interval have to be provided.");
         searchInterval = interval;
-        occupiedIntervals = Sets.newTreeSet(IntervalsComparator.START_DATE_ASC_AND_DURATION_DESC);
     }
 
     @Override
@@ -54,7 +67,13 @@ public class TimeGapsBuilderImpl implements TimeGapsBuilder {
     @Override
     public void addOccupiedInterval(final Interval interval) {
         if (interval != null && searchInterval.overlaps(interval)) {
-            occupiedIntervals.add(interval);
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = interval.getStartMillis();
+            ends[size] = interval.getEndMillis();
+            ++size;
         }
     }
 
@@ -62,22 +81,53 @@ public class TimeGapsBuilderImpl implements TimeGapsBuilder {
         if (intervalsSet.size() < 2) {
             return intervalsSet;
         }
+        long[] starts = new long[intervalsSet.size()];
+        long[] ends = new long[intervalsSet.size()];
+        int size = 0;
+        for (Interval interval : intervalsSet) {
+            starts[size] = interval.getStartMillis();
+            ends[size] = interval.getEndMillis();
+            ++size;
+        }
+
         SortedSet<Interval> flattenIntervals = newSortedSet();
-        Interval prev = intervalsSet.first();
+        long[] blocks = union(starts, ends, size);
+        Chronology chronology = intervalsSet.first().getChronology();
+        for (int i = 0; i < blocks.length; i += 2) {
+            flattenIntervals.add(new Interval(blocks[i], blocks[i + 1], chronology));
+        }
+        return flattenIntervals;
+    }
 
-        flattenIntervals.add(prev);
-        for (Interval interval : intervalsSet) {
-            if (interval.contains(prev.getEnd()) || interval.abuts(prev)) {
-                Interval sumInterval = new Interval(prev.getStart(), interval.getEnd());
-                flattenIntervals.remove(prev);
-                flattenIntervals.add(sumInterval);
-                prev = sumInterval;
-            } else if (!prev.contains(interval)) {
-                flattenIntervals.add(interval);
-                prev = interval;
+    /**
+     * @return starts and ends of disjoint, not abutting blocks covering given intervals, in order, as [start0, end0, start1,
+     *         end1, ...]
+     */
+    private static long[] union(final long[] starts, final long[] ends, final int size) {
+        Arrays.sort(starts, 0, size);
+        Arrays.sort(ends, 0, size);
+
+        long[] blocks = new long[size * 2];
+        int blocksSize = 0;
+        int open = 0;
+        int i = 0;
+        int j = 0;
+
+        while (j < size) {
+            if (i < size && starts[i] <= ends[j]) {
+                if (open++ == 0) {
+                    blocks[blocksSize++] = starts[i];
+                }
+                ++i;
+            } else {
+                if (--open == 0) {
+                    blocks[blocksSize++] = ends[j];
+                }
+                ++j;
             }
         }
-        return flattenIntervals;
+
+        return Arrays.copyOf(blocks, blocksSize);
     }
 
     private static SortedSet<Interval> newSortedSet() {
@@ -87,23 +137,23 @@ public class TimeGapsBuilderImpl implements TimeGapsBuilder {
     @Override
     public Collection<Interval> calculateGaps() {
         SortedSet<Interval> gaps = newSortedSet();
-        SortedSet<Interval> flattenOccupiedIntervals = flatten(occupiedIntervals);
-        if (flattenOccupiedIntervals.isEmpty()) {
+        if (size == 0) {
             gaps.add(searchInterval);
             return gaps;
         }
 
-        Interval prev = flattenOccupiedIntervals.first();
-        if (searchInterval.getStart().isBefore(prev.getStart())) {
-            gaps.add(new Interval(searchInterval.getStart(), prev.getStart()));
-        }
-        flattenOccupiedIntervals.remove(prev);
-        for (Interval occupied : flattenOccupiedIntervals) {
-            gaps.add(prev.gap(occupied));
-            prev = occupied;
+        long[] blocks = union(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), size);
+        Chronology chronology = searchInterval.getChronology();
+
+        long gapStart = searchInterval.getStartMillis();
+        for (int i = 0; i < blocks.length; i += 2) {
+            if (gapStart < blocks[i]) {
+                gaps.add(new Interval(gapStart, blocks[i], chronology));
+            }
+            gapStart = Math.max(gapStart, blocks[i + 1]);
         }
-        if (prev.getEnd().isBefore(searchInterval.getEnd())) {
-            gaps.add(new Interval(prev.getEnd(), searchInterval.getEnd()));
+        if (gapStart < searchInterval.getEndMillis()) {
+            gaps.add(new Interval(gapStart, searchInterval.getEndMillis(), chronology));
         }
         return gaps;
     }
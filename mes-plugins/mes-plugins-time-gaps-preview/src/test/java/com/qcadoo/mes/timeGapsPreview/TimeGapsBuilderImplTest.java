@@ -199,6 +199,27 @@ public class TimeGapsBuilderImplTest {
         Assert.assertEquals(expectedGaps, actualGaps);
     }
 
+    @Test
+    public void shouldCalculateGapsForIntervalsAddedInAnyOrder() {
+        // given
+        SortedSet<Interval> expectedGaps = makeSortedSet();
+        expectedGaps.add(new Interval(FROM, FROM.plusHours(1)));
+        expectedGaps.add(new Interval(FROM.plusHours(9), FROM.plusHours(10)));
+        expectedGaps.add(new Interval(FROM.plusHours(12), TO));
+
+        // when
+        timeGapsBuilder.addOccupiedInterval(new Interval(FROM.plusHours(10), FROM.plusHours(12)));
+        timeGapsBuilder.addOccupiedInterval(new Interval(FROM.plusHours(5), FROM.plusHours(9)));
+        timeGapsBuilder.addOccupiedInterval(new Interval(FROM.plusHours(2), FROM.plusHours(3)));
+        timeGapsBuilder.addOccupiedInterval(new Interval(FROM.plusHours(1), FROM.plusHours(5)));
+        timeGapsBuilder.addOccupiedInterval(new Interval(FROM.plusHours(10), FROM.plusHours(11)));
+        timeGapsBuilder.addOccupiedInterval(new Interval(FROM.plusHours(10), FROM.plusHours(12)));
+        Collection<Interval> actualGaps = timeGapsBuilder.calculateGaps();
+
+        // then
+        Assert.assertEquals(expectedGaps, actualGaps);
+    }
+
     // addOccupiedInterval
 
     @Test
@@ -48,8 +48,8 @@ import org.springframework.test.util.ReflectionTestUtils;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsMatrix;
 import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsSearchService;
-import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.mes.lineChangeoverNormsForOrders.constants.OrderFieldsLCNFO;
 import com.qcadoo.mes.timeGapsPreview.TimeGapsContext;
 import com.qcadoo.mes.timeGapsPreview.provider.helper.OrderIntervalsModelHelper;
@@ -87,6 +87,9 @@ public class OrderAndChangeoverIntervalsProviderTest {
     @Mock
     private ChangeoverNormsSearchService changeoverNormsSearchService;
 
+    @Mock
+    private ChangeoverNormsMatrix changeoverNormsMatrix;
+
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
@@ -97,9 +100,9 @@ public class OrderAndChangeoverIntervalsProviderTest {
         ReflectionTestUtils.setField(orderAndChangeoverIntervalsProvider, "changeoverNormsSearchService",
                 changeoverNormsSearchService);
 
-        Entity defaultChangeover = mockChangeoverEntity(60 * 60 * 24);
-        given(changeoverNormsSearchService.findBestMatching(anyLong(), anyLong(), anyLong(), anyLong(), anyLong())).willReturn(
-                defaultChangeover);
+        given(changeoverNormsSearchService.getChangeoverNormsMatrix()).willReturn(changeoverNormsMatrix);
+        given(changeoverNormsMatrix.findBestMatchingDuration(anyLong(), anyLong(), anyLong(), anyLong(), anyLong())).willReturn(
+                60 * 60 * 24);
     }
 
     private Entity mockOrderProjection(final Interval interval, final Long productionLineId, final Integer ownChangeoverDuration,
@@ -125,17 +128,10 @@ public class OrderAndChangeoverIntervalsProviderTest {
                 });
     }
 
-    private Entity mockChangeoverEntity(final Integer duration) {
-        Entity changeover = EntityTestUtils.mockEntity();
-        EntityTestUtils.stubIntegerField(changeover, LineChangeoverNormsFields.DURATION, duration);
-        return changeover;
-    }
-
     private void stubChangeoverSearchResults(final Long fromTech, final Long fromTechGroup, final Long toTech,
             final Long toTechGroup, final Long productionLine, final Integer duration) {
-        Entity changeoverMock = mockChangeoverEntity(duration);
-        given(changeoverNormsSearchService.findBestMatching(fromTech, fromTechGroup, toTech, toTechGroup, productionLine))
-                .willReturn(changeoverMock);
+        given(changeoverNormsMatrix.findBestMatchingDuration(fromTech, fromTechGroup, toTech, toTechGroup, productionLine))
+                .willReturn(duration);
     }
 
     private static int minutesAsSeconds(final int minutes) {
@@ -197,7 +193,7 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService, never()).findBestMatching(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
+        verify(changeoverNormsMatrix, never()).findBestMatchingDuration(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
 
         Assert.assertEquals(1, resMap.keySet().size());
         Assert.assertTrue(resMap.containsKey(LINE_1_ID));
@@ -226,7 +222,7 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService, never()).findBestMatching(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
+        verify(changeoverNormsMatrix, never()).findBestMatchingDuration(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(2, line1intervals.size());
@@ -251,7 +247,7 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService, never()).findBestMatching(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
+        verify(changeoverNormsMatrix, never()).findBestMatchingDuration(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(2, line1intervals.size());
@@ -284,10 +280,10 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_2_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_3_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_2_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_3_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(7, line1intervals.size());
@@ -326,10 +322,10 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_3_ID, TECH_GROUP_2_ID, LINE_1_ID);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_3_ID, TECH_GROUP_2_ID, LINE_1_ID);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(7, line1intervals.size());
@@ -369,11 +365,11 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_3_ID, TECH_GROUP_2_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_2_ID, TECH_GROUP_2_ID, TECH_3_ID, TECH_GROUP_2_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_2_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_3_ID, TECH_GROUP_2_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_2_ID, TECH_GROUP_2_ID, TECH_3_ID, TECH_GROUP_2_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_2_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(8, line1intervals.size());
@@ -410,9 +406,9 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_2_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_2_ID, TECH_GROUP_2_ID, TECH_1_ID, TECH_GROUP_1_ID, LINE_1_ID);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(4, line1intervals.size());
@@ -444,9 +440,9 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verify(changeoverNormsSearchService).findBestMatching(TECH_1_ID, TECH_GROUP_1_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
-        verify(changeoverNormsSearchService).findBestMatching(TECH_2_ID, TECH_GROUP_2_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_1_ID, TECH_GROUP_1_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
+        verify(changeoverNormsMatrix).findBestMatchingDuration(TECH_2_ID, TECH_GROUP_2_ID, TECH_2_ID, TECH_GROUP_2_ID, LINE_1_ID);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(4, line1intervals.size());
@@ -471,8 +467,8 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verifyZeroInteractions(changeoverNormsSearchService);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verifyZeroInteractions(changeoverNormsMatrix);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(2, line1intervals.size());
@@ -495,8 +491,8 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verifyZeroInteractions(changeoverNormsSearchService);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verifyZeroInteractions(changeoverNormsMatrix);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(2, line1intervals.size());
@@ -519,8 +515,8 @@ public class OrderAndChangeoverIntervalsProviderTest {
         Multimap<Long, Interval> resMap = orderAndChangeoverIntervalsProvider.getIntervalsPerProductionLine(DEFAULT_CONTEXT);
 
         // then
-        verifyZeroInteractions(changeoverNormsSearchService);
-        verifyNoMoreInteractions(changeoverNormsSearchService);
+        verifyZeroInteractions(changeoverNormsMatrix);
+        verifyNoMoreInteractions(changeoverNormsMatrix);
 
         Collection<Interval> line1intervals = resMap.get(LINE_1_ID);
         Assert.assertEquals(2, line1intervals.size());
@@ -37,6 +37,10 @@ public final class WorkPlanFields {
 
     public static final String GENERATED = "generated";
 
+    public static final String GENERATION_IN_PROGRESS = "generationInProgress";
+
+    public static final String GENERATION_START_DATE = "generationStartDate";
+
     public static final String FILE_NAME = "fileName";
 
     public static final String DONT_PRINT_ORDERS_IN_WORK_PLANS = "dontPrintOrdersInWorkPlans";
@@ -91,6 +91,8 @@ public class WorkPlanHooks {
     private void clearGeneratedOnCopy(final Entity workPlan) {
         workPlan.setField(WorkPlanFields.FILE_NAME, null);
         workPlan.setField(WorkPlanFields.GENERATED, false);
+        workPlan.setField(WorkPlanFields.GENERATION_IN_PROGRESS, false);
+        workPlan.setField(WorkPlanFields.GENERATION_START_DATE, null);
         workPlan.setField(WorkPlanFields.DATE, null);
         workPlan.setField(WorkPlanFields.WORKER, null);
     }
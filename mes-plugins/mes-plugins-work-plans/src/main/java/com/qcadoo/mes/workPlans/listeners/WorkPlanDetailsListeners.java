@@ -27,6 +27,7 @@ import com.google.common.collect.Lists;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.PageSize;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.print.ReportGenerationService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.util.OrderHelperService;
 import com.qcadoo.mes.technologies.BarcodeOperationComponentService;
@@ -56,11 +57,16 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 @Service
 public class WorkPlanDetailsListeners {
 
+    private static final String L_FILE_NAME = "workPlans.workPlan.report.fileName";
+
+    private static final String L_FILE_NAME_FOR_DIVISION = "workPlans.workPlan.report.fileNameForDivision";
+
     @Autowired
     private SecurityService securityService;
 
@@ -85,6 +91,9 @@ public class WorkPlanDetailsListeners {
     @Autowired
     private BarcodeOperationComponentService barcodeOperationComponentService;
 
+    @Autowired
+    private ReportGenerationService reportGenerationService;
+
     @Transactional
     public void generateWorkPlan(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         if (state instanceof FormComponent) {
@@ -97,6 +106,9 @@ public class WorkPlanDetailsListeners {
             if (workPlan == null) {
                 state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
                 return;
+            } else if (reportGenerationService.isGenerationInProgress(workPlan)) {
+                state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+                return;
             } else if (StringUtils.isNotBlank(workPlan.getStringField(WorkPlanFields.FILE_NAME))) {
                 state.addMessage("workPlans.workPlanDetails.window.workPlan.documentsWasGenerated", MessageType.FAILURE);
                 return;
@@ -138,15 +150,14 @@ public class WorkPlanDetailsListeners {
                 return;
             }
 
-            try {
-                generateWorkPlanDocuments(state, workPlan);
-                checkIfInactiveOrders(state, orders);
-                state.performEvent(view, "reset", new String[0]);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            }
+            Locale locale = state.getLocale();
+
+            reportGenerationService.generateAfterCommit(workPlan, WorkPlanFields.FILE_NAME, this::updateWorkPlanFileNames,
+                    workPlanToGenerate -> generateWorkPlanDocuments(workPlanToGenerate, locale));
+
+            checkIfInactiveOrders(state, orders);
+            state.performEvent(view, "reset", new String[0]);
+            state.addMessage("basic.report.generationStarted", MessageType.INFO);
         }
     }
 
@@ -186,22 +197,34 @@ public class WorkPlanDetailsListeners {
         return true;
     }
 
-    @Transactional
-    private void generateWorkPlanDocuments(final ComponentState state, final Entity workPlan) throws IOException,
-            DocumentException {
-        Entity workPlanWithFilename = fileService.updateReportFileName(workPlan, WorkPlanFields.DATE,
-                "workPlans.workPlan.report.fileName");
-        workPlanPdfService.generateDocument(workPlanWithFilename, state.getLocale());
-        if (workPlan.getStringField(WorkPlanFields.TYPE).compareTo(WorkPlanType.BY_DIVISION.getStringValue()) == 0) {
-            String fileNameForDivision = "workPlans.workPlan.report.fileNameForDivision";
-            Entity workPlanForDivision = fileService.updateReportFileName(workPlanWithFilename, WorkPlanFields.DATE,
-                    fileNameForDivision);
-            workPlanForDivisionPdfService.generateDocument(workPlanForDivision, state.getLocale(), fileNameForDivision,
-                    PageSize.A4.rotate());
+    private Entity updateWorkPlanFileNames(final Entity workPlan) {
+        Entity workPlanWithFilename = fileService.updateReportFileName(workPlan, WorkPlanFields.DATE, L_FILE_NAME);
+        if (isByDivision(workPlan)) {
+            return fileService.updateReportFileName(workPlanWithFilename, WorkPlanFields.DATE, L_FILE_NAME_FOR_DIVISION);
         }
+        return workPlanWithFilename;
+    }
+
+    private void generateWorkPlanDocuments(final Entity workPlan, final Locale locale) throws IOException, DocumentException {
+        workPlanPdfService.generateDocument(workPlan, locale);
+        if (isByDivision(workPlan)) {
+            workPlanForDivisionPdfService.generateDocument(workPlan, locale, L_FILE_NAME_FOR_DIVISION, PageSize.A4.rotate());
+        }
+    }
+
+    private boolean isByDivision(final Entity workPlan) {
+        return workPlan.getStringField(WorkPlanFields.TYPE).compareTo(WorkPlanType.BY_DIVISION.getStringValue()) == 0;
     }
 
     public void printWorkPlan(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        Entity workPlan = workPlanService.getWorkPlan((Long) state.getFieldValue());
+
+        if ((workPlan != null) && reportGenerationService.isGenerationInProgress(workPlan)) {
+            state.addMessage("basic.report.generationInProgress", MessageType.INFO);
+
+            return;
+        }
+
         reportService.printGeneratedReport(view, state, new String[] { args[0], WorkPlansConstants.PLUGIN_IDENTIFIER,
                 WorkPlansConstants.MODEL_WORK_PLAN, args[1] });
     }